@@ -1,11 +1,29 @@
 package edu.jhu.nlp;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.data.simple.AnnoSentenceStreamWriter;
 import edu.jhu.nlp.features.TemplateLanguage.AT;
 
 /**
@@ -13,15 +31,26 @@ import edu.jhu.nlp.features.TemplateLanguage.AT;
  * 
  * @author mgormley
  */
-public class AnnoPipeline implements Trainable, Annotator {
+public class AnnoPipeline implements Trainable, Annotator, Closeable {
 
     private static final long serialVersionUID = 1L;
+    private static final Logger log = LoggerFactory.getLogger(AnnoPipeline.class);
     private List<Annotator> pipeline = new ArrayList<Annotator>();
     
     public void add(Annotator anno) {
         pipeline.add(anno);
     }
     
+    /** Gets the number of annotators in the pipeline. */
+    public int getNumStages() {
+        return pipeline.size();
+    }
+    
+    /** Whether the annotator for the given stage may be run by more than one thread at once. */
+    public boolean isConcurrent(int stage) {
+        return pipeline.get(stage) instanceof ConcurrentAnnotator;
+    }
+    
     @Override
     public void train(AnnoSentenceCollection trainInput, AnnoSentenceCollection trainGold, 
             AnnoSentenceCollection devInput, AnnoSentenceCollection devGold) {
@@ -43,6 +72,257 @@ public class AnnoPipeline implements Trainable, Annotator {
         }
     }
     
+    /**
+     * Annotates a stream of sentences in micro-batches. Each batch of (at most) batchSize sentences
+     * is passed through every annotator and written out before the next batch is read, so that only
+     * one batch is held in memory at a time.
+     * 
+     * @param sents The input sentences.
+     * @param batchSize The number of sentences per batch.
+     * @param writer The writer for the annotated sentences, or null to discard them.
+     */
+    public void annotate(Iterable<AnnoSentence> sents, int batchSize, AnnoSentenceStreamWriter writer) throws IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        int numSents = 0;
+        AnnoSentenceCollection batch = new AnnoSentenceCollection();
+        for (AnnoSentence sent : sents) {
+            batch.add(sent);
+            if (batch.size() == batchSize) {
+                numSents += annotateBatch(batch, writer);
+            }
+        }
+        if (batch.size() > 0) {
+            numSents += annotateBatch(batch, writer);
+        }
+        log.info("Num sentences annotated: " + numSents);
+    }
+
+    /** Annotates and writes out a batch, which is then cleared. Returns the batch size. */
+    private int annotateBatch(AnnoSentenceCollection batch, AnnoSentenceStreamWriter writer) throws IOException {
+        annotate(batch);
+        if (writer != null) {
+            writer.write(batch);
+        }
+        int size = batch.size();
+        batch.clear();
+        return size;
+    }
+    
+    /**
+     * Annotates a stream of sentences in micro-batches, as in
+     * {@link #annotate(Iterable, int, AnnoSentenceStreamWriter)}, but with the annotators running
+     * concurrently as a pipeline: while one annotator works on a batch, the next annotator works on
+     * the previous batch. Batches are passed between stages by bounded queues, and the number of
+     * batches read but not yet written out is bounded by the total size of the queues, so that a slow
+     * stage (or a slow batch) blocks the reader instead of letting batches pile up in memory. The
+     * batches are written out in the same order in which they were read.
+     * 
+     * @param sents The input sentences.
+     * @param batchSize The number of sentences per batch.
+     * @param writer The writer for the annotated sentences, or null to discard them.
+     * @param queueSize The maximum number of batches waiting between two stages.
+     * @param threadsPerStage The number of threads for each annotator in the pipeline, or null for
+     *            one thread each. Each thread works on its own batch, so more than one thread may
+     *            only be given to a {@link ConcurrentAnnotator}.
+     */
+    public void annotatePipelined(final Iterable<AnnoSentence> sents, final int batchSize, AnnoSentenceStreamWriter writer,
+            int queueSize, int[] threadsPerStage) throws IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        if (threadsPerStage == null) {
+            threadsPerStage = new int[pipeline.size()];
+            Arrays.fill(threadsPerStage, 1);
+        }
+        if (threadsPerStage.length != pipeline.size()) {
+            throw new IllegalArgumentException("Expected thread counts for " + pipeline.size() + " stages, but got " + threadsPerStage.length);
+        }
+        final PipelineState state = new PipelineState(pipeline.size() + 1, queueSize);
+        int numThreads = 1;
+        for (int t : threadsPerStage) {
+            if (t < 1) {
+                throw new IllegalArgumentException("Each stage must have at least one thread: " + Arrays.toString(threadsPerStage));
+            }
+            numThreads += t;
+        }
+        for (int i=0; i<pipeline.size(); i++) {
+            if (threadsPerStage[i] > 1 && !isConcurrent(i)) {
+                throw new IllegalArgumentException("Annotator for stage " + i + " is not a ConcurrentAnnotator, so it must have one thread: "
+                        + pipeline.get(i).getClass().getName());
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            // Reader: queue 0 receives the batches in order.
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int id = 0;
+                        AnnoSentenceCollection batch = new AnnoSentenceCollection();
+                        for (AnnoSentence sent : sents) {
+                            if (batch.isEmpty()) {
+                                // Wait until the writer has room for another batch.
+                                state.acquireBatch();
+                            }
+                            batch.add(sent);
+                            if (batch.size() == batchSize) {
+                                state.put(0, new Batch(id++, batch));
+                                batch = new AnnoSentenceCollection();
+                            }
+                        }
+                        if (batch.size() > 0) {
+                            state.put(0, new Batch(id++, batch));
+                        }
+                        state.put(0, Batch.END);
+                    } catch (Throwable t) {
+                        state.abort(t);
+                    }
+                }
+            });
+            // Annotators: stage i reads from queue i and writes to queue i+1.
+            for (int i=0; i<pipeline.size(); i++) {
+                final int stage = i;
+                final Annotator anno = pipeline.get(i);
+                final AtomicInteger numRunning = new AtomicInteger(threadsPerStage[i]);
+                for (int t=0; t<threadsPerStage[i]; t++) {
+                    pool.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                while (true) {
+                                    Batch b = state.take(stage);
+                                    if (b == Batch.END) {
+                                        // Let the other threads for this stage see the end too.
+                                        state.put(stage, Batch.END);
+                                        if (numRunning.decrementAndGet() == 0) {
+                                            state.put(stage + 1, Batch.END);
+                                        }
+                                        return;
+                                    }
+                                    anno.annotate(b.sents);
+                                    state.put(stage + 1, b);
+                                }
+                            } catch (Throwable t) {
+                                state.abort(t);
+                            }
+                        }
+                    });
+                }
+            }
+            // Writer: reorder the batches by their ids.
+            int numSents = 0;
+            int nextId = 0;
+            Map<Integer, Batch> pending = new HashMap<>();
+            while (true) {
+                Batch b = state.take(pipeline.size());
+                if (b == Batch.END) {
+                    break;
+                }
+                pending.put(b.id, b);
+                while (pending.containsKey(nextId)) {
+                    Batch next = pending.remove(nextId++);
+                    if (writer != null) {
+                        writer.write(next.sents);
+                    }
+                    numSents += next.sents.size();
+                    state.releaseBatch();
+                }
+            }
+            log.info("Num sentences annotated: " + numSents);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** A batch of sentences, with its position in the input. */
+    private static class Batch {
+        static final Batch END = new Batch(-1, null);
+        final int id;
+        final AnnoSentenceCollection sents;
+        Batch(int id, AnnoSentenceCollection sents) {
+            this.id = id;
+            this.sents = sents;
+        }
+    }
+
+    /**
+     * The queues between the stages of a pipeline, and the permits for the batches in flight (i.e.
+     * read but not yet written out). If any stage fails, the pipeline is aborted and every
+     * subsequent put, take, or acquire throws.
+     */
+    private static class PipelineState {
+
+        private static final long POLL_MILLIS = 100;
+        private final List<BlockingQueue<Batch>> queues = new ArrayList<>();
+        private final Semaphore inFlight;
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        PipelineState(int numQueues, int queueSize) {
+            for (int i=0; i<numQueues; i++) {
+                queues.add(new ArrayBlockingQueue<Batch>(queueSize));
+            }
+            // Batches are written in order, so a slow batch would otherwise let every later batch
+            // wait in memory for the writer.
+            inFlight = new Semaphore(numQueues * queueSize);
+        }
+
+        void acquireBatch() throws InterruptedException {
+            while (!inFlight.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkError();
+            }
+        }
+
+        void releaseBatch() {
+            inFlight.release();
+        }
+
+        void put(int queue, Batch b) throws InterruptedException {
+            while (!queues.get(queue).offer(b, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkError();
+            }
+        }
+
+        Batch take(int queue) {
+            try {
+                while (true) {
+                    Batch b = queues.get(queue).poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (b != null) {
+                        return b;
+                    }
+                    checkError();
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        void abort(Throwable t) {
+            if (error.compareAndSet(null, t)) {
+                log.error("Aborting annotation pipeline", t);
+            }
+        }
+
+        private void checkError() {
+            if (error.get() != null) {
+                throw new RuntimeException("Annotation pipeline failed", error.get());
+            }
+        }
+
+    }
+
+    /** Closes each annotator in the pipeline which holds resources (i.e. is {@link Closeable}). */
+    @Override
+    public void close() throws IOException {
+        for (Annotator anno : pipeline) {
+            if (anno instanceof Closeable) {
+                ((Closeable) anno).close();
+            }
+        }
+    }
+
     @Override
     public Set<AT> getAnnoTypes() {
         HashSet<AT> ats = new HashSet<>();
@@ -0,0 +1,13 @@
+package edu.jhu.nlp;
+
+/**
+ * An annotator whose {@link #annotate(edu.jhu.nlp.data.simple.AnnoSentenceCollection)} may be
+ * called concurrently by several threads, each with its own sentences. Only these annotators may
+ * be given more than one thread per stage in
+ * {@link AnnoPipeline#annotatePipelined(Iterable, int, edu.jhu.nlp.data.simple.AnnoSentenceStreamWriter, int, int[])}.
+ * 
+ * @author mgormley
+ */
+public interface ConcurrentAnnotator extends Annotator {
+
+}
@@ -6,6 +6,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -19,14 +21,19 @@ import edu.jhu.nlp.data.NerMention;
 import edu.jhu.nlp.data.conll.SrlGraph.SrlEdge;
 import edu.jhu.nlp.data.conll.SrlGraph.SrlPred;
 import edu.jhu.nlp.data.simple.AlphabetStore;
+import edu.jhu.nlp.data.simple.AlphabetStore.AlphabetCounts;
 import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.data.simple.SymbolTable;
 import edu.jhu.nlp.features.SrlSignatureBuilder;
 import edu.jhu.nlp.relations.RelationMunger;
+import edu.jhu.pacaya.util.Threads;
 import edu.jhu.pacaya.util.collections.QLists;
 import edu.jhu.prim.Primitives.MutableInt;
 import edu.jhu.prim.bimap.IntObjectBimap;
 import edu.jhu.prim.tuple.ComparablePair;
 import edu.jhu.prim.tuple.Pair;
+import edu.jhu.prim.util.Lambda.FnIntToVoid;
 
 /**
  * Extract corpus statistics about a CoNLL-2009 dataset.
@@ -96,8 +103,38 @@ public class CorpusStatistics implements Serializable {
     }
 
     public void init(Iterable<AnnoSentence> cr, boolean initAlphabetStore) {
+        // Collect the statistics, and the counts for the alphabet store, in a single pass over the
+        // sentences. Consecutive chunks of the sentences are processed in parallel and their
+        // counts are merged in order, so the result is the same as for a serial pass.
+        final List<AnnoSentence> sents = AlphabetStore.asList(cr);
+        final boolean countStrs = initAlphabetStore;
+        final int numChunks = Math.max(1, Math.min(Threads.numThreads, sents.size()));
+        final ChunkStats[] chunkStats = new ChunkStats[numChunks];
+        final AlphabetCounts[] chunkCounts = new AlphabetCounts[numChunks];
+        Threads.forEach(0, numChunks, new FnIntToVoid() {
+            @Override
+            public void call(int c) {
+                ChunkStats stats = new ChunkStats();
+                AlphabetCounts counts = countStrs ? new AlphabetCounts() : null;
+                int end = AlphabetStore.getChunkEnd(sents.size(), numChunks, c);
+                for (int i=AlphabetStore.getChunkStart(sents.size(), numChunks, c); i<end; i++) {
+                    AnnoSentence sent = sents.get(i);
+                    stats.add(sent);
+                    if (countStrs) {
+                        counts.add(sent);
+                    }
+                }
+                chunkStats[c] = stats;
+                chunkCounts[c] = counts;
+            }
+        });
         if (initAlphabetStore) {
-            this.store = new AlphabetStore(cr);
+            for (int c=1; c<numChunks; c++) {
+                chunkCounts[0].merge(chunkCounts[c]);
+            }
+            SymbolTable symbols = (cr instanceof AnnoSentenceCollection) ? 
+                    ((AnnoSentenceCollection) cr).getSymbolTable() : null;
+            this.store = new AlphabetStore(chunkCounts[0], symbols);
         }      
         
         Map<String,Set<String>> predSenseSetMap = new HashMap<String,Set<String>>();
@@ -122,10 +159,73 @@ public class CorpusStatistics implements Serializable {
         knownRoles.add("_");
         int numTruePosRels = 0;
         int numRels = 0;
-        for (AnnoSentence sent : cr) {
+        for (ChunkStats stats : chunkStats) {
             // Need to know max sent length because distance features
             // use these values explicitly; an unknown sentence length in
             // test data will result in an unknown feature.
+            maxSentLength = Math.max(maxSentLength, stats.maxSentLength);
+            addWords(words, stats.words);
+            addWords(unks, stats.unks);
+            knownPostags.addAll(stats.postags);
+            knownRoles.addAll(stats.roles);
+            for (Entry<String,Set<String>> entry : stats.predSenseSetMap.entrySet()) {
+                Set<String> senses = predSenseSetMap.get(entry.getKey());
+                if (senses == null) {
+                    senses = new TreeSet<String>();
+                    predSenseSetMap.put(entry.getKey(), senses);
+                }
+                senses.addAll(entry.getValue());
+            }
+            knownNeTypes.addAll(stats.neTypes);
+            knownNeSubtypes.addAll(stats.neSubtypes);
+            knownRelations.addAll(stats.relations);
+            numTruePosRels += stats.numTruePosRels;
+            numRels += stats.numRels;
+        }
+        
+        // For words and unknown word classes, we only keep those above some threshold.
+        knownWords = getUnigramsAboveThreshold(words, prm.cutoff);
+        knownUnks = getUnigramsAboveThreshold(unks, prm.cutoff);
+        
+        topNWords = getTopNUnigrams(words, prm.topN, prm.cutoff);
+        
+        this.linkStateNames = new ArrayList<>(knownLinks);
+        this.roleStateNames =  new ArrayList<>(knownRoles);
+        this.relationStateNames =  new ArrayList<>(knownRelations);
+        this.posTagStateNames = new ArrayList<>(knownPostags);
+        for (Entry<String,Set<String>> entry : predSenseSetMap.entrySet()) {
+            predSenseListMap.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+        }
+
+        log.info("Found {} Word types.", words.size());
+        log.info("Found {} POS tag types: {}", knownPostags.size(), knownPostags);
+        log.info("Found {} SRL Predicate types.", predSenseListMap.size());
+        log.info("Found {} SRL Role types: {}", roleStateNames.size(), roleStateNames);
+        log.info("Found {} NER types: {}", knownNeTypes.size(), knownNeTypes);
+        log.info("Found {} Relation types: {}", relationStateNames.size(), relationStateNames);        
+        log.info("Num true positive relations: " + numTruePosRels);
+        log.info("Num relations: " + numRels);
+    }
+    
+    /**
+     * The statistics for a chunk of the sentences. The sets keep the order in which their elements
+     * were first seen, so that merging the chunks in order adds the elements in the same order as
+     * a serial pass over the sentences would.
+     */
+    private class ChunkStats {
+        int maxSentLength = 0;
+        Map<String, MutableInt> words = new HashMap<String, MutableInt>();
+        Map<String, MutableInt> unks = new HashMap<String, MutableInt>();
+        Set<String> postags = new LinkedHashSet<String>();
+        Set<String> roles = new LinkedHashSet<String>();
+        Map<String,Set<String>> predSenseSetMap = new LinkedHashMap<String,Set<String>>();
+        Set<String> neTypes = new LinkedHashSet<String>();
+        Set<String> neSubtypes = new LinkedHashSet<String>();
+        Set<String> relations = new LinkedHashSet<String>();
+        int numTruePosRels = 0;
+        int numRels = 0;
+        
+        void add(AnnoSentence sent) {
             if (sent.size() > maxSentLength) {
                 maxSentLength = sent.size();
             }
@@ -145,7 +245,7 @@ public class CorpusStatistics implements Serializable {
             // POS tag stats.
             if (sent.getPosTags() != null) {
                 for (int position = 0; position < sent.size(); position++) {
-                    knownPostags.add(sent.getPosTag(position));
+                    postags.add(sent.getPosTag(position));
                 }
             }
             
@@ -153,7 +253,7 @@ public class CorpusStatistics implements Serializable {
             if (sent.getSrlGraph() != null) {
                 for (SrlEdge edge : sent.getSrlGraph().getEdges()) {
                     String role = edge.getLabel();
-                    knownRoles.add(role);
+                    roles.add(role);
                 }
                 for (SrlPred pred : sent.getSrlGraph().getPreds()) {
                     int position = pred.getPosition();
@@ -174,9 +274,9 @@ public class CorpusStatistics implements Serializable {
                 for (int k=0; k<sent.getNamedEntities().size(); k++) {
                     NerMention ne = sent.getNamedEntities().get(k);
                     if (ne.getEntityType() != null) {
-                        knownNeTypes.add(ne.getEntityType());
+                        neTypes.add(ne.getEntityType());
                         if (ne.getEntitySubType() != null) {
-                            knownNeSubtypes.add(ne.getEntityType() + ":" + ne.getEntitySubType());
+                            neSubtypes.add(ne.getEntityType() + ":" + ne.getEntitySubType());
                         }
                     }
                 }
@@ -184,39 +284,16 @@ public class CorpusStatistics implements Serializable {
             
             // Relation stats.
             if (sent.getRelLabels() != null) {
-            	for (int k=0; k<sent.getRelLabels().size(); k++) {
+                for (int k=0; k<sent.getRelLabels().size(); k++) {
                     String relation = sent.getRelLabels().get(k);
-                    knownRelations.add(relation);
+                    relations.add(relation);
                     if (!RelationMunger.isNoRelationLabel(relation)) {
-                    	numTruePosRels++;
+                        numTruePosRels++;
                     }
                     numRels++;
                 }
             }
         }
-        
-        // For words and unknown word classes, we only keep those above some threshold.
-        knownWords = getUnigramsAboveThreshold(words, prm.cutoff);
-        knownUnks = getUnigramsAboveThreshold(unks, prm.cutoff);
-        
-        topNWords = getTopNUnigrams(words, prm.topN, prm.cutoff);
-        
-        this.linkStateNames = new ArrayList<>(knownLinks);
-        this.roleStateNames =  new ArrayList<>(knownRoles);
-        this.relationStateNames =  new ArrayList<>(knownRelations);
-        this.posTagStateNames = new ArrayList<>(knownPostags);
-        for (Entry<String,Set<String>> entry : predSenseSetMap.entrySet()) {
-            predSenseListMap.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
-        }
-
-        log.info("Found {} Word types.", words.size());
-        log.info("Found {} POS tag types: {}", knownPostags.size(), knownPostags);
-        log.info("Found {} SRL Predicate types.", predSenseListMap.size());
-        log.info("Found {} SRL Role types: {}", roleStateNames.size(), roleStateNames);
-        log.info("Found {} NER types: {}", knownNeTypes.size(), knownNeTypes);
-        log.info("Found {} Relation types: {}", relationStateNames.size(), relationStateNames);        
-        log.info("Num true positive relations: " + numTruePosRels);
-        log.info("Num relations: " + numRels);
     }
     
     // ------------------- private ------------------- //
@@ -231,6 +308,17 @@ public class CorpusStatistics implements Serializable {
     }
 
 
+    private static void addWords(Map<String, MutableInt> inputHash, Map<String, MutableInt> counts) {
+        for (Entry<String, MutableInt> entry : counts.entrySet()) {
+            MutableInt count = inputHash.get(entry.getKey());
+            if (count == null) {
+                inputHash.put(entry.getKey(), new MutableInt(entry.getValue().v));
+            } else {
+                count.v += entry.getValue().v;
+            }
+        }
+    }
+
     private static Set<String> getUnigramsAboveThreshold(Map<String, MutableInt> inputHash, int cutoff) {
         Set<String> knownHash = new HashSet<String>();
         Iterator<Entry<String, MutableInt>> it = inputHash.entrySet().iterator();
@@ -2,11 +2,12 @@ package edu.jhu.nlp;
 
 import edu.jhu.pacaya.gm.feat.FeatureExtractor;
 import edu.jhu.pacaya.gm.model.FeExpFamFactor;
+import edu.jhu.pacaya.gm.model.FgModel;
 import edu.jhu.pacaya.gm.model.VarSet;
 
 /**
  * A factor which includes its type (i.e. template).
- * 
+ *
  * @author mgormley
  */
 public class FeTypedFactor extends FeExpFamFactor {
@@ -14,14 +15,28 @@ public class FeTypedFactor extends FeExpFamFactor {
     private static final long serialVersionUID = 1L;
 
     Enum<?> type;
-    
+    FeatureExtractor fe;
+
     public FeTypedFactor(VarSet vars, Enum<?> type, FeatureExtractor fe) {
         super(vars, fe);
         this.type = type;
+        this.fe = fe;
     }
-    
+
     public Enum<?> getFactorType() {
         return type;
     }
-    
-}
\ No newline at end of file
+
+    /**
+     * If the feature extractor is a {@link ScoringFeatureExtractor}, the score is computed directly
+     * without creating a feature vector for the configuration.
+     */
+    @Override
+    public double getDotProd(int config, FgModel model) {
+        if (fe instanceof ScoringFeatureExtractor) {
+            return ((ScoringFeatureExtractor) fe).calcScore(this, config, model.getParams());
+        }
+        return super.getDotProd(config, model);
+    }
+
+}
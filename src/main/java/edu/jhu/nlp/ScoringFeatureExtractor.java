@@ -0,0 +1,22 @@
+package edu.jhu.nlp;
+
+import edu.jhu.pacaya.gm.feat.FeatureExtractor;
+import edu.jhu.pacaya.gm.model.FeExpFamFactor;
+import edu.jhu.prim.vector.IntDoubleVector;
+
+/**
+ * A feature extractor which can also compute the score of a factor configuration directly, without
+ * creating the intermediate {@link edu.jhu.pacaya.gm.feat.FeatureVector}.
+ *
+ * @author mgormley
+ */
+public interface ScoringFeatureExtractor extends FeatureExtractor {
+
+    /**
+     * Gets the dot product of the features for the given factor and configuration with the weights.
+     * This must equal the dot product of {@link #calcFeatureVector(FeExpFamFactor, int)} with the
+     * weights.
+     */
+    double calcScore(FeExpFamFactor factor, int configId, IntDoubleVector weights);
+
+}
@@ -2,6 +2,8 @@ package edu.jhu.nlp.data;
 
 import org.apache.commons.lang3.ObjectUtils;
 
+import edu.jhu.nlp.data.simple.SymbolTable;
+
 /**
  * Mention of a named entity or a similarly labeled span in a sentence.
  * 
@@ -91,15 +93,11 @@ public class NerMention implements Comparable<NerMention> {
         this.id = id;
     }
 
-    public void intern() {
-        entityType = safeIntern(entityType);
-        entitySubType = safeIntern(entitySubType);
-        phraseType = safeIntern(phraseType);
-        id = safeIntern(id);
-    }
-
-    private static String safeIntern(String s) {
-        return (s == null) ? null : s.intern();
+    public void intern(SymbolTable symbols) {
+        entityType = symbols.intern(entityType);
+        entitySubType = symbols.intern(entitySubType);
+        phraseType = symbols.intern(phraseType);
+        id = symbols.intern(id);
     }
 
     @Override
@@ -6,6 +6,8 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
+import edu.jhu.nlp.data.simple.SymbolTable;
+
 /**
  * Labeling of spans in a sentence. This can be used to represent, for example, the labeling of
  * named-entities. The mentions are kept in sorted order.
@@ -57,9 +59,9 @@ public class NerMentions implements Iterable<NerMention> {
         }
     }
 
-    public void intern() {
+    public void intern(SymbolTable symbols) {
         for (NerMention s : ments) {
-            s.intern();
+            s.intern(symbols);
         }
     }
 
@@ -7,6 +7,7 @@ import java.util.List;
 
 import org.apache.commons.lang3.ObjectUtils;
 
+import edu.jhu.nlp.data.simple.SymbolTable;
 import edu.jhu.prim.tuple.Pair;
 
 /**
@@ -76,17 +77,13 @@ public class RelationMention {
         return trigger;
     }
 
-    public void intern() {
-        if (type != null) {
-            type = type.intern();
-        }
-        if (subType != null) {
-            subType = subType.intern();
-        }
+    public void intern(SymbolTable symbols) {
+        type = symbols.intern(type);
+        subType = symbols.intern(subType);
         for (int i = 0; i < args.size(); i++) {
             Pair<String, NerMention> pair = args.get(i);
-            pair.get2().intern();
-            pair = new Pair<>(pair.get1().intern(), pair.get2());
+            pair.get2().intern(symbols);
+            pair = new Pair<>(symbols.intern(pair.get1()), pair.get2());
             args.set(i, pair);
         }
     }
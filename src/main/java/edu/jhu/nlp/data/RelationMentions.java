@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import edu.jhu.nlp.data.simple.SymbolTable;
 import edu.jhu.prim.tuple.Pair;
 
 /**
@@ -29,9 +30,9 @@ public class RelationMentions implements Iterable<RelationMention> {
         }
     }
 
-    public void intern() {
+    public void intern(SymbolTable symbols) {
         for (RelationMention sm : ments) {
-            sm.intern();
+            sm.intern(symbols);
         }
     }
 
@@ -0,0 +1,99 @@
+package edu.jhu.nlp.data;
+
+import java.io.Serializable;
+import java.util.BitSet;
+
+/**
+ * A mask over the (predicate, argument) pairs of a sentence, indicating which pairs are kept as
+ * candidates for semantic roles and which are pruned.
+ *
+ * @author mgormley
+ */
+public class SrlArgMask implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int n;
+    // Bit (pred * n + arg) is set iff the pair is kept.
+    private BitSet kept;
+
+    public SrlArgMask(SrlArgMask mask) {
+        this.n = mask.n;
+        this.kept = (BitSet) mask.kept.clone();
+    }
+
+    public SrlArgMask(int numWords, boolean isKept) {
+        this.n = numWords;
+        this.kept = new BitSet(n*n);
+        setIsKeptAll(isKept);
+    }
+
+    /** Returns whether the corresponding predicate-argument pair should be pruned. */
+    public boolean isPruned(int pred, int arg) {
+        return !isKept(pred, arg);
+    }
+
+    /** Returns whether the corresponding predicate-argument pair should be kept. */
+    public boolean isKept(int pred, int arg) {
+        checkIndices(pred, arg);
+        return kept.get(pred * n + arg);
+    }
+
+    private void checkIndices(int pred, int arg) {
+        if (!(0 <= pred && pred < n && 0 <= arg && arg < n)) {
+            throw new IllegalArgumentException("Invalid pred/arg indices: " + pred + " " + arg);
+        }
+    }
+
+    public void setIsKept(int pred, int arg, boolean isKept) {
+        checkIndices(pred, arg);
+        kept.set(pred * n + arg, isKept);
+    }
+
+    public void setIsPruned(int pred, int arg, boolean isPruned) {
+        setIsKept(pred, arg, !isPruned);
+    }
+
+    public void setIsKeptAll(boolean isKept) {
+        kept.set(0, n*n, isKept);
+    }
+
+    /** Gets the number of kept arguments for the given predicate. */
+    public int getArgCount(int pred) {
+        checkIndices(pred, 0);
+        return kept.get(pred * n, (pred+1) * n).cardinality();
+    }
+
+    /** Gets the total number of kept pairs. */
+    public int getCount() {
+        return kept.cardinality();
+    }
+
+    /** Gets the number of words in the sentence. */
+    public int size() {
+        return n;
+    }
+
+    public void and(SrlArgMask other) {
+        this.kept.and(other.kept);
+    }
+
+    public void or(SrlArgMask other) {
+        this.kept.or(other.kept);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("SrlArgMask [n=" + n + ", kept=\n");
+        for (int p=0; p<n; p++) {
+            for (int a=0; a<n; a++) {
+                sb.append(isKept(p, a) ? '1' : '0');
+            }
+            sb.append('\n');
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+}
@@ -118,6 +118,9 @@ public class ConcreteWriter {
         if (out.getName().endsWith(".zip")) {
             throw new RuntimeException("Zip file output not yet supported for Concrete");
         } else {
+            if (comms == null) {
+                throw new RuntimeException("No sourceSents field. The source Communications must be kept or spilled to write Concrete.");
+            }
             if (comms.size() == 0) {
                 throw new RuntimeException("No Communication in sourceSents field.");
             }
@@ -0,0 +1,82 @@
+package edu.jhu.nlp.data.concrete;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
+import edu.jhu.hlt.concrete.util.ConcreteException;
+
+/**
+ * A read-only list of Communications which are spilled to a side file instead of being kept in
+ * memory. The Communications are written in the compact Thrift encoding, and each one is read back
+ * from the file when it is accessed. This is used to hold the source Communications of a corpus
+ * which are only needed again by the {@link ConcreteWriter}.
+ *
+ * @author mgormley
+ */
+public class SpilledCommunications extends AbstractList<Communication> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger log = LoggerFactory.getLogger(SpilledCommunications.class);
+
+    private final File file;
+    // The offset of each Communication in the file, followed by the size of the file.
+    private final long[] offsets;
+
+    /** Writes the Communications to the given file. */
+    public SpilledCommunications(List<Communication> comms, File file) throws IOException {
+        this.file = file;
+        this.offsets = new long[comms.size() + 1];
+        CompactCommunicationSerializer ser = new CompactCommunicationSerializer();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            for (int i=0; i<comms.size(); i++) {
+                byte[] bytez = ser.toBytes(comms.get(i));
+                out.write(bytez);
+                offsets[i+1] = offsets[i] + bytez.length;
+            }
+        } catch (ConcreteException e) {
+            throw new IOException(e);
+        }
+        log.info(String.format("Spilled %d Communications (%d bytes) to %s", comms.size(), offsets[comms.size()], file));
+    }
+
+    /** Writes the Communications to a temporary file, which is deleted on exit. */
+    public static SpilledCommunications spillToTempFile(List<Communication> comms) throws IOException {
+        File file = File.createTempFile("comms", ".spill");
+        file.deleteOnExit();
+        return new SpilledCommunications(comms, file);
+    }
+
+    /** Reads the i'th Communication from the file. */
+    @Override
+    public Communication get(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+        }
+        byte[] bytez = new byte[(int) (offsets[i+1] - offsets[i])];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(offsets[i]);
+            raf.readFully(bytez);
+            return new CompactCommunicationSerializer().fromBytes(bytez);
+        } catch (IOException | ConcreteException e) {
+            throw new RuntimeException("Unable to read spilled Communication " + i + " from " + file, e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return offsets.length - 1;
+    }
+
+}
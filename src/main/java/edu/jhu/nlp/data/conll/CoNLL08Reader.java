@@ -12,6 +12,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import edu.jhu.nlp.data.simple.CloseableIterable;
+import edu.jhu.nlp.data.simple.SymbolTable;
 
 /**
  * Reads a single file in CoNLL-2009 format.
@@ -23,17 +24,28 @@ public class CoNLL08Reader implements CloseableIterable<CoNLL08Sentence>, Iterat
 
     private CoNLL08Sentence sentence;
     private BufferedReader reader;
+    private SymbolTable symbols;
 
     public CoNLL08Reader(File file) throws IOException {
         this(new FileInputStream(file));
     }
 
     public CoNLL08Reader(InputStream inputStream) throws UnsupportedEncodingException {
-        this(new BufferedReader(new InputStreamReader(inputStream, "UTF-8")));
+        this(inputStream, new SymbolTable());
+    }
+
+    /** Constructs a reader whose strings are interned in the given symbol table (e.g. that of the corpus). */
+    public CoNLL08Reader(InputStream inputStream, SymbolTable symbols) throws UnsupportedEncodingException {
+        this(new BufferedReader(new InputStreamReader(inputStream, "UTF-8")), symbols);
     }
     
     public CoNLL08Reader(BufferedReader reader) {
+        this(reader, new SymbolTable());
+    }
+
+    public CoNLL08Reader(BufferedReader reader, SymbolTable symbols) {
         this.reader = reader;
+        this.symbols = symbols;
         next();
     }
 
@@ -69,7 +81,7 @@ public class CoNLL08Reader implements CloseableIterable<CoNLL08Sentence>, Iterat
         try {
             CoNLL08Sentence curSent = sentence;
             sentence = readCoNLL08Sentence(reader);
-            if (curSent != null) { curSent.intern(); }
+            if (curSent != null) { curSent.intern(symbols); }
             return curSent;
         } catch (IOException e) {
             throw new RuntimeException(e);
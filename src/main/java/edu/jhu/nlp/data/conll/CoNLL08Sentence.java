@@ -17,6 +17,7 @@ import edu.jhu.nlp.data.conll.SrlGraph.SrlEdge;
 import edu.jhu.nlp.data.conll.SrlGraph.SrlPred;
 import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.data.simple.SymbolTable;
 
 /**
  * One sentence from a CoNLL-2008 formatted file.
@@ -235,9 +236,9 @@ public class CoNLL08Sentence implements Iterable<CoNLL08Token> {
     
     // -------------------------------------- //
 
-    public void intern() {
+    public void intern(SymbolTable symbols) {
         for (CoNLL08Token tok : this) {
-            tok.intern();
+            tok.intern(symbols);
         }
     }
     
@@ -7,7 +7,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
 
-import edu.jhu.pacaya.util.collections.QLists;
+import edu.jhu.nlp.data.simple.SymbolTable;
 
 /**
  * One token from a CoNNL-2008 formatted file.
@@ -126,18 +126,18 @@ public class CoNLL08Token {
         this.head = -1;
     }
     
-    public void intern() {
+    public void intern(SymbolTable symbols) {
         //  Columns: ID FORM LEMMA GPOS PPOS SPLIT_FORM SPLIT_LEMMA PPOSS HEAD DEPREL PRED ... ARG
-        if (form != null) { form = form.intern(); }
-        if (lemma != null) { lemma = lemma.intern(); }
-        if (gpos != null) { gpos = gpos.intern(); }
-        if (ppos != null) { ppos = ppos.intern(); }
-        if (splitForm != null) { splitForm = splitForm.intern(); }
-        if (splitLemma != null) { splitLemma = splitLemma.intern(); }
-        if (splitPpos != null) { splitPpos = splitPpos.intern(); }
-        if (deprel != null) { deprel = deprel.intern(); }
-        if (pred != null) { pred = pred.intern(); }
-        if (apreds != null) { apreds = QLists.getInternedList(apreds); }
+        if (form != null) { form = symbols.intern(form); }
+        if (lemma != null) { lemma = symbols.intern(lemma); }
+        if (gpos != null) { gpos = symbols.intern(gpos); }
+        if (ppos != null) { ppos = symbols.intern(ppos); }
+        if (splitForm != null) { splitForm = symbols.intern(splitForm); }
+        if (splitLemma != null) { splitLemma = symbols.intern(splitLemma); }
+        if (splitPpos != null) { splitPpos = symbols.intern(splitPpos); }
+        if (deprel != null) { deprel = symbols.intern(deprel); }
+        if (pred != null) { pred = symbols.intern(pred); }
+        if (apreds != null) { symbols.intern(apreds); }
     }
 
     /**
@@ -17,6 +17,7 @@ import edu.jhu.nlp.data.conll.SrlGraph.SrlEdge;
 import edu.jhu.nlp.data.conll.SrlGraph.SrlPred;
 import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.data.simple.SymbolTable;
 
 /**
  * One sentence from a CoNLL-2009 formatted file.
@@ -290,7 +291,7 @@ public class CoNLL09Sentence implements Iterable<CoNLL09Token> {
         }
     }
     
-    private static String normalizeRoleName(String role) {
+    static String normalizeRoleName(String role) {
         String[] splitRole = dash.split(role);
         return splitRole[0].toLowerCase();
     }
@@ -326,9 +327,9 @@ public class CoNLL09Sentence implements Iterable<CoNLL09Token> {
     
     // -------------------------------------- //
 
-    public void intern() {
+    public void intern(SymbolTable symbols) {
         for (CoNLL09Token tok : this) {
-            tok.intern();
+            tok.intern(symbols);
         }
     }
     
@@ -10,7 +10,7 @@ import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 
-import edu.jhu.pacaya.util.collections.QLists;
+import edu.jhu.nlp.data.simple.SymbolTable;
 
 /**
  * One token from a CoNNL-2009 formatted file.
@@ -146,18 +146,18 @@ public class CoNLL09Token {
         this.phead = -1;
     }
     
-    public void intern() {
-        if (form != null) { form = form.intern(); }
-        if (lemma != null) { lemma = lemma.intern(); }
-        if (plemma != null) { plemma = plemma.intern(); }
-        if (pos != null) { pos = pos.intern(); }
-        if (ppos != null) { ppos = ppos.intern(); }
-        if (feat != null) { QLists.intern(feat); }
-        if (pfeat != null) { QLists.intern(pfeat); }
-        if (deprel != null) { deprel = deprel.intern(); }
-        if (pdeprel != null) { pdeprel = pdeprel.intern(); }
-        if (pred != null) { pred = pred.intern(); }
-        if (apreds != null) { QLists.intern(apreds); }
+    public void intern(SymbolTable symbols) {
+        if (form != null) { form = symbols.intern(form); }
+        if (lemma != null) { lemma = symbols.intern(lemma); }
+        if (plemma != null) { plemma = symbols.intern(plemma); }
+        if (pos != null) { pos = symbols.intern(pos); }
+        if (ppos != null) { ppos = symbols.intern(ppos); }
+        if (feat != null) { symbols.intern(feat); }
+        if (pfeat != null) { symbols.intern(pfeat); }
+        if (deprel != null) { deprel = symbols.intern(deprel); }
+        if (pdeprel != null) { pdeprel = symbols.intern(pdeprel); }
+        if (pred != null) { pred = symbols.intern(pred); }
+        if (apreds != null) { symbols.intern(apreds); }
     }
 
     /**
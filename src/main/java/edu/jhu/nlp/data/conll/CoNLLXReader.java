@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 
 import edu.jhu.nlp.data.simple.CloseableIterable;
+import edu.jhu.nlp.data.simple.SymbolTable;
 
 /**
  * Reads a single file in CoNLL-X format.
@@ -22,17 +23,28 @@ public class CoNLLXReader implements CloseableIterable<CoNLLXSentence>, Iterator
 
     private CoNLLXSentence sentence;
     private BufferedReader reader;
+    private SymbolTable symbols;
 
     public CoNLLXReader(File file) throws IOException {
         this(new FileInputStream(file));
     }
 
     public CoNLLXReader(InputStream inputStream) throws UnsupportedEncodingException {
-        this(new BufferedReader(new InputStreamReader(inputStream, "UTF-8")));
+        this(inputStream, new SymbolTable());
+    }
+
+    /** Constructs a reader whose strings are interned in the given symbol table (e.g. that of the corpus). */
+    public CoNLLXReader(InputStream inputStream, SymbolTable symbols) throws UnsupportedEncodingException {
+        this(new BufferedReader(new InputStreamReader(inputStream, "UTF-8")), symbols);
     }
     
     public CoNLLXReader(BufferedReader reader) {
+        this(reader, new SymbolTable());
+    }
+
+    public CoNLLXReader(BufferedReader reader, SymbolTable symbols) {
         this.reader = reader;
+        this.symbols = symbols;
         next();
     }
 
@@ -69,7 +81,7 @@ public class CoNLLXReader implements CloseableIterable<CoNLLXSentence>, Iterator
         try {
             CoNLLXSentence curSent = sentence;
             sentence = readCoNLLXSentence(reader);
-            if (curSent != null) { curSent.intern(); }
+            if (curSent != null) { curSent.intern(symbols); }
             return curSent;
         } catch (IOException e) {
             throw new RuntimeException(e);
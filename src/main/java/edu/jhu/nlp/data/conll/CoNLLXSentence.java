@@ -5,6 +5,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.SymbolTable;
 import edu.jhu.pacaya.nlp.data.Sentence;
 
 /**
@@ -165,9 +166,9 @@ public class CoNLLXSentence implements Iterable<CoNLLXToken> {
     
     // -------------------------------------- //
 
-    public void intern() {
+    public void intern(SymbolTable symbols) {
         for (CoNLLXToken tok : this) {
-            tok.intern();
+            tok.intern(symbols);
         }
     }
     
@@ -10,7 +10,7 @@ import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 
-import edu.jhu.pacaya.util.collections.QLists;
+import edu.jhu.nlp.data.simple.SymbolTable;
 
 /**
  * One token from a CoNNL-X formatted file.
@@ -116,14 +116,14 @@ public class CoNLLXToken {
         this.phead = -1;
     }
     
-    public void intern() {
-        if (form != null) { form = form.intern(); }
-        if (lemma != null) { lemma = lemma.intern(); }
-        if (cpostag != null) { cpostag = cpostag.intern(); }
-        if (postag != null) { postag = postag.intern(); }
-        if (feats != null) { QLists.intern(feats); }
-        if (deprel != null) { deprel = deprel.intern(); }
-        if (pdeprel != null) { pdeprel = pdeprel.intern(); }
+    public void intern(SymbolTable symbols) {
+        if (form != null) { form = symbols.intern(form); }
+        if (lemma != null) { lemma = symbols.intern(lemma); }
+        if (cpostag != null) { cpostag = symbols.intern(cpostag); }
+        if (postag != null) { postag = symbols.intern(postag); }
+        if (feats != null) { symbols.intern(feats); }
+        if (deprel != null) { deprel = symbols.intern(deprel); }
+        if (pdeprel != null) { pdeprel = symbols.intern(pdeprel); }
     }
 
     /**
@@ -0,0 +1,441 @@
+package edu.jhu.nlp.data.conll;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.nlp.data.conll.SrlGraph.SrlArg;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlEdge;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlPred;
+import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.AnnoSentenceReader.AnnoSentenceReaderPrm;
+import edu.jhu.nlp.data.simple.AnnoSentenceReader.DatasetType;
+import edu.jhu.nlp.data.simple.SymbolTable;
+import edu.jhu.pacaya.util.Threads;
+import edu.jhu.prim.util.Lambda.FnIntToVoid;
+import edu.jhu.prim.util.Timer;
+
+/**
+ * Reads a CoNLL-2009 or CoNLL-X file in parallel.
+ *
+ * The file is memory mapped and split at blank lines into chunks of whole sentences. The chunks
+ * are parsed on the default thread pool, each with a hand written tokenizer that builds the
+ * {@link AnnoSentence}s directly, instead of first building {@link CoNLL09Sentence}s or
+ * {@link CoNLLXSentence}s and splitting each line with a regular expression. The sentences are
+ * returned in the order of the file, and are the same as those from the converters in
+ * AnnoSentenceReader except that they have no source sentence.
+ *
+ * @author mgormley
+ */
+public class ParallelCoNLLReader {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelCoNLLReader.class);
+
+    private AnnoSentenceReaderPrm prm;
+    private SymbolTable symbols;
+
+    /**
+     * @param prm The reader parameters.
+     * @param symbols The symbol table in which the strings of the sentences are interned, as they
+     *            are parsed.
+     */
+    public ParallelCoNLLReader(AnnoSentenceReaderPrm prm, SymbolTable symbols) {
+        this.prm = prm;
+        this.symbols = symbols;
+    }
+
+    /** Whether the given data type can be read by this reader. */
+    public static boolean isSupported(DatasetType type) {
+        return type == DatasetType.CONLL_2009 || type == DatasetType.CONLL_X;
+    }
+
+    /** Reads all the sentences in a CoNLL-2009 or CoNLL-X file. */
+    public List<AnnoSentence> read(File file, final DatasetType type) throws IOException {
+        if (!isSupported(type)) {
+            throw new IllegalArgumentException("Unsupported data type: " + type);
+        }
+        Timer timer = new Timer();
+        timer.start();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel ch = raf.getChannel();
+            final long[] bounds = getChunkBounds(ch, prm.conllChunkBytes);
+            final int numChunks = bounds.length - 1;
+            // Map each chunk. The mapped buffers remain valid after the channel is closed.
+            final ByteBuffer[] chunks = new ByteBuffer[numChunks];
+            for (int c=0; c<numChunks; c++) {
+                chunks[c] = ch.map(MapMode.READ_ONLY, bounds[c], bounds[c+1] - bounds[c]);
+            }
+
+            // Parse the chunks in parallel, keeping the sentences of each chunk separate so that
+            // they can be concatenated in the order of the file.
+            @SuppressWarnings("unchecked")
+            final List<AnnoSentence>[] chunkSents = new List[numChunks];
+            final AtomicReference<RuntimeException> error = new AtomicReference<>();
+            Threads.forEach(0, numChunks, new FnIntToVoid() {
+                @Override
+                public void call(int c) {
+                    try {
+                        String text = StandardCharsets.UTF_8.decode(chunks[c]).toString();
+                        List<AnnoSentence> sents = new ChunkParser(text, type).parse();
+                        for (AnnoSentence sent : sents) {
+                            sent.intern(symbols);
+                        }
+                        chunkSents[c] = sents;
+                    } catch (RuntimeException e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            });
+            if (error.get() != null) {
+                throw error.get();
+            }
+
+            int numSents = 0;
+            for (List<AnnoSentence> cs : chunkSents) {
+                numSents += cs.size();
+            }
+            List<AnnoSentence> sents = new ArrayList<AnnoSentence>(numSents);
+            for (List<AnnoSentence> cs : chunkSents) {
+                sents.addAll(cs);
+            }
+            timer.stop();
+            log.info(String.format("Read %d sentences in %d chunks in %.2f s", numSents, numChunks, timer.totSec()));
+            return sents;
+        }
+    }
+
+    /**
+     * Gets the boundaries of the chunks of a file, such that each chunk begins at the start of the
+     * file or just after a blank line, and is at least chunkBytes long unless it is the last.
+     *
+     * @return The offsets of the chunks, followed by the size of the file.
+     */
+    static long[] getChunkBounds(FileChannel ch, int chunkBytes) throws IOException {
+        long size = ch.size();
+        List<Long> bounds = new ArrayList<Long>();
+        bounds.add(0L);
+        long pos = 0;
+        while (pos < size) {
+            pos = getSentenceStart(ch, pos + Math.max(1, chunkBytes), size);
+            bounds.add(pos);
+        }
+        long[] arr = new long[bounds.size()];
+        for (int i=0; i<arr.length; i++) {
+            arr[i] = bounds.get(i);
+        }
+        return arr;
+    }
+
+    /**
+     * Gets the offset just after the first blank line which ends at or after the given position,
+     * or the size of the file if there is none.
+     */
+    private static long getSentenceStart(FileChannel ch, long pos, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        // Whether the line being scanned only contains whitespace so far. Since the position may
+        // be in the middle of a line, the first line is never considered blank.
+        boolean blank = false;
+        while (pos < size) {
+            buf.clear();
+            int n = ch.read(buf, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i=0; i<n; i++) {
+                byte b = buf.get(i);
+                if (b == '\n') {
+                    if (blank) {
+                        return pos + i + 1;
+                    }
+                    blank = true;
+                } else if (b > ' ') {
+                    blank = false;
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    /** Parses the sentences in one chunk of a file. */
+    private class ChunkParser {
+
+        private final String text;
+        private final DatasetType type;
+        // The position of the next line to read.
+        private int pos = 0;
+        // The start and end of each field of the current line.
+        private int[] starts = new int[32];
+        private int[] ends = new int[32];
+        private int numFields;
+        // The field boundaries of each line in the current sentence.
+        private List<int[]> lineStarts = new ArrayList<int[]>();
+        private List<int[]> lineEnds = new ArrayList<int[]>();
+        private int[] lineNumFields = new int[256];
+
+        public ChunkParser(String text, DatasetType type) {
+            this.text = text;
+            this.type = type;
+        }
+
+        public List<AnnoSentence> parse() {
+            List<AnnoSentence> sents = new ArrayList<AnnoSentence>();
+            while (true) {
+                // Tokenize the lines of the next sentence.
+                int n = 0;
+                while (pos < text.length()) {
+                    tokenizeLine();
+                    if (numFields == 0) {
+                        if (n > 0) {
+                            // End of sentence marker.
+                            break;
+                        }
+                        // Skip extra blank lines.
+                        continue;
+                    }
+                    addLine(n++);
+                }
+                if (n == 0) {
+                    return sents;
+                }
+                if (type == DatasetType.CONLL_2009) {
+                    sents.add(getCoNLL09Sentence(n));
+                } else {
+                    sents.add(getCoNLLXSentence(n));
+                }
+            }
+        }
+
+        /** Splits the line at the current position on whitespace, and advances to the next line. */
+        private void tokenizeLine() {
+            numFields = 0;
+            int i = pos;
+            int len = text.length();
+            while (i < len) {
+                char c = text.charAt(i);
+                if (c == '\n') {
+                    break;
+                } else if (c <= ' ') {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (i < len && text.charAt(i) > ' ') {
+                    i++;
+                }
+                if (numFields == starts.length) {
+                    starts = Arrays.copyOf(starts, 2 * numFields);
+                    ends = Arrays.copyOf(ends, 2 * numFields);
+                }
+                starts[numFields] = start;
+                ends[numFields] = i;
+                numFields++;
+            }
+            pos = i + 1;
+        }
+
+        /** Saves the fields of the current line as line i of the sentence. */
+        private void addLine(int i) {
+            if (i == lineStarts.size()) {
+                lineStarts.add(new int[starts.length]);
+                lineEnds.add(new int[starts.length]);
+            }
+            if (lineStarts.get(i).length < numFields) {
+                lineStarts.set(i, new int[starts.length]);
+                lineEnds.set(i, new int[starts.length]);
+            }
+            System.arraycopy(starts, 0, lineStarts.get(i), 0, numFields);
+            System.arraycopy(ends, 0, lineEnds.get(i), 0, numFields);
+            if (i == lineNumFields.length) {
+                lineNumFields = Arrays.copyOf(lineNumFields, 2 * i);
+            }
+            lineNumFields[i] = numFields;
+        }
+
+        // Columns: ID FORM LEMMA PLEMMA POS PPOS FEAT PFEAT HEAD PHEAD DEPREL PDEPREL FILLPRED PRED APREDs
+        private AnnoSentence getCoNLL09Sentence(int n) {
+            boolean gold = prm.useGoldSyntax;
+            List<String> words = new ArrayList<String>(n);
+            List<String> lemmas = new ArrayList<String>(n);
+            List<String> posTags = new ArrayList<String>(n);
+            List<List<String>> feats = new ArrayList<List<String>>(n);
+            List<String> deprels = new ArrayList<String>(n);
+            int[] parents = new int[n];
+            SrlGraph srlGraph = new SrlGraph(n);
+            // The APRED columns of each token, which are only read once all the predicates are known.
+            int numApreds = -1;
+            for (int i=0; i<n; i++) {
+                int[] s = lineStarts.get(i);
+                int[] e = lineEnds.get(i);
+                int nf = lineNumFields[i];
+                if (nf < 14) {
+                    throw new IllegalStateException("Expected at least 14 columns but found " + nf + ": " + getLine(s, e, nf));
+                }
+                if (numApreds == -1) {
+                    numApreds = nf - 14;
+                } else if (numApreds != nf - 14) {
+                    throw new IllegalStateException("Inconsistent number of APRED columns: " + getLine(s, e, nf));
+                }
+                words.add(text.substring(s[1], e[1]));
+                lemmas.add(text.substring(s[gold ? 2 : 3], e[gold ? 2 : 3]));
+                posTags.add(getField(s[gold ? 4 : 5], e[gold ? 4 : 5]));
+                feats.add(getFeats(s[gold ? 6 : 7], e[gold ? 6 : 7]));
+                parents[i] = parseInt(s[gold ? 8 : 9], e[gold ? 8 : 9]) - 1;
+                deprels.add(getField(s[gold ? 10 : 11], e[gold ? 10 : 11]));
+                // Create a predicate for each row marked with fillpred = Y.
+                if (!isUnderscore(s[12], e[12])) {
+                    srlGraph.addPred(new SrlPred(i, getField(s[13], e[13])));
+                }
+            }
+            if (numApreds != srlGraph.getNumPreds()) {
+                throw new IllegalStateException(String.format("Expected %d APRED columns but found %d: %s",
+                        srlGraph.getNumPreds(), numApreds, getLine(lineStarts.get(0), lineEnds.get(0), lineNumFields[0])));
+            }
+            // Add all the edges between each argument and its predicates.
+            List<SrlPred> preds = srlGraph.getPreds();
+            for (int j=0; j<n; j++) {
+                int[] s = lineStarts.get(j);
+                int[] e = lineEnds.get(j);
+                SrlArg arg = new SrlArg(j);
+                boolean argAdded = false;
+                for (int p=0; p<numApreds; p++) {
+                    int f = 14 + p;
+                    if (!isUnderscore(s[f], e[f])) {
+                        String role = text.substring(s[f], e[f]);
+                        if (prm.normalizeRoleNames) {
+                            role = CoNLL09Sentence.normalizeRoleName(role);
+                        }
+                        srlGraph.addEdge(new SrlEdge(preds.get(p), arg, role));
+                        if (!argAdded) {
+                            srlGraph.addArg(arg);
+                            argAdded = true;
+                        }
+                    }
+                }
+            }
+
+            AnnoSentence sent = new AnnoSentence();
+            sent.setWords(words);
+            sent.setSrlGraph(srlGraph);
+            sent.setKnownPredsFromSrlGraph();
+            sent.setLemmas(lemmas);
+            sent.setParents(parents);
+            sent.setPosTags(posTags);
+            sent.setFeats(feats);
+            sent.setDeprels(deprels);
+            return sent;
+        }
+
+        // Columns: ID FORM LEMMA CPOSTAG POSTAG FEATS HEAD DEPREL PHEAD PDEPREL
+        private AnnoSentence getCoNLLXSentence(int n) {
+            boolean usePhead = prm.useCoNLLXPhead;
+            List<String> words = new ArrayList<String>(n);
+            List<String> lemmas = new ArrayList<String>(n);
+            List<String> cposTags = new ArrayList<String>(n);
+            List<String> posTags = new ArrayList<String>(n);
+            List<List<String>> feats = new ArrayList<List<String>>(n);
+            List<String> deprels = new ArrayList<String>(n);
+            int[] parents = new int[n];
+            for (int i=0; i<n; i++) {
+                int[] s = lineStarts.get(i);
+                int[] e = lineEnds.get(i);
+                int nf = lineNumFields[i];
+                if (nf < 10) {
+                    throw new IllegalStateException("Expected at least 10 columns but found " + nf + ": " + getLine(s, e, nf));
+                }
+                words.add(text.substring(s[1], e[1]));
+                lemmas.add(getField(s[2], e[2]));
+                cposTags.add(getField(s[3], e[3]));
+                posTags.add(text.substring(s[4], e[4]));
+                feats.add(getFeats(s[5], e[5]));
+                if (usePhead) {
+                    parents[i] = (isUnderscore(s[8], e[8]) ? -1 : parseInt(s[8], e[8])) - 1;
+                    deprels.add(getField(s[9], e[9]));
+                } else {
+                    parents[i] = parseInt(s[6], e[6]) - 1;
+                    deprels.add(text.substring(s[7], e[7]));
+                }
+            }
+
+            AnnoSentence sent = new AnnoSentence();
+            sent.setWords(words);
+            sent.setLemmas(lemmas);
+            sent.setFeats(feats);
+            sent.setCposTags(cposTags);
+            sent.setPosTags(posTags);
+            sent.setParents(parents);
+            sent.setDeprels(deprels);
+            return sent;
+        }
+
+        private boolean isUnderscore(int start, int end) {
+            return end - start == 1 && text.charAt(start) == '_';
+        }
+
+        /** Gets a field, where the dummy value "_" gives null. */
+        private String getField(int start, int end) {
+            return isUnderscore(start, end) ? null : text.substring(start, end);
+        }
+
+        /** Gets the features in a field, which are separated by vertical bars. */
+        private List<String> getFeats(int start, int end) {
+            if (isUnderscore(start, end)) {
+                return Collections.emptyList();
+            }
+            List<String> feats = new ArrayList<String>();
+            int i = start;
+            while (i <= end) {
+                int j = text.indexOf('|', i);
+                if (j == -1 || j > end) {
+                    j = end;
+                }
+                feats.add(text.substring(i, j));
+                i = j + 1;
+            }
+            // Drop trailing empty features, as does Pattern.split().
+            while (feats.size() > 1 && feats.get(feats.size() - 1).isEmpty()) {
+                feats.remove(feats.size() - 1);
+            }
+            return feats;
+        }
+
+        private int parseInt(int start, int end) {
+            int i = start;
+            boolean neg = false;
+            if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                neg = text.charAt(i) == '-';
+                i++;
+            }
+            if (i == end) {
+                throw new NumberFormatException("For input string: \"" + text.substring(start, end) + "\"");
+            }
+            int val = 0;
+            for (; i < end; i++) {
+                int d = text.charAt(i) - '0';
+                if (d < 0 || d > 9) {
+                    throw new NumberFormatException("For input string: \"" + text.substring(start, end) + "\"");
+                }
+                val = 10 * val + d;
+            }
+            return neg ? -val : val;
+        }
+
+        private String getLine(int[] s, int[] e, int nf) {
+            return nf == 0 ? "" : text.substring(s[0], e[nf-1]);
+        }
+
+    }
+
+}
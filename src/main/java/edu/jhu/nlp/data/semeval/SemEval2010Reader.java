@@ -19,6 +19,7 @@ import org.slf4j.LoggerFactory;
 import edu.jhu.nlp.data.NerMention;
 import edu.jhu.nlp.data.Span;
 import edu.jhu.nlp.data.simple.CloseableIterable;
+import edu.jhu.nlp.data.simple.SymbolTable;
 import edu.jhu.nlp.eval.RelationEvaluator;
 
 /**
@@ -47,17 +48,28 @@ public class SemEval2010Reader implements CloseableIterable<SemEval2010Sentence>
     private static final Logger log = LoggerFactory.getLogger(SemEval2010Reader.class);
     private SemEval2010Sentence sentence;
     private BufferedReader reader;
+    // The strings of the sentences are interned in this table, which may be shared by the corpus.
+    private SymbolTable symbols;
 
     public SemEval2010Reader(File file) throws IOException {
         this(new FileInputStream(file));
     }
 
     public SemEval2010Reader(InputStream inputStream) throws UnsupportedEncodingException {
-        this(new BufferedReader(new InputStreamReader(inputStream, "UTF-8")));
+        this(inputStream, new SymbolTable());
+    }
+
+    public SemEval2010Reader(InputStream inputStream, SymbolTable symbols) throws UnsupportedEncodingException {
+        this(new BufferedReader(new InputStreamReader(inputStream, "UTF-8")), symbols);
     }
 
     public SemEval2010Reader(BufferedReader reader) {
+        this(reader, new SymbolTable());
+    }
+
+    public SemEval2010Reader(BufferedReader reader, SymbolTable symbols) {
         this.reader = reader;
+        this.symbols = symbols;
         next();
     }
 
@@ -160,7 +172,7 @@ public class SemEval2010Reader implements CloseableIterable<SemEval2010Sentence>
             SemEval2010Sentence curSent = sentence;
             sentence = readSentence(reader);
             if (curSent != null) {
-                curSent.intern();
+                curSent.intern(symbols);
             }
             return curSent;
         } catch (IOException e) {
@@ -8,6 +8,7 @@ import edu.jhu.nlp.data.NerMentions;
 import edu.jhu.nlp.data.RelationMention;
 import edu.jhu.nlp.data.RelationMentions;
 import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.SymbolTable;
 import edu.jhu.pacaya.util.collections.QLists;
 import edu.jhu.prim.tuple.Pair;
 
@@ -24,13 +25,13 @@ public class SemEval2010Sentence {
         
     }
     
-    public void intern() {
-        id = id.intern();
-        QLists.intern(words);
-        e1.intern();
-        e2.intern();
-        relation = relation.intern();
-        comments = comments.intern();
+    public void intern(SymbolTable symbols) {
+        id = symbols.intern(id);
+        symbols.intern(words);
+        e1.intern(symbols);
+        e2.intern(symbols);
+        relation = symbols.intern(relation);
+        comments = symbols.intern(comments);
     }
     
     public static List<SemEval2010Sentence> fromAnnoSentence(AnnoSentence sent, int i) {
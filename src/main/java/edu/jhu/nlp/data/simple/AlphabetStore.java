@@ -13,6 +13,7 @@ import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.jhu.pacaya.util.Threads;
 import edu.jhu.pacaya.util.collections.QLists;
 import edu.jhu.prim.Primitives;
 import edu.jhu.prim.Primitives.MutableInt;
@@ -21,6 +22,7 @@ import edu.jhu.prim.bimap.IntObjectBimap;
 import edu.jhu.prim.list.IntArrayList;
 import edu.jhu.prim.tuple.ComparablePair;
 import edu.jhu.prim.tuple.Pair;
+import edu.jhu.prim.util.Lambda.FnIntToVoid;
 import edu.jhu.prim.util.SafeCast;
 
 public class AlphabetStore implements Serializable {
@@ -30,9 +32,12 @@ public class AlphabetStore implements Serializable {
     private static final Logger log = LoggerFactory.getLogger(AlphabetStore.class);
     
     // Tunable parameters.
-    public final int maxPrefixLen = 5;
-    public final int maxSuffixLen = 5;
-    public final int maxClusterPrefixLen = 5;
+    private static final int MAX_PREFIX_LEN = 5;
+    private static final int MAX_SUFFIX_LEN = 5;
+    private static final int MAX_CLUSTER_PREFIX_LEN = 5;
+    public final int maxPrefixLen = MAX_PREFIX_LEN;
+    public final int maxSuffixLen = MAX_SUFFIX_LEN;
+    public final int maxClusterPrefixLen = MAX_CLUSTER_PREFIX_LEN;
     
     // Special Tokens.
     public static final int NUM_SPECIAL_TOKS = 4;
@@ -81,29 +86,36 @@ public class AlphabetStore implements Serializable {
     private int wordTopNCutoff;
     
     public AlphabetStore(Iterable<AnnoSentence> sents) {
-        // The string generators for prefixes and suffixes create all affixes up to a given max
-        // length. The string to int mapping is kept in only a single IntObjectBimap.
-        MultiStrGetter prefixGetter = new MultiStrGetter(
-                IntStream.range(0, maxPrefixLen).mapToObj(
-                        i -> new AffixGetter(i+1, true, wordGetter)));
-        MultiStrGetter suffixGetter = new MultiStrGetter(
-                IntStream.range(0, maxSuffixLen).mapToObj(
-                        i -> new AffixGetter(i+1, false, wordGetter)));
-        MultiStrGetter clusterPrefixGetter = new MultiStrGetter(
-                IntStream.range(0, maxClusterPrefixLen).mapToObj(
-                        i -> new AffixGetter(i+1, true, clusterGetter)));
-        
-        words = getAlphabet("word", wordGetter, MAX_WORD, sents);
-        lcWords = getAlphabet("lcWord", lcWordGetter, MAX_WORD, sents);
-        prefixes = getAlphabet("prefix", prefixGetter, MAX_PREFIX, sents);
-        suffixes = getAlphabet("suffix", suffixGetter, MAX_SUFFIX, sents);
-        lemmas = getAlphabet("lemma", lemmaGetter, MAX_LEMMA, sents);
-        posTags = getAlphabet("pos", posTagGetter, MAX_POS, sents);
-        cposTags = getAlphabet("cpos", cposTagGetter, MAX_CPOS, sents);
-        clusters = getAlphabet("cluster", clusterGetter, MAX_CLUSTER, sents);
-        clusterPrefixes = getAlphabet("clusterPrefix", clusterPrefixGetter, MAX_CLUSTER, sents);
-        feats = getAlphabet("feat", featGetter, MAX_FEAT, sents);
-        deprels= getAlphabet("deprel", deprelGetter, MAX_DEPREL, sents);
+        // If the sentences have a symbol table, the strings in the alphabets are interned in it so
+        // that they are shared with the corpus instead of being copies (e.g. lowercased words and
+        // affixes which equal a word).
+        this(countStrings(sents), (sents instanceof AnnoSentenceCollection) ?
+                ((AnnoSentenceCollection) sents).getSymbolTable() : null);
+    }
+    
+    /**
+     * Creates the alphabets from the counts of the strings in a corpus. The strings in the
+     * alphabets are interned in the symbol table, if it is non-null.
+     */
+    public AlphabetStore(final AlphabetCounts counts, final SymbolTable symbols) {
+        // The count cutoffs for each alphabet are independent, so they are applied in parallel.
+        @SuppressWarnings("unchecked")
+        final CountingIntObjectBimap<String>[] alphabets = new CountingIntObjectBimap[NUM_ALPHABETS];
+        Threads.forEach(0, NUM_ALPHABETS, (FnIntToVoid) a -> {
+            alphabets[a] = applyCountCutoffToGetAlphabet(alphabetNames[a], alphabetMaxIdxs[a], 
+                    counts.counters.get(a), symbols);
+        });
+        words = alphabets[0];
+        lcWords = alphabets[1];
+        prefixes = alphabets[2];
+        suffixes = alphabets[3];
+        lemmas = alphabets[4];
+        posTags = alphabets[5];
+        cposTags = alphabets[6];
+        clusters = alphabets[7];
+        clusterPrefixes = alphabets[8];
+        feats = alphabets[9];
+        deprels = alphabets[10];
         
         // Compute the minimum frequence of the top 800 most frequent words.
         wordTopNCutoff = getTopNCutoff(words, 800);
@@ -124,24 +136,14 @@ public class AlphabetStore implements Serializable {
         return cutoff;
     }
 
-    /**
-     * Gets a mapping from ints to strings. Types occurring fewer than K times are re-mapped to UNK,
-     * where K is the minimum value such that the maximum index of the final mapping is
-     * less-than-or-equal to maxIdx.
-     */
-    private static CountingIntObjectBimap<String> getAlphabet(String name, StrGetter sg, int maxIdx, Iterable<AnnoSentence> sents) {
-        CountingIntObjectBimap<String> counter = countStrings(sg, sents);
-        CountingIntObjectBimap<String> alphabet = applyCountCutoffToGetAlphabet(name, maxIdx, counter);
-        return alphabet;
-    }
-
     /**
      * Transforms a mapping from ints to strings (with counts!) to ensure it does not exceed a
      * maximum size. Types occurring fewer than K times are re-mapped to UNK, where K is the minimum
-     * value such that the maximum index of the final mapping is less-than-or-equal to maxIdx.
+     * value such that the maximum index of the final mapping is less-than-or-equal to maxIdx. The
+     * strings in the final mapping are interned in the symbol table, if it is non-null.
      */
     protected static CountingIntObjectBimap<String> applyCountCutoffToGetAlphabet(String name, int maxIdx,
-            CountingIntObjectBimap<String> counter) {
+            CountingIntObjectBimap<String> counter, SymbolTable symbols) {
         // Apply count-cutoffs, increasing K (the cutoff) until the total number of types is <= maxIdx.
         CountingIntObjectBimap<String> alphabet;
         for (int cutoff = 1; ; cutoff++) {
@@ -154,7 +156,7 @@ public class AlphabetStore implements Serializable {
                 String str = counter.lookupObject(idx);
                 int count = counter.lookupObjectCount(idx);
                 if (count >= cutoff) {
-                    int newIdx = alphabet.lookupIndex(str);
+                    int newIdx = alphabet.lookupIndex(symbols == null ? str : symbols.intern(str));
                     alphabet.setObjectCount(newIdx, count);
                 } else if (idx >= NUM_SPECIAL_TOKS) {
                     count += alphabet.lookupObjectCount(TOK_UNK_INT);
@@ -170,18 +172,95 @@ public class AlphabetStore implements Serializable {
         return alphabet;
     }
 
-    /** Gets a mapping from ints to strings, with counts of the number of times each one was observed. */
-    private static CountingIntObjectBimap<String> countStrings(StrGetter sg, Iterable<AnnoSentence> sents) {
-        CountingIntObjectBimap<String> counter = new CountingIntObjectBimap<>();
+    /**
+     * Counts the strings for all the alphabets in a single pass over the sentences. Consecutive
+     * chunks of the sentences are counted in parallel and their counts are merged in order.
+     */
+    public static AlphabetCounts countStrings(Iterable<AnnoSentence> sents) {
+        final List<AnnoSentence> list = asList(sents);
+        final int numChunks = Math.max(1, Math.min(Threads.numThreads, list.size()));
+        final AlphabetCounts[] chunkCounts = new AlphabetCounts[numChunks];
+        Threads.forEach(0, numChunks, (FnIntToVoid) c -> {
+            AlphabetCounts counts = new AlphabetCounts();
+            int end = getChunkEnd(list.size(), numChunks, c);
+            for (int i=getChunkStart(list.size(), numChunks, c); i<end; i++) {
+                counts.add(list.get(i));
+            }
+            chunkCounts[c] = counts;
+        });
+        for (int c=1; c<numChunks; c++) {
+            chunkCounts[0].merge(chunkCounts[c]);
+        }
+        return chunkCounts[0];
+    }
+
+    /** Gets the sentences as a list, copying them only if they are not already in one. */
+    public static List<AnnoSentence> asList(Iterable<AnnoSentence> sents) {
+        if (sents instanceof List) {
+            return (List<AnnoSentence>) sents;
+        }
+        List<AnnoSentence> list = new ArrayList<>();
         for (AnnoSentence sent : sents) {
-            List<String> strs = sg.getStrs(sent);
-            if (strs != null) {
-                for (String str : strs) {
-                    counter.lookupIndex(str);
+            list.add(sent);
+        }
+        return list;
+    }
+
+    /** Gets the start (inclusive) of the c'th of numChunks equal sized chunks of n items. */
+    public static int getChunkStart(int n, int numChunks, int c) {
+        return (int) ((long) n * c / numChunks);
+    }
+
+    /** Gets the end (exclusive) of the c'th of numChunks equal sized chunks of n items. */
+    public static int getChunkEnd(int n, int numChunks, int c) {
+        return getChunkStart(n, numChunks, c+1);
+    }
+
+    /**
+     * Counts of the strings for every alphabet in the store. The counts for disjoint sets of
+     * sentences can be collected separately (e.g. in parallel) and then merged.
+     */
+    public static class AlphabetCounts {
+        
+        private final List<CountingIntObjectBimap<String>> counters;
+        
+        public AlphabetCounts() {
+            counters = new ArrayList<>(NUM_ALPHABETS);
+            for (int a=0; a<NUM_ALPHABETS; a++) {
+                counters.add(new CountingIntObjectBimap<String>());
+            }
+        }
+        
+        /** Counts the strings for every alphabet in the sentence. */
+        public void add(AnnoSentence sent) {
+            for (int a=0; a<NUM_ALPHABETS; a++) {
+                List<String> strs = alphabetGetters[a].getStrs(sent);
+                if (strs != null) {
+                    CountingIntObjectBimap<String> counter = counters.get(a);
+                    for (String str : strs) {
+                        counter.lookupIndex(str);
+                    }
                 }
             }
         }
-        return counter;
+        
+        /**
+         * Adds the other counts to these. The strings not yet seen by these counts are added in the
+         * order in which the other counts first saw them, so merging the counts of consecutive
+         * chunks of a corpus in order gives the same indices as counting the whole corpus.
+         */
+        public void merge(AlphabetCounts other) {
+            for (int a=0; a<NUM_ALPHABETS; a++) {
+                CountingIntObjectBimap<String> counter = counters.get(a);
+                CountingIntObjectBimap<String> otherCounter = other.counters.get(a);
+                for (int idx=0; idx<otherCounter.size(); idx++) {
+                    // The lookup adds one to the count.
+                    int newIdx = counter.lookupIndex(otherCounter.lookupObject(idx));
+                    counter.setObjectCount(newIdx, counter.lookupObjectCount(newIdx) - 1 + otherCounter.lookupObjectCount(idx));
+                }
+            }
+        }
+        
     }
 
     /**
@@ -332,31 +411,33 @@ public class AlphabetStore implements Serializable {
         }
     }
     
-    private StrGetter wordGetter = new StrGetter() {
+    // Serialized models contain these getters by their class names (AlphabetStore$1 through
+    // AlphabetStore$8), so they must remain the first anonymous classes in this file, in this order.
+    private static final StrGetter wordGetter = new StrGetter() {
         private static final long serialVersionUID = 1L;
         public List<String> getStrs(AnnoSentence sent) { return sent.getWords(); }
     };
-    private StrGetter lcWordGetter = new StrGetter() {
+    private static final StrGetter lcWordGetter = new StrGetter() {
         private static final long serialVersionUID = 1L;
         public List<String> getStrs(AnnoSentence sent) { return sent.getLowerCaseWords(); }
     };
-    private StrGetter lemmaGetter = new StrGetter() {
+    private static final StrGetter lemmaGetter = new StrGetter() {
         private static final long serialVersionUID = 1L;
         public List<String> getStrs(AnnoSentence sent) { return sent.getLemmas(); }
     };
-    private StrGetter posTagGetter = new StrGetter() {
+    private static final StrGetter posTagGetter = new StrGetter() {
         private static final long serialVersionUID = 1L;
         public List<String> getStrs(AnnoSentence sent) { return sent.getPosTags(); }
     };
-    private StrGetter cposTagGetter = new StrGetter() { 
+    private static final StrGetter cposTagGetter = new StrGetter() { 
         private static final long serialVersionUID = 1L;
         public List<String> getStrs(AnnoSentence sent) { return sent.getCposTags(); }
     };
-    private StrGetter clusterGetter = new StrGetter() {
+    private static final StrGetter clusterGetter = new StrGetter() {
         private static final long serialVersionUID = 1L;
         public List<String> getStrs(AnnoSentence sent) { return sent.getClusters(); }
     };
-    private StrGetter featGetter = new StrGetter() {
+    private static final StrGetter featGetter = new StrGetter() {
         private static final long serialVersionUID = 1L;
         public List<String> getStrs(AnnoSentence sent) {
             if (sent.getFeats() == null) { return null; }
@@ -369,11 +450,33 @@ public class AlphabetStore implements Serializable {
             return strs;
         }
     };
-    private StrGetter deprelGetter = new StrGetter() {
+    private static final StrGetter deprelGetter = new StrGetter() {
         private static final long serialVersionUID = 1L;
         public List<String> getStrs(AnnoSentence sent) { return sent.getDeprels(); }
     };
 
+    // The string generators for prefixes and suffixes create all affixes up to a given max
+    // length. The string to int mapping is kept in only a single IntObjectBimap.
+    private static final StrGetter prefixGetter = new MultiStrGetter(
+            IntStream.range(0, MAX_PREFIX_LEN).mapToObj(
+                    i -> new AffixGetter(i+1, true, wordGetter)));
+    private static final StrGetter suffixGetter = new MultiStrGetter(
+            IntStream.range(0, MAX_SUFFIX_LEN).mapToObj(
+                    i -> new AffixGetter(i+1, false, wordGetter)));
+    private static final StrGetter clusterPrefixGetter = new MultiStrGetter(
+            IntStream.range(0, MAX_CLUSTER_PREFIX_LEN).mapToObj(
+                    i -> new AffixGetter(i+1, true, clusterGetter)));
+    
+    // The name, string generator, and maximum index of each alphabet, in the order of the fields.
+    private static final String[] alphabetNames = new String[] { "word", "lcWord", "prefix",
+            "suffix", "lemma", "pos", "cpos", "cluster", "clusterPrefix", "feat", "deprel" };
+    private static final StrGetter[] alphabetGetters = new StrGetter[] { wordGetter, lcWordGetter,
+            prefixGetter, suffixGetter, lemmaGetter, posTagGetter, cposTagGetter, clusterGetter,
+            clusterPrefixGetter, featGetter, deprelGetter };
+    private static final int[] alphabetMaxIdxs = new int[] { MAX_WORD, MAX_WORD, MAX_PREFIX,
+            MAX_SUFFIX, MAX_LEMMA, MAX_POS, MAX_CPOS, MAX_CLUSTER, MAX_CLUSTER, MAX_FEAT, MAX_DEPREL };
+    private static final int NUM_ALPHABETS = alphabetNames.length;
+
     public int getWordTopNCutoff() {
         return wordTopNCutoff;
     }
@@ -11,6 +11,7 @@ import edu.jhu.nlp.data.NerMention;
 import edu.jhu.nlp.data.NerMentions;
 import edu.jhu.nlp.data.RelationMentions;
 import edu.jhu.nlp.data.Span;
+import edu.jhu.nlp.data.SrlArgMask;
 import edu.jhu.nlp.data.conll.SrlGraph;
 import edu.jhu.nlp.features.TemplateLanguage.AT;
 import edu.jhu.nlp.tag.StrictPosTagAnnotator.StrictPosTag;
@@ -59,6 +60,8 @@ public class AnnoSentence {
     private IntHashSet knownPreds;
     // TODO: This should be broken into semantic-roles and word senses.
     private SrlGraph srlGraph;
+    /** The candidate (predicate, argument) pairs for semantic roles. */
+    private SrlArgMask srlArgMask;
     /** Constituency parse. */
     private NaryTree naryTree;
     // The standard set of named entities.
@@ -99,6 +102,7 @@ public class AnnoSentence {
         newSent.parents = IntArrays.copyOf(this.parents);
         newSent.depEdgeMask = (this.depEdgeMask == null) ? null : new DepEdgeMask(this.depEdgeMask);
         newSent.knownPreds = (this.knownPreds == null) ? null : new IntHashSet(this.knownPreds);
+        newSent.srlArgMask = (this.srlArgMask == null) ? null : new SrlArgMask(this.srlArgMask);
         newSent.namedEntities = new NerMentions(this.namedEntities);
         newSent.nePairs = QLists.copyOf(nePairs);
         newSent.relLabels = QLists.copyOf(relLabels);
@@ -139,6 +143,7 @@ public class AnnoSentence {
         case DEP_EDGE_MASK: dest.depEdgeMask = src.depEdgeMask; break;
         case SRL_PRED_IDX: dest.knownPreds = src.knownPreds; break;
         case SRL: dest.srlGraph = src.srlGraph; break;
+        case SRL_ARG_MASK: dest.srlArgMask = src.srlArgMask; break;
         case NARY_TREE: dest.naryTree = src.naryTree; break;
         case NER: dest.namedEntities = src.namedEntities; break;
         case NE_PAIRS: dest.nePairs = src.nePairs; break;
@@ -172,6 +177,7 @@ public class AnnoSentence {
         case DEP_EDGE_MASK: this.depEdgeMask = null; break;
         case SRL_PRED_IDX: this.knownPreds = null; break;
         case SRL: this.srlGraph = null; break;
+        case SRL_ARG_MASK: this.srlArgMask = null; break;
         case NARY_TREE: this.naryTree = null; break;
         case NER: this.namedEntities = null; break;
         case NE_PAIRS: this.nePairs = null; break;
@@ -199,6 +205,7 @@ public class AnnoSentence {
         case DEP_EDGE_MASK: return this.depEdgeMask != null;
         case SRL_PRED_IDX: return this.knownPreds != null;
         case SRL: return this.srlGraph != null;
+        case SRL_ARG_MASK: return this.srlArgMask != null;
         case NARY_TREE: return this.naryTree != null;
         case NER: return this.namedEntities != null;
         case NE_PAIRS: return this.nePairs != null;
@@ -208,32 +215,31 @@ public class AnnoSentence {
         }
     }
     
-    public void intern() {
-        QLists.intern(words);
-        QLists.intern(prefixes);
-        QLists.intern(lemmas);
-        QLists.intern(posTags);
-        QLists.intern(cposTags);
+    /** Replaces the strings of this sentence with their canonical instances from a corpus symbol table. */
+    public void intern(SymbolTable symbols) {
+        symbols.intern(words);
+        symbols.intern(prefixes);
+        symbols.intern(lemmas);
+        symbols.intern(posTags);
+        symbols.intern(cposTags);
         // Not needed since these are enums. Lists.intern(strictPosTags);
-        QLists.intern(clusters);
+        symbols.intern(clusters);
         if (feats != null) {
             for (int i=0; i<feats.size(); i++) {
-                QLists.intern(feats.get(i));
+                symbols.intern(feats.get(i));
             }
         }
-        QLists.intern(chunks);
-        QLists.intern(neTags);
-        QLists.intern(deprels);        
-        if (naryTree != null) {
-            naryTree.intern();
-        }
+        symbols.intern(chunks);
+        symbols.intern(neTags);
+        symbols.intern(deprels);        
+        symbols.intern(naryTree);
         if (namedEntities != null) {
-            namedEntities.intern();
+            namedEntities.intern(symbols);
         }
         // TODO: Lists.intern(nePairs);
-        QLists.intern(relLabels);
+        symbols.intern(relLabels);
         if (relations != null) {
-            relations.intern();
+            relations.intern(symbols);
         }
         // TODO: this.srlGraph.intern();
     }
@@ -262,6 +268,7 @@ public class AnnoSentence {
         appendIfNotNull(sb, "depEdgeMask", depEdgeMask);
         appendIfNotNull(sb, "srlGraph", srlGraph);
         appendIfNotNull(sb, "knownPreds", knownPreds);
+        appendIfNotNull(sb, "srlArgMask", srlArgMask);
         appendIfNotNull(sb, "naryTree", naryTree);
         appendIfNotNull(sb, "namedEntities", namedEntities);
         if (namedEntities != null) { appendIfNotNull(sb, "namedEntities (context)", namedEntities.toString(words)); }
@@ -665,6 +672,14 @@ public class AnnoSentence {
         this.depEdgeMask = depEdgeMask;
     }
 
+    public SrlArgMask getSrlArgMask() {
+        return srlArgMask;
+    }
+
+    public void setSrlArgMask(SrlArgMask srlArgMask) {
+        this.srlArgMask = srlArgMask;
+    }
+
     public IntHashSet getKnownPreds() {
         return knownPreds;
     }
@@ -0,0 +1,400 @@
+package edu.jhu.nlp.data.simple;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.jhu.nlp.data.DepEdgeMask;
+import edu.jhu.nlp.data.NerMention;
+import edu.jhu.nlp.data.NerMentions;
+import edu.jhu.nlp.data.RelationMention;
+import edu.jhu.nlp.data.RelationMentions;
+import edu.jhu.nlp.data.Span;
+import edu.jhu.nlp.data.SrlArgMask;
+import edu.jhu.nlp.data.conll.SrlGraph;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlArg;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlEdge;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlPred;
+import edu.jhu.nlp.tag.StrictPosTagAnnotator.StrictPosTag;
+import edu.jhu.pacaya.parse.cky.data.NaryTree;
+import edu.jhu.prim.list.IntArrayList;
+import edu.jhu.prim.set.IntHashSet;
+import edu.jhu.prim.tuple.Pair;
+
+/**
+ * Random access reader of the binary columnar format written by {@link AnnoSentenceBinaryWriter}.
+ *
+ * Each annotation layer is stored as one or more columns of ints, which are dictionary-encoded
+ * against a string table shared by the whole corpus. The columns are memory mapped, so opening a
+ * corpus only reads the string table, and a sentence is decoded from the columns each time it is
+ * requested by {@link #get(int)}. The strings are interned in the corpus {@link SymbolTable}. Every
+ * annotation layer is stored, but not the source sentences.
+ *
+ * The file consists of a header (magic number, version, number of sentences, number of columns,
+ * offset of the string table), a directory giving the offset and number of ints of each column,
+ * the columns, and the string table (number of strings, byte offsets, UTF-8 bytes).
+ *
+ * @author mgormley
+ */
+public class AnnoSentenceBinaryReader implements CloseableIterable<AnnoSentence> {
+
+    static final int MAGIC = 0x414e4e4f;
+    static final int VERSION = 2;
+
+    /** The annotation layers, whose presence is recorded for each sentence as a bitmask. */
+    enum Layer {
+        WORDS, PREFIXES, LEMMAS, POS_TAGS, CPOS_TAGS, STRICT_POS_TAGS, CLUSTERS, CHUNKS, NE_TAGS,
+        DEPRELS, PARENTS, EMBED_IDS, FEATS, SRL, KNOWN_PREDS, NAMED_ENTITIES, NE_PAIRS, REL_LABELS,
+        RELATIONS, DEP_EDGE_MASK, SRL_ARG_MASK, NARY_TREE;
+
+        int bit() {
+            return 1 << ordinal();
+        }
+    }
+
+    /**
+     * The columns. The start columns give offsets into other columns. They have one more entry
+     * than the table they index, the first of which is zero.
+     */
+    enum Col {
+        // Indexed by sentence.
+        SENT_LAYERS, SENT_TOK_START(true), SENT_MENT_START(true), SENT_NER_START(true),
+        SENT_PAIR_START(true), SENT_REL_LABEL_START(true), SENT_REL_START(true), SENT_PRED_START(true),
+        SENT_EDGE_START(true), SENT_KNOWN_PRED_START(true), SENT_NARY_TREE,
+        // Bit-packed masks, with the bits of each sentence starting at a new int.
+        SENT_DEP_MASK_START(true), DEP_MASK, SENT_SRL_MASK_START(true), SRL_MASK,
+        // Indexed by token.
+        WORD, PREFIX, LEMMA, POS, CPOS, STRICT_POS, CLUSTER, CHUNK, NE_TAG, DEPREL, PARENT, EMBED_ID,
+        TOK_FEAT_START(true), FEAT,
+        // Semantic role labeling.
+        PRED_POS, PRED_LABEL, EDGE_PRED, EDGE_ARG, EDGE_LABEL, KNOWN_PRED,
+        // Mentions, indexed within each sentence.
+        MENT_START, MENT_END, MENT_TYPE, MENT_SUBTYPE, MENT_PHRASE_TYPE, MENT_HEAD, MENT_ID,
+        // Named entities, pairs, and relations.
+        NER_MENT, PAIR_MENT1, PAIR_MENT2, REL_LABEL, REL_TYPE, REL_SUBTYPE, REL_TRIGGER_START,
+        REL_TRIGGER_END, REL_ARG_START(true), ARG_ROLE, ARG_MENT;
+
+        private final boolean isStart;
+
+        private Col() {
+            this(false);
+        }
+
+        private Col(boolean isStart) {
+            this.isStart = isStart;
+        }
+
+        boolean isStart() {
+            return isStart;
+        }
+    }
+
+    private RandomAccessFile raf;
+    private int numSents;
+    private IntBuffer[] cols;
+    private String[] strs;
+    private SymbolTable symbols;
+
+    /** Opens a corpus whose strings are interned in a new symbol table. */
+    public AnnoSentenceBinaryReader(File in) throws IOException {
+        this(in, new SymbolTable());
+    }
+
+    /**
+     * Opens a corpus.
+     *
+     * @param in The file.
+     * @param symbols The symbol table of the corpus, in which the strings are interned.
+     */
+    public AnnoSentenceBinaryReader(File in, SymbolTable symbols) throws IOException {
+        this.symbols = symbols;
+        raf = new RandomAccessFile(in, "r");
+        FileChannel ch = raf.getChannel();
+        Col[] values = Col.values();
+        ByteBuffer header = ch.map(MapMode.READ_ONLY, 0, Math.min(ch.size(), getHeaderBytes()));
+        if (header.limit() < getHeaderBytes() || header.getInt() != MAGIC) {
+            raf.close();
+            throw new IOException("Not a binary corpus file: " + in);
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            raf.close();
+            throw new IOException("Unsupported binary corpus version: " + version);
+        }
+        numSents = header.getInt();
+        int numCols = header.getInt();
+        if (numCols != values.length) {
+            raf.close();
+            throw new IOException("Unexpected number of columns: " + numCols);
+        }
+        long strOffset = header.getLong();
+        cols = new IntBuffer[values.length];
+        for (int c = 0; c < values.length; c++) {
+            long offset = header.getLong();
+            long numInts = header.getLong();
+            if (numInts * 4 > Integer.MAX_VALUE) {
+                raf.close();
+                throw new IOException("Column too large to map: " + values[c]);
+            }
+            cols[c] = ch.map(MapMode.READ_ONLY, offset, numInts * 4).asIntBuffer();
+        }
+        // Read the string table, interning each string once in the corpus symbol table.
+        MappedByteBuffer table = ch.map(MapMode.READ_ONLY, strOffset, ch.size() - strOffset);
+        int numStrs = table.getInt();
+        int[] offsets = new int[numStrs + 1];
+        for (int i = 0; i <= numStrs; i++) {
+            offsets[i] = table.getInt();
+        }
+        byte[] bytes = new byte[offsets[numStrs]];
+        table.get(bytes);
+        strs = new String[numStrs];
+        for (int i = 0; i < numStrs; i++) {
+            strs[i] = symbols.intern(new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8));
+        }
+    }
+
+    static long getHeaderBytes() {
+        return 4 * 4 + 8 + Col.values().length * 16L;
+    }
+
+    /** Gets the number of sentences. */
+    public int size() {
+        return numSents;
+    }
+
+    /** Gets the symbol table in which the strings are interned. */
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /** Gets the number of tokens in the i'th sentence, without decoding it. */
+    public int getLength(int i) {
+        checkIndex(i);
+        return get(Col.SENT_TOK_START, i + 1) - get(Col.SENT_TOK_START, i);
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= numSents) {
+            throw new IndexOutOfBoundsException("Sentence index: " + i);
+        }
+    }
+
+    /** Decodes the i'th sentence. This method is thread-safe. */
+    public AnnoSentence get(int i) {
+        checkIndex(i);
+        int layers = get(Col.SENT_LAYERS, i);
+        int tokStart = get(Col.SENT_TOK_START, i);
+        int n = get(Col.SENT_TOK_START, i + 1) - tokStart;
+        AnnoSentence sent = new AnnoSentence();
+        if (has(layers, Layer.WORDS)) { sent.setWords(getStrings(Col.WORD, tokStart, n)); }
+        if (has(layers, Layer.PREFIXES)) { sent.setPrefixes(getStrings(Col.PREFIX, tokStart, n)); }
+        if (has(layers, Layer.LEMMAS)) { sent.setLemmas(getStrings(Col.LEMMA, tokStart, n)); }
+        if (has(layers, Layer.POS_TAGS)) { sent.setPosTags(getStrings(Col.POS, tokStart, n)); }
+        if (has(layers, Layer.CPOS_TAGS)) { sent.setCposTags(getStrings(Col.CPOS, tokStart, n)); }
+        if (has(layers, Layer.CLUSTERS)) { sent.setClusters(getStrings(Col.CLUSTER, tokStart, n)); }
+        if (has(layers, Layer.CHUNKS)) { sent.setChunks(getStrings(Col.CHUNK, tokStart, n)); }
+        if (has(layers, Layer.NE_TAGS)) { sent.setNeTags(getStrings(Col.NE_TAG, tokStart, n)); }
+        if (has(layers, Layer.DEPRELS)) { sent.setDeprels(getStrings(Col.DEPREL, tokStart, n)); }
+        if (has(layers, Layer.STRICT_POS_TAGS)) {
+            StrictPosTag[] tags = StrictPosTag.values();
+            List<StrictPosTag> strictPosTags = new ArrayList<>(n);
+            for (int j = 0; j < n; j++) {
+                int t = get(Col.STRICT_POS, tokStart + j);
+                strictPosTags.add(t == -1 ? null : tags[t]);
+            }
+            sent.setStrictPosTags(strictPosTags);
+        }
+        if (has(layers, Layer.PARENTS)) {
+            int[] parents = new int[n];
+            for (int j = 0; j < n; j++) {
+                parents[j] = get(Col.PARENT, tokStart + j);
+            }
+            sent.setParents(parents);
+        }
+        if (has(layers, Layer.EMBED_IDS)) {
+            IntArrayList embedIds = new IntArrayList();
+            for (int j = 0; j < n; j++) {
+                embedIds.add(get(Col.EMBED_ID, tokStart + j));
+            }
+            sent.setEmbedIds(embedIds);
+        }
+        if (has(layers, Layer.DEP_EDGE_MASK)) {
+            DepEdgeMask mask = new DepEdgeMask(n, false);
+            int start = get(Col.SENT_DEP_MASK_START, i);
+            int b = 0;
+            for (int p = -1; p < n; p++) {
+                for (int c = 0; c < n; c++) {
+                    if (p == c) { continue; }
+                    if (getBit(Col.DEP_MASK, start, b++)) {
+                        mask.setIsKept(p, c, true);
+                    }
+                }
+            }
+            sent.setDepEdgeMask(mask);
+        }
+        if (has(layers, Layer.NARY_TREE)) {
+            sent.setNaryTree(symbols.intern(NaryTree.fromTreeInPtbFormat(getString(Col.SENT_NARY_TREE, i))));
+        }
+        if (has(layers, Layer.FEATS)) {
+            List<List<String>> feats = new ArrayList<>(n);
+            for (int j = 0; j < n; j++) {
+                int start = get(Col.TOK_FEAT_START, tokStart + j);
+                int end = get(Col.TOK_FEAT_START, tokStart + j + 1);
+                feats.add(getStrings(Col.FEAT, start, end - start));
+            }
+            sent.setFeats(feats);
+        }
+
+        // Semantic role labeling.
+        if (has(layers, Layer.SRL)) {
+            SrlGraph srl = new SrlGraph(n);
+            for (int p = get(Col.SENT_PRED_START, i); p < get(Col.SENT_PRED_START, i + 1); p++) {
+                srl.addPred(new SrlPred(get(Col.PRED_POS, p), getString(Col.PRED_LABEL, p)));
+            }
+            for (int e = get(Col.SENT_EDGE_START, i); e < get(Col.SENT_EDGE_START, i + 1); e++) {
+                SrlPred pred = srl.getPredAt(get(Col.EDGE_PRED, e));
+                int argPos = get(Col.EDGE_ARG, e);
+                SrlArg arg = srl.getArgAt(argPos);
+                if (arg == null) {
+                    arg = new SrlArg(argPos);
+                }
+                srl.addEdge(new SrlEdge(pred, arg, getString(Col.EDGE_LABEL, e)));
+            }
+            sent.setSrlGraph(srl);
+        }
+        if (has(layers, Layer.SRL_ARG_MASK)) {
+            SrlArgMask mask = new SrlArgMask(n, false);
+            int start = get(Col.SENT_SRL_MASK_START, i);
+            int b = 0;
+            for (int p = 0; p < n; p++) {
+                for (int a = 0; a < n; a++) {
+                    if (getBit(Col.SRL_MASK, start, b++)) {
+                        mask.setIsKept(p, a, true);
+                    }
+                }
+            }
+            sent.setSrlArgMask(mask);
+        }
+        if (has(layers, Layer.KNOWN_PREDS)) {
+            IntHashSet knownPreds = new IntHashSet();
+            for (int k = get(Col.SENT_KNOWN_PRED_START, i); k < get(Col.SENT_KNOWN_PRED_START, i + 1); k++) {
+                knownPreds.add(get(Col.KNOWN_PRED, k));
+            }
+            sent.setKnownPreds(knownPreds);
+        }
+
+        // The mention table, shared by the named entities, pairs and relations.
+        int mentStart = get(Col.SENT_MENT_START, i);
+        int numMents = get(Col.SENT_MENT_START, i + 1) - mentStart;
+        NerMention[] ments = new NerMention[numMents];
+        for (int m = 0; m < numMents; m++) {
+            int idx = mentStart + m;
+            ments[m] = new NerMention(new Span(get(Col.MENT_START, idx), get(Col.MENT_END, idx)),
+                    getString(Col.MENT_TYPE, idx), getString(Col.MENT_SUBTYPE, idx),
+                    getString(Col.MENT_PHRASE_TYPE, idx), get(Col.MENT_HEAD, idx), getString(Col.MENT_ID, idx));
+        }
+        if (has(layers, Layer.NAMED_ENTITIES)) {
+            List<NerMention> nes = new ArrayList<>();
+            for (int k = get(Col.SENT_NER_START, i); k < get(Col.SENT_NER_START, i + 1); k++) {
+                nes.add(ments[get(Col.NER_MENT, k)]);
+            }
+            sent.setNamedEntities(new NerMentions(n, nes));
+        }
+        if (has(layers, Layer.NE_PAIRS)) {
+            List<Pair<NerMention, NerMention>> pairs = new ArrayList<>();
+            for (int k = get(Col.SENT_PAIR_START, i); k < get(Col.SENT_PAIR_START, i + 1); k++) {
+                pairs.add(new Pair<NerMention, NerMention>(ments[get(Col.PAIR_MENT1, k)], ments[get(Col.PAIR_MENT2, k)]));
+            }
+            sent.setNePairs(pairs);
+        }
+        if (has(layers, Layer.REL_LABELS)) {
+            int start = get(Col.SENT_REL_LABEL_START, i);
+            sent.setRelLabels(getStrings(Col.REL_LABEL, start, get(Col.SENT_REL_LABEL_START, i + 1) - start));
+        }
+        if (has(layers, Layer.RELATIONS)) {
+            RelationMentions rels = new RelationMentions();
+            for (int r = get(Col.SENT_REL_START, i); r < get(Col.SENT_REL_START, i + 1); r++) {
+                List<Pair<String, NerMention>> args = new ArrayList<>();
+                for (int a = get(Col.REL_ARG_START, r); a < get(Col.REL_ARG_START, r + 1); a++) {
+                    args.add(new Pair<String, NerMention>(getString(Col.ARG_ROLE, a), ments[get(Col.ARG_MENT, a)]));
+                }
+                int trigStart = get(Col.REL_TRIGGER_START, r);
+                Span trigger = (trigStart == -1) ? null : new Span(trigStart, get(Col.REL_TRIGGER_END, r));
+                rels.add(new RelationMention(getString(Col.REL_TYPE, r), getString(Col.REL_SUBTYPE, r), args, trigger));
+            }
+            sent.setRelations(rels);
+        }
+        return sent;
+    }
+
+    private static boolean has(int layers, Layer layer) {
+        return (layers & layer.bit()) != 0;
+    }
+
+    private int get(Col c, int idx) {
+        return cols[c.ordinal()].get(idx);
+    }
+
+    /** Gets the b'th bit of a bit-packed column, whose bits start at the given int. */
+    private boolean getBit(Col c, int start, int b) {
+        return ((get(c, start + (b >>> 5)) >>> (b & 31)) & 1) != 0;
+    }
+
+    private String getString(Col c, int idx) {
+        int id = get(c, idx);
+        return (id == -1) ? null : strs[id];
+    }
+
+    private List<String> getStrings(Col c, int start, int len) {
+        List<String> list = new ArrayList<>(len);
+        for (int j = 0; j < len; j++) {
+            list.add(getString(c, start + j));
+        }
+        return list;
+    }
+
+    /** Iterates over the sentences in order. */
+    @Override
+    public Iterator<AnnoSentence> iterator() {
+        return new Iterator<AnnoSentence>() {
+
+            private int cur = 0;
+
+            @Override
+            public boolean hasNext() {
+                return cur < numSents;
+            }
+
+            @Override
+            public AnnoSentence next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(cur++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapped buffers remain valid after the channel is closed.
+        raf.close();
+    }
+
+}
@@ -0,0 +1,404 @@
+package edu.jhu.nlp.data.simple;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.nlp.data.DepEdgeMask;
+import edu.jhu.nlp.data.NerMention;
+import edu.jhu.nlp.data.RelationMention;
+import edu.jhu.nlp.data.SrlArgMask;
+import edu.jhu.nlp.data.conll.SrlGraph;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlEdge;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlPred;
+import edu.jhu.nlp.data.simple.AnnoSentenceBinaryReader.Col;
+import edu.jhu.nlp.data.simple.AnnoSentenceBinaryReader.Layer;
+import edu.jhu.nlp.tag.StrictPosTagAnnotator.StrictPosTag;
+import edu.jhu.prim.tuple.Pair;
+
+/**
+ * Writes sentences in the binary columnar format read by {@link AnnoSentenceBinaryReader}.
+ *
+ * Each column is buffered in a temporary file while the sentences are written, and the columns
+ * are concatenated into the output file, followed by the string table, when this writer is closed.
+ * Every annotation layer is written, but not the source sentences (e.g. a CoNLL09Sentence), which
+ * have no binary representation. A warning is logged if any sentence has one.
+ *
+ * @author mgormley
+ */
+public class AnnoSentenceBinaryWriter implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(AnnoSentenceBinaryWriter.class);
+
+    private File out;
+    private File tmpDir;
+    private File[] colFiles;
+    private DataOutputStream[] cols;
+    private long[] colSizes;
+    private int numSents = 0;
+    // Global counts used for the start offset columns.
+    private int numToks = 0;
+    private int numFeats = 0;
+    private int numMents = 0;
+    private int numNers = 0;
+    private int numPairs = 0;
+    private int numRelLabels = 0;
+    private int numRels = 0;
+    private int numRelArgs = 0;
+    private int numPreds = 0;
+    private int numEdges = 0;
+    private int numKnownPreds = 0;
+    private int numDepMaskInts = 0;
+    private int numSrlMaskInts = 0;
+    // The bits which have not yet been written to a bit-packed column.
+    private int bitWord = 0;
+    private int numBits = 0;
+    private boolean warnedSourceSent = false;
+    // The string table.
+    private Map<String, Integer> strIds = new HashMap<>();
+    private List<String> strs = new ArrayList<>();
+
+    public AnnoSentenceBinaryWriter(File out) throws IOException {
+        this.out = out;
+        this.tmpDir = File.createTempFile("annobin", "");
+        tmpDir.delete();
+        tmpDir.mkdirs();
+        Col[] values = Col.values();
+        colFiles = new File[values.length];
+        cols = new DataOutputStream[values.length];
+        colSizes = new long[values.length];
+        for (Col c : values) {
+            colFiles[c.ordinal()] = new File(tmpDir, c.name());
+            cols[c.ordinal()] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(colFiles[c.ordinal()])));
+        }
+        // Each of the start offset columns begins with zero.
+        for (Col c : values) {
+            if (c.isStart()) {
+                put(c, 0);
+            }
+        }
+    }
+
+    public void write(AnnoSentenceCollection sents) throws IOException {
+        for (AnnoSentence sent : sents) {
+            write(sent);
+        }
+    }
+
+    public void write(AnnoSentence sent) throws IOException {
+        if (sent.getSourceSent() != null && !warnedSourceSent) {
+            log.warn("Source sentences are not written in the binary format.");
+            warnedSourceSent = true;
+        }
+        int n = sent.size();
+        int layers = 0;
+        layers |= putTokenStrings(Layer.WORDS, Col.WORD, sent.getWords(), n);
+        layers |= putTokenStrings(Layer.PREFIXES, Col.PREFIX, sent.getPrefixes(), n);
+        layers |= putTokenStrings(Layer.LEMMAS, Col.LEMMA, sent.getLemmas(), n);
+        layers |= putTokenStrings(Layer.POS_TAGS, Col.POS, sent.getPosTags(), n);
+        layers |= putTokenStrings(Layer.CPOS_TAGS, Col.CPOS, sent.getCposTags(), n);
+        layers |= putTokenStrings(Layer.CLUSTERS, Col.CLUSTER, sent.getClusters(), n);
+        layers |= putTokenStrings(Layer.CHUNKS, Col.CHUNK, sent.getChunks(), n);
+        layers |= putTokenStrings(Layer.NE_TAGS, Col.NE_TAG, sent.getNeTags(), n);
+        layers |= putTokenStrings(Layer.DEPRELS, Col.DEPREL, sent.getDeprels(), n);
+        List<StrictPosTag> strictPosTags = sent.getStrictPosTags();
+        for (int i = 0; i < n; i++) {
+            StrictPosTag t = (strictPosTags == null) ? null : strictPosTags.get(i);
+            put(Col.STRICT_POS, (t == null) ? -1 : t.ordinal());
+        }
+        layers |= (strictPosTags == null) ? 0 : Layer.STRICT_POS_TAGS.bit();
+        int[] parents = sent.getParents();
+        for (int i = 0; i < n; i++) {
+            put(Col.PARENT, (parents == null) ? -1 : parents[i]);
+        }
+        layers |= (parents == null) ? 0 : Layer.PARENTS.bit();
+        for (int i = 0; i < n; i++) {
+            put(Col.EMBED_ID, (sent.getEmbedIds() == null) ? -1 : sent.getEmbedIds().get(i));
+        }
+        layers |= (sent.getEmbedIds() == null) ? 0 : Layer.EMBED_IDS.bit();
+        List<List<String>> feats = sent.getFeats();
+        for (int i = 0; i < n; i++) {
+            if (feats != null && feats.get(i) != null) {
+                for (String f : feats.get(i)) {
+                    put(Col.FEAT, getId(f));
+                    numFeats++;
+                }
+            }
+            put(Col.TOK_FEAT_START, numFeats);
+        }
+        layers |= (feats == null) ? 0 : Layer.FEATS.bit();
+        numToks += n;
+        DepEdgeMask depEdgeMask = sent.getDepEdgeMask();
+        if (depEdgeMask != null) {
+            layers |= Layer.DEP_EDGE_MASK.bit();
+            for (int p = -1; p < n; p++) {
+                for (int c = 0; c < n; c++) {
+                    if (p == c) { continue; }
+                    putBit(Col.DEP_MASK, depEdgeMask.isKept(p, c));
+                }
+            }
+            flushBits(Col.DEP_MASK);
+            numDepMaskInts = (int) colSizes[Col.DEP_MASK.ordinal()];
+        }
+        if (sent.getNaryTree() != null) {
+            layers |= Layer.NARY_TREE.bit();
+            put(Col.SENT_NARY_TREE, getId(sent.getNaryTree().getAsOneLineString()));
+        } else {
+            put(Col.SENT_NARY_TREE, -1);
+        }
+
+        // Semantic role labeling.
+        SrlGraph srl = sent.getSrlGraph();
+        if (srl != null) {
+            layers |= Layer.SRL.bit();
+            for (SrlPred pred : srl.getPreds()) {
+                put(Col.PRED_POS, pred.getPosition());
+                put(Col.PRED_LABEL, getId(pred.getLabel()));
+                numPreds++;
+            }
+            for (SrlEdge edge : srl.getEdges()) {
+                put(Col.EDGE_PRED, edge.getPred().getPosition());
+                put(Col.EDGE_ARG, edge.getArg().getPosition());
+                put(Col.EDGE_LABEL, getId(edge.getLabel()));
+                numEdges++;
+            }
+        }
+        SrlArgMask srlArgMask = sent.getSrlArgMask();
+        if (srlArgMask != null) {
+            layers |= Layer.SRL_ARG_MASK.bit();
+            for (int p = 0; p < n; p++) {
+                for (int a = 0; a < n; a++) {
+                    putBit(Col.SRL_MASK, srlArgMask.isKept(p, a));
+                }
+            }
+            flushBits(Col.SRL_MASK);
+            numSrlMaskInts = (int) colSizes[Col.SRL_MASK.ordinal()];
+        }
+        if (sent.getKnownPreds() != null) {
+            layers |= Layer.KNOWN_PREDS.bit();
+            int[] known = sent.getKnownPreds().toNativeArray();
+            Arrays.sort(known);
+            for (int p : known) {
+                put(Col.KNOWN_PRED, p);
+                numKnownPreds++;
+            }
+        }
+
+        // Named entities and relations, which refer to a table of the sentence's mentions.
+        IdentityHashMap<NerMention, Integer> ments = new IdentityHashMap<>();
+        if (sent.getNamedEntities() != null) {
+            layers |= Layer.NAMED_ENTITIES.bit();
+            for (NerMention m : sent.getNamedEntities()) {
+                put(Col.NER_MENT, getMentIdx(m, ments));
+                numNers++;
+            }
+        }
+        if (sent.getNePairs() != null) {
+            layers |= Layer.NE_PAIRS.bit();
+            for (Pair<NerMention, NerMention> pair : sent.getNePairs()) {
+                put(Col.PAIR_MENT1, getMentIdx(pair.get1(), ments));
+                put(Col.PAIR_MENT2, getMentIdx(pair.get2(), ments));
+                numPairs++;
+            }
+        }
+        if (sent.getRelLabels() != null) {
+            layers |= Layer.REL_LABELS.bit();
+            for (String label : sent.getRelLabels()) {
+                put(Col.REL_LABEL, getId(label));
+                numRelLabels++;
+            }
+        }
+        if (sent.getRelations() != null) {
+            layers |= Layer.RELATIONS.bit();
+            for (RelationMention rm : sent.getRelations()) {
+                put(Col.REL_TYPE, getId(rm.getType()));
+                put(Col.REL_SUBTYPE, getId(rm.getSubType()));
+                put(Col.REL_TRIGGER_START, (rm.getTrigger() == null) ? -1 : rm.getTrigger().start());
+                put(Col.REL_TRIGGER_END, (rm.getTrigger() == null) ? -1 : rm.getTrigger().end());
+                if (rm.getArgs() != null) {
+                    for (Pair<String, NerMention> arg : rm.getArgs()) {
+                        put(Col.ARG_ROLE, getId(arg.get1()));
+                        put(Col.ARG_MENT, getMentIdx(arg.get2(), ments));
+                        numRelArgs++;
+                    }
+                }
+                put(Col.REL_ARG_START, numRelArgs);
+                numRels++;
+            }
+        }
+
+        put(Col.SENT_LAYERS, layers);
+        put(Col.SENT_TOK_START, numToks);
+        put(Col.SENT_MENT_START, numMents);
+        put(Col.SENT_NER_START, numNers);
+        put(Col.SENT_PAIR_START, numPairs);
+        put(Col.SENT_REL_LABEL_START, numRelLabels);
+        put(Col.SENT_REL_START, numRels);
+        put(Col.SENT_PRED_START, numPreds);
+        put(Col.SENT_EDGE_START, numEdges);
+        put(Col.SENT_KNOWN_PRED_START, numKnownPreds);
+        put(Col.SENT_DEP_MASK_START, numDepMaskInts);
+        put(Col.SENT_SRL_MASK_START, numSrlMaskInts);
+        numSents++;
+    }
+
+    /** Writes a column of strings, or placeholders if the list is null, and returns the layer bit. */
+    private int putTokenStrings(Layer layer, Col col, List<String> toks, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            put(col, (toks == null) ? -1 : getId(toks.get(i)));
+        }
+        return (toks == null) ? 0 : layer.bit();
+    }
+
+    /** Gets the index of the mention in the sentence's mention table, adding it if necessary. */
+    private int getMentIdx(NerMention m, IdentityHashMap<NerMention, Integer> ments) throws IOException {
+        Integer idx = ments.get(m);
+        if (idx == null) {
+            idx = ments.size();
+            ments.put(m, idx);
+            put(Col.MENT_START, m.getSpan().start());
+            put(Col.MENT_END, m.getSpan().end());
+            put(Col.MENT_TYPE, getId(m.getEntityType()));
+            put(Col.MENT_SUBTYPE, getId(m.getEntitySubType()));
+            put(Col.MENT_PHRASE_TYPE, getId(m.getPhraseType()));
+            put(Col.MENT_HEAD, m.getHead());
+            put(Col.MENT_ID, getId(m.getId()));
+            numMents++;
+        }
+        return idx;
+    }
+
+    /** Adds a bit to a bit-packed column, writing each full int. */
+    private void putBit(Col c, boolean bit) throws IOException {
+        if (bit) {
+            bitWord |= 1 << numBits;
+        }
+        if (++numBits == 32) {
+            put(c, bitWord);
+            bitWord = 0;
+            numBits = 0;
+        }
+    }
+
+    /**
+     * Writes the remaining bits of a bit-packed column, so that the next sentence's bits start at a
+     * new int.
+     */
+    private void flushBits(Col c) throws IOException {
+        if (numBits > 0) {
+            put(c, bitWord);
+            bitWord = 0;
+            numBits = 0;
+        }
+    }
+
+    private int getId(String s) {
+        if (s == null) {
+            return -1;
+        }
+        Integer id = strIds.get(s);
+        if (id == null) {
+            id = strs.size();
+            strIds.put(s, id);
+            strs.add(s);
+        }
+        return id;
+    }
+
+    private void put(Col c, int val) throws IOException {
+        cols[c.ordinal()].writeInt(val);
+        colSizes[c.ordinal()]++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (DataOutputStream dos : cols) {
+                dos.close();
+            }
+            RandomAccessFile raf = new RandomAccessFile(out, "rw");
+            try {
+                raf.setLength(0);
+                FileChannel ch = raf.getChannel();
+                Col[] values = Col.values();
+                long pos = AnnoSentenceBinaryReader.getHeaderBytes();
+                long[] colOffsets = new long[values.length];
+                // Copy the columns.
+                for (int c = 0; c < values.length; c++) {
+                    colOffsets[c] = pos;
+                    FileInputStream fis = new FileInputStream(colFiles[c]);
+                    try {
+                        FileChannel in = fis.getChannel();
+                        long size = in.size();
+                        long done = 0;
+                        while (done < size) {
+                            done += ch.transferFrom(in, pos + done, size - done);
+                        }
+                        pos += size;
+                    } finally {
+                        fis.close();
+                    }
+                }
+                // Write the string table: the number of strings, their byte offsets, then the bytes.
+                long strOffset = pos;
+                byte[][] bytes = new byte[strs.size()][];
+                int[] offsets = new int[strs.size() + 1];
+                for (int i = 0; i < strs.size(); i++) {
+                    bytes[i] = strs.get(i).getBytes(StandardCharsets.UTF_8);
+                    offsets[i + 1] = offsets[i] + bytes[i].length;
+                }
+                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(raf.getFD())));
+                raf.seek(strOffset);
+                dos.writeInt(strs.size());
+                for (int off : offsets) {
+                    dos.writeInt(off);
+                }
+                for (byte[] b : bytes) {
+                    dos.write(b);
+                }
+                dos.flush();
+                // Write the header.
+                ByteBuffer header = ByteBuffer.allocate((int) AnnoSentenceBinaryReader.getHeaderBytes());
+                header.putInt(AnnoSentenceBinaryReader.MAGIC);
+                header.putInt(AnnoSentenceBinaryReader.VERSION);
+                header.putInt(numSents);
+                header.putInt(values.length);
+                header.putLong(strOffset);
+                for (int c = 0; c < values.length; c++) {
+                    header.putLong(colOffsets[c]);
+                    header.putLong(colSizes[c]);
+                }
+                header.flip();
+                long hpos = 0;
+                while (header.hasRemaining()) {
+                    hpos += ch.write(header, hpos);
+                }
+            } finally {
+                raf.close();
+            }
+        } finally {
+            for (File f : colFiles) {
+                f.delete();
+            }
+            tmpDir.delete();
+        }
+    }
+
+}
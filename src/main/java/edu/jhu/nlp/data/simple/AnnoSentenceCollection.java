@@ -18,6 +18,8 @@ public class AnnoSentenceCollection extends ArrayList<AnnoSentence> {
 
     /** Stores the source sentences (e.g. the Communication object for Concrete). */
     private Object sourceSents;
+    /** The symbol table in which the strings of the sentences are interned, or null if there is none. */
+    private transient SymbolTable symbols;
 
     public AnnoSentenceCollection() {
         super();
@@ -27,6 +29,7 @@ public class AnnoSentenceCollection extends ArrayList<AnnoSentence> {
         super(list);
         if (list instanceof AnnoSentenceCollection) {
             this.sourceSents = ((AnnoSentenceCollection) list).sourceSents;
+            this.symbols = ((AnnoSentenceCollection) list).symbols;
         }
     }
 
@@ -95,7 +98,9 @@ public class AnnoSentenceCollection extends ArrayList<AnnoSentence> {
     }
 
     public AnnoSentenceCollection subList(int start, int end) {
-        return new AnnoSentenceCollection(super.subList(start, end));
+        AnnoSentenceCollection sub = new AnnoSentenceCollection(super.subList(start, end));
+        sub.symbols = this.symbols;
+        return sub;
     }
 
     /**
@@ -106,6 +111,7 @@ public class AnnoSentenceCollection extends ArrayList<AnnoSentence> {
     public AnnoSentenceCollection getWithAtsRemoved(Collection<AT> removeAts) {
         AnnoSentenceCollection newSents = new AnnoSentenceCollection();
         newSents.sourceSents = this.sourceSents;
+        newSents.symbols = this.symbols;
         for (AnnoSentence sent : this) {
             AnnoSentence newSent = sent.getShallowCopy();
             newSent.removeAts(removeAts);
@@ -176,6 +182,14 @@ public class AnnoSentenceCollection extends ArrayList<AnnoSentence> {
         return sb.toString();        
     }
     
+    /**
+     * Replaces the sentence at the given index. Unlike {@link #set(int, AnnoSentence)}, this does not
+     * return the previous sentence, which subclasses may then avoid loading.
+     */
+    public void put(int i, AnnoSentence sent) {
+        set(i, sent);
+    }
+
     public Object getSourceSents() {
         return sourceSents;
     }
@@ -183,5 +197,14 @@ public class AnnoSentenceCollection extends ArrayList<AnnoSentence> {
     public void setSourceSents(Object sourceSents) {
         this.sourceSents = sourceSents;
     }
+
+    /** Gets the symbol table in which the strings of these sentences are interned, or null if there is none. */
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public void setSymbolTable(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
     
 }
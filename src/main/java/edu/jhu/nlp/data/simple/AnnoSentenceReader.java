@@ -1,16 +1,23 @@
 package edu.jhu.nlp.data.simple;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.jhu.hlt.concrete.Communication;
 import edu.jhu.nlp.data.concrete.ConcreteReader;
 import edu.jhu.nlp.data.concrete.ConcreteReader.ConcreteReaderPrm;
 import edu.jhu.nlp.data.concrete.ListCloseableIterable;
+import edu.jhu.nlp.data.concrete.SpilledCommunications;
 import edu.jhu.nlp.data.conll.CoNLL02Reader;
 import edu.jhu.nlp.data.conll.CoNLL02Sentence;
 import edu.jhu.nlp.data.conll.CoNLL08Reader;
@@ -19,8 +26,10 @@ import edu.jhu.nlp.data.conll.CoNLL09Reader;
 import edu.jhu.nlp.data.conll.CoNLL09Sentence;
 import edu.jhu.nlp.data.conll.CoNLLXReader;
 import edu.jhu.nlp.data.conll.CoNLLXSentence;
+import edu.jhu.nlp.data.conll.ParallelCoNLLReader;
 import edu.jhu.nlp.data.semeval.SemEval2010Reader;
 import edu.jhu.nlp.data.semeval.SemEval2010Sentence;
+import edu.jhu.prim.list.IntArrayList;
 
 /**
  * Generic reader of AnnoSentence objects from many different corpora. 
@@ -35,6 +44,12 @@ public class AnnoSentenceReader {
         public int minSentenceLength = 0;
         public SentFilter filter = null;
         public String name = "";
+        /** CoNLL-2009 / CoNLL-X: Whether to read files with the parallel chunked reader. */
+        public boolean parallelConll = false;
+        /** CoNLL-2009 / CoNLL-X: Minimum number of bytes per chunk for the parallel reader. */
+        public int conllChunkBytes = 4 * 1024 * 1024;
+        /** How to store the source objects from which the sentences were read. */
+        public SourceSentsMode sourceSents = SourceSentsMode.KEEP;
         
         // Parameters specific to data set type.
         /** CoNLL-2009 / CoNLL-2008: Whether to normalize role names in SRL data. */
@@ -49,7 +64,24 @@ public class AnnoSentenceReader {
 
     public enum DatasetType {
         SYNTHETIC, PTB, CONLL_2002, CONLL_X, CONLL_2008, CONLL_2009, 
-        CONCRETE, SEMEVAL_2010, DEP_EDGE_MASK, JSON
+        CONCRETE, SEMEVAL_2010, DEP_EDGE_MASK, JSON, BINARY
+    };
+
+    /**
+     * How to store the source objects from which the sentences were read: the source sentence of
+     * each AnnoSentence (e.g. a CoNLL09Sentence) and those of the whole corpus (the Communications
+     * for Concrete).
+     */
+    public enum SourceSentsMode {
+        /** Keep all the source objects in memory. */
+        KEEP,
+        /** Drop all the source objects. */
+        DROP,
+        /**
+         * Drop the source sentences, and spill the Communications to a side file from which they
+         * are read back by the Concrete writer.
+         */
+        SPILL
     };
 
     public interface SASReader extends Iterable<AnnoSentence> {
@@ -60,10 +92,14 @@ public class AnnoSentenceReader {
 
     private AnnoSentenceReaderPrm prm;
     private AnnoSentenceCollection sents;
+    // The strings of the sentences are interned in this table, which is shared by the corpus.
+    private SymbolTable symbols;
     
     public AnnoSentenceReader(AnnoSentenceReaderPrm prm) {
         this.prm = prm;
         this.sents = new AnnoSentenceCollection();
+        this.symbols = new SymbolTable();
+        this.sents.setSymbolTable(symbols);
     }
     
     public AnnoSentenceCollection getData() {
@@ -77,7 +113,28 @@ public class AnnoSentenceReader {
             AnnoSentenceCollection csents = cr.sentsFromPath(dataFile);
             CloseableIterable<AnnoSentence> reader = new ListCloseableIterable(csents);
             loadSents(reader);
-            sents.setSourceSents(csents.getSourceSents());
+            sents.setSourceSents(storeSourceSents(csents.getSourceSents()));
+            reader.close();
+            logSentStats(sents, log, prm.name);
+        } else if (type == DatasetType.BINARY) {
+            // The binary format is memory mapped, so the sentences are decoded lazily from the file.
+            AnnoSentenceBinaryReader reader = new AnnoSentenceBinaryReader(dataFile, symbols);
+            BinaryAnnoSentenceCollection bsents = getAcceptedSents(reader);
+            reader.close();
+            if (sents.isEmpty()) {
+                sents = bsents;
+            } else {
+                sents.addAll(bsents);
+            }
+            logSentStats(sents, log, prm.name);
+        } else if (prm.parallelConll && ParallelCoNLLReader.isSupported(type)) {
+            // Parse chunks of the memory mapped file in parallel, straight into AnnoSentences.
+            if (prm.normalizeRoleNames && type == DatasetType.CONLL_2009) {
+                log.info("Normalizing role names");
+            }
+            ParallelCoNLLReader pcr = new ParallelCoNLLReader(prm, symbols);
+            CloseableIterable<AnnoSentence> reader = new ListCloseableIterable(pcr.read(dataFile, type));
+            loadSents(reader);
             reader.close();
             logSentStats(sents, log, prm.name);
         } else {
@@ -102,31 +159,56 @@ public class AnnoSentenceReader {
             sourceSents = csents.getSourceSents();
             reader = new ListCloseableIterable(csents);
         } else {
-            if (type == DatasetType.CONLL_2009) {
-                reader = ConvCloseableIterable.getInstance(new CoNLL09Reader(fis), new CoNLL092Anno());
-            } else if (type == DatasetType.CONLL_2008) {
-                reader = ConvCloseableIterable.getInstance(new CoNLL08Reader(fis), new CoNLL082Anno());
-            } else if (type == DatasetType.CONLL_X) {
-                reader = ConvCloseableIterable.getInstance(new CoNLLXReader(fis), new CoNLLX2Anno());
-            } else if (type == DatasetType.CONLL_2002) {
-                reader = ConvCloseableIterable.getInstance(new CoNLL02Reader(fis), new CoNLL022Anno());
-            } else if (type == DatasetType.SEMEVAL_2010) {
-                reader = ConvCloseableIterable.getInstance(new SemEval2010Reader(fis), new SemEval20102Anno());
-            } else if (type == DatasetType.JSON) {
-                reader = new JsonConcatReader(fis);
-            //} else if (type == DatasetType.PTB) {
-                //reader = new Ptb2Anno(new PtbFileReader(dataFile));
-            } else {
-                throw new IllegalStateException("Unsupported data type: " + type);
-            }
+            reader = getReader(fis, type);
         }
         
         loadSents(reader);
-        sents.setSourceSents(sourceSents);
+        sents.setSourceSents(storeSourceSents(sourceSents));
         reader.close();
         logSentStats(sents, log, prm.name);
     }
 
+    /**
+     * Gets the sentences in the given file as an iterable, which reads them lazily instead of
+     * loading the whole file into memory. The same filters are applied as by
+     * {@link #loadSents(File, DatasetType)}. The caller must close the returned iterable, which can
+     * only be iterated over once. Concrete data is not supported, since it must be read as whole
+     * Communications.
+     */
+    public CloseableIterable<AnnoSentence> streamSents(File dataFile, DatasetType type) throws IOException {
+        log.info("Streaming " + prm.name + " data of type " + type + " from " + dataFile);
+        if (type == DatasetType.CONCRETE) {
+            throw new IllegalArgumentException("Streaming is not supported for data type: " + type);
+        } else if (type == DatasetType.BINARY) {
+            AnnoSentenceBinaryReader reader = new AnnoSentenceBinaryReader(dataFile, symbols);
+            return new FilteredSents(reader, reader);
+        }
+        InputStream fis = new FileInputStream(dataFile);
+        return new FilteredSents(getReader(fis, type), fis);
+    }
+
+    private CloseableIterable<AnnoSentence> getReader(InputStream fis, DatasetType type) throws IOException {
+        if (type == DatasetType.CONLL_2009) {
+            return ConvCloseableIterable.getInstance(new CoNLL09Reader(fis, symbols), new CoNLL092Anno());
+        } else if (type == DatasetType.CONLL_2008) {
+            return ConvCloseableIterable.getInstance(new CoNLL08Reader(fis, symbols), new CoNLL082Anno());
+        } else if (type == DatasetType.CONLL_X) {
+            return ConvCloseableIterable.getInstance(new CoNLLXReader(fis, symbols), new CoNLLX2Anno());
+        } else if (type == DatasetType.CONLL_2002) {
+            return ConvCloseableIterable.getInstance(new CoNLL02Reader(fis), new CoNLL022Anno());
+        } else if (type == DatasetType.SEMEVAL_2010) {
+            return ConvCloseableIterable.getInstance(new SemEval2010Reader(fis, symbols), new SemEval20102Anno());
+        } else if (type == DatasetType.JSON) {
+            return new JsonConcatReader(fis, symbols);
+        } else if (type == DatasetType.BINARY) {
+            throw new IllegalArgumentException("Binary data must be read from a file: " + type);
+        //} else if (type == DatasetType.PTB) {
+            //return new Ptb2Anno(new PtbFileReader(dataFile));
+        } else {
+            throw new IllegalStateException("Unsupported data type: " + type);
+        }
+    }
+
     public static void logSentStats(AnnoSentenceCollection sents, Logger log, String name) {
         log.info("Num " + name + " sentences: " + sents.size());   
         log.info("Num " + name + " tokens: " + sents.getNumTokens());
@@ -139,13 +221,126 @@ public class AnnoSentenceReader {
             if (sents.size() >= prm.maxNumSentences) {
                 break;
             }
-            if (sent.size() <= prm.maxSentenceLength && prm.minSentenceLength <= sent.size()) {
-                if (prm.filter == null || prm.filter.accept(sent)) {
-                    sent.intern();
-                    sents.add(sent);
+            if (accept(sent)) {
+                sent.intern(symbols);
+                storeSourceSent(sent);
+                sents.add(sent);
+            }
+        }
+    }
+
+    /** Drops the source sentence of an AnnoSentence, unless the source objects are kept. */
+    private void storeSourceSent(AnnoSentence sent) {
+        if (prm.sourceSents != SourceSentsMode.KEEP) {
+            sent.setSourceSent(null);
+        }
+    }
+
+    /** Gets the source objects of the corpus to store, according to the source sentence mode. */
+    @SuppressWarnings("unchecked")
+    private Object storeSourceSents(Object sourceSents) throws IOException {
+        if (sourceSents == null || prm.sourceSents == SourceSentsMode.KEEP) {
+            return sourceSents;
+        } else if (prm.sourceSents == SourceSentsMode.DROP) {
+            return null;
+        } else {
+            // Only Concrete data has source objects for the whole corpus.
+            return SpilledCommunications.spillToTempFile((List<Communication>) sourceSents);
+        }
+    }
+
+    /**
+     * Gets the sentences in a binary file which pass the filters, up to the maximum number of
+     * sentences. Only the sentences checked by a custom filter are decoded, and those which are
+     * accepted are kept by the collection rather than decoded again.
+     */
+    private BinaryAnnoSentenceCollection getAcceptedSents(AnnoSentenceBinaryReader reader) {
+        IntArrayList idxs = new IntArrayList();
+        List<AnnoSentence> decoded = new ArrayList<AnnoSentence>();
+        for (int i=0; i<reader.size() && sents.size() + idxs.size() < prm.maxNumSentences; i++) {
+            int n = reader.getLength(i);
+            if (n > prm.maxSentenceLength || prm.minSentenceLength > n) {
+                continue;
+            }
+            AnnoSentence sent = null;
+            if (prm.filter != null) {
+                sent = reader.get(i);
+                if (!prm.filter.accept(sent)) {
+                    continue;
                 }
             }
+            idxs.add(i);
+            decoded.add(sent);
         }
+        return new BinaryAnnoSentenceCollection(reader, idxs.toNativeArray(), decoded.toArray(new AnnoSentence[decoded.size()]));
+    }
+
+    private boolean accept(AnnoSentence sent) {
+        return sent.size() <= prm.maxSentenceLength && prm.minSentenceLength <= sent.size()
+                && (prm.filter == null || prm.filter.accept(sent));
+    }
+    
+    /** Lazily applies the reader's filters to the sentences of an underlying reader. */
+    private class FilteredSents implements CloseableIterable<AnnoSentence> {
+
+        private CloseableIterable<AnnoSentence> reader;
+        private Closeable in;
+
+        public FilteredSents(CloseableIterable<AnnoSentence> reader, Closeable in) {
+            this.reader = reader;
+            this.in = in;
+        }
+
+        @Override
+        public Iterator<AnnoSentence> iterator() {
+            final Iterator<AnnoSentence> iter = reader.iterator();
+            return new Iterator<AnnoSentence>() {
+
+                private int count = 0;
+                private AnnoSentence next = advance();
+
+                private AnnoSentence advance() {
+                    while (count < prm.maxNumSentences && iter.hasNext()) {
+                        AnnoSentence sent = iter.next();
+                        if (accept(sent)) {
+                            sent.intern(symbols);
+                            storeSourceSent(sent);
+                            count++;
+                            return sent;
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public AnnoSentence next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    AnnoSentence cur = next;
+                    next = advance();
+                    return cur;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+            in.close();
+        }
+
     }
     
     public class CoNLL092Anno implements Converter<CoNLL09Sentence, AnnoSentence> {
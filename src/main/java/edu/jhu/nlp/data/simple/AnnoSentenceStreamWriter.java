@@ -0,0 +1,118 @@
+package edu.jhu.nlp.data.simple;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.nlp.data.conll.CoNLL08Sentence;
+import edu.jhu.nlp.data.conll.CoNLL08Writer;
+import edu.jhu.nlp.data.conll.CoNLL09Sentence;
+import edu.jhu.nlp.data.conll.CoNLL09Writer;
+import edu.jhu.nlp.data.conll.CoNLLXSentence;
+import edu.jhu.nlp.data.conll.CoNLLXWriter;
+import edu.jhu.nlp.data.semeval.SemEval2010Sentence;
+import edu.jhu.nlp.data.semeval.SemEval2010Writer;
+import edu.jhu.nlp.data.simple.AnnoSentenceReader.DatasetType;
+import edu.jhu.nlp.features.TemplateLanguage.AT;
+
+/**
+ * Writes annotated sentences one at a time, so that a corpus can be written out without holding it
+ * in memory. All the dataset types supported by {@link AnnoSentenceWriter} are supported except for
+ * Concrete, which requires the source Communications for the whole corpus.
+ *
+ * @author mgormley
+ */
+public class AnnoSentenceStreamWriter implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(AnnoSentenceStreamWriter.class);
+
+    private DatasetType type;
+    private CoNLL09Writer cw09;
+    private CoNLL08Writer cw08;
+    private CoNLLXWriter cwX;
+    private SemEval2010Writer sw;
+    private DepEdgeMaskWriter mw;
+    private JsonConcatWriter jw;
+    private AnnoSentenceBinaryWriter bw;
+    // The number of SemEval-2010 sentences written.
+    private int seCount = 0;
+
+    public AnnoSentenceStreamWriter(File out, DatasetType type) throws IOException {
+        this.type = type;
+        if (type == DatasetType.CONLL_2009) {
+            cw09 = new CoNLL09Writer(out);
+        } else if (type == DatasetType.CONLL_2008) {
+            cw08 = new CoNLL08Writer(out);
+        } else if (type == DatasetType.CONLL_X) {
+            cwX = new CoNLLXWriter(out);
+        } else if (type == DatasetType.SEMEVAL_2010) {
+            sw = new SemEval2010Writer(out);
+        } else if (type == DatasetType.DEP_EDGE_MASK) {
+            mw = new DepEdgeMaskWriter(out);
+        } else if (type == DatasetType.JSON) {
+            jw = new JsonConcatWriter(out);
+        } else if (type == DatasetType.BINARY) {
+            bw = new AnnoSentenceBinaryWriter(out);
+        } else {
+            throw new IllegalStateException("Unsupported data type: " + type);
+        }
+    }
+
+    public void write(AnnoSentenceCollection sents) throws IOException {
+        for (AnnoSentence sent : sents) {
+            write(sent);
+        }
+    }
+
+    public void write(AnnoSentence sent) throws IOException {
+        if (type == DatasetType.CONLL_2009) {
+            cw09.write(CoNLL09Sentence.fromAnnoSentence(sent));
+        } else if (type == DatasetType.CONLL_2008) {
+            cw08.write(CoNLL08Sentence.fromAnnoSentence(sent));
+        } else if (type == DatasetType.CONLL_X) {
+            cwX.write(CoNLLXSentence.fromAnnoSentence(sent));
+        } else if (type == DatasetType.SEMEVAL_2010) {
+            writeSemEval(sent);
+        } else if (type == DatasetType.DEP_EDGE_MASK) {
+            mw.write(sent);
+        } else if (type == DatasetType.JSON) {
+            jw.write(sent);
+        } else if (type == DatasetType.BINARY) {
+            bw.write(sent);
+        }
+    }
+
+    private void writeSemEval(AnnoSentence sent) throws IOException {
+        // Write one SemEval-2010 sentence for each pair of entities.
+        if (!sent.hasAt(AT.NE_PAIRS)) {
+            throw new RuntimeException("Sentence missing required annotation: " + AT.NE_PAIRS);
+        }
+        if (sent.getNePairs().size() > 0) {
+            if (!sent.hasAt(AT.REL_LABELS)) {
+                //throw new RuntimeException("Sentence missing required annotation: " + AT.REL_LABELS);
+                log.warn("Sentence missing required annotation: " + AT.REL_LABELS);
+            } else {
+                List<SemEval2010Sentence> seSents = SemEval2010Sentence.fromAnnoSentence(sent, seCount++);
+                for (SemEval2010Sentence seSent : seSents) {
+                    sw.write(seSent);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (cw09 != null) { cw09.close(); }
+        if (cw08 != null) { cw08.close(); }
+        if (cwX != null) { cwX.close(); }
+        if (sw != null) { sw.close(); }
+        if (mw != null) { mw.close(); }
+        if (jw != null) { jw.close(); }
+        if (bw != null) { bw.close(); }
+    }
+
+}
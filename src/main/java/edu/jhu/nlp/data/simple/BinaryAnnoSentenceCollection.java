@@ -0,0 +1,391 @@
+package edu.jhu.nlp.data.simple;
+
+import java.io.ObjectStreamException;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The sentences of a binary corpus file, which are decoded from the memory-mapped columns of an
+ * {@link AnnoSentenceBinaryReader} the first time each one is accessed. Loading the corpus and
+ * computing its statistics (e.g. {@link #getNumTokens()}) does not decode any sentences, and
+ * sentences which are never accessed (e.g. those outside of a {@link #subList(int, int)}) never
+ * occupy the heap.
+ *
+ * Since annotators modify the sentences in place, each decoded sentence is kept for the lifetime
+ * of the collection. Any structural modification (e.g. add or remove) first decodes all the
+ * sentences, after which this behaves as an ordinary {@link AnnoSentenceCollection}.
+ *
+ * Concurrent calls to {@link #get(int)} and {@link #set(int, AnnoSentence)} are safe.
+ *
+ * @author mgormley
+ */
+public class BinaryAnnoSentenceCollection extends AnnoSentenceCollection {
+
+    private static final long serialVersionUID = 1L;
+
+    // The reader, or null once all the sentences have been decoded into the underlying list.
+    private transient AnnoSentenceBinaryReader reader;
+    // The index in the file of each sentence in decoded, which may be shared with a sub list.
+    private transient int[] idxs;
+    private transient AtomicReferenceArray<AnnoSentence> decoded;
+    // The range of decoded (and idxs) which belongs to this collection.
+    private transient int offset;
+    private transient int size;
+    // A view of the lazily decoded sentences.
+    private transient List<AnnoSentence> view;
+
+    /**
+     * Constructs a collection of some of the sentences in a binary corpus file.
+     *
+     * @param reader The reader, which may be closed once this is constructed since its mapped
+     *            columns remain valid after it is closed.
+     * @param idxs The indices in the file of the sentences to include, in order.
+     */
+    public BinaryAnnoSentenceCollection(AnnoSentenceBinaryReader reader, int[] idxs) {
+        this(reader, idxs, new AtomicReferenceArray<AnnoSentence>(idxs.length), 0, idxs.length);
+    }
+
+    /**
+     * Constructs a collection of some of the sentences in a binary corpus file, some of which have
+     * already been decoded.
+     *
+     * @param reader The reader, which may be closed once this is constructed since its mapped
+     *            columns remain valid after it is closed.
+     * @param idxs The indices in the file of the sentences to include, in order.
+     * @param sents The decoded sentence for each index, or null for those which have not been
+     *            decoded.
+     */
+    public BinaryAnnoSentenceCollection(AnnoSentenceBinaryReader reader, int[] idxs, AnnoSentence[] sents) {
+        this(reader, idxs, new AtomicReferenceArray<AnnoSentence>(sents), 0, idxs.length);
+        if (sents.length != idxs.length) {
+            throw new IllegalArgumentException("Expected one sentence per index: " + sents.length + " != " + idxs.length);
+        }
+    }
+
+    private BinaryAnnoSentenceCollection(AnnoSentenceBinaryReader reader, int[] idxs,
+            AtomicReferenceArray<AnnoSentence> decoded, int offset, int size) {
+        super();
+        this.reader = reader;
+        this.idxs = idxs;
+        this.decoded = decoded;
+        this.offset = offset;
+        this.size = size;
+        this.view = new AbstractList<AnnoSentence>() {
+            @Override
+            public AnnoSentence get(int i) {
+                return getLazy(i);
+            }
+            @Override
+            public AnnoSentence set(int i, AnnoSentence sent) {
+                return setLazy(i, sent);
+            }
+            @Override
+            public int size() {
+                return BinaryAnnoSentenceCollection.this.size;
+            }
+        };
+        setSymbolTable(reader.getSymbolTable());
+    }
+
+    private boolean isLazy() {
+        return reader != null;
+    }
+
+    private AnnoSentence getLazy(int i) {
+        checkIndex(i);
+        AnnoSentence sent = decoded.get(offset + i);
+        if (sent == null) {
+            // If two threads decode the same sentence, the first to store it wins.
+            decoded.compareAndSet(offset + i, null, reader.get(idxs[offset + i]));
+            sent = decoded.get(offset + i);
+        }
+        return sent;
+    }
+
+    private AnnoSentence setLazy(int i, AnnoSentence sent) {
+        checkIndex(i);
+        AnnoSentence prev = decoded.getAndSet(offset + i, sent);
+        return (prev != null) ? prev : reader.get(idxs[offset + i]);
+    }
+
+    private void putLazy(int i, AnnoSentence sent) {
+        checkIndex(i);
+        decoded.set(offset + i, sent);
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+    }
+
+    /** Decodes all the sentences into the underlying list. */
+    private void materialize() {
+        if (!isLazy()) {
+            return;
+        }
+        Object[] sents = view.toArray();
+        reader = null;
+        idxs = null;
+        decoded = null;
+        view = null;
+        for (Object sent : sents) {
+            super.add((AnnoSentence) sent);
+        }
+    }
+
+    // ----------------- Reads -----------------
+
+    @Override
+    public AnnoSentence get(int i) {
+        return isLazy() ? getLazy(i) : super.get(i);
+    }
+
+    @Override
+    public AnnoSentence set(int i, AnnoSentence sent) {
+        return isLazy() ? setLazy(i, sent) : super.set(i, sent);
+    }
+
+    /** Replaces the sentence at the given index, without decoding the sentence it replaces. */
+    @Override
+    public void put(int i, AnnoSentence sent) {
+        if (isLazy()) {
+            putLazy(i, sent);
+        } else {
+            super.put(i, sent);
+        }
+    }
+
+    @Override
+    public int size() {
+        return isLazy() ? size : super.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Iterator<AnnoSentence> iterator() {
+        return isLazy() ? view.iterator() : super.iterator();
+    }
+
+    @Override
+    public ListIterator<AnnoSentence> listIterator() {
+        return isLazy() ? view.listIterator() : super.listIterator();
+    }
+
+    @Override
+    public ListIterator<AnnoSentence> listIterator(int index) {
+        return isLazy() ? view.listIterator(index) : super.listIterator(index);
+    }
+
+    @Override
+    public Spliterator<AnnoSentence> spliterator() {
+        return isLazy() ? view.spliterator() : super.spliterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super AnnoSentence> action) {
+        if (isLazy()) {
+            view.forEach(action);
+        } else {
+            super.forEach(action);
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        return isLazy() ? view.toArray() : super.toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return isLazy() ? view.toArray(a) : super.toArray(a);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return isLazy() ? view.indexOf(o) : super.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return isLazy() ? view.lastIndexOf(o) : super.lastIndexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return isLazy() ? view.equals(o) : super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return isLazy() ? view.hashCode() : super.hashCode();
+    }
+
+    /** Gets a sub list, which shares the decoded sentences of this collection. */
+    @Override
+    public AnnoSentenceCollection subList(int start, int end) {
+        if (!isLazy()) {
+            return super.subList(start, end);
+        }
+        if (start < 0 || end > size || start > end) {
+            throw new IndexOutOfBoundsException("start=" + start + " end=" + end + " size=" + size);
+        }
+        return new BinaryAnnoSentenceCollection(reader, idxs, decoded, offset + start, end - start);
+    }
+
+    // ----------------- Statistics, which do not decode the sentences -----------------
+
+    @Override
+    public int getNumTokens() {
+        if (!isLazy()) {
+            return super.getNumTokens();
+        }
+        int numTokens = 0;
+        for (int i=0; i<size; i++) {
+            numTokens += reader.getLength(idxs[offset + i]);
+        }
+        return numTokens;
+    }
+
+    @Override
+    public int getMaxLength() {
+        if (!isLazy()) {
+            return super.getMaxLength();
+        }
+        int maxLen = Integer.MIN_VALUE;
+        for (int i=0; i<size; i++) {
+            maxLen = Math.max(maxLen, reader.getLength(idxs[offset + i]));
+        }
+        return maxLen;
+    }
+
+    @Override
+    public double getAvgLength() {
+        if (!isLazy()) {
+            return super.getAvgLength();
+        }
+        return (double) getNumTokens() / size;
+    }
+
+    // ----------------- Structural modifications, which decode all the sentences -----------------
+
+    @Override
+    public boolean add(AnnoSentence sent) {
+        materialize();
+        return super.add(sent);
+    }
+
+    @Override
+    public void add(int index, AnnoSentence sent) {
+        materialize();
+        super.add(index, sent);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends AnnoSentence> c) {
+        materialize();
+        return super.addAll(c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends AnnoSentence> c) {
+        materialize();
+        return super.addAll(index, c);
+    }
+
+    @Override
+    public AnnoSentence remove(int index) {
+        materialize();
+        return super.remove(index);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        materialize();
+        return super.remove(o);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        materialize();
+        return super.removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        materialize();
+        return super.retainAll(c);
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super AnnoSentence> filter) {
+        materialize();
+        return super.removeIf(filter);
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<AnnoSentence> operator) {
+        materialize();
+        super.replaceAll(operator);
+    }
+
+    @Override
+    public void sort(Comparator<? super AnnoSentence> c) {
+        materialize();
+        super.sort(c);
+    }
+
+    @Override
+    public void clear() {
+        materialize();
+        super.clear();
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        materialize();
+        super.removeRange(fromIndex, toIndex);
+    }
+
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        materialize();
+        super.ensureCapacity(minCapacity);
+    }
+
+    @Override
+    public void trimToSize() {
+        materialize();
+        super.trimToSize();
+    }
+
+    @Override
+    public Object clone() {
+        materialize();
+        return super.clone();
+    }
+
+    /** Serializes the sentences as an ordinary {@link AnnoSentenceCollection}. */
+    private Object writeReplace() throws ObjectStreamException {
+        return new AnnoSentenceCollection(this);
+    }
+
+}
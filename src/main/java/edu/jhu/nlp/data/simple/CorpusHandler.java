@@ -12,6 +12,7 @@ import org.slf4j.LoggerFactory;
 
 import edu.jhu.nlp.data.simple.AnnoSentenceReader.AnnoSentenceReaderPrm;
 import edu.jhu.nlp.data.simple.AnnoSentenceReader.DatasetType;
+import edu.jhu.nlp.data.simple.AnnoSentenceReader.SourceSentsMode;
 import edu.jhu.nlp.data.simple.AnnoSentenceWriter.AnnoSentenceWriterPrm;
 import edu.jhu.nlp.depparse.Projectivizer;
 import edu.jhu.nlp.features.TemplateLanguage.AT;
@@ -71,6 +72,10 @@ public class CorpusHandler {
     public static int testMaxSentenceLength = Integer.MAX_VALUE;
     @Opt(hasArg = true, description = "Maximum number of sentences to include in test.")
     public static int testMaxNumSentences = Integer.MAX_VALUE; 
+    @Opt(hasArg = true, description = "Whether to stream the test data through the pipeline in batches instead of loading it into memory. (Test data is not evaluated.)")
+    public static boolean testStream = false;
+    @Opt(hasArg = true, description = "Number of sentences per batch when streaming the test data.")
+    public static int testStreamBatchSize = 1000;
 
     // Options for train/dev/test data
     @Opt(hasArg = true, description = "Random proportion of train data to allocate as dev data.")
@@ -89,6 +94,10 @@ public class CorpusHandler {
     public static boolean useGoldSyntax = false;    
     @Opt(hasArg=true, description="Whether to normalize the role names (i.e. lowercase and remove themes).")
     public static boolean normalizeRoleNames = false;    
+    @Opt(hasArg=true, description="Whether to read CoNLL-2009 and CoNLL-X files by parsing chunks of the file in parallel.")
+    public static boolean parallelConllReader = false;
+    @Opt(hasArg=true, description="How to store the source sentences/Communications of the data: KEEP them in memory, DROP them, or SPILL the Communications to disk. They are always kept when the output format needs them.")
+    public static SourceSentsMode sourceSents = SourceSentsMode.KEEP;
     @Opt(hasArg = true, description = "Comma separated list of annotation types for restricting features/data.")
     public static String removeAts = null;
     @Opt(hasArg = true, description = "Comma separated list of annotation types for predicted annotations.")
@@ -163,6 +172,7 @@ public class CorpusHandler {
         prm.maxSentenceLength = trainMaxSentenceLength;
         prm.minSentenceLength = trainMinSentenceLength;
         prm.useCoNLLXPhead = trainUseCoNLLXPhead;
+        prm.sourceSents = getSourceSentsMode(getTrainTypeOut());
         AnnoSentenceReader reader = new AnnoSentenceReader(prm);
         reader.loadSents(train, trainType);
          
@@ -285,6 +295,7 @@ public class CorpusHandler {
         prm.name = "dev";
         prm.maxNumSentences = devMaxNumSentences;
         prm.maxSentenceLength = devMaxSentenceLength;        
+        prm.sourceSents = getSourceSentsMode(getDevTypeOut());
         AnnoSentenceReader reader = new AnnoSentenceReader(prm);
         reader.loadSents(dev, devType);
          
@@ -348,14 +359,35 @@ public class CorpusHandler {
         return (testTypeOut != null) ? testTypeOut : testType;
     }
     
+    /**
+     * Gets the input test data as a stream, without loading it into memory. The caller must close
+     * the returned iterable.
+     */
+    public CloseableIterable<AnnoSentence> streamTestInput() throws IOException {
+        AnnoSentenceReader reader = new AnnoSentenceReader(getTestReaderPrm());
+        final Set<AT> removeAts = QSets.union(getRemoveAts(), getGoldOnlyAts());
+        return ConvCloseableIterable.getInstance(reader.streamSents(test, testType), new Converter<AnnoSentence, AnnoSentence>() {
+            @Override
+            public AnnoSentence convert(AnnoSentence sent) {
+                sent.removeAts(removeAts);
+                return sent;
+            }
+        });
+    }
+    
+    /** Gets a writer for streaming out the predicted test data, or null if there is no output file. */
+    public AnnoSentenceStreamWriter getTestPredsStreamWriter() throws IOException {
+        if (testPredOut == null) {
+            return null;
+        }
+        log.info("Writing sentences for predicted test data of type " + getTestTypeOut() + " to " + testPredOut);
+        return new AnnoSentenceStreamWriter(testPredOut, getTestTypeOut());
+    }
+    
     private void loadTest() throws IOException {
         if (!hasTest()) { return; }
         // Read test data.
-        AnnoSentenceReaderPrm prm = getDefaultReaderPrm();        
-        prm.name = "test";
-        prm.maxNumSentences = testMaxNumSentences;
-        prm.maxSentenceLength = testMaxSentenceLength;        
-        AnnoSentenceReader reader = new AnnoSentenceReader(prm);
+        AnnoSentenceReader reader = new AnnoSentenceReader(getTestReaderPrm());
         reader.loadSents(test, testType);
          
         // Cache gold test data.
@@ -366,6 +398,15 @@ public class CorpusHandler {
         testInputSents = testGoldSents.getWithAtsRemoved(getGoldOnlyAts());
     }
 
+    private AnnoSentenceReaderPrm getTestReaderPrm() {
+        AnnoSentenceReaderPrm prm = getDefaultReaderPrm();        
+        prm.name = "test";
+        prm.maxNumSentences = testMaxNumSentences;
+        prm.maxSentenceLength = testMaxSentenceLength;
+        prm.sourceSents = getSourceSentsMode(getTestTypeOut());
+        return prm;
+    }
+
     public void writeTestGold() throws IOException {
         if (testGoldSents != null && testGoldOut != null) {
             // Write gold test data.
@@ -380,10 +421,26 @@ public class CorpusHandler {
         AnnoSentenceReaderPrm prm = new AnnoSentenceReaderPrm();
         prm.normalizeRoleNames = normalizeRoleNames;
         prm.useGoldSyntax = useGoldSyntax;
+        prm.parallelConll = parallelConllReader;
         prm.rePrm.depParseTool = concreteDepParseTool;
         return prm;
     }
     
+    /**
+     * Gets the mode for storing the source sentences of a dataset, given the type to which it will
+     * be written. The SemEval-2010 writer reads the source sentences, and the Concrete writer reads
+     * the source Communications, so these are not dropped.
+     */
+    private static SourceSentsMode getSourceSentsMode(DatasetType typeOut) {
+        if (typeOut == DatasetType.SEMEVAL_2010) {
+            return SourceSentsMode.KEEP;
+        } else if (typeOut == DatasetType.CONCRETE && sourceSents == SourceSentsMode.DROP) {
+            return SourceSentsMode.SPILL;
+        } else {
+            return sourceSents;
+        }
+    }
+    
     /** Gets predicated annotations (included only in the gold data). */
     public static Set<AT> getPredAts() {
         return getAts(predAts);
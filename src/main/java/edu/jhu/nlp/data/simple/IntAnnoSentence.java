@@ -233,6 +233,83 @@ public class IntAnnoSentence {
         }
     }
 
+    /**
+     * Gets a 64-bit fingerprint of the integer representation of this sentence. Two sentences have
+     * the same fingerprint (with high probability) only if they have the same words, tags, etc.
+     * under the same alphabets, and so the same features.
+     */
+    public long getFingerprint() {
+        return getFingerprint(FNV_OFFSET, FNV_PRIME);
+    }
+
+    /**
+     * Gets a second 64-bit fingerprint of the integer representation of this sentence, computed
+     * with a different hash function than {@link #getFingerprint()}. This can be used to check
+     * that two sentences with the same fingerprint are (with much higher probability) the same.
+     */
+    public long getCheckFingerprint() {
+        return getFingerprint(CHECK_OFFSET, CHECK_PRIME);
+    }
+
+    private long getFingerprint(long h, long prime) {
+        h = hash(h, words, prime);
+        h = hash(h, lcWords, prime);
+        h = hash(h, prefixes, prime);
+        h = hash(h, suffixes, prime);
+        if (isCapitalized != null) {
+            for (int i=0; i<isCapitalized.length; i++) {
+                h = hash(h, isCapitalized[i] ? 1 : 0, prime);
+            }
+        }
+        h = hash(h, lemmas, prime);
+        h = hash(h, posTags, prime);
+        h = hash(h, cposTags, prime);
+        h = hash(h, clusters, prime);
+        h = hash(h, clusterPrefixes, prime);
+        if (feats != null) {
+            h = hash(h, feats.toArray(new ShortArrayList[feats.size()]), prime);
+        }
+        h = hash(h, deprels, prime);
+        h = hash(h, coarserPosTags, prime);
+        return h;
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long CHECK_OFFSET = 0x84222325cbf29ce4L;
+    private static final long CHECK_PRIME = 0x9e3779b97f4a7c15L;
+    
+    private static long hash(long h, int v, long prime) {
+        return (h ^ v) * prime;
+    }
+    
+    private static long hash(long h, ShortArrayList arr, long prime) {
+        if (arr == null) { return hash(h, -1, prime); }
+        h = hash(h, arr.size(), prime);
+        for (int i=0; i<arr.size(); i++) {
+            h = hash(h, arr.get(i), prime);
+        }
+        return h;
+    }
+    
+    private static long hash(long h, ByteArrayList arr, long prime) {
+        if (arr == null) { return hash(h, -1, prime); }
+        h = hash(h, arr.size(), prime);
+        for (int i=0; i<arr.size(); i++) {
+            h = hash(h, arr.get(i), prime);
+        }
+        return h;
+    }
+    
+    private static long hash(long h, ShortArrayList[] arrs, long prime) {
+        if (arrs == null) { return hash(h, -1, prime); }
+        h = hash(h, arrs.length, prime);
+        for (int k=0; k<arrs.length; k++) {
+            h = hash(h, arrs[k], prime);
+        }
+        return h;
+    }
+
     public int size() {
         return words.size();
     }
@@ -40,17 +40,24 @@ public class JsonConcatReader implements CloseableIterable<AnnoSentence>, Iterat
     private AnnoSentence sentence;
     private Reader reader;
     private JsonStreamParser parser;
+    private SymbolTable symbols;
 
     public JsonConcatReader(File file) throws IOException {        
         this(new FileInputStream(file));
     }
 
     public JsonConcatReader(InputStream inputStream) throws UnsupportedEncodingException {
-        this(new BufferedReader(new InputStreamReader(inputStream, "UTF-8")));
+        this(inputStream, new SymbolTable());
     }
 
-    private JsonConcatReader(Reader reader) {
+    /** Constructs a reader whose strings are interned in the given symbol table (e.g. that of the corpus). */
+    public JsonConcatReader(InputStream inputStream, SymbolTable symbols) throws UnsupportedEncodingException {
+        this(new BufferedReader(new InputStreamReader(inputStream, "UTF-8")), symbols);
+    }
+
+    private JsonConcatReader(Reader reader, SymbolTable symbols) {
         this.reader = reader;
+        this.symbols = symbols;
         this.parser = new JsonStreamParser(reader);
         next();
     }
@@ -141,7 +148,7 @@ public class JsonConcatReader implements CloseableIterable<AnnoSentence>, Iterat
             AnnoSentence curSent = sentence;
             sentence = readSentence(parser);
             if (curSent != null) {
-                curSent.intern();
+                curSent.intern(symbols);
             }
             return curSent;
         } catch (IOException e) {
@@ -0,0 +1,116 @@
+package edu.jhu.nlp.data.simple;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.jhu.pacaya.parse.cky.data.NaryTree;
+import edu.jhu.prim.util.Lambda.FnO1ToVoid;
+
+/**
+ * A table of symbols (i.e. strings) for a corpus, which replaces {@link String#intern()}.
+ *
+ * Each distinct string is stored once and given a compact id, in the order in which the strings
+ * were first seen. Unlike the JVM's string table, lookups from many threads do not contend on a
+ * global lock and the strings are released when the table is no longer referenced (e.g. along with
+ * the corpus). The table is safe for concurrent use.
+ *
+ * @author mgormley
+ */
+public class SymbolTable {
+
+    /** A canonical string and its id. */
+    private static class Symbol {
+        final String str;
+        final int id;
+        Symbol(String str, int id) {
+            this.str = str;
+            this.id = id;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Symbol> map = new ConcurrentHashMap<>();
+    private final List<String> strs = new ArrayList<>();
+
+    public SymbolTable() { }
+
+    /**
+     * Gets the canonical instance of a string, adding it to the table if it is new.
+     * @return The canonical instance, or null if the string is null.
+     */
+    public String intern(String str) {
+        return (str == null) ? null : lookup(str).str;
+    }
+
+    /** Replaces each string in a list with its canonical instance. The list may be null. */
+    public void intern(List<String> list) {
+        if (list == null) {
+            return;
+        }
+        for (int i=0; i<list.size(); i++) {
+            String str = list.get(i);
+            if (str != null) {
+                String sym = lookup(str).str;
+                if (sym != str) {
+                    list.set(i, sym);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the symbol of each node in a tree with its canonical instance.
+     * @return The same tree, which may be null.
+     */
+    public NaryTree intern(NaryTree tree) {
+        if (tree != null) {
+            tree.postOrderTraversal(new FnO1ToVoid<NaryTree>() {
+                @Override
+                public void call(NaryTree node) {
+                    node.setSymbol(SymbolTable.this.intern(node.getSymbol()));
+                }
+            });
+        }
+        return tree;
+    }
+
+    /** Gets the id of a string, adding it to the table if it is new. */
+    public int getId(String str) {
+        return lookup(str).id;
+    }
+
+    /** Gets the id of a string, or -1 if it is not in the table. */
+    public int getIdIfExists(String str) {
+        Symbol sym = map.get(str);
+        return (sym == null) ? -1 : sym.id;
+    }
+
+    /** Gets the string with the given id. */
+    public String getString(int id) {
+        synchronized (strs) {
+            return strs.get(id);
+        }
+    }
+
+    /** Gets the number of strings in the table. */
+    public int size() {
+        synchronized (strs) {
+            return strs.size();
+        }
+    }
+
+    private Symbol lookup(String str) {
+        Symbol sym = map.get(str);
+        if (sym == null) {
+            // Only the first thread to add a string assigns its id.
+            sym = map.computeIfAbsent(str, s -> {
+                synchronized (strs) {
+                    strs.add(s);
+                    return new Symbol(s, strs.size() - 1);
+                }
+            });
+        }
+        return sym;
+    }
+
+}
@@ -6,12 +6,14 @@ import org.slf4j.LoggerFactory;
 
 import edu.jhu.nlp.CorpusStatistics;
 import edu.jhu.nlp.FeTypedFactor;
+import edu.jhu.nlp.ScoringFeatureExtractor;
 import edu.jhu.nlp.data.simple.IntAnnoSentence;
+import edu.jhu.nlp.depparse.BitshiftDepParseFeatures.WordPairFeatureCache;
 import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.DepParseFactorTemplate;
 import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.GraFeTypedFactor;
 import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.HbFeTypedFactor;
 import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.SibFeTypedFactor;
-import edu.jhu.pacaya.gm.feat.FeatureExtractor;
+import edu.jhu.nlp.features.DotProductFeatureVector;
 import edu.jhu.pacaya.gm.feat.FeatureVector;
 import edu.jhu.pacaya.gm.feat.ObsFeatureConjoiner;
 import edu.jhu.pacaya.gm.model.FeExpFamFactor;
@@ -19,8 +21,9 @@ import edu.jhu.pacaya.gm.model.VarSet;
 import edu.jhu.pacaya.gm.model.globalfac.LinkVar;
 import edu.jhu.pacaya.util.Prm;
 import edu.jhu.pacaya.util.cli.Opt;
+import edu.jhu.prim.vector.IntDoubleVector;
 
-public class BitshiftDepParseFeatureExtractor implements FeatureExtractor {
+public class BitshiftDepParseFeatureExtractor implements ScoringFeatureExtractor {
 
     public static class BitshiftDepParseFeatureExtractorPrm extends Prm {
         private static final long serialVersionUID = 1L;
@@ -54,6 +57,10 @@ public class BitshiftDepParseFeatureExtractor implements FeatureExtractor {
         public boolean useNonprojGrandDepFeats = false;
         @Opt(description = "Whether to use trilexical features (TurboParser style only)")
         public boolean useTrilexicalFeats = false;
+        @Opt(description = "Whether to score factors by streaming the hashed features into a dot product with the model weights")
+        public boolean useStreamingScores = true;
+        @Opt(description = "Whether to cache the word-pair features shared by 2nd-order factors (TurboParser style only)")
+        public boolean cacheWordPairFeats = true;
     }
     
     private static final Logger log = LoggerFactory.getLogger(BitshiftDepParseFeatureExtractor.class);     
@@ -61,20 +68,28 @@ public class BitshiftDepParseFeatureExtractor implements FeatureExtractor {
     static {
         emptyFv = new FeatureVector();
     }
+    // Reusable per-thread scratch space for scoring without materializing feature vectors.
+    private static final ThreadLocal<DotProductFeatureVector> scratch = new ThreadLocal<DotProductFeatureVector>() {
+        @Override
+        protected DotProductFeatureVector initialValue() {
+            return new DotProductFeatureVector();
+        }
+    };
 
     private BitshiftDepParseFeatureExtractorPrm prm;
     private IntAnnoSentence isent;
+    private WordPairFeatureCache pairCache;
     
     public BitshiftDepParseFeatureExtractor(BitshiftDepParseFeatureExtractorPrm prm, IntAnnoSentence isent, CorpusStatistics cs, ObsFeatureConjoiner ofc) {
         this.prm = prm;
         this.isent = isent;
+        this.pairCache = prm.cacheWordPairFeats ? new WordPairFeatureCache(isent, prm) : null;
         ofc.takeNoteOfFeatureHashMod(prm.featureHashMod);
     }
 
     @Override
     public FeatureVector calcFeatureVector(FeExpFamFactor factor, int configId) {        
         FeTypedFactor f = (FeTypedFactor) factor;
-        Enum<?> ft = f.getFactorType();
         VarSet vars = f.getVars();
         
         int[] vc = vars.getVarConfigAsArray(configId);
@@ -84,28 +99,79 @@ public class BitshiftDepParseFeatureExtractor implements FeatureExtractor {
         
         //LongArrayList feats = new LongArrayList();
         FeatureVector feats = new FeatureVector();
+        addFeatures(f, feats);
+        return feats;
+    }
 
+    /**
+     * Computes the dot product of the features with the weights by streaming each hashed feature
+     * index directly into the sum. Nothing is allocated per call.
+     */
+    @Override
+    public double calcScore(FeExpFamFactor factor, int configId, IntDoubleVector weights) {
+        FeTypedFactor f = (FeTypedFactor) factor;
+        // All the variables are binary LinkVars, so only the last configuration has every edge "on".
+        if (configId != f.getVars().calcNumConfigs() - 1) {
+            return 0.0;
+        }
+        if (!prm.useStreamingScores) {
+            FeatureVector feats = new FeatureVector();
+            addFeatures(f, feats);
+            return feats.dot(weights);
+        }
+        
+        DotProductFeatureVector feats = scratch.get();
+        feats.reset(weights);
+        addFeatures(f, feats);
+        return feats.getDotProduct();
+    }
+
+    /** Adds the features for the given factor, assuming all of its edges are "on". */
+    private void addFeatures(FeTypedFactor f, FeatureVector feats) {
+        Enum<?> ft = f.getFactorType();
+        
         // Get the features for an edge that is "on".
         if (ft == DepParseFactorTemplate.UNARY) {
             // Look at the variables to determine the parent and child.
-            LinkVar var = (LinkVar) vars.get(0);
-            int p = var.getParent();
-            int c = var.getChild();
-            BitshiftDepParseFeatures.addArcFeats(isent, p, c, prm, feats);
+            LinkVar var = (LinkVar) f.getVars().get(0);
+            addFeatures(ft, var.getParent(), var.getChild(), 0, feats);
         } else if (ft == DepParseFactorTemplate.ARBITRARY_SIBLING) {
             SibFeTypedFactor f2 = (SibFeTypedFactor)f;
-            BitshiftDepParseFeatures.addArbitrarySiblingFeats(isent, f2.p, f2.c, f2.s, feats, prm);
+            addFeatures(ft, f2.p, f2.c, f2.s, feats);
         } else if (ft == DepParseFactorTemplate.GRANDPARENT) {
             GraFeTypedFactor f2 = (GraFeTypedFactor)f;
-            BitshiftDepParseFeatures.addGrandparentFeats(isent, f2.g, f2.p, f2.c, feats, prm);
+            addFeatures(ft, f2.p, f2.c, f2.g, feats);
         } else if (ft == DepParseFactorTemplate.HEAD_BIGRAM) {
             HbFeTypedFactor f2 = (HbFeTypedFactor)f;
-            BitshiftDepParseFeatures.addTurboHeadBigramFeats(isent, f2.p, f2.c, f2.p_other, feats, prm);
+            addFeatures(ft, f2.p, f2.c, f2.p_other, feats);
+        } else {
+            throw new RuntimeException("Unsupported template: " + ft);
+        }
+    }
+    
+    /**
+     * Adds the features for a factor of the given type, assuming all of its edges are "on".
+     * 
+     * @param ft The factor type.
+     * @param p The parent.
+     * @param c The child.
+     * @param x The third position of a second-order factor: the grandparent, sibling, or the
+     *            parent of the token preceding the child (for head-bigrams). Ignored for unary
+     *            factors.
+     * @param feats The output feature vector.
+     */
+    void addFeatures(Enum<?> ft, int p, int c, int x, FeatureVector feats) {
+        if (ft == DepParseFactorTemplate.UNARY) {
+            BitshiftDepParseFeatures.addArcFeats(isent, p, c, prm, feats);
+        } else if (ft == DepParseFactorTemplate.ARBITRARY_SIBLING) {
+            BitshiftDepParseFeatures.addArbitrarySiblingFeats(isent, p, c, x, feats, prm, pairCache);
+        } else if (ft == DepParseFactorTemplate.GRANDPARENT) {
+            BitshiftDepParseFeatures.addGrandparentFeats(isent, x, p, c, feats, prm, pairCache);
+        } else if (ft == DepParseFactorTemplate.HEAD_BIGRAM) {
+            BitshiftDepParseFeatures.addTurboHeadBigramFeats(isent, p, c, x, feats, prm);
         } else {
             throw new RuntimeException("Unsupported template: " + ft);
         }
-        
-        return feats;
     }
         
 }
@@ -15,6 +15,8 @@ import static edu.jhu.nlp.features.BitPacking.encodeFeatureSSS_;
 import static edu.jhu.nlp.features.BitPacking.encodeFeatureSS__;
 import static edu.jhu.nlp.features.BitPacking.encodeFeatureS___;
 
+import java.util.Arrays;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -365,6 +367,71 @@ public class BitshiftDepParseFeatures {
         WALL_MORPHO.add((short)TOK_WALL_INT);
     }
     
+    /**
+     * Per-sentence cache of the hashed TurboParser word-pair features.
+     * 
+     * The second-order feature sets add the full set of word-pair features for one pair of the
+     * tokens in each triple (e.g. grandparent-modifier or modifier-sibling). Those features depend
+     * only on the pair and the pair type, so we compute them once per pair and replay the hashed
+     * indices for every triple in which the pair occurs. This turns the dominant O(n^3) term of
+     * second-order feature extraction into O(n^2) feature extraction plus O(n^3) array copies. The
+     * resulting features are identical to those from
+     * {@link BitshiftDepParseFeatures#addTurboWordPairFeats(IntAnnoSentence, int, int, byte, FeatureVector, BitshiftDepParseFeatureExtractorPrm)}.
+     * 
+     * The head-bigram features are not cached: every one of them (other than the bias) conjoins
+     * the words or tags of all four tokens of the two arcs, so no subset of them is shared between
+     * factors.
+     * 
+     * This class is not thread safe.
+     */
+    public static class WordPairFeatureCache {
+        
+        private final IntAnnoSentence sent;
+        private final BitshiftDepParseFeatureExtractorPrm prm;
+        // Indexed by pair type, head+1, modifier+1. Each entry is lazily computed.
+        private final int[][][][] cache;
+        
+        public WordPairFeatureCache(IntAnnoSentence sent, BitshiftDepParseFeatureExtractorPrm prm) {
+            this.sent = sent;
+            this.prm = prm;
+            this.cache = new int[FeatureCollection.MAX_VAL+1][][][];
+        }
+        
+        /** Adds the (cached) word pair features to the given feature vector. */
+        public void addTurboWordPairFeats(int head, int modifier, byte pairType, FeatureVector feats) {
+            int[][][] byPair = cache[pairType];
+            if (byPair == null) {
+                byPair = new int[sent.size()+1][sent.size()+1][];
+                cache[pairType] = byPair;
+            }
+            int[] idxs = byPair[head+1][modifier+1];
+            if (idxs == null) {
+                FeatureVector pairFeats = new FeatureVector();
+                BitshiftDepParseFeatures.addTurboWordPairFeats(sent, head, modifier, pairType, pairFeats, prm);
+                idxs = Arrays.copyOf(pairFeats.getInternalIndices(), pairFeats.getUsed());
+                byPair[head+1][modifier+1] = idxs;
+            }
+            // All features added by addFeat() have value 1.0.
+            for (int k=0; k<idxs.length; k++) {
+                feats.add(idxs[k], 1.0);
+            }
+        }
+        
+    }
+    
+    /** 
+     * Adds the word pair features either from the cache or, if the cache is null, by extracting
+     * them directly.
+     */
+    private static void addTurboWordPairFeats(final IntAnnoSentence sent, final int head, final int modifier, final byte pairType, 
+            final FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm, WordPairFeatureCache pairCache) {
+        if (pairCache != null) {
+            pairCache.addTurboWordPairFeats(head, modifier, pairType, feats);
+        } else {
+            addTurboWordPairFeats(sent, head, modifier, pairType, feats, prm);
+        }
+    }
+    
     public static void addArcFeats(IntAnnoSentence sent, int head, int modifier, BitshiftDepParseFeatureExtractorPrm prm, FeatureVector feats) {
         if (prm.useMstFeats) {
             BitshiftDepParseFeatures.addArcFactoredMSTFeats(sent, head, modifier, FeatureCollection.ARC, feats, prm.basicOnly, prm.useCoarseTags, prm.featureHashMod);
@@ -1133,28 +1200,46 @@ public class BitshiftDepParseFeatures {
 
     public static void addArbitrarySiblingFeats(IntAnnoSentence sent, int head, int modifier, int sibling,
             FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm) {
+        addArbitrarySiblingFeats(sent, head, modifier, sibling, feats, prm, null);
+    }
+
+    /** Adds arbitrary sibling features, using the (possibly null) cache for the word pair features. */
+    public static void addArbitrarySiblingFeats(IntAnnoSentence sent, int head, int modifier, int sibling,
+            FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm, WordPairFeatureCache pairCache) {
         if (prm.useCarerrasFeats) {
             addCarerrasSiblingFeats(sent, head, modifier, sibling, feats, prm.featureHashMod, false);
         } else {
-            addTurboArbitrarySiblingFeats(sent, head, modifier, sibling, feats, prm);
+            addTurboSiblingFeats(sent, head, modifier, sibling, feats, prm, false, pairCache);
         }
     }
 
     public static void addConsecutiveSiblingFeats(IntAnnoSentence sent, int head, int modifier, int sibling,
             FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm) {
+        addConsecutiveSiblingFeats(sent, head, modifier, sibling, feats, prm, null);
+    }
+
+    /** Adds consecutive sibling features, using the (possibly null) cache for the word pair features. */
+    public static void addConsecutiveSiblingFeats(IntAnnoSentence sent, int head, int modifier, int sibling,
+            FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm, WordPairFeatureCache pairCache) {
         if (prm.useCarerrasFeats) {
             addCarerrasSiblingFeats(sent, head, modifier, sibling, feats, prm.featureHashMod, true);
         } else {
-            addTurboConsecutiveSiblingFeats(sent, head, modifier, sibling, feats, prm);
+            addTurboSiblingFeats(sent, head, modifier, sibling, feats, prm, true, pairCache);
         }
     }
     
     public static void addGrandparentFeats(IntAnnoSentence sent, int grandparent, int head, int modifier,
             FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm) {
+        addGrandparentFeats(sent, grandparent, head, modifier, feats, prm, null);
+    }
+
+    /** Adds grandparent features, using the (possibly null) cache for the word pair features. */
+    public static void addGrandparentFeats(IntAnnoSentence sent, int grandparent, int head, int modifier,
+            FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm, WordPairFeatureCache pairCache) {
         if (prm.useCarerrasFeats) {
             addCarerrasGrandparentFeats(sent, grandparent, head, modifier, feats, prm.featureHashMod);
         } else {
-            addTurboGrandparentFeats(sent, grandparent, head, modifier, feats, prm);
+            addTurboGrandparentFeats(sent, grandparent, head, modifier, feats, prm, pairCache);
         }
     }
     
@@ -1272,18 +1357,19 @@ public class BitshiftDepParseFeatures {
     /** Adds the features for consecutive siblings from TurboParser (Martins et al., 2013). */
     public static void addTurboConsecutiveSiblingFeats(final IntAnnoSentence sent, final int head, final int modifier, final int sibling, 
             final FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm) {
-        addTurboSiblingFeats(sent, head, modifier, sibling, feats, prm, true);
+        addTurboSiblingFeats(sent, head, modifier, sibling, feats, prm, true, null);
     }
     
     /** Adds the features for arbitrary siblings from TurboParser (Martins et al., 2013). */
     public static void addTurboArbitrarySiblingFeats(final IntAnnoSentence sent, final int head, final int modifier, final int sibling, 
             final FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm) {
-        addTurboSiblingFeats(sent, head, modifier, sibling, feats, prm, false);
+        addTurboSiblingFeats(sent, head, modifier, sibling, feats, prm, false, null);
     }
     
     /** Can be used for any type of sibling features. */
     private static void addTurboSiblingFeats(final IntAnnoSentence sent, final int head, final int modifier, final int sibling, 
-            final FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm, final boolean consecutive) {
+            final FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm, final boolean consecutive,
+            WordPairFeatureCache pairCache) {
         final int mod = prm.featureHashMod;
         final boolean useCoarseTags = prm.useCoarseTags;
         final boolean useTrilexicalFeats = prm.useTrilexicalFeats;
@@ -1298,7 +1384,7 @@ public class BitshiftDepParseFeatures {
         if (usePairFor2ndOrder) {
             byte pairType = consecutive ? FeatureCollection.CONS_SIBL_M_S : FeatureCollection.ARBI_SIBL_M_S;
             if (consecutive || usePairFor2ndOrderArbiSibl) {
-                addTurboWordPairFeats(sent, modifier, sibling, pairType, feats, prm);
+                addTurboWordPairFeats(sent, modifier, sibling, pairType, feats, prm, pairCache);
             }
         }
 
@@ -1320,6 +1406,12 @@ public class BitshiftDepParseFeatures {
     public static void addTurboGrandparentFeats(final IntAnnoSentence sent, final int grandparent, final int head, 
             final int modifier,             
             final FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm) {
+        addTurboGrandparentFeats(sent, grandparent, head, modifier, feats, prm, null);
+    }
+    
+    private static void addTurboGrandparentFeats(final IntAnnoSentence sent, final int grandparent, final int head, 
+            final int modifier, final FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm,
+            WordPairFeatureCache pairCache) {
         final int mod = prm.featureHashMod;
         final boolean useCoarseTags = prm.useCoarseTags;
         final boolean useTrilexicalFeats = prm.useTrilexicalFeats;
@@ -1329,9 +1421,9 @@ public class BitshiftDepParseFeatures {
 
         if (usePairFor2ndOrder) {
             if (useUpperGrandDepFeats) {
-                addTurboWordPairFeats(sent, grandparent, head, FeatureCollection.GRANDPARENT_G_H, feats, prm);
+                addTurboWordPairFeats(sent, grandparent, head, FeatureCollection.GRANDPARENT_G_H, feats, prm, pairCache);
             }
-            addTurboWordPairFeats(sent, grandparent, modifier, FeatureCollection.GRANDPARENT_G_M, feats, prm);
+            addTurboWordPairFeats(sent, grandparent, modifier, FeatureCollection.GRANDPARENT_G_M, feats, prm, pairCache);
         }
         
         // Create flags.
@@ -1340,7 +1432,7 @@ public class BitshiftDepParseFeatures {
         flags |= direction << 4; // 2 bits.  
 
         if (useNonprojGrandDepFeats && direction == 0x2) {
-            addTurboWordPairFeats(sent, grandparent, modifier, FeatureCollection.GRANDPARENT_NONPROJ_H_M, feats, prm);
+            addTurboWordPairFeats(sent, grandparent, modifier, FeatureCollection.GRANDPARENT_NONPROJ_H_M, feats, prm, pairCache);
         }
 
         addTurboTripletFeats(sent, head, modifier, grandparent, flags, feats, mod, useCoarseTags, useTrilexicalFeats);
@@ -1433,7 +1525,11 @@ public class BitshiftDepParseFeatures {
         }
     }
 
-    /** Adds the features for head-bigrams from TurboParser (Martins et al., 2013). */
+    /**
+     * Adds the features for head-bigrams from TurboParser (Martins et al., 2013). Unlike the
+     * second-order features, these include no word pair features, so they are not extracted through
+     * a {@link WordPairFeatureCache}.
+     */
     public static void addTurboHeadBigramFeats(final IntAnnoSentence sent, final int head, final int modifier,
             final int headB, final FeatureVector feats, BitshiftDepParseFeatureExtractorPrm prm) {
         final int mod = prm.featureHashMod;
@@ -6,6 +6,7 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.jhu.nlp.data.DepEdgeMask;
 import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.pacaya.gm.app.Decoder;
 import edu.jhu.pacaya.gm.data.UFgExample;
@@ -18,6 +19,7 @@ import edu.jhu.pacaya.hypergraph.depparse.InsideOutsideDepParse;
 import edu.jhu.pacaya.parse.dep.EdgeScores;
 import edu.jhu.pacaya.parse.dep.ParentsArray;
 import edu.jhu.pacaya.parse.dep.ProjectiveDependencyParser;
+import edu.jhu.pacaya.util.Prm;
 
 /**
  * Decodes from the marginals of a factor graph for dependency parsing to an int[] representing
@@ -30,8 +32,26 @@ import edu.jhu.pacaya.parse.dep.ProjectiveDependencyParser;
  */
 public class DepParseDecoder implements Decoder<AnnoSentence, int[]> {
 
+    public static class DepParseDecoderPrm extends Prm {
+        private static final long serialVersionUID = 1L;
+        /** Whether to decode a projective tree (Eisner) or a non-projective tree (Chu-Liu/Edmonds). */
+        public boolean projective = true;
+        /** Whether to disallow the edges pruned by the sentence's {@link DepEdgeMask}. */
+        public boolean useDepEdgeMask = false;
+    }
+    
     private static final Logger log = LoggerFactory.getLogger(DepParseDecoder.class);
 
+    private DepParseDecoderPrm prm;
+    
+    public DepParseDecoder() {
+        this(new DepParseDecoderPrm());
+    }
+    
+    public DepParseDecoder(DepParseDecoderPrm prm) {
+        this.prm = prm;
+    }
+
     /**
      * Decodes by computing the MBR tree under an accuracy loss function.
      */
@@ -42,7 +62,10 @@ public class DepParseDecoder implements Decoder<AnnoSentence, int[]> {
         // Build up the beliefs about the link variables (if present),
         // and compute the MBR dependency parse.
         EdgeScores scores = DepParseDecoder.getEdgeScores(inf, fg, n);
-        return DepParseDecoder.getParents(scores);
+        if (prm.useDepEdgeMask && sent.getDepEdgeMask() != null) {
+            applyDepEdgeMask(scores, sent.getDepEdgeMask());
+        }
+        return DepParseDecoder.getParents(scores, prm.projective);
     }
 
     /**
@@ -50,18 +73,50 @@ public class DepParseDecoder implements Decoder<AnnoSentence, int[]> {
      * the edge scores.
      */
     public static int[] getParents(EdgeScores scores) {
-        // 
+        return getParents(scores, true);
+    }
+
+    /**
+     * Get MBR parse, by finding the argmax (projective or non-projective) tree where we treat the
+     * score of a tree as the sum of the edge scores.
+     */
+    public static int[] getParents(EdgeScores scores, boolean projective) {
         int n = scores.root.length;
         int[] parents = new int[n];
         Arrays.fill(parents, ParentsArray.EMPTY_POSITION);
-        if (InsideOutsideDepParse.singleRoot) {
-            ProjectiveDependencyParser.parseSingleRoot(scores.root, scores.child, parents);
+        if (projective) {
+            if (InsideOutsideDepParse.singleRoot) {
+                ProjectiveDependencyParser.parseSingleRoot(scores.root, scores.child, parents);
+            } else {
+                ProjectiveDependencyParser.parseMultiRoot(scores.root, scores.child, parents);
+            }
         } else {
-            ProjectiveDependencyParser.parseMultiRoot(scores.root, scores.child, parents);
+            if (InsideOutsideDepParse.singleRoot) {
+                MstDependencyParser.parseSingleRoot(scores.root, scores.child, parents);
+            } else {
+                MstDependencyParser.parseMultiRoot(scores.root, scores.child, parents);
+            }
         }
         return parents;
     }
 
+    /** Sets the score of each edge pruned by the mask to negative infinity. */
+    static void applyDepEdgeMask(EdgeScores scores, DepEdgeMask mask) {
+        int n = scores.root.length;
+        for (int p=-1; p<n; p++) {
+            for (int c=0; c<n; c++) {
+                if (p == c) { continue; }
+                if (mask.isPruned(p, c)) {
+                    if (p == -1) {
+                        scores.root[c] = Double.NEGATIVE_INFINITY;
+                    } else {
+                        scores.child[p][c] = Double.NEGATIVE_INFINITY;
+                    }
+                }
+            }
+        }
+    }
+
     // Package-private for DepEdgeMaskDecoder.
     static EdgeScores getEdgeScores(FgInferencer inf, FactorGraph fg, int n) {
         List<Var> vars = fg.getVars();
@@ -122,8 +122,23 @@ public class DepParseFactorGraphBuilder implements Serializable {
     // The sentence length.
     private int n;
 
+    // Optional persistent store of the features, shared across builders.
+    private transient DepParseFeatureStore store;
+
     public DepParseFactorGraphBuilder(DepParseFactorGraphBuilderPrm prm) {        
+        this(prm, null);
+    }
+
+    /**
+     * Constructs a builder which reads the features from the given store.
+     * 
+     * @param prm The parameters.
+     * @param store The feature store (which must have been opened with the same parameters) or null
+     *            to extract the features for each factor graph. Only used with the fast features.
+     */
+    public DepParseFactorGraphBuilder(DepParseFactorGraphBuilderPrm prm, DepParseFeatureStore store) {
         this.prm = prm;
+        this.store = store;
     }
 
     /**
@@ -134,13 +149,22 @@ public class DepParseFactorGraphBuilder implements Serializable {
         FeatureExtractor fe = prm.dpFePrm.onlyFast ?
                 new BitshiftDepParseFeatureExtractor(prm.bsDpFePrm, isent, cs, ofc) :
                 new DepParseFeatureExtractor(prm.dpFePrm, sent, cs, ofc.getFeAlphabet());
-        build(sent.getWords(), sent.getDepEdgeMask(), fe, fg);
+        DepEdgeMask depEdgeMask = prm.pruneEdges ? sent.getDepEdgeMask() : null;
+        DepParseStructure st = new DepParseStructure(prm, sent.size(), depEdgeMask);
+        if (store != null && fe instanceof BitshiftDepParseFeatureExtractor) {
+            fe = store.getFeatureExtractor(isent, depEdgeMask, st, (BitshiftDepParseFeatureExtractor) fe);
+        }
+        build(sent.getWords(), st, fe, fg);
     }
     
     /**
      * Adds factors and variables to the given factor graph.
      */
     public void build(List<String> words, DepEdgeMask depEdgeMask, FeatureExtractor fe, FactorGraph fg) {
+        build(words, new DepParseStructure(prm, words.size(), prm.pruneEdges ? depEdgeMask : null), fe, fg);
+    }
+    
+    private void build(List<String> words, DepParseStructure st, FeatureExtractor fe, FactorGraph fg) {
         this.n = words.size();
         
         // Create the Link variables.
@@ -168,100 +192,57 @@ public class DepParseFactorGraphBuilder implements Serializable {
             }
         }
         
-        if (!prm.pruneEdges || depEdgeMask == null) {
-            // Keep all edges
-            depEdgeMask = new DepEdgeMask(words.size(), true);
-        }
-        
-        addClampFactors(fg, depEdgeMask, fe);
-        if (prm.unaryFactors) { addUnaryFactors(fg, depEdgeMask, fe); }
-        if (prm.grandparentFactors) { addGrandparentFactors(fg, depEdgeMask, fe); }
-        if (prm.arbitrarySiblingFactors) { addArbitrarySiblingFactors(fg, depEdgeMask, fe); }
-        if (prm.headBigramFactors) { addHeadBigramFactors(fg, depEdgeMask, fe); }
+        addClampFactors(fg, st.getClamps());
+        addUnaryFactors(fg, st.getUnaries(), fe);
+        addGrandparentFactors(fg, st.getGrandparents(), fe);
+        addArbitrarySiblingFactors(fg, st.getSiblings(), fe);
+        addHeadBigramFactors(fg, st.getHeadBigrams(), fe);
     }
 
-    private void addClampFactors(FactorGraph fg, DepEdgeMask depEdgeMask, FeatureExtractor fe) {
+    private void addClampFactors(FactorGraph fg, int[] clamps) {
         // Add factors clamping the pruned edges to be "off".
-        for (int p = -1; p < n; p++) {
-            for (int c = 0; c < n; c++) {
-                if (p == c) { continue; }
-                LinkVar pcVar = getLinkVar(p, c);
-                if (pcVar == null) { continue; }
-                if (depEdgeMask.isPruned(p, c)) {
-                    // This edge will never be "on".
-                    fg.addFactor(new ClampFactor(pcVar, LinkVar.FALSE));
-                }
-            }
+        for (int k = 0; k < clamps.length; k += 2) {
+            // This edge will never be "on".
+            fg.addFactor(new ClampFactor(getLinkVar(clamps[k], clamps[k+1]), LinkVar.FALSE));
         }
     }
     
-    private void addUnaryFactors(FactorGraph fg, DepEdgeMask depEdgeMask, FeatureExtractor fe) {
+    private void addUnaryFactors(FactorGraph fg, int[] unaries, FeatureExtractor fe) {
         // Add unary factors on root / child Links.
-        for (int p = -1; p < n; p++) {
-            for (int c = 0; c < n; c++) {
-                if (p == c) { continue; }
-                LinkVar pcVar = getLinkVar(p, c);
-                if (pcVar == null) { continue; }
-                if (depEdgeMask.isPruned(p, c)) { continue; }
-                fg.addFactor(new FeTypedFactor(new VarSet(pcVar), DepParseFactorTemplate.UNARY, fe));
-            }
+        for (int k = 0; k < unaries.length; k += 2) {
+            LinkVar pcVar = getLinkVar(unaries[k], unaries[k+1]);
+            fg.addFactor(new FeTypedFactor(new VarSet(pcVar), DepParseFactorTemplate.UNARY, fe));
         }
     }
     
-    private void addGrandparentFactors(FactorGraph fg, DepEdgeMask depEdgeMask, FeatureExtractor fe) {
+    private void addGrandparentFactors(FactorGraph fg, int[] grandparents, FeatureExtractor fe) {
         // Add grandparent factors.
-        for (int g = -1; g < n; g++) {
-            for (int p = 0; p < n; p++) {
-                if (g == p) { continue; }
-                LinkVar gpVar = getLinkVar(g, p);
-                if (depEdgeMask.isPruned(g, p) || gpVar == null) { continue; }
-                for (int c = 0; c < n; c++) {
-                    if (g == c || p == c) { continue; }                  
-                    LinkVar pcVar = getLinkVar(p, c);
-                    if (pcVar == null || depEdgeMask.isPruned(p, c)) { continue; }
-                    boolean isNonprojectiveGrandparent = (g < p && c < g) || (p < g && g < c);
-                    if (prm.excludeNonprojectiveGrandparents && isNonprojectiveGrandparent) { continue; }  
-                    fg.addFactor(new GraFeTypedFactor(new VarSet(gpVar, pcVar), DepParseFactorTemplate.GRANDPARENT, fe, p, c, g));
-                }
-            }
+        for (int k = 0; k < grandparents.length; k += 3) {
+            int p = grandparents[k], c = grandparents[k+1], g = grandparents[k+2];
+            LinkVar gpVar = getLinkVar(g, p);
+            LinkVar pcVar = getLinkVar(p, c);
+            fg.addFactor(new GraFeTypedFactor(new VarSet(gpVar, pcVar), DepParseFactorTemplate.GRANDPARENT, fe, p, c, g));
         }
     }
     
-    private void addArbitrarySiblingFactors(FactorGraph fg, DepEdgeMask depEdgeMask, FeatureExtractor fe) {
+    private void addArbitrarySiblingFactors(FactorGraph fg, int[] siblings, FeatureExtractor fe) {
         // Add arbitrary sibling factors.
-        for (int p = -1; p < n; p++) {
-            for (int c = 0; c < n; c++) {
-                if (p == c) { continue; }
-                LinkVar pcVar = getLinkVar(p, c);
-                if (depEdgeMask.isPruned(p, c) || pcVar == null) { continue; }
-                for (int s = 0; s < n; s++) {
-                    if (p == s || c == s) { continue; }
-                    LinkVar psVar = getLinkVar(p, s);
-                    if (psVar == null || depEdgeMask.isPruned(p, s)) { continue; }
-                    if (c < s) {
-                        fg.addFactor(new SibFeTypedFactor(new VarSet(pcVar, psVar), DepParseFactorTemplate.ARBITRARY_SIBLING, fe, p, c, s));                        
-                    }
-                }
-            }
+        for (int k = 0; k < siblings.length; k += 3) {
+            int p = siblings[k], c = siblings[k+1], s = siblings[k+2];
+            LinkVar pcVar = getLinkVar(p, c);
+            LinkVar psVar = getLinkVar(p, s);
+            fg.addFactor(new SibFeTypedFactor(new VarSet(pcVar, psVar), DepParseFactorTemplate.ARBITRARY_SIBLING, fe, p, c, s));
         }
     }
     
-    private void addHeadBigramFactors(FactorGraph fg, DepEdgeMask depEdgeMask, FeatureExtractor fe) {
+    private void addHeadBigramFactors(FactorGraph fg, int[] headBigrams, FeatureExtractor fe) {
         // Add head-bigram factors.
-        for (int p = -1; p < n; p++) {
-            // Exclude the bigram consisting of the wall and the first token in the sentence.
-            for (int c = 1; c < n; c++) {
-                if (p == c) { continue; }
-                LinkVar pcVar = getLinkVar(p, c);
-                if (depEdgeMask.isPruned(p, c) || pcVar == null) { continue; }
-                for (int p_other = -1; p_other < n; p_other++) {
-                    if (p_other == c-1) { continue; }
-                    LinkVar pcOtherVar = getLinkVar(p_other, c-1);
-                    if (pcOtherVar == null || depEdgeMask.isPruned(p_other, c-1)) { continue; }
-                    fg.addFactor(new HbFeTypedFactor(new VarSet(pcVar, pcOtherVar), DepParseFactorTemplate.HEAD_BIGRAM, fe, p, c, p_other));
-                    log.trace("Added head-bigram factor: parent={} child={} other-parent={} other-child={}", p, c, p_other, c-1);
-                }
-            }
+        for (int k = 0; k < headBigrams.length; k += 3) {
+            int p = headBigrams[k], c = headBigrams[k+1], p_other = headBigrams[k+2];
+            LinkVar pcVar = getLinkVar(p, c);
+            LinkVar pcOtherVar = getLinkVar(p_other, c-1);
+            fg.addFactor(new HbFeTypedFactor(new VarSet(pcVar, pcOtherVar), DepParseFactorTemplate.HEAD_BIGRAM, fe, p, c, p_other));
+            log.trace("Added head-bigram factor: parent={} child={} other-parent={} other-child={}", p, c, p_other, c-1);
         }
     }
 
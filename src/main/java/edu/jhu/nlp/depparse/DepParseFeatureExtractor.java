@@ -13,6 +13,7 @@ import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.DepParseFactorTemplate;
 import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.GraFeTypedFactor;
 import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.SibFeTypedFactor;
+import edu.jhu.nlp.features.ConcurrentFeatureNames;
 import edu.jhu.nlp.features.FeaturizedSentence;
 import edu.jhu.nlp.features.LocalObservations;
 import edu.jhu.nlp.features.TemplateFeatureExtractor;
@@ -51,14 +52,14 @@ public class DepParseFeatureExtractor implements FeatureExtractor {
     private static final Logger log = LoggerFactory.getLogger(DepParseFeatureExtractor.class); 
     
     private DepParseFeatureExtractorPrm prm;
-    private FeatureNames alphabet;
+    private ConcurrentFeatureNames alphabet;
     private TemplateFeatureExtractor ext;
     
     public DepParseFeatureExtractor(DepParseFeatureExtractorPrm prm, AnnoSentence sent, CorpusStatistics cs, FeatureNames alphabet) {
         this.prm = prm;
         FeaturizedSentence fSent = new FeaturizedSentence(sent, cs);
         ext = new TemplateFeatureExtractor(fSent, cs);
-        this.alphabet = alphabet;
+        this.alphabet = ConcurrentFeatureNames.get(alphabet);
     }
 
     private final FeatureVector emptyFv = new FeatureVector();
@@ -0,0 +1,562 @@
+package edu.jhu.nlp.depparse;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.nlp.FeTypedFactor;
+import edu.jhu.nlp.ScoringFeatureExtractor;
+import edu.jhu.nlp.data.DepEdgeMask;
+import edu.jhu.nlp.data.simple.IntAnnoSentence;
+import edu.jhu.nlp.depparse.BitshiftDepParseFeatureExtractor.BitshiftDepParseFeatureExtractorPrm;
+import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.DepParseFactorGraphBuilderPrm;
+import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.DepParseFactorTemplate;
+import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.GraFeTypedFactor;
+import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.HbFeTypedFactor;
+import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.SibFeTypedFactor;
+import edu.jhu.pacaya.gm.feat.FeatureVector;
+import edu.jhu.pacaya.gm.model.FeExpFamFactor;
+import edu.jhu.pacaya.gm.model.globalfac.LinkVar;
+import edu.jhu.prim.list.DoubleArrayList;
+import edu.jhu.prim.list.IntArrayList;
+import edu.jhu.prim.vector.IntDoubleVector;
+
+/**
+ * Persistent, append-only store of the hashed dependency parsing features for each sentence. The
+ * first time a sentence is seen, the features of all its factors are extracted once and appended to
+ * the store. Thereafter (including in later runs with the same feature templates) the features are
+ * read from a memory-mapped view of the file, without any feature extraction.
+ *
+ * Records are keyed by a fingerprint of the sentence's integer representation and its pruning
+ * mask, so the store may be shared by different corpora and the order of the sentences is
+ * irrelevant. Each record also holds the sentence length and a second fingerprint computed with a
+ * different hash function, which are checked on every hit so that a collision of the first
+ * fingerprint falls back to extracting the features. Each store file is specific to the factor
+ * graph and feature parameters: its name includes a signature of the parameters, which is also
+ * checked against the file header.
+ *
+ * Record layout (big endian):
+ * <pre>
+ * int length (in bytes, including this field)
+ * long fingerprint
+ * long checkFingerprint
+ * int numWords
+ * int numFactors
+ * int[numFactors+1] starts (offsets of each factor's features)
+ * int[numFeats] indices
+ * float[numFeats] values
+ * </pre>
+ *
+ * Only one process may append to a store at a time. If another process holds the lock on the file,
+ * the store is opened read-only: existing records are used, but no new records are written.
+ *
+ * Stores are shared within a JVM: each call to {@link #getInstance(File, DepParseFactorGraphBuilderPrm)}
+ * must be matched by a call to {@link #close()}, and the file is closed when the last user closes it.
+ *
+ * This class is thread-safe.
+ *
+ * @author mgormley
+ */
+public class DepParseFeatureStore implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(DepParseFeatureStore.class);
+
+    private static final int MAGIC = 0x44504653;
+    private static final int VERSION = 2;
+    private static final int FILE_HEADER_BYTES = 4 + 4 + 8;
+    private static final int RECORD_HEADER_BYTES = 4 + 8 + 8 + 4 + 4;
+    // Offsets of the fields in the record header.
+    private static final int FINGERPRINT_OFF = 4;
+    private static final int CHECK_FINGERPRINT_OFF = 12;
+    private static final int NUM_WORDS_OFF = 20;
+    private static final int NUM_FACTORS_OFF = 24;
+    /** The maximum size of a memory-mapped segment of the file. */
+    private static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+    // The open stores, keyed by file path.
+    private static final Map<String, DepParseFeatureStore> stores = new ConcurrentHashMap<>();
+
+    /** A contiguous region of the file that contains only whole records. */
+    private static class Segment {
+        final long start;
+        volatile long end;
+        volatile MappedByteBuffer buf;
+        public Segment(long start) {
+            this.start = start;
+            this.end = start;
+        }
+    }
+
+    private final File file;
+    private final long signature;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final FileLock lock;
+    // Map from fingerprint to the offset of the record in the file.
+    private final Map<Long, Long> offsets = new ConcurrentHashMap<>();
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private long fileEnd;
+    private final AtomicLong numHits = new AtomicLong();
+    private final AtomicLong numAppends = new AtomicLong();
+    private final AtomicLong numCollisions = new AtomicLong();
+    // The number of callers of getInstance() which have not yet closed this store. Guarded by stores.
+    private int refCount = 0;
+
+    /**
+     * Gets the store for the given parameters in the given directory, opening it if necessary.
+     * Each set of parameters has its own file, which is shared by all callers in this JVM. The
+     * caller must {@link #close()} the store when done with it.
+     */
+    public static DepParseFeatureStore getInstance(File dir, DepParseFactorGraphBuilderPrm prm) throws IOException {
+        long signature = getSignature(prm);
+        File file = new File(dir, String.format("dp-features-%016x.bin", signature));
+        synchronized (stores) {
+            String key = file.getCanonicalPath();
+            DepParseFeatureStore store = stores.get(key);
+            if (store == null) {
+                dir.mkdirs();
+                store = new DepParseFeatureStore(file, signature);
+                stores.put(key, store);
+            }
+            store.refCount++;
+            return store;
+        }
+    }
+
+    private DepParseFeatureStore(File file, long signature) throws IOException {
+        this.file = file;
+        this.signature = signature;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        this.lock = channel.tryLock();
+        if (lock == null) {
+            log.info("Feature store is locked by another process. Opening read-only: " + file);
+        }
+        if (channel.size() >= FILE_HEADER_BYTES && hasValidHeader()) {
+            scanRecords();
+        } else if (isReadOnly()) {
+            fileEnd = channel.size();
+        } else {
+            if (channel.size() > 0) {
+                log.warn("Overwriting feature store with invalid header: " + file);
+            }
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(signature);
+            header.flip();
+            writeFully(header, 0);
+            fileEnd = FILE_HEADER_BYTES;
+        }
+        log.info(String.format("Opened feature store with %d sentences: %s", offsets.size(), file));
+    }
+
+    private boolean hasValidHeader() throws IOException {
+        ByteBuffer header = readFully(0, FILE_HEADER_BYTES);
+        return header.getInt(0) == MAGIC && header.getInt(4) == VERSION && header.getLong(8) == signature;
+    }
+
+    /** Reads the index of the records, truncating a partially written record at the end. */
+    private void scanRecords() throws IOException {
+        long size = channel.size();
+        long pos = FILE_HEADER_BYTES;
+        while (pos + RECORD_HEADER_BYTES <= size) {
+            ByteBuffer header = readFully(pos, RECORD_HEADER_BYTES);
+            int len = header.getInt(0);
+            if (len < RECORD_HEADER_BYTES || pos + len > size) {
+                break;
+            }
+            addToSegment(pos, len);
+            offsets.put(header.getLong(FINGERPRINT_OFF), pos);
+            pos += len;
+        }
+        if (pos < size && !isReadOnly()) {
+            log.warn("Truncating partially written record in feature store: " + file);
+            channel.truncate(pos);
+        }
+        fileEnd = pos;
+    }
+
+    /**
+     * Gets a feature extractor for the given sentence which reads the features from this store. If
+     * the sentence is not yet in the store, its features are extracted with the given feature
+     * extractor and appended.
+     *
+     * @param isent The sentence.
+     * @param depEdgeMask The pruning mask used to build the factor graph, or null if all edges are kept.
+     * @param st The structure of the factor graph.
+     * @param fe The feature extractor to use for a sentence not yet in the store, or whose
+     *            fingerprint collides with that of another sentence in the store.
+     */
+    public ScoringFeatureExtractor getFeatureExtractor(IntAnnoSentence isent, DepEdgeMask depEdgeMask,
+            DepParseStructure st, BitshiftDepParseFeatureExtractor fe) {
+        long fingerprint = getFingerprint(isent.getFingerprint(), isent.size(), depEdgeMask, FNV_PRIME);
+        long checkFingerprint = getFingerprint(isent.getCheckFingerprint(), isent.size(), depEdgeMask, CHECK_PRIME);
+        try {
+            Long offset = offsets.get(fingerprint);
+            if (offset != null) {
+                Segment seg = getSegment(offset);
+                MappedByteBuffer buf = seg.buf;
+                long rel = offset - seg.start;
+                if (buf == null || rel >= buf.limit()) {
+                    buf = map(seg);
+                }
+                if (buf.getLong((int) rel + CHECK_FINGERPRINT_OFF) == checkFingerprint
+                        && buf.getInt((int) rel + NUM_WORDS_OFF) == isent.size()) {
+                    numHits.incrementAndGet();
+                    return new StoredFeatureExtractor(buf, (int) rel, st);
+                }
+                // A different sentence has the same fingerprint. Extract the features without
+                // storing them, since the record's slot is taken.
+                numCollisions.incrementAndGet();
+                log.debug("Fingerprint collision in feature store: " + fingerprint);
+                return new StoredFeatureExtractor(extract(fingerprint, checkFingerprint, isent.size(), st, fe), 0, st);
+            }
+            ByteBuffer rec = extract(fingerprint, checkFingerprint, isent.size(), st, fe);
+            if (!isReadOnly()) {
+                append(fingerprint, rec);
+            }
+            return new StoredFeatureExtractor(rec, 0, st);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Extracts the features of every factor in the structure into a new record. The features of
+     * each factor are copied into primitive lists as soon as they are extracted, so only one
+     * FeatureVector is live at a time.
+     */
+    private static ByteBuffer extract(long fingerprint, long checkFingerprint, int numWords, DepParseStructure st,
+            BitshiftDepParseFeatureExtractor fe) {
+        int numFactors = (st.getUnaries().length / 2) + (st.getGrandparents().length / 3)
+                + (st.getSiblings().length / 3) + (st.getHeadBigrams().length / 3);
+        int[] starts = new int[numFactors + 1];
+        IntArrayList idxs = new IntArrayList();
+        DoubleArrayList vals = new DoubleArrayList();
+        int k = 0;
+        int[] unaries = st.getUnaries();
+        for (int t = 0; t < unaries.length; t += 2) {
+            FeatureVector fv = new FeatureVector();
+            fe.addFeatures(DepParseFactorTemplate.UNARY, unaries[t], unaries[t+1], 0, fv);
+            k = add(fv, starts, idxs, vals, k);
+        }
+        k = extract(fe, DepParseFactorTemplate.GRANDPARENT, st.getGrandparents(), starts, idxs, vals, k);
+        k = extract(fe, DepParseFactorTemplate.ARBITRARY_SIBLING, st.getSiblings(), starts, idxs, vals, k);
+        k = extract(fe, DepParseFactorTemplate.HEAD_BIGRAM, st.getHeadBigrams(), starts, idxs, vals, k);
+        int numFeats = idxs.size();
+        starts[numFactors] = numFeats;
+
+        long len = RECORD_HEADER_BYTES + 4L * (numFactors + 1) + 8L * numFeats;
+        if (len > MAX_SEGMENT_BYTES) {
+            throw new IllegalStateException("Too many features for a single record: " + numFeats);
+        }
+        ByteBuffer rec = ByteBuffer.allocate((int) len);
+        rec.putInt((int) len);
+        rec.putLong(fingerprint);
+        rec.putLong(checkFingerprint);
+        rec.putInt(numWords);
+        rec.putInt(numFactors);
+        for (int a = 0; a <= numFactors; a++) {
+            rec.putInt(starts[a]);
+        }
+        for (int j = 0; j < numFeats; j++) {
+            rec.putInt(idxs.get(j));
+        }
+        for (int j = 0; j < numFeats; j++) {
+            rec.putFloat((float) vals.get(j));
+        }
+        rec.flip();
+        return rec;
+    }
+
+    private static int extract(BitshiftDepParseFeatureExtractor fe, DepParseFactorTemplate ft, int[] triples,
+            int[] starts, IntArrayList idxs, DoubleArrayList vals, int k) {
+        for (int t = 0; t < triples.length; t += 3) {
+            FeatureVector fv = new FeatureVector();
+            fe.addFeatures(ft, triples[t], triples[t+1], triples[t+2], fv);
+            k = add(fv, starts, idxs, vals, k);
+        }
+        return k;
+    }
+
+    /** Appends the features of the k'th factor and returns k+1. */
+    private static int add(FeatureVector fv, int[] starts, IntArrayList idxs, DoubleArrayList vals, int k) {
+        starts[k] = idxs.size();
+        int[] fvIdxs = fv.getInternalIndices();
+        double[] fvVals = fv.getInternalValues();
+        for (int j = 0; j < fv.getUsed(); j++) {
+            idxs.add(fvIdxs[j]);
+            vals.add(fvVals[j]);
+        }
+        return k + 1;
+    }
+
+    private synchronized void append(long fingerprint, ByteBuffer rec) throws IOException {
+        if (offsets.containsKey(fingerprint)) {
+            // Another thread appended the same sentence.
+            return;
+        }
+        int len = rec.remaining();
+        long offset = fileEnd;
+        writeFully(rec.duplicate(), offset);
+        addToSegment(offset, len);
+        fileEnd += len;
+        offsets.put(fingerprint, offset);
+        numAppends.incrementAndGet();
+    }
+
+    /** Adds the record at the given offset to the last segment, or starts a new segment. */
+    private void addToSegment(long offset, int len) {
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last == null || offset + len - last.start > MAX_SEGMENT_BYTES) {
+            last = new Segment(offset);
+            segments.add(last);
+        }
+        last.end = offset + len;
+    }
+
+    private Segment getSegment(long offset) {
+        // Most lookups are in the last segment.
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment seg = segments.get(i);
+            if (seg.start <= offset) {
+                return seg;
+            }
+        }
+        throw new IllegalStateException("No segment contains offset: " + offset);
+    }
+
+    /** Maps the segment, including any records appended since it was last mapped. */
+    private synchronized MappedByteBuffer map(Segment seg) throws IOException {
+        if (seg.buf == null || seg.buf.limit() < seg.end - seg.start) {
+            seg.buf = channel.map(MapMode.READ_ONLY, seg.start, seg.end - seg.start);
+        }
+        return seg.buf;
+    }
+
+    private void writeFully(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+    }
+
+    private ByteBuffer readFully(long pos, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos + buf.position());
+            if (n < 0) {
+                throw new IOException("Unexpected end of feature store: " + file);
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    public boolean isReadOnly() {
+        return lock == null;
+    }
+
+    /** Gets the number of sentences in the store. */
+    public int size() {
+        return offsets.size();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Releases this caller's use of the store. The file is closed once every caller of
+     * {@link #getInstance(File, DepParseFactorGraphBuilderPrm)} has closed it.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (stores) {
+            if (refCount <= 0) {
+                return;
+            }
+            if (--refCount > 0) {
+                return;
+            }
+            stores.remove(file.getCanonicalPath());
+        }
+        log.info(String.format("Closing feature store: sentences=%d hits=%d appends=%d collisions=%d", offsets.size(),
+                numHits.get(), numAppends.get(), numCollisions.get()));
+        if (lock != null) {
+            lock.release();
+        }
+        channel.close();
+        raf.close();
+    }
+
+    /**
+     * Gets a signature of the parameters which determine the factor graph structure and the
+     * features: the factor types and the feature templates and hashing of the bitshift feature
+     * extractor. Options which only change how the features are computed or scored (e.g. streaming
+     * scores or caching of word pair features) are excluded, so that they share the same store. The
+     * alphabet is not included since records are keyed by the sentence's integer representation.
+     * 
+     * Any new option which changes the extracted features must be added here.
+     */
+    static long getSignature(DepParseFactorGraphBuilderPrm prm) {
+        BitshiftDepParseFeatureExtractorPrm fePrm = prm.bsDpFePrm;
+        long h = FNV_OFFSET;
+        // Factor graph structure.
+        h = hash(h, prm.unaryFactors);
+        h = hash(h, prm.grandparentFactors);
+        h = hash(h, prm.arbitrarySiblingFactors);
+        h = hash(h, prm.headBigramFactors);
+        h = hash(h, prm.excludeNonprojectiveGrandparents);
+        // Feature templates and hashing.
+        h = hash(h, fePrm.featureHashMod);
+        h = hash(h, fePrm.useMstFeats);
+        h = hash(h, fePrm.basicOnly);
+        h = hash(h, fePrm.useCarerrasFeats);
+        h = hash(h, fePrm.useCoarseTags);
+        h = hash(h, fePrm.maxTokenContext);
+        h = hash(h, fePrm.isLabeledParsing);
+        h = hash(h, fePrm.useLemmaFeats);
+        h = hash(h, fePrm.useMorphologicalFeats);
+        h = hash(h, fePrm.useNonTurboFeats);
+        h = hash(h, fePrm.usePairFor2ndOrder);
+        h = hash(h, fePrm.usePairFor2ndOrderArbiSibl);
+        h = hash(h, fePrm.useUpperGrandDepFeats);
+        h = hash(h, fePrm.useNonprojGrandDepFeats);
+        h = hash(h, fePrm.useTrilexicalFeats);
+        return h;
+    }
+
+    private static long hash(long h, boolean b) {
+        return hash(h, b ? 1 : 0);
+    }
+
+    private static long hash(long h, int x) {
+        for (int i = 0; i < 4; i++) {
+            h = (h ^ ((x >>> (8 * i)) & 0xff)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long CHECK_PRIME = 0x9e3779b97f4a7c15L;
+
+    /** Extends a fingerprint of a sentence with its pruning mask. */
+    private static long getFingerprint(long h, int n, DepEdgeMask depEdgeMask, long prime) {
+        for (int p = -1; p < n; p++) {
+            for (int c = 0; c < n; c++) {
+                if (p == c) { continue; }
+                boolean kept = (depEdgeMask == null) || depEdgeMask.isKept(p, c);
+                h = (h ^ (kept ? 1 : 0)) * prime;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Feature extractor which reads the features for each factor from a record. The factors must
+     * have been created from the same structure as the record.
+     */
+    private static class StoredFeatureExtractor implements ScoringFeatureExtractor {
+
+        private static final FeatureVector emptyFv = new FeatureVector();
+        private final ByteBuffer buf;
+        private final int startsOff;
+        private final int idxsOff;
+        private final int valsOff;
+        private final DepParseStructure st;
+        private final int numUnaries;
+        private final int numGrandparents;
+        private final int numSiblings;
+
+        public StoredFeatureExtractor(ByteBuffer buf, int base, DepParseStructure st) {
+            this.buf = buf;
+            this.st = st;
+            int numFactors = buf.getInt(base + NUM_FACTORS_OFF);
+            this.startsOff = base + RECORD_HEADER_BYTES;
+            this.idxsOff = startsOff + 4 * (numFactors + 1);
+            int numFeats = buf.getInt(startsOff + 4 * numFactors);
+            this.valsOff = idxsOff + 4 * numFeats;
+            this.numUnaries = st.getUnaries().length / 2;
+            this.numGrandparents = st.getGrandparents().length / 3;
+            this.numSiblings = st.getSiblings().length / 3;
+        }
+
+        @Override
+        public FeatureVector calcFeatureVector(FeExpFamFactor factor, int configId) {
+            // All the variables are binary LinkVars, so only the last configuration has every edge "on".
+            if (configId != factor.getVars().calcNumConfigs() - 1) {
+                return emptyFv;
+            }
+            int a = getSlot((FeTypedFactor) factor);
+            int start = buf.getInt(startsOff + 4 * a);
+            int end = buf.getInt(startsOff + 4 * (a + 1));
+            FeatureVector feats = new FeatureVector(end - start);
+            for (int j = start; j < end; j++) {
+                feats.add(buf.getInt(idxsOff + 4 * j), buf.getFloat(valsOff + 4 * j));
+            }
+            return feats;
+        }
+
+        @Override
+        public double calcScore(FeExpFamFactor factor, int configId, IntDoubleVector weights) {
+            if (configId != factor.getVars().calcNumConfigs() - 1) {
+                return 0.0;
+            }
+            int a = getSlot((FeTypedFactor) factor);
+            int start = buf.getInt(startsOff + 4 * a);
+            int end = buf.getInt(startsOff + 4 * (a + 1));
+            double dot = 0;
+            for (int j = start; j < end; j++) {
+                dot += buf.getFloat(valsOff + 4 * j) * weights.get(buf.getInt(idxsOff + 4 * j));
+            }
+            return dot;
+        }
+
+        /** Gets the position of the factor in the record. */
+        private int getSlot(FeTypedFactor f) {
+            Enum<?> ft = f.getFactorType();
+            int offset;
+            int idx;
+            if (ft == DepParseFactorTemplate.UNARY) {
+                LinkVar var = (LinkVar) f.getVars().get(0);
+                offset = 0;
+                idx = st.getUnaryIndex(var.getParent(), var.getChild());
+            } else if (ft == DepParseFactorTemplate.GRANDPARENT) {
+                GraFeTypedFactor f2 = (GraFeTypedFactor) f;
+                offset = numUnaries;
+                idx = st.getGrandparentIndex(f2.p, f2.c, f2.g);
+            } else if (ft == DepParseFactorTemplate.ARBITRARY_SIBLING) {
+                SibFeTypedFactor f2 = (SibFeTypedFactor) f;
+                offset = numUnaries + numGrandparents;
+                idx = st.getSiblingIndex(f2.p, f2.c, f2.s);
+            } else if (ft == DepParseFactorTemplate.HEAD_BIGRAM) {
+                HbFeTypedFactor f2 = (HbFeTypedFactor) f;
+                offset = numUnaries + numGrandparents + numSiblings;
+                idx = st.getHeadBigramIndex(f2.p, f2.c, f2.p_other);
+            } else {
+                throw new RuntimeException("Unsupported template: " + ft);
+            }
+            if (idx == -1) {
+                throw new IllegalStateException("Factor not in the stored structure: " + f);
+            }
+            return offset + idx;
+        }
+
+    }
+
+}
@@ -0,0 +1,194 @@
+package edu.jhu.nlp.depparse;
+
+import edu.jhu.nlp.data.DepEdgeMask;
+import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.DepParseFactorGraphBuilderPrm;
+import edu.jhu.prim.list.IntArrayList;
+
+/**
+ * The structure of a dependency parsing factor graph (which link variables are clamped off and
+ * which unary / second-order factors are included), given as flattened tuples of word positions
+ * (-1 for the wall). The structure depends only on the sentence length and the pruning mask.
+ * Instances are immutable.
+ *
+ * @author mgormley
+ */
+public class DepParseStructure {
+
+    /** The sentence length. */
+    private final int n;
+    /** Pairs (p, c) of pruned edges to be clamped off. */
+    private final int[] clamps;
+    /** Pairs (p, c) of edges with unary factors. */
+    private final int[] unaries;
+    /** Triples (p, c, g) for grandparent factors. */
+    private final int[] grandparents;
+    /** Triples (p, c, s) for arbitrary sibling factors. */
+    private final int[] siblings;
+    /** Triples (p, c, p_other) for head-bigram factors. */
+    private final int[] headBigrams;
+
+    /**
+     * Computes the structure.
+     *
+     * @param prm The factor graph parameters.
+     * @param n The sentence length.
+     * @param depEdgeMask The pruning mask, or null if all edges are kept.
+     */
+    public DepParseStructure(DepParseFactorGraphBuilderPrm prm, int n, DepEdgeMask depEdgeMask) {
+        this.n = n;
+        if (depEdgeMask == null) {
+            depEdgeMask = new DepEdgeMask(n, true);
+        }
+        IntArrayList tuples = new IntArrayList();
+
+        // Factors clamping the pruned edges to be "off".
+        for (int p = -1; p < n; p++) {
+            for (int c = 0; c < n; c++) {
+                if (p == c) { continue; }
+                if (depEdgeMask.isPruned(p, c)) {
+                    tuples.add(p);
+                    tuples.add(c);
+                }
+            }
+        }
+        clamps = tuples.toNativeArray();
+        tuples = new IntArrayList();
+
+        // Unary factors on root / child Links.
+        if (prm.unaryFactors) {
+            for (int p = -1; p < n; p++) {
+                for (int c = 0; c < n; c++) {
+                    if (p == c || depEdgeMask.isPruned(p, c)) { continue; }
+                    tuples.add(p);
+                    tuples.add(c);
+                }
+            }
+        }
+        unaries = tuples.toNativeArray();
+        tuples = new IntArrayList();
+
+        // Grandparent factors.
+        if (prm.grandparentFactors) {
+            for (int g = -1; g < n; g++) {
+                for (int p = 0; p < n; p++) {
+                    if (g == p || depEdgeMask.isPruned(g, p)) { continue; }
+                    for (int c = 0; c < n; c++) {
+                        if (g == c || p == c || depEdgeMask.isPruned(p, c)) { continue; }
+                        boolean isNonprojectiveGrandparent = (g < p && c < g) || (p < g && g < c);
+                        if (prm.excludeNonprojectiveGrandparents && isNonprojectiveGrandparent) { continue; }
+                        tuples.add(p);
+                        tuples.add(c);
+                        tuples.add(g);
+                    }
+                }
+            }
+        }
+        grandparents = tuples.toNativeArray();
+        tuples = new IntArrayList();
+
+        // Arbitrary sibling factors.
+        if (prm.arbitrarySiblingFactors) {
+            for (int p = -1; p < n; p++) {
+                for (int c = 0; c < n; c++) {
+                    if (p == c || depEdgeMask.isPruned(p, c)) { continue; }
+                    for (int s = c + 1; s < n; s++) {
+                        if (p == s || depEdgeMask.isPruned(p, s)) { continue; }
+                        tuples.add(p);
+                        tuples.add(c);
+                        tuples.add(s);
+                    }
+                }
+            }
+        }
+        siblings = tuples.toNativeArray();
+        tuples = new IntArrayList();
+
+        // Head-bigram factors. Exclude the bigram consisting of the wall and the first token.
+        if (prm.headBigramFactors) {
+            for (int p = -1; p < n; p++) {
+                for (int c = 1; c < n; c++) {
+                    if (p == c || depEdgeMask.isPruned(p, c)) { continue; }
+                    for (int p_other = -1; p_other < n; p_other++) {
+                        if (p_other == c-1 || depEdgeMask.isPruned(p_other, c-1)) { continue; }
+                        tuples.add(p);
+                        tuples.add(c);
+                        tuples.add(p_other);
+                    }
+                }
+            }
+        }
+        headBigrams = tuples.toNativeArray();
+    }
+
+    public int getSentenceLength() {
+        return n;
+    }
+
+    public int[] getClamps() {
+        return clamps;
+    }
+
+    public int[] getUnaries() {
+        return unaries;
+    }
+
+    public int[] getGrandparents() {
+        return grandparents;
+    }
+
+    public int[] getSiblings() {
+        return siblings;
+    }
+
+    public int[] getHeadBigrams() {
+        return headBigrams;
+    }
+
+    // The tuples of each type are generated in sorted order by their loop indices, so they can
+    // be found by binary search.
+
+    /** Gets the index of the unary factor on (p, c), or -1 if it doesn't exist. */
+    public int getUnaryIndex(int p, int c) {
+        return find(unaries, 2, p, c, 0, 0, 1, -1);
+    }
+
+    /** Gets the index of the grandparent factor on (p, c, g), or -1 if it doesn't exist. */
+    public int getGrandparentIndex(int p, int c, int g) {
+        return find(grandparents, 3, g, p, c, 2, 0, 1);
+    }
+
+    /** Gets the index of the arbitrary sibling factor on (p, c, s), or -1 if it doesn't exist. */
+    public int getSiblingIndex(int p, int c, int s) {
+        return find(siblings, 3, p, c, s, 0, 1, 2);
+    }
+
+    /** Gets the index of the head-bigram factor on (p, c, p_other), or -1 if it doesn't exist. */
+    public int getHeadBigramIndex(int p, int c, int p_other) {
+        return find(headBigrams, 3, p, c, p_other, 0, 1, 2);
+    }
+
+    /**
+     * Binary search for the tuple whose elements at offsets (o0, o1, o2) equal (k0, k1, k2). An
+     * offset of -1 means the key has fewer than three elements.
+     */
+    private static int find(int[] tuples, int width, int k0, int k1, int k2, int o0, int o1, int o2) {
+        int lo = 0;
+        int hi = tuples.length / width - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int t = mid * width;
+            int diff = Integer.compare(tuples[t + o0], k0);
+            if (diff == 0) { diff = Integer.compare(tuples[t + o1], k1); }
+            if (diff == 0 && o2 != -1) { diff = Integer.compare(tuples[t + o2], k2); }
+            if (diff < 0) {
+                lo = mid + 1;
+            } else if (diff > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,221 @@
+package edu.jhu.nlp.depparse;
+
+import java.util.Arrays;
+
+/**
+ * Maximum spanning tree (non-projective) dependency parser. This is the dense O(n^2) version of the
+ * Chu-Liu/Edmonds algorithm due to Tarjan (1977): the cheapest incoming edges are chosen along a
+ * path of (super)nodes, cycles are contracted as soon as they are found by merging the incoming edge
+ * scores of their members, and the contractions are finally expanded to recover the tree.
+ *
+ * The interface mirrors {@link edu.jhu.pacaya.parse.dep.ProjectiveDependencyParser}: the score of
+ * the edge from the wall to token c is root[c], and the score of the edge from token p to token c is
+ * child[p][c]. Edges with score negative infinity are disallowed, but may still appear in the tree
+ * if a token has no other possible parent.
+ *
+ * @author mgormley
+ */
+public class MstDependencyParser {
+
+    private MstDependencyParser() {
+        // Private constructor.
+    }
+
+    /**
+     * Finds the maximum scoring non-projective tree in which exactly one token is headed by the wall.
+     *
+     * This uses the constant-penalty reduction to the multi-root case: every edge from the wall is
+     * penalized by a constant larger than the total score difference between any two trees, so the
+     * best tree uses as few wall edges as possible.
+     *
+     * @param root Input: The edge weights from the wall to each child.
+     * @param child Input: The edge weights from parent to child.
+     * @param parents Output: The parent index of each node or -1 if its parent is the wall.
+     * @return The score of the parse.
+     */
+    public static double parseSingleRoot(double[] root, double[][] child, int[] parents) {
+        int n = root.length;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int c=0; c<n; c++) {
+            if (isFinite(root[c])) {
+                min = Math.min(min, root[c]);
+                max = Math.max(max, root[c]);
+            }
+            for (int p=0; p<n; p++) {
+                if (p != c && isFinite(child[p][c])) {
+                    min = Math.min(min, child[p][c]);
+                    max = Math.max(max, child[p][c]);
+                }
+            }
+        }
+        double penalty = (min <= max) ? 1.0 + 2.0 * n * (max - min) : 0.0;
+        double[] penalized = new double[n];
+        for (int c=0; c<n; c++) {
+            penalized[c] = root[c] - penalty;
+        }
+        parseMultiRoot(penalized, child, parents);
+        return getScore(root, child, parents);
+    }
+
+    /**
+     * Finds the maximum scoring non-projective tree, allowing any number of tokens to be headed by
+     * the wall.
+     *
+     * @param root Input: The edge weights from the wall to each child.
+     * @param child Input: The edge weights from parent to child.
+     * @param parents Output: The parent index of each node or -1 if its parent is the wall.
+     * @return The score of the parse.
+     */
+    public static double parseMultiRoot(double[] root, double[][] child, int[] parents) {
+        int n = root.length;
+        if (parents.length != n) {
+            throw new IllegalArgumentException("Parents array is wrong length. expected=" + n + " actual=" + parents.length);
+        }
+        if (n == 0) {
+            return 0.0;
+        }
+        // Node 0 is the wall and node i+1 is token i. Supernodes are numbered from n+1.
+        int numNodes = n + 1;
+        int maxIds = 2 * numNodes;
+
+        // For each (super)node v, the score of the best edge into v from each original node u, and
+        // the original node in v to which that edge points. Scores are adjusted for contractions.
+        double[][] inScore = new double[maxIds][];
+        int[][] inDst = new int[maxIds][];
+        for (int v=1; v<numNodes; v++) {
+            inScore[v] = new double[numNodes];
+            inDst[v] = new int[numNodes];
+            Arrays.fill(inDst[v], v);
+            inScore[v][0] = root[v-1];
+            for (int u=1; u<numNodes; u++) {
+                inScore[v][u] = (u == v) ? Double.NEGATIVE_INFINITY : child[u-1][v-1];
+            }
+        }
+
+        // Union-find over the (super)nodes.
+        int[] uf = new int[maxIds];
+        for (int i=0; i<maxIds; i++) {
+            uf[i] = i;
+        }
+        // The supernode into which each (super)node was contracted, or -1.
+        int[] superNode = new int[maxIds];
+        Arrays.fill(superNode, -1);
+        // The chosen incoming edge of each (super)node.
+        int[] chosenSrc = new int[maxIds];
+        int[] chosenDst = new int[maxIds];
+        double[] chosenScore = new double[maxIds];
+        // 0 = not yet visited, 1 = on the current path, 2 = attached to the wall.
+        byte[] state = new byte[maxIds];
+        state[0] = 2;
+        int[] path = new int[maxIds];
+        int numIds = numNodes;
+
+        for (int a=1; a<numNodes; a++) {
+            int start = find(uf, a);
+            if (state[start] != 0) { continue; }
+            int top = 0;
+            path[top++] = start;
+            state[start] = 1;
+            while (top > 0) {
+                int v = path[top-1];
+                // Choose the best incoming edge from outside of v.
+                int bestSrc = -1;
+                double bestScore = Double.NEGATIVE_INFINITY;
+                for (int u=0; u<numNodes; u++) {
+                    if (find(uf, u) == v) { continue; }
+                    if (bestSrc == -1 || inScore[v][u] > bestScore) {
+                        bestSrc = u;
+                        bestScore = inScore[v][u];
+                    }
+                }
+                chosenSrc[v] = bestSrc;
+                chosenDst[v] = inDst[v][bestSrc];
+                chosenScore[v] = bestScore;
+                int x = find(uf, bestSrc);
+                if (state[x] == 2) {
+                    // The path is now attached to the wall.
+                    for (int i=0; i<top; i++) {
+                        state[path[i]] = 2;
+                    }
+                    top = 0;
+                } else if (state[x] == 0) {
+                    path[top++] = x;
+                    state[x] = 1;
+                } else {
+                    // Found a cycle: contract the path from x to v into a new supernode z.
+                    int z = numIds++;
+                    inScore[z] = new double[numNodes];
+                    inDst[z] = new int[numNodes];
+                    Arrays.fill(inScore[z], Double.NEGATIVE_INFINITY);
+                    Arrays.fill(inDst[z], -1);
+                    int m;
+                    do {
+                        m = path[--top];
+                        for (int u=0; u<numNodes; u++) {
+                            double s = inScore[m][u];
+                            if (s != Double.NEGATIVE_INFINITY) {
+                                s -= chosenScore[m];
+                            }
+                            if (inDst[z][u] == -1 || s > inScore[z][u]) {
+                                inScore[z][u] = s;
+                                inDst[z][u] = inDst[m][u];
+                            }
+                        }
+                        superNode[m] = z;
+                        uf[m] = z;
+                        // The member's scores are no longer needed.
+                        inScore[m] = null;
+                        inDst[m] = null;
+                    } while (m != x);
+                    path[top++] = z;
+                    state[z] = 1;
+                }
+            }
+        }
+
+        // Expand the contractions from the outermost supernode inward. Each supernode passes its
+        // incoming edge to the member containing the edge's target.
+        for (int z=numIds-1; z>=numNodes; z--) {
+            int m = chosenDst[z];
+            while (superNode[m] != z) {
+                m = superNode[m];
+            }
+            chosenSrc[m] = chosenSrc[z];
+            chosenDst[m] = chosenDst[z];
+        }
+        for (int v=1; v<numNodes; v++) {
+            assert chosenDst[v] == v;
+            parents[v-1] = chosenSrc[v] - 1;
+        }
+        return getScore(root, child, parents);
+    }
+
+    /** Gets the score of the given tree. */
+    private static double getScore(double[] root, double[][] child, int[] parents) {
+        double score = 0;
+        for (int c=0; c<parents.length; c++) {
+            score += (parents[c] == -1) ? root[c] : child[parents[c]][c];
+        }
+        return score;
+    }
+
+    private static int find(int[] uf, int i) {
+        int r = i;
+        while (uf[r] != r) {
+            r = uf[r];
+        }
+        // Path compression.
+        while (uf[i] != r) {
+            int next = uf[i];
+            uf[i] = r;
+            i = next;
+        }
+        return r;
+    }
+
+    private static boolean isFinite(double d) {
+        return !Double.isInfinite(d) && !Double.isNaN(d);
+    }
+
+}
@@ -13,7 +13,6 @@ import org.slf4j.LoggerFactory;
 import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.DepParseFactorTemplate;
 import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.GraFeTypedFactor;
 import edu.jhu.pacaya.autodiff.Module;
-import edu.jhu.pacaya.autodiff.Tensor;
 import edu.jhu.pacaya.gm.inf.AbstractFgInferencer;
 import edu.jhu.pacaya.gm.inf.Beliefs;
 import edu.jhu.pacaya.gm.inf.BeliefsModuleFactory;
@@ -35,13 +34,11 @@ import edu.jhu.pacaya.hypergraph.Hyperalgo.Scores;
 import edu.jhu.pacaya.hypergraph.Hyperedge;
 import edu.jhu.pacaya.hypergraph.Hypernode;
 import edu.jhu.pacaya.hypergraph.depparse.DependencyScorer;
-import edu.jhu.pacaya.hypergraph.depparse.ExplicitDependencyScorer;
 import edu.jhu.pacaya.hypergraph.depparse.InsideOutsideDepParse;
 import edu.jhu.pacaya.hypergraph.depparse.O2AllGraDpHypergraph;
 import edu.jhu.pacaya.hypergraph.depparse.PCGBasicHypernode;
 import edu.jhu.pacaya.util.collections.QLists;
 import edu.jhu.pacaya.util.semiring.Algebra;
-import edu.jhu.prim.arrays.DoubleArrays;
 import edu.jhu.prim.arrays.IntArrays;
 
 public class O2AllGraFgInferencer extends AbstractFgInferencer implements Module<Beliefs>, FgInferencer {
@@ -71,6 +68,13 @@ public class O2AllGraFgInferencer extends AbstractFgInferencer implements Module
     }
     
     private static final Logger log = LoggerFactory.getLogger(O2AllGraFgInferencer.class);
+    // Per-thread pool of adjoint scores, which are only used within a call to backward().
+    private static final ThreadLocal<SparseGraScores> adjPool = new ThreadLocal<SparseGraScores>() {
+        @Override
+        protected SparseGraScores initialValue() {
+            return new SparseGraScores();
+        }
+    };
     
     // Input:
     private Module<Factors> fm;
@@ -84,6 +88,7 @@ public class O2AllGraFgInferencer extends AbstractFgInferencer implements Module
     private O2AllGraDpHypergraph graph;
     private Scores sc;
     private int[][] ijFacs;
+    // Indexed by i,j,k. Only arcs with grandparent factors have a row.
     private int[][][] ijkFacs;
     
     public O2AllGraFgInferencer(FactorGraph fg, Algebra s) {
@@ -140,13 +145,18 @@ public class O2AllGraFgInferencer extends AbstractFgInferencer implements Module
 
         // Backprop from the hypernode marginals through the hyperedge weights to the edge-pair
         // scores.
-        final Tensor scoresAdj = new Tensor(s, n+1, n+1, n+1);
+        final SparseGraScores scoresAdj = adjPool.get();
+        initScores(scoresAdj, s.zero());
         HyperedgeDoubleFn lambda = new HyperedgeDoubleFn() {            
             @Override
             public void apply(Hyperedge e, double adj_w_e) {
                 if (e.getHeadNode() instanceof PCGBasicHypernode) {
                     PCGBasicHypernode h = (PCGBasicHypernode) e.getHeadNode();
-                    scoresAdj.add(adj_w_e, h.getP()+1, h.getC()+1, h.getG()+1);
+                    int i = h.getP()+1;
+                    int j = h.getC()+1;
+                    int g = h.getG()+1;
+                    if (SparseGraScores.isExcluded(i, j, g)) { return; }
+                    scoresAdj.add(i, j, g, adj_w_e);
                 }
             }
         };
@@ -156,57 +166,87 @@ public class O2AllGraFgInferencer extends AbstractFgInferencer implements Module
         backwardFgToScores(scoresAdj);
     }
 
+    /**
+     * Resets the given scores for this sentence, adding a row of grandparent values only for those
+     * arcs which have at least one grandparent factor.
+     */
+    private void initScores(SparseGraScores scores, double val) {
+        scores.reset(s, n, val);
+        for (int i=0; i<n+1; i++) {
+            for (int j=0; j<n+1; j++) {
+                if (ijkFacs[i][j] != null) {
+                    scores.addRow(i, j, val);
+                }
+            }
+        }
+    }
+
     private DependencyScorer forwardFgToScores() {
         Factors factors = fm.getOutput();
 
         // Create the scores in the log semiring.
-        double[][][] scores = new double[n+1][n+1][n+1];
-        DoubleArrays.fill(scores, s.one());
+        SparseGraScores scores = new SparseGraScores();
+        initScores(scores, s.one());
         for (int i=0; i<n+1; i++) {
             for (int j=0; j<n+1; j++) {
+                double psi_ij_t = s.one();
+                if (ijFacs[i][j] != -1) {
+                    VarTensor psi_ij = factors.get(ijFacs[i][j]);
+                    psi_ij_t = psi_ij.getValue(TRUE);
+                }
+                if (ijkFacs[i][j] == null) {
+                    // No grandparent factors: the score is the same for all grandparents.
+                    scores.setArc(i, j, s.times(s.one(), psi_ij_t));
+                    continue;
+                }
                 for (int g=0; g<n+1; g++) {
-                    if (i <= g && g <= j && !(i==0 && g == O2AllGraDpHypergraph.NIL)) { continue; }
+                    if (SparseGraScores.isExcluded(i, j, g)) { continue; }
+                    double score = s.one();
                     if (ijkFacs[i][j][g] != -1) {
                         VarTensor psi_ijk = factors.get(ijkFacs[i][j][g]);
-                        scores[i][j][g] = s.times(scores[i][j][g], psi_ijk.getValue(TRUE_TRUE));
-                    }
-                    if (ijFacs[i][j] != -1) {
-                        VarTensor psi_ij = factors.get(ijFacs[i][j]);
-                        scores[i][j][g] = s.times(scores[i][j][g], psi_ij.getValue(TRUE));
+                        score = s.times(score, psi_ijk.getValue(TRUE_TRUE));
                     }
+                    scores.set(i, j, g, s.times(score, psi_ij_t));
                 }
             }
         }
         
-        if (log.isTraceEnabled()) { log.trace("scores: " + Arrays.deepToString(scores)); }
-        return new ExplicitDependencyScorer(scores, n);
+        if (log.isTraceEnabled()) { log.trace("Number of scores stored: " + scores.getNumValues()); }
+        return scores;
     }
 
-    private void backwardFgToScores(Tensor scoresAdj) {
+    private void backwardFgToScores(SparseGraScores scoresAdj) {
         Factors factors = fm.getOutput();
         Factors factorsAdj = fm.getOutputAdj();
 
         // Create the scores in the log semiring.
         for (int i=0; i<n+1; i++) {
             for (int j=0; j<n+1; j++) {
+                VarTensor psi_ij = null;
+                VarTensor adj_ij = null;
+                double psi_ij_t = s.one();
+                if (ijFacs[i][j] != -1) {
+                    psi_ij = factors.get(ijFacs[i][j]);
+                    adj_ij = factorsAdj.get(ijFacs[i][j]);
+                    psi_ij_t = psi_ij.getValue(TRUE);
+                }
+                if (ijkFacs[i][j] == null) {
+                    // No grandparent factors: the adjoint was accumulated over all grandparents.
+                    if (adj_ij != null) {
+                        adj_ij.addValue(TRUE, scoresAdj.getArc(i, j));
+                    }
+                    continue;
+                }
                 for (int g=0; g<n+1; g++) {
-                    if (i <= g && g <= j && !(i==0 && g == O2AllGraDpHypergraph.NIL)) { continue; }
+                    if (SparseGraScores.isExcluded(i, j, g)) { continue; }
                     VarTensor psi_ijk = null;
-                    VarTensor psi_ij = null;
                     VarTensor adj_ijk = null;
-                    VarTensor adj_ij = null;
                     double psi_ijk_tt = s.one();
-                    double psi_ij_t = s.one();
                     if (ijkFacs[i][j][g] != -1) {
                         psi_ijk = factors.get(ijkFacs[i][j][g]);
                         adj_ijk = factorsAdj.get(ijkFacs[i][j][g]);
                         psi_ijk_tt = psi_ijk.getValue(TRUE_TRUE);
                     }
-                    if (ijFacs[i][j] != -1) {
-                        psi_ij = factors.get(ijFacs[i][j]);
-                        adj_ij = factorsAdj.get(ijFacs[i][j]);
-                        psi_ij_t = psi_ij.getValue(TRUE);
-                    }
                     if (adj_ijk != null) {
                         adj_ijk.addValue(TRUE_TRUE, s.times(scoresAdj.get(i,j,g), psi_ij_t));
                     }
@@ -379,12 +419,13 @@ public class O2AllGraFgInferencer extends AbstractFgInferencer implements Module
     /** Creates indices for looking up factors: 
      * 1. graFacs maps i,j,k indices to a grandparent factor ID
      * 2. edgeFacs maps i,j indices to an edge factor ID.
+     * 
+     * The grandparent index only has a row for arcs (i,j) with at least one grandparent factor.
      */
     private void gatherFactors() {
         ijFacs = new int[n+1][n+1];
-        ijkFacs = new int[n+1][n+1][n+1];
+        ijkFacs = new int[n+1][n+1][];
         IntArrays.fill(ijFacs, -1);
-        IntArrays.fill(ijkFacs, -1);
         
         boolean containsProjDepTreeConstraint = false;
         for (int a=0; a<fg.getNumFactors(); a++) {
@@ -393,6 +434,10 @@ public class O2AllGraFgInferencer extends AbstractFgInferencer implements Module
                 containsProjDepTreeConstraint = true;
             } else if (f instanceof GraFeTypedFactor && ((GraFeTypedFactor) f).getFactorType() == DepParseFactorTemplate.GRANDPARENT) {
                 GraFeTypedFactor ff = (GraFeTypedFactor) f;
+                if (ijkFacs[ff.p+1][ff.c+1] == null) {
+                    ijkFacs[ff.p+1][ff.c+1] = new int[n+1];
+                    Arrays.fill(ijkFacs[ff.p+1][ff.c+1], -1);
+                }
                 ijkFacs[ff.p+1][ff.c+1][ff.g+1] = ff.getId();
             } else if (f.getVars().size() == 1 && f.getVars().get(0) instanceof LinkVar) {
                 LinkVar lv = (LinkVar) f.getVars().get(0);
@@ -0,0 +1,145 @@
+package edu.jhu.nlp.depparse;
+
+import java.util.Arrays;
+
+import edu.jhu.pacaya.hypergraph.depparse.DependencyScorer;
+import edu.jhu.pacaya.hypergraph.depparse.O2AllGraDpHypergraph;
+import edu.jhu.pacaya.util.semiring.Algebra;
+
+/**
+ * Sparse storage for the grandparent-arc scores (or their adjoints) used by
+ * {@link O2AllGraFgInferencer}. This replaces a dense (n+1)^3 array.
+ *
+ * Only arcs which have at least one grandparent factor get a row of n+1 values, one for each
+ * grandparent. Every other arc (e.g. one pruned by the {@link edu.jhu.nlp.data.DepEdgeMask}) stores a
+ * single value which is shared by all grandparents. As in {@link O2AllGraDpHypergraph}, all indices
+ * are offset by one so that 0 denotes the wall.
+ *
+ * The backing arrays are only ever grown, so an instance can be reset and reused across sentences.
+ *
+ * @author mgormley
+ */
+public class SparseGraScores implements DependencyScorer {
+
+    private Algebra s;
+    // The number of tokens in the sentence.
+    private int n;
+    // The value for each arc (i,j) at index i*(n+1)+j.
+    private double[] arcVals = new double[0];
+    // The start of the row for each arc (i,j) in rowVals, or -1 if there is no row.
+    private int[] rowStarts = new int[0];
+    // The packed rows of grandparent values.
+    private double[] rowVals = new double[0];
+    private int numRowVals;
+
+    /**
+     * Clears the store for a new sentence.
+     *
+     * @param s The algebra of the values.
+     * @param n The number of tokens in the sentence.
+     * @param arcVal The initial value of every arc.
+     */
+    public void reset(Algebra s, int n, double arcVal) {
+        this.s = s;
+        this.n = n;
+        int numArcs = (n+1)*(n+1);
+        if (arcVals.length < numArcs) {
+            arcVals = new double[numArcs];
+            rowStarts = new int[numArcs];
+        }
+        Arrays.fill(arcVals, 0, numArcs, arcVal);
+        Arrays.fill(rowStarts, 0, numArcs, -1);
+        numRowVals = 0;
+    }
+
+    /**
+     * Adds a row of grandparent values for arc (i,j), each initialized to the given value.
+     */
+    public void addRow(int i, int j, double val) {
+        int ij = i*(n+1) + j;
+        if (rowStarts[ij] != -1) {
+            throw new IllegalStateException("Row already exists for arc: " + i + " " + j);
+        }
+        if (rowVals.length < numRowVals + n+1) {
+            rowVals = Arrays.copyOf(rowVals, Math.max(2*rowVals.length, numRowVals + n+1));
+        }
+        rowStarts[ij] = numRowVals;
+        Arrays.fill(rowVals, numRowVals, numRowVals + n+1, val);
+        numRowVals += n+1;
+    }
+
+    /** Whether arc (i,j) has its own value for each grandparent. */
+    public boolean hasRow(int i, int j) {
+        return rowStarts[i*(n+1) + j] != -1;
+    }
+
+    /** Gets the value for arc (i,j) which is shared by all grandparents without a row. */
+    public double getArc(int i, int j) {
+        return arcVals[i*(n+1) + j];
+    }
+
+    /** Sets the value for arc (i,j) which is shared by all grandparents without a row. */
+    public void setArc(int i, int j, double val) {
+        arcVals[i*(n+1) + j] = val;
+    }
+
+    /** Gets the value for arc (i,j) with grandparent g. */
+    public double get(int i, int j, int g) {
+        int start = rowStarts[i*(n+1) + j];
+        if (start == -1) {
+            return arcVals[i*(n+1) + j];
+        } else {
+            return rowVals[start + g];
+        }
+    }
+
+    /** Sets the value for arc (i,j) with grandparent g. The arc must have a row. */
+    public void set(int i, int j, int g, double val) {
+        int start = rowStarts[i*(n+1) + j];
+        if (start == -1) {
+            throw new IllegalStateException("No row for arc: " + i + " " + j);
+        }
+        rowVals[start + g] = val;
+    }
+
+    /**
+     * Adds (in the algebra) to the value for arc (i,j) with grandparent g. If the arc does not have a
+     * row, the value is accumulated into the value shared by all its grandparents.
+     */
+    public void add(int i, int j, int g, double val) {
+        int ij = i*(n+1) + j;
+        int start = rowStarts[ij];
+        if (start == -1) {
+            arcVals[ij] = s.plus(arcVals[ij], val);
+        } else {
+            rowVals[start + g] = s.plus(rowVals[start + g], val);
+        }
+    }
+
+    /**
+     * Whether the cell for arc (i,j) with grandparent g is never used because the grandparent is
+     * not valid.
+     */
+    public static boolean isExcluded(int i, int j, int g) {
+        return i <= g && g <= j && !(i==0 && g == O2AllGraDpHypergraph.NIL);
+    }
+
+    @Override
+    public double getScore(int p, int c, int g) {
+        if (isExcluded(p, c, g)) {
+            return s.one();
+        }
+        return get(p, c, g);
+    }
+
+    @Override
+    public int getNumTokens() {
+        return n;
+    }
+
+    /** Gets the number of doubles currently in use. */
+    public int getNumValues() {
+        return (n+1)*(n+1) + numRowVals;
+    }
+
+}
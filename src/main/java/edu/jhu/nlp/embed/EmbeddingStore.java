@@ -0,0 +1,343 @@
+package edu.jhu.nlp.embed;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.pacaya.util.dist.Gaussian;
+
+/**
+ * Read-only, memory-mapped store of word embeddings in a compact binary format, which can be
+ * created from the tab-separated text format with {@link #convert(File, File, Quantization)}.
+ * Since the file is mapped read-only, the operating system shares its pages across all the JVMs
+ * that open it, and opening a store does not read the embeddings into the heap.
+ *
+ * The file consists of a header, the embedding vectors (one row per word, either float32 or int8
+ * with a float32 scale per row), the byte offsets and UTF-8 bytes of the words, and an
+ * open-addressing hash table from words to rows.
+ *
+ * @author mgormley
+ */
+public class EmbeddingStore implements Closeable {
+
+    /** The storage of each dimension of the embeddings. */
+    public enum Quantization { FLOAT32, INT8 }
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingStore.class);
+    private static final int MAGIC = 0x454d4244;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+
+    private final RandomAccessFile raf;
+    private final Quantization quant;
+    private final int numWords;
+    private final int dim;
+    private final int rowBytes;
+    private final int rowsPerSegment;
+    /** The vectors, split into segments of at most 2GB. */
+    private final ByteBuffer[] vecs;
+    private final ByteBuffer scales;
+    private final IntBuffer wordOffsets;
+    private final ByteBuffer wordBytes;
+    private final IntBuffer table;
+
+    /** Opens a store for reading. */
+    public EmbeddingStore(File binFile) throws IOException {
+        raf = new RandomAccessFile(binFile, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            if (ch.size() < HEADER_BYTES) {
+                throw new IOException("Not an embedding store: " + binFile);
+            }
+            ByteBuffer header = ch.map(MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an embedding store: " + binFile);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported embedding store version: " + version);
+            }
+            quant = Quantization.values()[header.getInt()];
+            numWords = header.getInt();
+            dim = header.getInt();
+            int tableSize = header.getInt();
+            long scalesPos = header.getLong();
+            long wordOffsetsPos = header.getLong();
+            long wordBytesPos = header.getLong();
+            long tablePos = header.getLong();
+
+            rowBytes = Math.max(1, (quant == Quantization.INT8) ? dim : dim * 4);
+            rowsPerSegment = Integer.MAX_VALUE / rowBytes;
+            int numSegments = (numWords + rowsPerSegment - 1) / rowsPerSegment;
+            vecs = new ByteBuffer[numSegments];
+            for (int s = 0; s < numSegments; s++) {
+                int rows = Math.min(rowsPerSegment, numWords - s * rowsPerSegment);
+                vecs[s] = ch.map(MapMode.READ_ONLY, HEADER_BYTES + (long) s * rowsPerSegment * rowBytes, (long) rows * rowBytes);
+            }
+            scales = ch.map(MapMode.READ_ONLY, scalesPos, wordOffsetsPos - scalesPos);
+            wordOffsets = ch.map(MapMode.READ_ONLY, wordOffsetsPos, wordBytesPos - wordOffsetsPos).asIntBuffer();
+            wordBytes = ch.map(MapMode.READ_ONLY, wordBytesPos, tablePos - wordBytesPos);
+            table = ch.map(MapMode.READ_ONLY, tablePos, tableSize * 4L).asIntBuffer();
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+        log.debug("Opened embedding store with vocabulary size: " + numWords + " and dimension: " + dim);
+    }
+
+    /** Gets the row of the given word, or -1 if it is not in the store. */
+    public int lookupIndex(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int mask = table.capacity() - 1;
+        for (int slot = hash(word) & mask; ; slot = (slot + 1) & mask) {
+            int i = table.get(slot);
+            if (i == -1) {
+                return -1;
+            } else if (wordEquals(i, bytes)) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Does a "smart" lookup of the embedding by trying various forms of the word as alternatives,
+     * in the same way as {@link Embeddings#findEmbedding(String)}.
+     */
+    public int findEmbedding(String word) {
+        return Embeddings.findEmbedding(word, this::lookupIndex);
+    }
+
+    private boolean wordEquals(int i, byte[] bytes) {
+        int start = wordOffsets.get(i);
+        int end = wordOffsets.get(i + 1);
+        if (end - start != bytes.length) {
+            return false;
+        }
+        for (int j = 0; j < bytes.length; j++) {
+            if (wordBytes.get(start + j) != bytes[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Gets the word of the given row. */
+    public String getWord(int i) {
+        int start = wordOffsets.get(i);
+        byte[] bytes = new byte[wordOffsets.get(i + 1) - start];
+        for (int j = 0; j < bytes.length; j++) {
+            bytes[j] = wordBytes.get(start + j);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Gets the d'th dimension of the embedding in the given row. */
+    public float get(int i, int d) {
+        ByteBuffer seg = vecs[i / rowsPerSegment];
+        int off = (i % rowsPerSegment) * rowBytes;
+        if (quant == Quantization.INT8) {
+            return seg.get(off + d) * scales.getFloat(i * 4);
+        } else {
+            return seg.getFloat(off + d * 4);
+        }
+    }
+
+    /** Copies the embedding in the given row into the array. */
+    public void getEmbedding(int i, double[] embed) {
+        for (int d = 0; d < dim; d++) {
+            embed[d] = get(i, d);
+        }
+    }
+
+    public int getNumWords() {
+        return numWords;
+    }
+
+    public int getDim() {
+        return dim;
+    }
+
+    public Quantization getQuantization() {
+        return quant;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapped buffers remain valid after the channel is closed.
+        raf.close();
+    }
+
+    /** Whether the given file begins with the header of an embedding store. */
+    public static boolean isEmbeddingStore(File file) {
+        if (file.length() < HEADER_BYTES) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static int hash(String word) {
+        int h = word.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Converts embeddings from the tab-separated text format read by
+     * {@link Embeddings#parseEmbFile(File, Embeddings.EmbeddingHandler)} to a binary store in a
+     * single pass. If a word appears more than once, its first embedding is kept. An embedding
+     * for the special &lt;UNK&gt; word type is added if the text file does not contain one.
+     */
+    public static void convert(File txtFile, File binFile, final Quantization quant) throws IOException {
+        log.info("Converting word embeddings from " + txtFile + " to " + binFile + " with " + quant);
+        final List<byte[]> words = new ArrayList<>();
+        final Set<String> seen = new HashSet<>();
+        final List<Float> scaleList = new ArrayList<>();
+        final int[] dim = new int[]{ -1 };
+        final int[] numDups = new int[]{ 0 };
+        RandomAccessFile out = new RandomAccessFile(binFile, "rw");
+        try {
+            out.setLength(0);
+            out.seek(HEADER_BYTES);
+            final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out.getFD()), 1 << 16));
+            Embeddings.EmbeddingHandler handler = new Embeddings.EmbeddingHandler() {
+                @Override
+                public void addEmbedding(String word, double[] embed) {
+                    if (!seen.add(word)) {
+                        numDups[0]++;
+                        return;
+                    }
+                    if (dim[0] == -1) {
+                        dim[0] = embed.length;
+                    } else if (dim[0] != embed.length) {
+                        throw new RuntimeException("Read dimension with incorrect length: " + word + " " + dim[0]);
+                    }
+                    words.add(word.getBytes(StandardCharsets.UTF_8));
+                    try {
+                        writeEmbedding(dos, embed, quant, scaleList);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            Embeddings.parseEmbFile(txtFile, handler);
+            if (dim[0] == -1) {
+                throw new IOException("No embeddings found in file: " + txtFile);
+            }
+            if (!seen.contains(Embeddings.UNKNOWN_WORD)) {
+                // Initialize to some small random values.
+                double[] embed = new double[dim[0]];
+                Gaussian.nextDoubleArray(0, 1e-4, embed);
+                handler.addEmbedding(Embeddings.UNKNOWN_WORD, embed);
+            }
+            if (numDups[0] > 0) {
+                log.warn("Skipped repeated embeddings for " + numDups[0] + " words");
+            }
+            int numWords = words.size();
+
+            // Scales for int8 rows.
+            long scalesPos = HEADER_BYTES + (long) numWords * ((quant == Quantization.INT8) ? dim[0] : dim[0] * 4L);
+            for (float s : scaleList) {
+                dos.writeFloat(s);
+            }
+            // Word offsets and bytes.
+            long wordOffsetsPos = scalesPos + 4L * scaleList.size();
+            int offset = 0;
+            dos.writeInt(offset);
+            for (byte[] w : words) {
+                offset += w.length;
+                dos.writeInt(offset);
+            }
+            long wordBytesPos = wordOffsetsPos + 4L * (numWords + 1);
+            for (byte[] w : words) {
+                dos.write(w);
+            }
+            // Hash table, with a load factor of at most 0.5.
+            long tablePos = wordBytesPos + offset;
+            int tableSize = Integer.highestOneBit(Math.max(2, numWords) * 2 - 1) << 1;
+            int[] table = new int[tableSize];
+            Arrays.fill(table, -1);
+            for (int i = 0; i < numWords; i++) {
+                int slot = hash(new String(words.get(i), StandardCharsets.UTF_8)) & (tableSize - 1);
+                while (table[slot] != -1) {
+                    slot = (slot + 1) & (tableSize - 1);
+                }
+                table[slot] = i;
+            }
+            for (int t : table) {
+                dos.writeInt(t);
+            }
+            dos.flush();
+
+            // Header.
+            out.seek(0);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(quant.ordinal());
+            out.writeInt(numWords);
+            out.writeInt(dim[0]);
+            out.writeInt(tableSize);
+            out.writeLong(scalesPos);
+            out.writeLong(wordOffsetsPos);
+            out.writeLong(wordBytesPos);
+            out.writeLong(tablePos);
+            log.info("Wrote embedding store with vocabulary size: " + numWords + " and dimension: " + dim[0]);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeEmbedding(DataOutputStream dos, double[] embed, Quantization quant, List<Float> scaleList) throws IOException {
+        if (quant == Quantization.INT8) {
+            // Symmetric quantization with one scale per row.
+            double max = 0;
+            for (double x : embed) {
+                max = Math.max(max, Math.abs(x));
+            }
+            float scale = (max == 0) ? 1f : (float) (max / 127.0);
+            for (double x : embed) {
+                dos.writeByte((int) Math.max(-127, Math.min(127, Math.round(x / scale))));
+            }
+            scaleList.add(scale);
+        } else {
+            for (double x : embed) {
+                dos.writeFloat((float) x);
+            }
+        }
+    }
+
+    /**
+     * Converts a tab-separated embeddings file to a binary store.
+     * Usage: EmbeddingStore input.txt output.bin [FLOAT32|INT8]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: EmbeddingStore input.txt output.bin [FLOAT32|INT8]");
+            System.exit(1);
+        }
+        Quantization quant = (args.length == 3) ? Quantization.valueOf(args[2]) : Quantization.FLOAT32;
+        convert(new File(args[0]), new File(args[1]), quant);
+    }
+
+}
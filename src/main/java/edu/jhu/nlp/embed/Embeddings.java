@@ -20,6 +20,8 @@ import edu.jhu.pacaya.util.semiring.RealAlgebra;
 import edu.jhu.prim.Primitives.MutableInt;
 import edu.jhu.prim.arrays.DoubleArrays;
 import edu.jhu.prim.bimap.IntObjectBimap;
+import edu.jhu.prim.list.IntArrayList;
+import edu.jhu.prim.tuple.Pair;
 
 /**
  * Storage for a set of word embeddings. Also contains a method to load embeddings from a text file. 
@@ -32,7 +34,7 @@ public class Embeddings implements Serializable {
     private static final long serialVersionUID = 1L;
     private static final Logger log = LoggerFactory.getLogger(Embeddings.class);
     private static final Pattern DIGITS = Pattern.compile("[0-9]");
-    private static final String UNKNOWN_WORD = "<UNK>";
+    static final String UNKNOWN_WORD = "<UNK>";
     private final Tensor embeds;
     private final IntObjectBimap<String> alphabet;
     
@@ -41,7 +43,25 @@ public class Embeddings implements Serializable {
         this.alphabet = alphabet;
     }
     
+    /**
+     * Loads the embeddings from a file, which may be either a tab-separated text file or a binary
+     * {@link EmbeddingStore}.
+     * 
+     * @param txtFile The file.
+     * @param words The words whose embeddings should be loaded, or null to load all of them.
+     */
     public Embeddings(File txtFile, final Set<String> words) {
+        if (EmbeddingStore.isEmbeddingStore(txtFile)) {
+            log.info("Reading word embeddings from binary file: " + txtFile);
+            try (EmbeddingStore store = new EmbeddingStore(txtFile)) {
+                Pair<Tensor, IntObjectBimap<String>> pair = loadFromStore(store, words);
+                embeds = pair.get1();
+                alphabet = pair.get2();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
         log.info("Reading word embeddings from file: " + txtFile);
         // Count the number of words and length of the embeddings.
         final MutableInt numWords = new MutableInt(0);
@@ -82,10 +102,52 @@ public class Embeddings implements Serializable {
         log.debug("Embedding vocabulary size: " + alphabet.size() + " and dimension: " + dim.v);
     }
     
-    private interface EmbeddingHandler {
+    /**
+     * Copies the embeddings of the given words, and always that of the special &lt;UNK&gt; word
+     * type, out of the store.
+     */
+    private static Pair<Tensor, IntObjectBimap<String>> loadFromStore(EmbeddingStore store, Set<String> words) {
+        IntArrayList rows = new IntArrayList();
+        if (words == null) {
+            for (int i=0; i<store.getNumWords(); i++) {
+                rows.add(i);
+            }
+        } else {
+            for (String word : words) {
+                int i = store.lookupIndex(word);
+                if (i != -1 && !UNKNOWN_WORD.equals(word)) {
+                    rows.add(i);
+                }
+            }
+            int unk = store.lookupIndex(UNKNOWN_WORD);
+            if (unk != -1) {
+                rows.add(unk);
+            }
+        }
+        Tensor embeds = new Tensor(RealAlgebra.getInstance(), rows.size(), store.getDim());
+        IntObjectBimap<String> alphabet = new IntObjectBimap<String>();
+        double[] embed = new double[store.getDim()];
+        for (int r=0; r<rows.size(); r++) {
+            int i = alphabet.lookupIndex(store.getWord(rows.get(r)));
+            store.getEmbedding(rows.get(r), embed);
+            for (int d=0; d<embed.length; d++) {
+                embeds.set(embed[d], i, d);
+            }
+        }
+        alphabet.stopGrowth();
+        log.debug("Embedding vocabulary size: " + alphabet.size() + " and dimension: " + store.getDim());
+        return new Pair<Tensor, IntObjectBimap<String>>(embeds, alphabet);
+    }
+
+    interface EmbeddingHandler {
         void addEmbedding(String word, double[] embed);
     }
 
+    /** Lookup of the index of a word, or -1 if it is not known. */
+    interface WordLookup {
+        int lookupIndex(String word);
+    }
+
     /**
      * Loads the embeddings from a tab-separated text file in UTF-8. Each line consists of n+1 columns for an
      * n-dimensional embedding. The first column is the word. The i+1st column is the ith dimension
@@ -121,14 +183,19 @@ public class Embeddings implements Serializable {
     /** Does a "smart" lookup of the embedding by trying various forms of the word as alternatives. */
     // TODO: Could consider frequency of word when selecting embedding.
     public int findEmbedding(String word) {
+        return findEmbedding(word, alphabet::lookupIndex);
+    }
+
+    /** Does a "smart" lookup of the word with the given lookup function. */
+    static int findEmbedding(String word, WordLookup lookup) {
         int i = -1;
-        if ((i = alphabet.lookupIndex(word)) == -1) {
+        if ((i = lookup.lookupIndex(word)) == -1) {
             word = DIGITS.matcher(word).replaceAll("#");
-            if ((i = alphabet.lookupIndex(word)) == -1) {
+            if ((i = lookup.lookupIndex(word)) == -1) {
                 word = word.toLowerCase();
-                if ((i = alphabet.lookupIndex(word)) == -1) {
+                if ((i = lookup.lookupIndex(word)) == -1) {
                     word = word.toUpperCase();
-                    if ((i = alphabet.lookupIndex(word)) == -1) {
+                    if ((i = lookup.lookupIndex(word)) == -1) {
                         word = UNKNOWN_WORD;
                     }
                 }
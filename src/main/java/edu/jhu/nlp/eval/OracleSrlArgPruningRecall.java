@@ -0,0 +1,81 @@
+package edu.jhu.nlp.eval;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.nlp.Evaluator;
+import edu.jhu.nlp.data.SrlArgMask;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlEdge;
+import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+
+/**
+ * Computes the proportion of gold SRL arguments which are kept by the SrlArgMask (i.e. the recall
+ * of an oracle given the pruned candidates), and the proportion of non-gold predicate-argument
+ * pairs which are pruned.
+ *
+ * @author mgormley
+ */
+public class OracleSrlArgPruningRecall implements Evaluator {
+
+    private static final Logger log = LoggerFactory.getLogger(OracleSrlArgPruningRecall.class);
+
+    private double recall;
+    private double efficiency;
+
+    @Override
+    public double evaluate(AnnoSentenceCollection predSents, AnnoSentenceCollection goldSents, String name) {
+        int numGoldTot = 0;
+        int numGoldKept = 0;
+        long numPairsTot = 0;
+        long numPairsPruned = 0;
+        for (int i=0; i<predSents.size(); i++) {
+            AnnoSentence predSent = predSents.get(i);
+            AnnoSentence goldSent = goldSents.get(i);
+            if (goldSent.getSrlGraph() == null) {
+                continue;
+            }
+            SrlArgMask mask = predSent.getSrlArgMask();
+            int numGold = 0;
+            int numGoldPruned = 0;
+            for (SrlEdge edge : goldSent.getSrlGraph().getEdges()) {
+                int p = edge.getPred().getPosition();
+                int a = edge.getArg().getPosition();
+                if (mask != null && mask.isPruned(p, a)) {
+                    numGoldPruned++;
+                }
+                numGold++;
+            }
+            numGoldTot += numGold;
+            numGoldKept += numGold - numGoldPruned;
+            // Count the non-gold pairs.
+            int n = goldSent.size();
+            numPairsTot += n * n - numGold;
+            if (mask != null) {
+                numPairsPruned += (n * n - mask.getCount()) - numGoldPruned;
+            }
+        }
+        if (numGoldTot == 0) {
+            log.warn("No gold SRL arguments on " + name + ", so the oracle recall is undefined.");
+            recall = Double.NaN;
+        } else {
+            recall = (double) numGoldKept / numGoldTot;
+            log.info("Oracle SRL argument pruning recall on " + name + ": " + recall);
+        }
+        efficiency = (numPairsTot == 0) ? Double.NaN : (double) numPairsPruned / numPairsTot;
+        log.info("SRL argument pruning efficiency on " + name + ": " + efficiency);
+        // Return the number of errors.
+        return numGoldTot - numGoldKept;
+    }
+
+    /** Gets the proportion of gold arguments which were kept, or NaN if there were none. */
+    public double getRecall() {
+        return recall;
+    }
+
+    /** Gets the proportion of non-gold pairs which were pruned, or NaN if there were none. */
+    public double getEfficiency() {
+        return efficiency;
+    }
+
+}
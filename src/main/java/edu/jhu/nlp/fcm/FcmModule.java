@@ -1,5 +1,6 @@
 package edu.jhu.nlp.fcm;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -62,6 +63,13 @@ public class FcmModule extends AbstractModule<VarTensor> implements Module<VarTe
     
     private VarTensor toUpdate; // TODO: Remove this hack.
     
+    // The sorted distinct features which fire on some token with an embedding.
+    private int[] activeFeats;
+    // For each token, the positions in activeFeats of its features (null if the token is skipped).
+    private int[][] tokFeatPos;
+    // The feature-embedding products, B_{k,d}, indexed by d * activeFeats.length + position of k.
+    private double[] featEmbed;
+    
     public FcmModule(Module<MVecFgModel> modIn, Algebra s, List<FeatureVector> feats, FeatureNames featAlphabet, 
             VarSet vars, AnnoSentence sent, Embeddings embeddings, int paramOffset, boolean fineTuning,
             VarTensor toUpdate) {
@@ -95,6 +103,13 @@ public class FcmModule extends AbstractModule<VarTensor> implements Module<VarTe
      * s_y = \sum_{i=1}^N \sum_{d=1}^D \sum_{k=1}^K T_{y,k,d} f_{i,k} e_{w_i,d} \forall y
      * \psi_{FCM}(y) = exp(s_y)
      * </pre>
+     * 
+     * The sum over tokens is factored out by first computing the feature-embedding products:
+     * <pre>
+     * B_{k,d} = \sum_{i=1}^N f_{i,k} e_{w_i,d}
+     * s_y = \sum_{d=1}^D \sum_{k=1}^K T_{y,k,d} B_{k,d} \forall y
+     * </pre>
+     * where B is only stored for the features which fire on some token.
      */
     @Override
     public VarTensor forward() {
@@ -108,33 +123,42 @@ public class FcmModule extends AbstractModule<VarTensor> implements Module<VarTe
         scores = new VarTensor(RealAlgebra.getInstance(), vars);
         assert scores.size() == numLabels;
 
-        // Loop over tokens.
+        // Accumulate the feature-embedding products.
+        // B_{k,d} = \sum_{i=1}^N f_{i,k} e_{w_i,d}
+        initActiveFeats();
+        final int numActive = activeFeats.length;
+        featEmbed = new double[embedDim * numActive];
         for (int i=0; i<sent.size(); i++) {
+            int[] pos = tokFeatPos[i];
+            if (pos == null) { continue; }
             int w_i = sent.getEmbedId(i);
-            if (w_i == -1) { continue; }
-            FeatureVector f_i = feats.get(i);
-            if (f_i.getUsed() == 0) { continue; }
-            // Loop over labels.
-            for (int y=0; y<numLabels; y++) {
-                // Loop over embedding dimensions.
-                for (int d=0; d<embedDim; d++) {
-                    double e_wi_d = embed.get(w_i, d);
-                    // Loop over (sparse) features.
-                    for(int j=0; j<f_i.getUsed(); j++) {
-                        int k = f_i.getInternalIndices()[j];
-                        double f_ik = f_i.getInternalValues()[j];
-                        assert 0 <= k && k < numFeats;
-                        // Add to the factor score.
-                        // s_y += T_{y,k,d} f_{i,k} e_{w_i,d} \forall y
-                        double score = tparam.get(y, d, k) * e_wi_d * f_ik;
-                        scores.add(score, y);
-                        if (log.isTraceEnabled()) {
-                            log.trace("i={} y={} d={} k={} s_y={} T_{y,k,d}={} e_{w_i,d}={} f_{i,k}={}", 
-                                    i, y, d, k, score, tparam.get(y, d, k), e_wi_d, f_ik);
-                        }
-                    }
+            double[] vals = feats.get(i).getInternalValues();
+            for (int d=0; d<embedDim; d++) {
+                double e_wi_d = embed.get(w_i, d);
+                if (e_wi_d == 0) { continue; }
+                int base = d * numActive;
+                for (int j=0; j<pos.length; j++) {
+                    featEmbed[base + pos[j]] += vals[j] * e_wi_d;
+                }
+            }
+        }
+        
+        // Contract the products with the tensor parameters for all labels.
+        // s_y = \sum_{d=1}^D \sum_{k=1}^K T_{y,k,d} B_{k,d} \forall y
+        for (int y=0; y<numLabels; y++) {
+            double s_y = 0;
+            for (int d=0; d<embedDim; d++) {
+                int base = d * numActive;
+                for (int p=0; p<numActive; p++) {
+                    double b_kd = featEmbed[base + p];
+                    if (b_kd == 0) { continue; }
+                    s_y += tparam.get(y, d, activeFeats[p]) * b_kd;
                 }
             }
+            scores.setValue(y, s_y);
+            if (log.isTraceEnabled()) {
+                log.trace("y={} s_y={}", y, s_y);
+            }
         }
         
         // TODO: This special case code should move to Exp.java -- i.e. support conversion of the Algebra there.
@@ -161,14 +185,16 @@ public class FcmModule extends AbstractModule<VarTensor> implements Module<VarTe
      * dG/s_y = dG/d\psi_{FCM}(y) exp(s_y)
      * dG/dT_{y,k,d} = dG/ds_y ds_y/dT_{y,k,d} 
      *               = dG/ds_y (\sum_{i=1}^N f_{i,k} e_{w_i,d}) \forall y,k,d
+     *               = dG/ds_y B_{k,d}
      * dG/de_{w_i,d} = \sum_y dG/ds_y ds_y/dT_{y,k,d} 
      *               = \sum_y dG/ds_y (\sum_{k=1}^K T_{y,k,d} f_{i,k}) \forall i,d
+     *               = \sum_{k=1}^K f_{i,k} G_{k,d}
+     * where G_{k,d} = \sum_y dG/ds_y T_{y,k,d}
      * </pre>
      */
     @Override
     public void backward() {
         IntDoubleVector modelParams = modIn.getOutput().getModel().getParams();
-        VTensor embed = new VTensor(modIn.getAlgebra(), embedOffset, modelParams, numWordTypes, embedDim); // e_{w_i,d}
         VTensor tparam = new VTensor(modIn.getAlgebra(), tparamOffset, modelParams, numLabels, embedDim, numFeats); // T_{y,k,d}
         IntDoubleVector modelParamsAdj = modIn.getOutputAdj().getModel().getParams();
         VTensor embedAdj = fineTuning ? new VTensor(modIn.getAlgebra(), embedOffset, modelParamsAdj, numWordTypes, embedDim) : null; // e_{w_i,d}
@@ -187,45 +213,91 @@ public class FcmModule extends AbstractModule<VarTensor> implements Module<VarTe
         }
         
         // Backprop to tensor parameters, T, and (optionally) embedding parameters, e.
-
-        // Loop over tokens.
-        for (int i=0; i<sent.size(); i++) {
-            int w_i = sent.getEmbedId(i);
-            if (w_i == -1) { continue; }
-            FeatureVector f_i = feats.get(i);
-            if (f_i.getUsed() == 0) { continue; }
-            // Loop over labels.
-            for (int y=0; y<numLabels; y++) {
-                // Loop over embedding dimensions.
+        final int numActive = activeFeats.length;
+        // G_{k,d} = \sum_y dG/ds_y T_{y,k,d}
+        double[] tparamSums = fineTuning ? new double[embedDim * numActive] : null;
+        for (int y=0; y<numLabels; y++) {
+            double adj_s_y = scoresAdj.getValue(y);
+            if (adj_s_y == 0) { continue; }
+            for (int d=0; d<embedDim; d++) {
+                int base = d * numActive;
+                for (int p=0; p<numActive; p++) {
+                    int k = activeFeats[p];
+                    // dG/dT_{y,k,d} = dG/ds_y B_{k,d}
+                    double b_kd = featEmbed[base + p];
+                    if (b_kd != 0) {
+                        tparamAdj.add(adj_s_y * b_kd, y, d, k);
+                    }
+                    if (fineTuning) {
+                        tparamSums[base + p] += adj_s_y * tparam.get(y, d, k);
+                    }
+                }
+            }
+        }
+        if (fineTuning) {
+            // dG/de_{w_i,d} = \sum_{k=1}^K f_{i,k} G_{k,d}
+            for (int i=0; i<sent.size(); i++) {
+                int[] pos = tokFeatPos[i];
+                if (pos == null) { continue; }
+                int w_i = sent.getEmbedId(i);
+                double[] vals = feats.get(i).getInternalValues();
                 for (int d=0; d<embedDim; d++) {
-                    double e_wi_d = embed.get(w_i, d);
-                    // Loop over (sparse) features.
-                    for(int j=0; j<f_i.getUsed(); j++) {
-                        int k = f_i.getInternalIndices()[j];
-                        double f_ik = f_i.getInternalValues()[j];
-                        assert 0 <= k && k < numFeats;
-
-                        // Backprop
-                        // dG/dT_{y,k,d} = dG/ds_y ds_y/dT_{y,k,d} 
-                        //               = dG/ds_y (\sum_{i=1}^N f_{i,k} e_{w_i,d}) \forall y,k,d
-                        double tadd = scoresAdj.get(y) * f_ik * e_wi_d;
-                        tparamAdj.add(tadd, y, d, k);
-                        if (fineTuning) {
-                            // dG/de_{w_i,d} = \sum_y dG/ds_y ds_y/dT_{y,k,d} 
-                            //               = \sum_y dG/ds_y (\sum_{k=1}^K T_{y,k,d} f_{i,k}) \forall i,d
-                            double eadd = scoresAdj.get(y) * tparam.get(y, d, k) * f_ik;
-                            embedAdj.add(eadd, w_i, d);
-                        }
-                        if (log.isTraceEnabled()) {
-                            log.trace("tadd={} dG/ds_y={} T_{y,k,d}={} e_{w_i,d}={} f_{i,k}={}", 
-                                    tadd, scoresAdj.get(y), tparam.get(y, d, k), e_wi_d, f_ik);
-                        }
+                    int base = d * numActive;
+                    double eadd = 0;
+                    for (int j=0; j<pos.length; j++) {
+                        eadd += vals[j] * tparamSums[base + pos[j]];
                     }
+                    embedAdj.add(eadd, w_i, d);
                 }
             }
         }
     }
 
+    /**
+     * Computes the sorted distinct features which fire on some token with an embedding, and for each
+     * token the positions of its features in that list.
+     */
+    private void initActiveFeats() {
+        if (activeFeats != null) {
+            return;
+        }
+        int total = 0;
+        for (int i=0; i<sent.size(); i++) {
+            if (sent.getEmbedId(i) != -1) {
+                total += feats.get(i).getUsed();
+            }
+        }
+        int[] all = new int[total];
+        int n = 0;
+        for (int i=0; i<sent.size(); i++) {
+            if (sent.getEmbedId(i) != -1) {
+                FeatureVector f_i = feats.get(i);
+                System.arraycopy(f_i.getInternalIndices(), 0, all, n, f_i.getUsed());
+                n += f_i.getUsed();
+            }
+        }
+        Arrays.sort(all);
+        int numActive = 0;
+        for (int j=0; j<all.length; j++) {
+            if (j == 0 || all[j] != all[j-1]) {
+                all[numActive++] = all[j];
+            }
+        }
+        activeFeats = Arrays.copyOf(all, numActive);
+        tokFeatPos = new int[sent.size()][];
+        for (int i=0; i<sent.size(); i++) {
+            FeatureVector f_i = feats.get(i);
+            if (sent.getEmbedId(i) == -1 || f_i.getUsed() == 0) { continue; }
+            int[] pos = new int[f_i.getUsed()];
+            for (int j=0; j<pos.length; j++) {
+                int k = f_i.getInternalIndices()[j];
+                assert 0 <= k && k < numFeats;
+                pos[j] = Arrays.binarySearch(activeFeats, k);
+            }
+            tokFeatPos[i] = pos;
+        }
+    }
+
     @Override
     public List<? extends Module<? extends MVec>> getInputs() {
         return QLists.getList(modIn);
@@ -0,0 +1,238 @@
+package edu.jhu.nlp.features;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.jhu.pacaya.util.FeatureNames;
+
+/**
+ * A thread safe front for a shared {@link FeatureNames} alphabet, for use by feature extraction code
+ * that runs on many worker threads at once.
+ *
+ * While the alphabet is growing, features that have already been seen are found in a concurrent
+ * cache without locking, and only the insertion of a new feature synchronizes on the underlying
+ * alphabet. Once the alphabet stops growing, the first lookup (or an explicit call to
+ * {@link #freeze()}) copies the alphabet into an immutable open-addressing table, after which all
+ * lookups are lock-free reads. If the alphabet starts growing again, or its size no longer matches
+ * the frozen table (e.g. features were added directly to the alphabet), the frozen table is dropped
+ * and lookups fall back to the cache, to be frozen again once growth stops.
+ *
+ * Instances are obtained with {@link #get(FeatureNames)}, which returns the same instance for the
+ * same alphabet. Since that is a registry lookup, feature extractors should look up the instance
+ * once and keep it in a field (see {@link #get(FeatureNames, ConcurrentFeatureNames)}).
+ *
+ * @author mgormley
+ */
+public class ConcurrentFeatureNames {
+
+    private static final ConcurrentHashMap<AlphabetKey, ConcurrentFeatureNames> registry = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<FeatureNames> staleKeys = new ReferenceQueue<>();
+
+    private final FeatureNames names;
+    /** Cache of the features looked up while the alphabet is growing. */
+    private final ConcurrentHashMap<Object, Integer> cache = new ConcurrentHashMap<>();
+    /** Indices of the features which have already been marked as bias features. */
+    private final Set<Integer> biasIdxs = ConcurrentHashMap.newKeySet();
+    /** The immutable table, or null if the alphabet has not been frozen. */
+    private volatile FrozenTable frozen;
+
+    private ConcurrentFeatureNames(FeatureNames names) {
+        this.names = names;
+    }
+
+    /** Gets the (unique) concurrent front for the given alphabet. */
+    public static ConcurrentFeatureNames get(FeatureNames names) {
+        ConcurrentFeatureNames cfn = registry.get(new AlphabetKey(names));
+        if (cfn != null) {
+            return cfn;
+        }
+        // Drop the entries for alphabets which have been garbage collected.
+        Object stale;
+        while ((stale = staleKeys.poll()) != null) {
+            registry.remove(stale);
+        }
+        return registry.computeIfAbsent(new AlphabetKey(names, staleKeys), k -> new ConcurrentFeatureNames(names));
+    }
+
+    /**
+     * Gets the concurrent front for the given alphabet, returning the previous front without a
+     * registry lookup if it is for the same alphabet. This is for feature extractors which keep the
+     * front for the alphabet they last used in a field.
+     *
+     * @param names The alphabet.
+     * @param prev The previous front, or null.
+     */
+    public static ConcurrentFeatureNames get(FeatureNames names, ConcurrentFeatureNames prev) {
+        if (prev != null && prev.names == names) {
+            return prev;
+        }
+        return get(names);
+    }
+
+    /**
+     * Looks up the index of a feature, adding it to the alphabet if the alphabet is growing.
+     *
+     * @return The index or -1 if the feature is not in the alphabet and the alphabet is not growing.
+     */
+    public int lookupIndex(Object name) {
+        FrozenTable table = frozen;
+        if (table != null) {
+            if (!names.isGrowing() && names.size() == table.numNames) {
+                return table.get(name);
+            }
+            // The alphabet has grown, or may grow, since it was frozen.
+            unfreeze(table);
+        }
+        Integer idx = cache.get(name);
+        if (idx != null) {
+            return idx;
+        }
+        if (!names.isGrowing()) {
+            return freeze().get(name);
+        }
+        synchronized (names) {
+            int i = names.lookupIndex(name);
+            if (i != -1) {
+                cache.put(name, i);
+            }
+            return i;
+        }
+    }
+
+    /**
+     * Looks up the index of a feature as in {@link #lookupIndex(Object)}, and marks it as a bias
+     * feature if requested.
+     */
+    public int lookupIndex(Object name, boolean isBias) {
+        int idx = lookupIndex(name);
+        if (isBias && idx != -1 && !biasIdxs.contains(idx)) {
+            synchronized (names) {
+                names.setIsBias(idx);
+            }
+            biasIdxs.add(idx);
+        }
+        return idx;
+    }
+
+    /**
+     * Copies the current contents of the alphabet into an immutable table, which will be used for
+     * all subsequent lookups.
+     */
+    public synchronized FrozenTable freeze() {
+        FrozenTable table;
+        synchronized (names) {
+            table = new FrozenTable(names);
+        }
+        frozen = table;
+        cache.clear();
+        return table;
+    }
+
+    /** Drops the given frozen table, unless it has already been replaced. */
+    private synchronized void unfreeze(FrozenTable table) {
+        if (frozen == table) {
+            frozen = null;
+        }
+    }
+
+    /** Whether the alphabet has been frozen. */
+    public boolean isFrozen() {
+        return frozen != null;
+    }
+
+    /** Gets the underlying alphabet. */
+    public FeatureNames getFeatureNames() {
+        return names;
+    }
+
+    /** An immutable open-addressing hash table from features to their indices. */
+    static class FrozenTable {
+
+        private final Object[] keys;
+        private final int[] vals;
+        private final int mask;
+        /** The size of the alphabet when it was frozen. */
+        private final int numNames;
+
+        FrozenTable(FeatureNames names) {
+            int n = names.size();
+            numNames = n;
+            // Keep the load factor at or below 0.5.
+            int cap = Integer.highestOneBit(Math.max(2, n) * 2 - 1) << 1;
+            keys = new Object[cap];
+            vals = new int[cap];
+            mask = cap - 1;
+            for (int i = 0; i < n; i++) {
+                Object name = names.lookupObject(i);
+                int slot = mix(name.hashCode()) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = name;
+                vals[slot] = i;
+            }
+        }
+
+        int get(Object name) {
+            int slot = mix(name.hashCode()) & mask;
+            Object key;
+            while ((key = keys[slot]) != null) {
+                if (key.equals(name)) {
+                    return vals[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        private static int mix(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+    }
+
+    /**
+     * Weak identity key for an alphabet, so that the registry neither relies on the alphabet's
+     * equals() nor keeps the alphabet alive.
+     */
+    private static class AlphabetKey extends WeakReference<FeatureNames> {
+
+        private final int hash;
+
+        AlphabetKey(FeatureNames names) {
+            super(names);
+            this.hash = System.identityHashCode(names);
+        }
+
+        AlphabetKey(FeatureNames names, ReferenceQueue<FeatureNames> queue) {
+            super(names, queue);
+            this.hash = System.identityHashCode(names);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof AlphabetKey)) {
+                return false;
+            }
+            FeatureNames names = get();
+            return names != null && names == ((AlphabetKey) obj).get();
+        }
+
+    }
+
+}
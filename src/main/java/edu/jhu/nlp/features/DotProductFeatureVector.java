@@ -0,0 +1,43 @@
+package edu.jhu.nlp.features;
+
+import edu.jhu.pacaya.gm.feat.FeatureVector;
+import edu.jhu.prim.vector.IntDoubleVector;
+
+/**
+ * A feature vector which never stores its features. Each feature added is immediately multiplied by
+ * the corresponding model weight and accumulated into a running dot product.
+ *
+ * This lets feature extraction code that is written against {@link FeatureVector} score a factor
+ * without materializing the features. Instances are not thread safe, but are intended to be reused
+ * (e.g. one per thread) by calling {@link #reset(IntDoubleVector)} before each use.
+ *
+ * @author mgormley
+ */
+public class DotProductFeatureVector extends FeatureVector {
+
+    private static final long serialVersionUID = 1L;
+
+    private IntDoubleVector weights;
+    private double dot;
+
+    public DotProductFeatureVector() {
+        super(0);
+    }
+
+    /** Clears the accumulated dot product and sets the weights against which features are scored. */
+    public void reset(IntDoubleVector weights) {
+        this.weights = weights;
+        this.dot = 0;
+    }
+
+    @Override
+    public void add(int idx, double val) {
+        dot += val * weights.get(idx);
+    }
+
+    /** Gets the dot product of all the features added since the last reset with the weights. */
+    public double getDotProduct() {
+        return dot;
+    }
+
+}
@@ -134,7 +134,7 @@ public class TemplateLanguage {
      */
     public enum AT {
         WORD, PREFIX, LEMMA, POS, CPOS, STRICT_POS, BROWN, EMBED_IDX, MORPHO, CHUNKS, DEP_TREE, DEPREL, 
-        DEP_EDGE_MASK, SRL_PRED_IDX, SRL, NARY_TREE, NE_TAGS, NER, NE_PAIRS, RELATIONS, REL_LABELS;
+        DEP_EDGE_MASK, SRL_PRED_IDX, SRL, SRL_ARG_MASK, NARY_TREE, NE_TAGS, NER, NE_PAIRS, RELATIONS, REL_LABELS;
     }
         
     public static Description getDescByName(String name) {
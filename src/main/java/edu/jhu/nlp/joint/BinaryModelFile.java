@@ -0,0 +1,421 @@
+package edu.jhu.nlp.joint;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.nlp.CorpusStatistics;
+import edu.jhu.nlp.joint.JointNlpFactorGraph.JointNlpFactorGraphPrm;
+import edu.jhu.pacaya.gm.feat.ObsFeatureConjoiner;
+import edu.jhu.pacaya.util.FeatureNames;
+import edu.jhu.pacaya.util.files.QFiles;
+import edu.jhu.prim.util.Timer;
+import edu.jhu.prim.vector.IntDoubleVector;
+
+/**
+ * Versioned binary file format for models and annotation pipelines, which replaces plain Java
+ * serialization of the whole object graph.
+ *
+ * The parameters of every {@link JointNlpFgModel} in the object graph are written as flat blocks of
+ * doubles, and the names in every {@link FeatureNames} alphabet as a flat list of strings and
+ * numbers. Everything else (corpus statistics, templates and settings) is written as a single
+ * serialized section, in which each model and alphabet is replaced by a small placeholder.
+ * Alphabets whose names are not all strings or numbers are left in the serialized section.
+ *
+ * When the file is read, each parameter block is read through a read-only memory mapping and
+ * copied directly into the model's parameter vector, without the per-object overhead of Java
+ * deserialization.
+ *
+ * The file consists of a header, a table giving the offset and length of each parameter block, the
+ * serialized section, the alphabet section, and the 8-byte aligned parameter blocks.
+ *
+ * @author mgormley
+ */
+public class BinaryModelFile {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryModelFile.class);
+    private static final int MAGIC = 0x50434d46;
+    private static final int VERSION = 2;
+    // Type tags of the feature names in the alphabet section.
+    private static final byte NAME_STRING = 0;
+    private static final byte NAME_INT = 1;
+    private static final byte NAME_LONG = 2;
+    private static final int HEADER_BYTES = 64;
+    /** The file extension for which {@link #save(Serializable, File)} uses this format. */
+    public static final String EXTENSION = ".bin";
+
+    private BinaryModelFile() {
+        // Private constructor.
+    }
+
+    /**
+     * Reads a model or pipeline from a file in either this format or Java serialization (e.g. a
+     * .ser file), as determined by the header of the file.
+     */
+    public static Object load(File file) {
+        if (isBinaryModelFile(file)) {
+            try {
+                return read(file);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            return QFiles.deserialize(file);
+        }
+    }
+
+    /**
+     * Writes a model or pipeline to a file: in this format if the file name ends with
+     * {@link #EXTENSION}, and with Java serialization otherwise.
+     */
+    public static void save(Serializable obj, File file) {
+        if (file.getName().endsWith(EXTENSION)) {
+            try {
+                write(obj, file);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            QFiles.serialize(obj, file);
+        }
+    }
+
+    /** Whether the given file begins with the header of this format. */
+    public static boolean isBinaryModelFile(File file) {
+        if (file.length() < HEADER_BYTES) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Writes a model or pipeline to a file in this format. */
+    public static void write(Serializable obj, File file) throws IOException {
+        Timer timer = new Timer();
+        timer.start();
+        // Serialize everything except the model parameters and the alphabets.
+        ByteArrayOutputStream skeleton = new ByteArrayOutputStream();
+        final List<JointNlpFgModel> models = new ArrayList<>();
+        final List<FeatureNames> alphabets = new ArrayList<>();
+        try (ObjectOutputStream oos = new ObjectOutputStream(skeleton) {
+                {
+                    enableReplaceObject(true);
+                }
+                @Override
+                protected Object replaceObject(Object o) {
+                    if (o instanceof JointNlpFgModel) {
+                        JointNlpFgModel model = (JointNlpFgModel) o;
+                        models.add(model);
+                        return new ModelPlaceholder(models.size() - 1, model);
+                    } else if (o instanceof FeatureNames && hasFlatNames((FeatureNames) o)) {
+                        alphabets.add((FeatureNames) o);
+                        return new AlphabetPlaceholder(alphabets.size() - 1);
+                    }
+                    return o;
+                }
+            }) {
+            oos.writeObject(obj);
+        }
+        ByteArrayOutputStream alphabetSection = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(alphabetSection)) {
+            writeAlphabets(alphabets, out);
+        }
+
+        long tablePos = HEADER_BYTES;
+        long skeletonPos = tablePos + 16L * models.size();
+        long alphabetPos = skeletonPos + skeleton.size();
+        long blockPos = align8(alphabetPos + alphabetSection.size());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            // Header.
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(models.size());
+            out.writeLong(skeletonPos);
+            out.writeLong(skeleton.size());
+            out.writeLong(alphabetPos);
+            out.writeLong(alphabetSection.size());
+            out.write(new byte[HEADER_BYTES - 44]);
+            // Block table.
+            long pos = blockPos;
+            for (JointNlpFgModel model : models) {
+                out.writeLong(pos);
+                out.writeLong(model.getNumParams());
+                pos += 8L * model.getNumParams();
+            }
+            // Serialized section and alphabet section, padded to the first block.
+            skeleton.writeTo(out);
+            alphabetSection.writeTo(out);
+            out.write(new byte[(int) (blockPos - alphabetPos - alphabetSection.size())]);
+            // Parameter blocks.
+            for (JointNlpFgModel model : models) {
+                IntDoubleVector params = model.getParams();
+                for (int i=0; i<model.getNumParams(); i++) {
+                    out.writeDouble(params.get(i));
+                }
+            }
+        }
+        timer.stop();
+        log.info(String.format("Wrote binary model file with %d parameter blocks and %d alphabets in %.2f s: %s",
+                models.size(), alphabets.size(), timer.totSec(), file));
+    }
+
+    /**
+     * Reads a model or pipeline from a file in this format. The parameters of each model are
+     * copied in from a memory mapping of its block.
+     */
+    public static Object read(File file) throws IOException {
+        Timer timer = new Timer();
+        timer.start();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel ch = raf.getChannel();
+            if (ch.size() < HEADER_BYTES) {
+                throw new IOException("Not a binary model file: " + file);
+            }
+            ByteBuffer header = ch.map(MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a binary model file: " + file);
+            }
+            int version = header.getInt();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported binary model file version: " + version);
+            }
+            int numBlocks = header.getInt();
+            long skeletonPos = header.getLong();
+            int skeletonLen = (int) header.getLong();
+
+            // Read the alphabets, which version 1 files left in the serialized section.
+            final FeatureNames[] alphabets;
+            if (version == 1) {
+                alphabets = new FeatureNames[0];
+            } else {
+                long alphabetPos = header.getLong();
+                int alphabetLen = (int) header.getLong();
+                byte[] alphabetSection = new byte[alphabetLen];
+                ch.map(MapMode.READ_ONLY, alphabetPos, alphabetLen).get(alphabetSection);
+                try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(alphabetSection))) {
+                    alphabets = readAlphabets(in);
+                }
+            }
+
+            // Map the parameter blocks. The mapped buffers remain valid after the channel is closed.
+            ByteBuffer table = ch.map(MapMode.READ_ONLY, HEADER_BYTES, 16L * numBlocks);
+            final DoubleBuffer[] blocks = new DoubleBuffer[numBlocks];
+            for (int b=0; b<numBlocks; b++) {
+                long pos = table.getLong();
+                long numParams = table.getLong();
+                if (8L * numParams > Integer.MAX_VALUE) {
+                    throw new IOException("Parameter block is too large to map: " + numParams);
+                }
+                blocks[b] = ch.map(MapMode.READ_ONLY, pos, 8L * numParams).asDoubleBuffer();
+            }
+
+            // Read the serialized section, rebuilding each model around its block.
+            byte[] skeleton = new byte[skeletonLen];
+            ch.map(MapMode.READ_ONLY, skeletonPos, skeletonLen).get(skeleton);
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(skeleton)) {
+                    {
+                        enableResolveObject(true);
+                    }
+                    @Override
+                    protected Object resolveObject(Object o) throws IOException {
+                        if (o instanceof ModelPlaceholder) {
+                            return ((ModelPlaceholder) o).getModel(blocks);
+                        } else if (o instanceof AlphabetPlaceholder) {
+                            return alphabets[((AlphabetPlaceholder) o).alphabet];
+                        }
+                        return o;
+                    }
+                }) {
+                Object obj = ois.readObject();
+                timer.stop();
+                log.info(String.format("Read binary model file with %d parameter blocks and %d alphabets in %.2f s: %s",
+                        numBlocks, alphabets.length, timer.totSec(), file));
+                return obj;
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /** Converts a Java serialized model or pipeline (e.g. a .ser file) to this format. */
+    public static void convert(File serFile, File binFile) throws IOException {
+        log.info("Converting " + serFile + " to " + binFile);
+        write((Serializable) QFiles.deserialize(serFile), binFile);
+    }
+
+    private static long align8(long pos) {
+        return (pos + 7) & ~7L;
+    }
+
+    /** Whether all the names in the alphabet can be written to the alphabet section. */
+    private static boolean hasFlatNames(FeatureNames alphabet) {
+        for (int i=0; i<alphabet.size(); i++) {
+            Object name = alphabet.lookupObject(i);
+            if (!(name instanceof String || name instanceof Integer || name instanceof Long)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the alphabets. Each one is written as its number of names, whether it is growing, its
+     * number of bias features followed by their indices, and its names in index order, each as a
+     * type tag followed by the value.
+     */
+    private static void writeAlphabets(List<FeatureNames> alphabets, DataOutputStream out) throws IOException {
+        out.writeInt(alphabets.size());
+        for (FeatureNames alphabet : alphabets) {
+            int n = alphabet.size();
+            out.writeInt(n);
+            out.writeBoolean(alphabet.isGrowing());
+            int numBias = 0;
+            for (int i=0; i<n; i++) {
+                if (alphabet.isBiasFeature(i)) {
+                    numBias++;
+                }
+            }
+            out.writeInt(numBias);
+            for (int i=0; i<n; i++) {
+                if (alphabet.isBiasFeature(i)) {
+                    out.writeInt(i);
+                }
+            }
+            for (int i=0; i<n; i++) {
+                Object name = alphabet.lookupObject(i);
+                if (name instanceof String) {
+                    byte[] bytes = ((String) name).getBytes(StandardCharsets.UTF_8);
+                    out.writeByte(NAME_STRING);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                } else if (name instanceof Integer) {
+                    out.writeByte(NAME_INT);
+                    out.writeInt((Integer) name);
+                } else {
+                    out.writeByte(NAME_LONG);
+                    out.writeLong((Long) name);
+                }
+            }
+        }
+    }
+
+    /** Reads the alphabets written by {@link #writeAlphabets(List, DataOutputStream)}. */
+    private static FeatureNames[] readAlphabets(DataInputStream in) throws IOException {
+        FeatureNames[] alphabets = new FeatureNames[in.readInt()];
+        for (int a=0; a<alphabets.length; a++) {
+            int n = in.readInt();
+            boolean isGrowing = in.readBoolean();
+            int[] biasIdxs = new int[in.readInt()];
+            for (int j=0; j<biasIdxs.length; j++) {
+                biasIdxs[j] = in.readInt();
+            }
+            FeatureNames alphabet = new FeatureNames();
+            for (int i=0; i<n; i++) {
+                Object name;
+                byte type = in.readByte();
+                if (type == NAME_STRING) {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    name = new String(bytes, StandardCharsets.UTF_8);
+                } else if (type == NAME_INT) {
+                    name = in.readInt();
+                } else if (type == NAME_LONG) {
+                    name = in.readLong();
+                } else {
+                    throw new IOException("Unknown feature name type: " + type);
+                }
+                if (alphabet.lookupIndex(name) != i) {
+                    throw new IOException("Duplicate feature name in alphabet " + a + ": " + name);
+                }
+            }
+            for (int idx : biasIdxs) {
+                alphabet.setIsBias(idx);
+            }
+            if (!isGrowing) {
+                alphabet.stopGrowth();
+            }
+            alphabets[a] = alphabet;
+        }
+        return alphabets;
+    }
+
+    /** Stands in for a {@link FeatureNames} alphabet in the serialized section. */
+    private static class AlphabetPlaceholder implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private int alphabet;
+
+        public AlphabetPlaceholder(int alphabet) {
+            this.alphabet = alphabet;
+        }
+
+    }
+
+    /** Stands in for a {@link JointNlpFgModel} in the serialized section. */
+    private static class ModelPlaceholder implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private int block;
+        private CorpusStatistics cs;
+        private ObsFeatureConjoiner ofc;
+        private JointNlpFactorGraphPrm fgPrm;
+
+        public ModelPlaceholder(int block, JointNlpFgModel model) {
+            this.block = block;
+            this.cs = model.getCs();
+            this.ofc = model.getOfc();
+            this.fgPrm = model.getFgPrm();
+        }
+
+        public JointNlpFgModel getModel(DoubleBuffer[] blocks) throws IOException {
+            JointNlpFgModel model = new JointNlpFgModel(cs, ofc, fgPrm);
+            DoubleBuffer params = blocks[block];
+            if (params.limit() != model.getNumParams()) {
+                throw new IOException(String.format("Parameter block %d has %d parameters, but the model has %d",
+                        block, params.limit(), model.getNumParams()));
+            }
+            IntDoubleVector modelParams = model.getParams();
+            for (int i=0; i<params.limit(); i++) {
+                modelParams.set(i, params.get(i));
+            }
+            return model;
+        }
+
+    }
+
+    /**
+     * Converts a Java serialized model or pipeline to the binary format.
+     * Usage: BinaryModelFile input.ser output.bin
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BinaryModelFile input.ser output.bin");
+            System.exit(1);
+        }
+        convert(new File(args[0]), new File(args[1]));
+    }
+
+}
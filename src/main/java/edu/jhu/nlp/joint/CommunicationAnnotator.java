@@ -70,7 +70,7 @@ public class CommunicationAnnotator {
         Threads.initDefaultPool(prm.threads);
         if (prm.inputType == InputType.FILE) {
             log.info("Reading the annotation pipeline from file: " + prm.pipeIn);
-            this.anno = (AnnoPipeline) QFiles.deserialize(prm.pipeIn);
+            this.anno = (AnnoPipeline) BinaryModelFile.load(new File(prm.pipeIn));
         } else { // inputType == InputType.RESOURCE
             log.info("Reading the annotation pipeline from resource: " + prm.pipeIn);
             this.anno = (AnnoPipeline) QFiles.deserializeResource(prm.pipeIn);
@@ -21,6 +21,7 @@ import edu.jhu.nlp.data.conll.SrlGraph.SrlEdge;
 import edu.jhu.nlp.data.conll.SrlGraph.SrlPred;
 import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.features.FeaturizedSentence;
 import edu.jhu.nlp.features.LocalObservations;
 import edu.jhu.nlp.features.TemplateFeatureExtractor;
 import edu.jhu.nlp.features.TemplateLanguage.FeatTemplate;
@@ -64,6 +65,23 @@ public class IGFeatureTemplateSelector {
         public int maxNumSentences = Integer.MAX_VALUE;
         /** Whether to do feature selection for sense features. */
         public boolean selectSense = true;
+        /** Whether to approximate information gain with sketches, whose memory is bounded per template. */
+        public boolean useSketch = false;
+        /** The number of rows (i.e. hash functions) of each sketch. */
+        public int sketchDepth = 2;
+        /** The number of feature buckets in each row of a sketch. */
+        public int sketchWidth = 512;
+        /** 
+         * The number of sentences on which to compare the approximate information gain to the exact
+         * information gain. If <= 0, no comparison will be made.
+         */
+        public int sketchReportNumSents = 0;
+        /**
+         * The number of templates to count in each pass over the corpus. Only the counts and
+         * feature alphabets of these templates are in memory at a time, but each pass featurizes
+         * every sentence again. If <= 0, all the templates are counted in a single pass.
+         */
+        public int numTplsPerPass = 0;
     }
     
     private IGFeatureTemplateSelectorPrm prm;
@@ -154,7 +172,10 @@ public class IGFeatureTemplateSelector {
                 
         // Compute information gain.
         log.info("Computing information gain for feature templates.");
-        Pair<double[][], int[]> pair = computeInformationGain(allTpls, valExts, inputSents, goldSents, cs);
+        Pair<double[][], int[]> pair = computeInformationGain(allTpls, valExts, inputSents, goldSents, cs, prm.useSketch);
+        if (prm.useSketch && prm.sketchReportNumSents > 0) {
+            reportSketchAccuracy(allTpls, valExts, inputSents, goldSents, cs, numToSelect);
+        }
         double[][] ig = pair.get1();
         int[] featCount = pair.get2();
                 
@@ -181,112 +202,274 @@ public class IGFeatureTemplateSelector {
         }
     }
 
+    /**
+     * Compares the approximate information gain computed from sketches to the exact information
+     * gain on the first prm.sketchReportNumSents sentences, and logs the errors and the overlap of
+     * the selected templates.
+     */
+    private void reportSketchAccuracy(List<FeatTemplate> allTpls, List<ValExtractor> valExts,
+            AnnoSentenceCollection inputSents, AnnoSentenceCollection goldSents, CorpusStatistics cs, int numToSelect) {
+        int numSents = Math.min(prm.sketchReportNumSents, goldSents.size());
+        AnnoSentenceCollection inputSample = inputSents.subList(0, numSents);
+        AnnoSentenceCollection goldSample = goldSents.subList(0, numSents);
+        double[][] exact = computeInformationGain(allTpls, valExts, inputSample, goldSample, cs, false).get1();
+        double[][] approx = computeInformationGain(allTpls, valExts, inputSample, goldSample, cs, true).get1();
+        for (int c=0; c<valExts.size(); c++) {
+            double sumAbsErr = 0;
+            double maxAbsErr = 0;
+            for (int t=0; t<allTpls.size(); t++) {
+                double err = Math.abs(exact[c][t] - approx[c][t]);
+                sumAbsErr += err;
+                maxAbsErr = Math.max(maxAbsErr, err);
+            }
+            Set<Integer> exactTop = getTopIndices(exact[c], numToSelect);
+            Set<Integer> approxTop = getTopIndices(approx[c], numToSelect);
+            int overlap = 0;
+            for (Integer t : approxTop) {
+                if (exactTop.contains(t)) {
+                    overlap++;
+                }
+            }
+            log.info(String.format("Sketch accuracy on %d sentences for %s: meanAbsErr=%g maxAbsErr=%g topOverlap=%d/%d",
+                    numSents, valExts.get(c).getName(), sumAbsErr / allTpls.size(), maxAbsErr, overlap, exactTop.size()));
+        }
+    }
+
+    private static Set<Integer> getTopIndices(double[] values, int k) {
+        int[] indices = IntArrays.range(values.length);
+        double[] copy = DoubleArrays.copyOf(values);
+        IntDoubleSort.sortValuesDesc(copy, indices);
+        Set<Integer> top = new HashSet<Integer>();
+        for (int i=0; i<Math.min(k, indices.length); i++) {
+            top.add(indices[i]);
+        }
+        return top;
+    }
+
     private Pair<double[][], int[]> computeInformationGain(List<FeatTemplate> allTpls, List<ValExtractor> valExts,
-            AnnoSentenceCollection inputSents, AnnoSentenceCollection goldSents, CorpusStatistics cs) {
+            AnnoSentenceCollection inputSents, AnnoSentenceCollection goldSents, CorpusStatistics cs, boolean useSketch) {
         // Information gain, indexed by ValExtractor index, and template index.
         double[][] ig = new double[valExts.size()][allTpls.size()];
         // Feature count for each template.
         int[] featCount = new int[allTpls.size()];
-        if (prm.numThreads == 1) { 
-            for (int t=0; t<allTpls.size(); t++) {
-                computeInformationGain(t, allTpls, valExts, inputSents, goldSents, cs, ig, featCount);
+        // Count the templates in blocks, so that only the counts and alphabets of one block are
+        // in memory at a time.
+        int blockSize = (prm.numTplsPerPass > 0) ? prm.numTplsPerPass : allTpls.size();
+        for (int tStart=0; tStart<allTpls.size(); tStart += blockSize) {
+            List<FeatTemplate> tpls = allTpls.subList(tStart, Math.min(tStart + blockSize, allTpls.size()));
+            IGCounter total = count(tpls, valExts, inputSents, goldSents, cs, useSketch);
+            for (int b=0; b<tpls.size(); b++) {
+                int t = tStart + b;
+                FeatTemplate tpl = allTpls.get(t);
+                if (total.hasNoFeats[b] && !tplsWithNoFeats.contains(tpl)) {
+                    log.warn("No features extracted for template: " + tpl.getName());
+                    tplsWithNoFeats.add(tpl);
+                }
+                for (int c = 0; c < valExts.size(); c++) {
+                    // Compute information gain for this (feature template, value extractor) pair.                
+                    ig[c][t] = useSketch ? total.sketches[b][c].getInformationGain() : computeInformationGain(total.counts[b][c]);
+                }
+                featCount[t] = useSketch ? total.sketches[b][0].getNumFeaturesEstimate() : total.alphabets.get(b).size();
+                if (t % 10 == 0) {
+                    log.debug(String.format("Processed feature template %d of %d: %s #feats=%d", t, allTpls.size(), tpl.getName(), featCount[t]));
+                }
             }
+        }
+        return new Pair<double[][], int[]>(ig, featCount);
+    }
+
+    /**
+     * Counts the features and values for a block of templates in a single pass over the corpus,
+     * with each thread counting over a contiguous range of sentences.
+     */
+    private IGCounter count(List<FeatTemplate> tpls, List<ValExtractor> valExts, AnnoSentenceCollection inputSents,
+            AnnoSentenceCollection goldSents, CorpusStatistics cs, boolean useSketch) {
+        int numShards = Math.max(1, Math.min(prm.numThreads, goldSents.size()));
+        List<IGCounter> counters = new ArrayList<IGCounter>();
+        for (int s=0; s<numShards; s++) {
+            int start = (int) ((long) goldSents.size() * s / numShards);
+            int end = (int) ((long) goldSents.size() * (s+1) / numShards);
+            counters.add(new IGCounter(start, end, tpls, valExts, inputSents, goldSents, cs, useSketch));
+        }
+        if (numShards == 1) {
+            counters.get(0).count();
         } else {
-            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
-            for (int t=0; t<allTpls.size(); t++) {
-                tasks.add(new IGComputer(t, allTpls, valExts, inputSents, goldSents, cs, ig, featCount));
-            }
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(counters);
             Threads.invokeAndAwaitAll(Threads.defaultPool, tasks);
         }
-        return new Pair<double[][], int[]>(ig, featCount);
+        // Merge the counts of each thread.
+        IGCounter total = counters.get(0);
+        for (int s=1; s<numShards; s++) {
+            total.merge(counters.get(s));
+            counters.set(s, null);
+        }
+        return total;
     }
     
-    private class IGComputer implements Callable<Object> {
-        int t; List<FeatTemplate> allTpls; List<ValExtractor> valExts;
+    /**
+     * Counts the co-occurrences of features and values for a block of templates over a range of
+     * sentences. Each sentence is featurized once and the featurization is shared by all the
+     * templates. Only the (pidx, cidx) pairs for which some value extractor gives a value are
+     * featurized, so the feature counts reported for each template are over those pairs.
+     * 
+     * Each counter has its own feature alphabets, so that counters in different threads do not
+     * contend for them. The alphabets are reconciled when the counters are merged.
+     */
+    private class IGCounter implements Callable<Object> {
+        int start; int end; List<FeatTemplate> tpls; List<ValExtractor> valExts;
         AnnoSentenceCollection inputSents; AnnoSentenceCollection goldSents; 
-        CorpusStatistics cs; double[][] ig;
-        int[] featCount;
-        public IGComputer(int t, List<FeatTemplate> allTpls, List<ValExtractor> valExts,
-                AnnoSentenceCollection inputSents, AnnoSentenceCollection goldSents, CorpusStatistics cs, double[][] ig, 
-                int[] featCount) {
-            super();
-            this.t = t;
-            this.allTpls = allTpls;
+        CorpusStatistics cs;
+        /** Feature alphabets for each template. Null if using sketches. */
+        List<IntObjectBimap<String>> alphabets;
+        /** Counts indexed by template, ValExtractor index, and value. Null if using sketches. */
+        IntDoubleDenseVector[][][] counts;
+        /** Sketches indexed by template and ValExtractor index. Null if using exact counts. */
+        IGSketch[][] sketches;
+        /** Whether any pair had no features for each template. */
+        boolean[] hasNoFeats;
+        public IGCounter(int start, int end, List<FeatTemplate> tpls, List<ValExtractor> valExts,
+                AnnoSentenceCollection inputSents, AnnoSentenceCollection goldSents, CorpusStatistics cs,
+                boolean useSketch) {
+            this.start = start;
+            this.end = end;
+            this.tpls = tpls;
             this.valExts = valExts;
             this.inputSents = inputSents;
             this.goldSents = goldSents;
             this.cs = cs;
-            this.ig = ig;
-            this.featCount = featCount;
+            if (useSketch) {
+                this.sketches = new IGSketch[tpls.size()][valExts.size()];
+                for (int t=0; t<tpls.size(); t++) {
+                    for (int c=0; c<valExts.size(); c++) {
+                        sketches[t][c] = new IGSketch(prm.sketchDepth, prm.sketchWidth, valExts.get(c).getNumVals());
+                    }
+                }
+            } else {
+                this.alphabets = new ArrayList<IntObjectBimap<String>>();
+                this.counts = new IntDoubleDenseVector[tpls.size()][][];
+                for (int t=0; t<tpls.size(); t++) {
+                    alphabets.add(new IntObjectBimap<String>());
+                    counts[t] = getCountsArray(valExts);
+                }
+            }
+            this.hasNoFeats = new boolean[tpls.size()];
         }
         @Override
         public Object call() throws Exception {
-            computeInformationGain(t, allTpls, valExts, inputSents, goldSents, cs, ig, featCount);
+            count();
             return null;
         }
-    }
-
-    private void computeInformationGain(int t, List<FeatTemplate> allTpls, List<ValExtractor> valExts,
-            AnnoSentenceCollection inputSents, AnnoSentenceCollection goldSents, CorpusStatistics cs, double[][] ig, int[] featCount) {
-        FeatTemplate tpl = allTpls.get(t);
+        public void count() {
+            int[] valIdxs = new int[valExts.size()];
+            List<String> feats = new ArrayList<String>();
+            for (int i=start; i<end; i++) {                
+                AnnoSentence goldSent = goldSents.get(i);
+                AnnoSentence inputSent = inputSents.get(i);
+                TemplateFeatureExtractor featExt = new TemplateFeatureExtractor(new FeaturizedSentence(inputSent, cs), cs);
 
-        final IntDoubleDenseVector[][] counts = getCountsArray(valExts);
-        IntObjectBimap<String> alphabet = new IntObjectBimap<String>();
-        for (int i=0; i<goldSents.size(); i++) {                
-            AnnoSentence goldSent = goldSents.get(i);
-            AnnoSentence inputSent = inputSents.get(i);
-            TemplateFeatureExtractor featExt = new TemplateFeatureExtractor(inputSent, cs);
-
-            for (int pidx=-1; pidx<inputSent.size(); pidx++) {
-                for (int cidx=-1; cidx<inputSent.size(); cidx++) {
-                    
-                    // Feature Extraction.
-                    List<String> feats = new ArrayList<String>();
-                    featExt.addFeatures(QLists.getList(tpl), LocalObservations.newPidxCidx(pidx, cidx), feats);
-                    if (feats.size() == 0) {
-                        if (!tplsWithNoFeats.contains(tpl)) {
-                            log.warn("No features extracted for template: " + tpl.getName());
-                            tplsWithNoFeats.add(tpl);
+                for (int pidx=-1; pidx<inputSent.size(); pidx++) {
+                    for (int cidx=-1; cidx<inputSent.size(); cidx++) {
+                        // Value Extraction.
+                        boolean hasVal = false;
+                        for (int c = 0; c < valExts.size(); c++) {
+                            valIdxs[c] = valExts.get(c).getValIdx(goldSent, pidx, cidx);
+                            hasVal |= (valIdxs[c] != -1);
                         }
-                    }
-                    FeatureVector fv = new FeatureVector();
-                    for (int j=0; j<feats.size(); j++) {                                
-                        String featName = feats.get(j);
-                        int featIdx;
-                        if (prm.featureHashMod > 0) {
-                            String data = featName;
-                            featIdx = FastMath.mod(MurmurHash3.murmurhash3_x86_32(data, 0, data.length(), 123456789), prm.featureHashMod);
-                            featIdx = alphabet.lookupIndex(Integer.toString(featIdx));
-                        } else {
-                            featIdx = alphabet.lookupIndex(featName);
+                        if (!hasVal) {
+                            // No counts would be incremented.
+                            continue;
                         }
-                        fv.add(featIdx, 1.0);
-                    }
-                    
-                    // For each value extractor:
-                    for (int c = 0; c < valExts.size(); c++) {
-                        // Value Extraction.
-                        ValExtractor valExt = valExts.get(c);
-                        final int valIdx = valExt.getValIdx(goldSent, pidx, cidx);
                         
-                        if (valIdx != -1) {
+                        LocalObservations local = LocalObservations.newPidxCidx(pidx, cidx);
+                        for (int t=0; t<tpls.size(); t++) {
+                            // Feature Extraction.
+                            feats.clear();
+                            featExt.addFeatures(tpls.get(t), local, feats);
+                            if (feats.size() == 0) {
+                                hasNoFeats[t] = true;
+                            }
+                            if (sketches != null) {
+                                for (int j=0; j<feats.size(); j++) {
+                                    int featHash = getFeatureHash(feats.get(j));
+                                    for (int c = 0; c < valExts.size(); c++) {
+                                        if (valIdxs[c] != -1) {
+                                            sketches[t][c].add(featHash, valIdxs[c]);
+                                        }
+                                    }
+                                }
+                                continue;
+                            }
+                            FeatureVector fv = getFeatureVector(feats, alphabets.get(t));
+                            
                             // Increment counts of feature and value occurrences.
-                            counts[c][valIdx].add(fv);
+                            for (int c = 0; c < valExts.size(); c++) {
+                                if (valIdxs[c] != -1) {
+                                    counts[t][c][valIdxs[c]].add(fv);
+                                }
+                            }
                         }
                     }
                 }
             }
         }
-        
-        for (int c = 0; c < valExts.size(); c++) {
-            // Compute information gain for this (feature template, value extractor) pair.                
-            ig[c][t] = computeInformationGain(counts[c]);
+        /** Adds the counts of the other counter to this one. */
+        public void merge(IGCounter other) {
+            for (int t=0; t<hasNoFeats.length; t++) {
+                if (sketches != null) {
+                    for (int c=0; c<sketches[t].length; c++) {
+                        sketches[t][c].add(other.sketches[t][c]);
+                    }
+                } else {
+                    // Map the other counter's feature indices to this counter's.
+                    IntObjectBimap<String> alphabet = alphabets.get(t);
+                    IntObjectBimap<String> otherAlphabet = other.alphabets.get(t);
+                    int[] idxMap = new int[otherAlphabet.size()];
+                    for (int f=0; f<idxMap.length; f++) {
+                        idxMap[f] = alphabet.lookupIndex(otherAlphabet.lookupObject(f));
+                    }
+                    for (int c=0; c<counts[t].length; c++) {
+                        for (int v=0; v<counts[t][c].length; v++) {
+                            IntDoubleDenseVector otherCounts = other.counts[t][c][v];
+                            for (int f=0; f<otherCounts.getNumImplicitEntries(); f++) {
+                                double count = otherCounts.get(f);
+                                if (count != 0) {
+                                    counts[t][c][v].add(idxMap[f], count);
+                                }
+                            }
+                        }
+                    }
+                }
+                hasNoFeats[t] |= other.hasNoFeats[t];
+            }
         }
-        featCount[t] = alphabet.size();
-        
-        if (t % 10 == 0) {
-            log.debug(String.format("Processed feature template %d of %d: %s #feats=%d", t, allTpls.size(), tpl.getName(), alphabet.size()));
+    }
+
+    /** Gets the hash code of a feature for the sketches, applying the feature hashing trick if enabled. */
+    private int getFeatureHash(String featName) {
+        int featHash = MurmurHash3.murmurhash3_x86_32(featName, 0, featName.length(), 123456789);
+        if (prm.featureHashMod > 0) {
+            featHash = FastMath.mod(featHash, prm.featureHashMod);
+        }
+        return featHash;
+    }
+
+    private FeatureVector getFeatureVector(List<String> feats, IntObjectBimap<String> alphabet) {
+        String[] keys = new String[feats.size()];
+        for (int j=0; j<feats.size(); j++) {                                
+            String featName = feats.get(j);
+            if (prm.featureHashMod > 0) {
+                String data = featName;
+                int featIdx = FastMath.mod(MurmurHash3.murmurhash3_x86_32(data, 0, data.length(), 123456789), prm.featureHashMod);
+                keys[j] = Integer.toString(featIdx);
+            } else {
+                keys[j] = featName;
+            }
+        }
+        FeatureVector fv = new FeatureVector();
+        for (int j=0; j<keys.length; j++) {
+            fv.add(alphabet.lookupIndex(keys[j]), 1.0);
         }
+        return fv;
     }
     
     /**
@@ -0,0 +1,143 @@
+package edu.jhu.nlp.joint;
+
+import edu.jhu.prim.util.math.FastMath;
+
+/**
+ * Count-min style sketch of the co-occurrence counts of (hashed) feature values and values, from
+ * which the information gain of a feature template can be approximated in memory that does not
+ * grow with the number of distinct features.
+ *
+ * Each of the rows hashes the features into a fixed number of buckets with an independent hash
+ * function and counts the co-occurrences of each bucket with each value. Merging features into
+ * buckets can only lose information, so the information gain computed from any row is a lower
+ * bound on the exact information gain. The estimate is the largest of these lower bounds.
+ *
+ * @author mgormley
+ */
+public class IGSketch {
+
+    private final int depth;
+    private final int width;
+    private final int numVals;
+    /** Counts indexed by row, and then by value * width + bucket. */
+    private final int[][] counts;
+
+    /**
+     * Constructs a sketch.
+     *
+     * @param depth The number of rows.
+     * @param width The number of buckets in each row.
+     * @param numVals The number of values.
+     */
+    public IGSketch(int depth, int width, int numVals) {
+        if (depth < 1 || width < 1) {
+            throw new IllegalArgumentException("Invalid sketch dimensions: depth=" + depth + " width=" + width);
+        }
+        this.depth = depth;
+        this.width = width;
+        this.numVals = numVals;
+        this.counts = new int[depth][width * numVals];
+    }
+
+    /** Adds one co-occurrence of a feature, given by its hash code, and a value. */
+    public void add(int featHash, int valIdx) {
+        for (int r = 0; r < depth; r++) {
+            counts[r][valIdx * width + getBucket(featHash, r)]++;
+        }
+    }
+
+    /** Adds the counts of another sketch with the same dimensions. */
+    public void add(IGSketch other) {
+        if (other.depth != depth || other.width != width || other.numVals != numVals) {
+            throw new IllegalArgumentException("Sketch dimensions do not match");
+        }
+        for (int r = 0; r < depth; r++) {
+            for (int i = 0; i < counts[r].length; i++) {
+                counts[r][i] += other.counts[r][i];
+            }
+        }
+    }
+
+    /** Gets the bucket of a feature in the given row. */
+    private int getBucket(int featHash, int row) {
+        // Remix the hash with a different seed for each row.
+        int h = featHash ^ (0x9E3779B9 * (row + 1));
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return FastMath.mod(h, width);
+    }
+
+    /** Gets the approximate information gain: the largest of the lower bounds given by each row. */
+    public double getInformationGain() {
+        double ig = 0.0;
+        for (int r = 0; r < depth; r++) {
+            ig = Math.max(ig, getInformationGain(r));
+        }
+        return ig;
+    }
+
+    /**
+     * Computes the information gain for the bucketed counts of a single row.
+     *
+     * IG = sum_f sum_v p(v,f) log_2( p(v,f) / (p(f) p(v)) )
+     */
+    private double getInformationGain(int r) {
+        int[] row = counts[r];
+        double[] vCounts = new double[numVals];
+        double[] fCounts = new double[width];
+        double total = 0;
+        for (int v = 0; v < numVals; v++) {
+            for (int f = 0; f < width; f++) {
+                int c = row[v * width + f];
+                vCounts[v] += c;
+                fCounts[f] += c;
+                total += c;
+            }
+        }
+        double ig = 0.0;
+        for (int v = 0; v < numVals; v++) {
+            for (int f = 0; f < width; f++) {
+                double c = row[v * width + f];
+                if (c == 0) {
+                    continue;
+                }
+                ig += c / total * FastMath.log2(c / total * total / vCounts[v] * total / fCounts[f]);
+            }
+        }
+        return ig;
+    }
+
+    /**
+     * Estimates the number of distinct features by linear counting on the occupied buckets of the
+     * first row.
+     */
+    public int getNumFeaturesEstimate() {
+        int empty = 0;
+        for (int f = 0; f < width; f++) {
+            boolean isEmpty = true;
+            for (int v = 0; v < numVals && isEmpty; v++) {
+                isEmpty = (counts[0][v * width + f] == 0);
+            }
+            if (isEmpty) {
+                empty++;
+            }
+        }
+        if (empty == 0) {
+            // Every bucket is occupied, so the estimate is unbounded.
+            return width;
+        }
+        return (int) Math.round(-width * Math.log((double) empty / width));
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+}
@@ -1,6 +1,7 @@
 package edu.jhu.nlp.joint;
 
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -16,7 +17,7 @@ import org.slf4j.LoggerFactory;
 
 import edu.jhu.hlt.optimize.function.Function;
 import edu.jhu.nlp.AbstractParallelAnnotator;
-import edu.jhu.nlp.Annotator;
+import edu.jhu.nlp.ConcurrentAnnotator;
 import edu.jhu.nlp.CorpusStatistics;
 import edu.jhu.nlp.CorpusStatistics.CorpusStatisticsPrm;
 import edu.jhu.nlp.Evaluator;
@@ -24,6 +25,7 @@ import edu.jhu.nlp.Trainable;
 import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
 import edu.jhu.nlp.data.simple.CorpusHandler;
+import edu.jhu.nlp.depparse.DepParseFeatureStore;
 import edu.jhu.nlp.embed.Embeddings;
 import edu.jhu.nlp.eval.DepParseAccuracy;
 import edu.jhu.nlp.eval.PosTagAccuracy;
@@ -45,7 +47,6 @@ import edu.jhu.pacaya.gm.train.CrfTrainer.CrfTrainerPrm;
 import edu.jhu.pacaya.util.Prm;
 import edu.jhu.pacaya.util.Threads;
 import edu.jhu.pacaya.util.collections.QSets;
-import edu.jhu.pacaya.util.files.QFiles;
 import edu.jhu.prim.util.Lambda.FnIntToVoid;
 import edu.jhu.prim.util.Timer;
 import edu.jhu.prim.vector.IntDoubleVector;
@@ -55,7 +56,7 @@ import edu.jhu.prim.vector.IntDoubleVector;
  * 
  * @author mgormley
  */
-public class JointNlpAnnotator implements Trainable, Annotator {
+public class JointNlpAnnotator implements Trainable, ConcurrentAnnotator, Closeable {
 
     public static enum InitParams { UNIFORM, RANDOM };
     private static final long serialVersionUID = 1L;
@@ -83,6 +84,10 @@ public class JointNlpAnnotator implements Trainable, Annotator {
     private JointNlpAnnotatorPrm prm;   
     private JointNlpFgModel model = null;
     private Embeddings embeddings; // TODO: Remove this hack.
+    // The dependency parse feature store used for decoding, which is opened on the first call to
+    // annotate() and kept open until close().
+    private transient DepParseFeatureStore dpStore;
+    private transient boolean dpStoreOpened = false;
 
     public JointNlpAnnotator(JointNlpAnnotatorPrm prm, Embeddings embeddings) {
         this.prm = prm;
@@ -131,11 +136,18 @@ public class JointNlpAnnotator implements Trainable, Annotator {
         
         log.info("Training model.");
         CrfTrainer trainer = new CrfTrainer(prm.crfPrm);
-        trainer.train(model, data, getValidationFn(devInput, devGold));
+        JointNlpFgExamplesBuilder devBuilder = new JointNlpFgExamplesBuilder(prm.buPrm, ofc, cs, false);
+        try {
+            trainer.train(model, data, getValidationFn(devInput, devGold, devBuilder));
+        } finally {
+            builder.close();
+            devBuilder.close();
+        }
         ofc.getTemplates().stopGrowth();
     }
     
-    private Function getValidationFn(final AnnoSentenceCollection devInput, final AnnoSentenceCollection devGold) {
+    private Function getValidationFn(final AnnoSentenceCollection devInput, final AnnoSentenceCollection devGold,
+            JointNlpFgExamplesBuilder builder) {
         if (devInput == null || devGold == null) { return null; }
         final JointNlpAnnotator anno = this;
         final Evaluator eval;
@@ -161,7 +173,6 @@ public class JointNlpAnnotator implements Trainable, Annotator {
             return null;
         }
 
-        JointNlpFgExamplesBuilder builder = new JointNlpFgExamplesBuilder(prm.buPrm, model.getOfc(), model.getCs(), false);
         final FgExampleList devData = builder.getData(devInput, null);
         return new Function() {
             
@@ -184,17 +195,35 @@ public class JointNlpAnnotator implements Trainable, Annotator {
         if (model == null) {
             throw new IllegalStateException("No model exists. Must call train() or loadModel() before annotate().");
         }
-        
         log.info("Running the decoder");
         Timer timer = new Timer();
         timer.start();
-        JointNlpFgExamplesBuilder builder = new JointNlpFgExamplesBuilder(prm.buPrm, model.getOfc(), model.getCs(), false);
+        JointNlpFgExamplesBuilder builder = new JointNlpFgExamplesBuilder(prm.buPrm, model.getOfc(), model.getCs(), false, getDpStore());
         FgExampleList data = builder.getData(sents, null);  
         annotate(sents, data);
         timer.stop();
         log.info(String.format("Decoded at %.2f tokens/sec with %d threads", sents.getNumTokens() / timer.totSec(), Threads.numThreads));
     }
 
+    /** Gets the dependency parse feature store (or null if none is used), opening it on the first call. */
+    private synchronized DepParseFeatureStore getDpStore() {
+        if (!dpStoreOpened) {
+            dpStore = JointNlpFgExamplesBuilder.openDpStore(prm.buPrm);
+            dpStoreOpened = true;
+        }
+        return dpStore;
+    }
+    
+    /** Releases the dependency parse feature store, if one was opened by annotate(). */
+    @Override
+    public synchronized void close() throws IOException {
+        if (dpStore != null) {
+            dpStore.close();
+        }
+        dpStore = null;
+        dpStoreOpened = false;
+    }
+
     private void annotate(final AnnoSentenceCollection sents, final FgExampleList data) {
         // Add the new predictions to the input sentences.
         Threads.forEach(0, sents.size(), new FnIntToVoid() {            
@@ -205,7 +234,7 @@ public class JointNlpAnnotator implements Trainable, Annotator {
                     AnnoSentence inputSent = sents.get(i);
                     JointNlpDecoder decoder = new JointNlpDecoder(prm.dePrm);
                     AnnoSentence predSent = decoder.decode(model, ex, inputSent);
-                    sents.set(i, predSent);
+                    sents.put(i, predSent);
                 } catch (Throwable t) {
                     AbstractParallelAnnotator.logThrowable(log, t);
                 }
@@ -216,7 +245,7 @@ public class JointNlpAnnotator implements Trainable, Annotator {
     public void loadModel(File modelIn) {
         // Read a model from a file.
         log.info("Reading model from file: " + modelIn);
-        loadModel((JointNlpFgModel) QFiles.deserialize(modelIn));
+        loadModel((JointNlpFgModel) BinaryModelFile.load(modelIn));
     }
     
     public void loadModel(JointNlpFgModel model) {
@@ -228,7 +257,7 @@ public class JointNlpAnnotator implements Trainable, Annotator {
     public void saveModel(File modelOut) {
         // Write the model to a file.
         log.info("Serializing model to file: " + modelOut);
-        QFiles.serialize(model, modelOut);
+        BinaryModelFile.save(model, modelOut);
     }
 
     public void printModel(File printModel) throws IOException {
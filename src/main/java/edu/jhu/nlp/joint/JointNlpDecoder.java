@@ -7,6 +7,7 @@ import edu.jhu.nlp.data.conll.SrlGraph;
 import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.depparse.DepEdgeMaskDecoder.DepEdgeMaskDecoderPrm;
 import edu.jhu.nlp.depparse.DepParseDecoder;
+import edu.jhu.nlp.depparse.DepParseDecoder.DepParseDecoderPrm;
 import edu.jhu.nlp.relations.RelationsDecoder;
 import edu.jhu.nlp.srl.SrlDecoder;
 import edu.jhu.pacaya.gm.app.Decoder;
@@ -29,6 +30,7 @@ public class JointNlpDecoder implements Decoder<AnnoSentence, AnnoSentence> {
         private static final long serialVersionUID = 1L;
         public MbrDecoderPrm mbrPrm = null;
         public DepEdgeMaskDecoderPrm maskPrm = new DepEdgeMaskDecoderPrm();
+        public DepParseDecoderPrm dpPrm = new DepParseDecoderPrm();
     }
 
     private JointNlpDecoderPrm prm;
@@ -70,7 +72,7 @@ public class JointNlpDecoder implements Decoder<AnnoSentence, AnnoSentence> {
         }
         // Get the dependency tree.
         if (fg.getDpBuilder() != null) {
-            int[] parents = (new DepParseDecoder()).decode(inf, ex, sent);
+            int[] parents = (new DepParseDecoder(prm.dpPrm)).decode(inf, ex, sent);
             predSent.setParents(parents);
         }
         // Get the relations.
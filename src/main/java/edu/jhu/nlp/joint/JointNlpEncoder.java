@@ -7,6 +7,7 @@ import edu.jhu.nlp.CorpusStatistics;
 import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
 import edu.jhu.nlp.depparse.DepParseEncoder;
+import edu.jhu.nlp.depparse.DepParseFeatureStore;
 import edu.jhu.nlp.features.TemplateLanguage;
 import edu.jhu.nlp.joint.JointNlpFactorGraph.JointNlpFactorGraphPrm;
 import edu.jhu.nlp.relations.RelationsEncoder;
@@ -38,11 +39,18 @@ public class JointNlpEncoder implements Encoder<AnnoSentence, AnnoSentence> {
     private JointNlpEncoderPrm prm;
     private CorpusStatistics cs;
     private ObsFeatureConjoiner ofc;
+    private DepParseFeatureStore dpStore;
     
     public JointNlpEncoder(JointNlpEncoderPrm prm, CorpusStatistics cs, ObsFeatureConjoiner ofc) {
+        this(prm, cs, ofc, null);
+    }
+    
+    public JointNlpEncoder(JointNlpEncoderPrm prm, CorpusStatistics cs, ObsFeatureConjoiner ofc, 
+            DepParseFeatureStore dpStore) {
         this.prm = prm;
         this.cs = cs;
         this.ofc = ofc;
+        this.dpStore = dpStore;
     }
 
     @Override
@@ -57,7 +65,7 @@ public class JointNlpEncoder implements Encoder<AnnoSentence, AnnoSentence> {
 
     private LFgExample getExample(AnnoSentence sent, AnnoSentence gold, boolean labeledExample) {        
         // Construct the factor graph.
-        JointNlpFactorGraph fg = new JointNlpFactorGraph(prm.fgPrm, sent, cs, ofc);
+        JointNlpFactorGraph fg = new JointNlpFactorGraph(prm.fgPrm, sent, cs, ofc, dpStore);
         log.trace("Number of variables: " + fg.getNumVars() + " Number of factors: " + fg.getNumFactors() + " Number of edges: " + fg.getNumEdges());
 
         // Get the variable assignments given in the training data.
@@ -11,6 +11,7 @@ import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.data.simple.IntAnnoSentence;
 import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder;
 import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.DepParseFactorGraphBuilderPrm;
+import edu.jhu.nlp.depparse.DepParseFeatureStore;
 import edu.jhu.nlp.features.LocalObservations;
 import edu.jhu.nlp.features.TemplateFeatureExtractor;
 import edu.jhu.nlp.features.TemplateLanguage.FeatTemplate;
@@ -80,9 +81,22 @@ public class JointNlpFactorGraph extends FactorGraph {
     private DepParseFactorGraphBuilder dp;  
     private SrlFactorGraphBuilder srl;
     private RelationsFactorGraphBuilder rel;
+    
+    // Optional persistent store of the dependency parse features.
+    private transient DepParseFeatureStore dpStore;
 
     public JointNlpFactorGraph(JointNlpFactorGraphPrm prm, AnnoSentence sent, CorpusStatistics cs, ObsFeatureConjoiner ofc) {
+        this(prm, sent, cs, ofc, null);
+    }
+
+    /**
+     * Constructs the factor graph, reading the features of the dependency parse factors from the
+     * given store (or extracting them if the store is null).
+     */
+    public JointNlpFactorGraph(JointNlpFactorGraphPrm prm, AnnoSentence sent, CorpusStatistics cs, ObsFeatureConjoiner ofc,
+            DepParseFeatureStore dpStore) {
         this.prm = prm;
+        this.dpStore = dpStore;
         build(sent, cs, ofc, this);
     }
 
@@ -101,7 +115,7 @@ public class JointNlpFactorGraph extends FactorGraph {
             pos.build(isent, ofc, fg, cs);
         }
         if (prm.includeDp) {
-            dp = new DepParseFactorGraphBuilder(prm.dpPrm);
+            dp = new DepParseFactorGraphBuilder(prm.dpPrm, dpStore);
             dp.build(isent, fg, cs, ofc);
         }
         if (prm.includeSrl) {
@@ -110,7 +124,7 @@ public class JointNlpFactorGraph extends FactorGraph {
         }
         if (prm.includeRel ) {
             rel = new RelationsFactorGraphBuilder(prm.relPrm);
-            rel.build(sent, ofc, fg, cs);
+            rel.build(isent, ofc, fg, cs);
         }
         
         if (prm.includeDp && prm.includeSrl) {
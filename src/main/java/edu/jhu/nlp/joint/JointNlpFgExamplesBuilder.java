@@ -1,5 +1,8 @@
 package edu.jhu.nlp.joint;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -8,6 +11,7 @@ import org.slf4j.LoggerFactory;
 import edu.jhu.nlp.CorpusStatistics;
 import edu.jhu.nlp.data.simple.AlphabetStore;
 import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.depparse.DepParseFeatureStore;
 import edu.jhu.nlp.joint.JointNlpEncoder.JointNlpEncoderPrm;
 import edu.jhu.nlp.joint.JointNlpFactorGraph.JointNlpFactorGraphPrm;
 import edu.jhu.nlp.srl.SrlFactorGraphBuilder;
@@ -27,16 +31,24 @@ import edu.jhu.pacaya.util.Prm;
 /**
  * Factory for NLP FgExamples.
  * 
+ * The examples are built lazily, so the builder must not be closed until the examples from
+ * {@link #getData(AnnoSentenceCollection, AnnoSentenceCollection)} are no longer used.
+ * 
  * @author mgormley
  * @author mmitchell
  */
-public class JointNlpFgExamplesBuilder {
+public class JointNlpFgExamplesBuilder implements Closeable {
 
     public static class JointNlpFgExampleBuilderPrm extends Prm {
         private static final long serialVersionUID = 1L;
         public FgExamplesBuilderPrm exPrm = new FgExamplesBuilderPrm();
         // TODO: Switch fgPrm and fePrm to: public JointNlpEncoderPrm jePrm = new JointNlpEncoderPrm();
         public JointNlpFactorGraphPrm fgPrm = new JointNlpFactorGraphPrm();
+        /**
+         * The directory of the persistent store of dependency parse features (fast features only),
+         * or null to extract the features each time a factor graph is built.
+         */
+        public File dpFeatureStoreDir = null;
     }
     
     private static final Logger log = LoggerFactory.getLogger(JointNlpFgExamplesBuilder.class);
@@ -46,18 +58,47 @@ public class JointNlpFgExamplesBuilder {
     private JointNlpEncoderPrm jePrm;
     private CorpusStatistics cs;
     private boolean labeledExamples;
+    private DepParseFeatureStore dpStore;
+    // Whether this builder opened the store, and so must close it.
+    private boolean ownsDpStore;
 
     public JointNlpFgExamplesBuilder(JointNlpFgExampleBuilderPrm prm, ObsFeatureConjoiner ofc, CorpusStatistics cs) {
         this(prm, ofc, cs, true);
     }
     
     public JointNlpFgExamplesBuilder(JointNlpFgExampleBuilderPrm prm, ObsFeatureConjoiner ofc, CorpusStatistics cs, boolean labeledExamples) {
+        this(prm, ofc, cs, labeledExamples, openDpStore(prm));
+        this.ownsDpStore = true;
+    }
+    
+    /**
+     * Constructs a builder which uses the given dependency parse feature store. The store (which may
+     * be null) is owned by the caller and is not closed by {@link #close()}.
+     */
+    public JointNlpFgExamplesBuilder(JointNlpFgExampleBuilderPrm prm, ObsFeatureConjoiner ofc, CorpusStatistics cs, boolean labeledExamples,
+            DepParseFeatureStore dpStore) {
         this.prm = prm;
         this.ofc = ofc;
         this.cs = cs;
         this.labeledExamples = labeledExamples;
         this.jePrm = new JointNlpEncoderPrm();
         jePrm.fgPrm = prm.fgPrm;
+        this.dpStore = dpStore;
+    }
+    
+    /**
+     * Opens the dependency parse feature store for the given parameters, or returns null if they
+     * don't use one. The caller must close the store when done with it.
+     */
+    public static DepParseFeatureStore openDpStore(JointNlpFgExampleBuilderPrm prm) {
+        if (prm.fgPrm.includeDp && prm.dpFeatureStoreDir != null && prm.fgPrm.dpPrm.dpFePrm.onlyFast) {
+            try {
+                return DepParseFeatureStore.getInstance(prm.dpFeatureStoreDir, prm.fgPrm.dpPrm);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return null;
     }
     
     @Deprecated
@@ -102,6 +143,19 @@ public class JointNlpFgExamplesBuilder {
         return data;
     }
     
+    /** Releases the dependency parse feature store, if this builder opened one. */
+    @Override
+    public void close() {
+        if (dpStore != null && ownsDpStore) {
+            try {
+                dpStore.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            dpStore = null;
+        }
+    }
+    
     /** 
      * This class is read-only and thread-safe.
      */
@@ -122,7 +176,7 @@ public class JointNlpFgExamplesBuilder {
         
         public LFgExample get(int i) {
             log.trace("Getting example: " + i);
-            JointNlpEncoder encoder = new JointNlpEncoder(jePrm, cs, ofc);
+            JointNlpEncoder encoder = new JointNlpEncoder(jePrm, cs, ofc, dpStore);
             if (labeledExamples) {
                 return encoder.encode(inputSents.get(i), goldSents.get(i));
             } else {
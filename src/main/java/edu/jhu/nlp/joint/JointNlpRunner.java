@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -23,7 +24,10 @@ import edu.jhu.nlp.Annotator;
 import edu.jhu.nlp.CorpusStatistics.CorpusStatisticsPrm;
 import edu.jhu.nlp.EvalPipeline;
 import edu.jhu.nlp.TransientAnnotator;
+import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.data.simple.AnnoSentenceStreamWriter;
+import edu.jhu.nlp.data.simple.CloseableIterable;
 import edu.jhu.nlp.data.simple.CorpusHandler;
 import edu.jhu.nlp.depparse.BitshiftDepParseFeatureExtractor.BitshiftDepParseFeatureExtractorPrm;
 import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.DepParseFactorGraphBuilderPrm;
@@ -40,6 +44,7 @@ import edu.jhu.nlp.eval.DepParseAccuracy;
 import edu.jhu.nlp.eval.DepParseExactMatch;
 import edu.jhu.nlp.eval.OraclePruningAccuracy;
 import edu.jhu.nlp.eval.OraclePruningExactMatch;
+import edu.jhu.nlp.eval.OracleSrlArgPruningRecall;
 import edu.jhu.nlp.eval.PosTagAccuracy;
 import edu.jhu.nlp.eval.ProportionAnnotated;
 import edu.jhu.nlp.eval.PruningEfficiency;
@@ -62,12 +67,16 @@ import edu.jhu.nlp.relations.RelationMunger.RelationDataPostproc;
 import edu.jhu.nlp.relations.RelationMunger.RelationDataPreproc;
 import edu.jhu.nlp.relations.RelationMunger.RelationMungerPrm;
 import edu.jhu.nlp.relations.RelationsFactorGraphBuilder.RelationsFactorGraphBuilderPrm;
+import edu.jhu.nlp.srl.GoldSrlArgUnpruner;
+import edu.jhu.nlp.srl.SrlArgPruner;
+import edu.jhu.nlp.srl.SrlArgPruner.SrlArgPrunerPrm;
 import edu.jhu.nlp.srl.SrlFactorGraphBuilder.RoleStructure;
 import edu.jhu.nlp.srl.SrlFactorGraphBuilder.SrlFactorGraphBuilderPrm;
 import edu.jhu.nlp.srl.SrlFeatureExtractor.SrlFeatureExtractorPrm;
 import edu.jhu.nlp.srl.SrlFeatureSelection;
 import edu.jhu.nlp.tag.BrownClusterTagger;
 import edu.jhu.nlp.tag.BrownClusterTagger.BrownClusterTaggerPrm;
+import edu.jhu.nlp.tag.ChainFgInferencer.ChainFgInferencerFactory;
 import edu.jhu.nlp.tag.FileMapTagReducer;
 import edu.jhu.nlp.tag.PosTagFactorGraphBuilder.PosTagFactorGraphBuilderPrm;
 import edu.jhu.nlp.tag.StrictPosTagAnnotator;
@@ -94,7 +103,6 @@ import edu.jhu.pacaya.util.Threads;
 import edu.jhu.pacaya.util.cli.ArgParser;
 import edu.jhu.pacaya.util.cli.Opt;
 import edu.jhu.pacaya.util.collections.QSets;
-import edu.jhu.pacaya.util.files.QFiles;
 import edu.jhu.pacaya.util.report.Reporter;
 import edu.jhu.pacaya.util.report.ReporterManager;
 import edu.jhu.pacaya.util.semiring.Algebra;
@@ -117,7 +125,7 @@ public class JointNlpRunner {
 
     public enum ErmaLoss { L2DIST, EXPECTED_RECALL, SOFTMAX_MBR };
 
-    public enum Inference { BRUTE_FORCE, BP, DP };
+    public enum Inference { BRUTE_FORCE, BP, DP, CHAIN };
     
     public enum AlgebraType {
         REAL(RealAlgebra.getInstance()), LOG(LogSemiring.getInstance()), LOG_SIGN(LogSignAlgebra.getInstance()),
@@ -145,15 +153,21 @@ public class JointNlpRunner {
     public static int threads = 1;
     @Opt(hasArg = true, description = "Whether to use a log-add table for faster computation.")
     public static boolean useLogAddTable = false;
+    @Opt(hasArg = true, description = "Whether to run the stages of the annotation pipeline concurrently when streaming.")
+    public static boolean pipelined = false;
+    @Opt(hasArg = true, description = "Maximum number of batches waiting between two pipeline stages.")
+    public static int pipelineQueueSize = 2;
+    @Opt(hasArg = true, description = "Comma-separated number of threads for each pipeline stage, or a single number for all stages which can run concurrently.")
+    public static String pipelineStageThreads = "1";
     
     // Options for model IO
     @Opt(hasArg = true, description = "File from which to read a serialized model.")
     public static File modelIn = null;
-    @Opt(hasArg = true, description = "File to which to serialize the model.")
+    @Opt(hasArg = true, description = "File to which to serialize the model (in the binary model format if the name ends with .bin).")
     public static File modelOut = null;
     @Opt(hasArg = true, description = "File to which to print a human readable version of the model.")
     public static File printModel = null;
-    @Opt(hasArg = true, description = "File to which to serialize the entire pipeline.")
+    @Opt(hasArg = true, description = "File to which to serialize the entire pipeline (in the binary model format if the name ends with .bin).")
     public static File pipeOut = null;
 
     // Options for joint model.
@@ -193,7 +207,7 @@ public class JointNlpRunner {
     public static File reduceTags = null;
     
     // Options for Embeddings.
-    @Opt(hasArg=true, description="Path to word embeddings text file.")
+    @Opt(hasArg=true, description="Path to word embeddings text file or binary EmbeddingStore file.")
     public static File embeddingsFile = null;
     @Opt(hasArg=true, description="Method for normalization of the embeddings.")
     public static Scaling embNorm = Scaling.L2_NORM;
@@ -220,6 +234,14 @@ public class JointNlpRunner {
     @Opt(hasArg = true, description = "Whether to treat the embeddings as model parameters.")
     public static boolean srlFcmFineTuning = false;
     
+    // Options for SRL argument pruning.
+    @Opt(hasArg = true, description = "Whether to prune the candidate arguments of each predicate using the dependency tree.")
+    public static boolean pruneSrlArgs = false;
+    @Opt(hasArg = true, description = "The maximum depth of the descendants kept below each node on the path from a predicate to the root.")
+    public static int srlArgPruneMaxDepth = 1;
+    @Opt(hasArg = true, description = "The maximum number of ancestors of a predicate to visit when pruning arguments, or -1 for all.")
+    public static int srlArgPruneMaxAncestors = -1;
+    
     // Options for joint factor graph structure.
     @Opt(hasArg = true, description = "Whether to include unary factors in the model.")
     public static boolean unaryFactors = false;
@@ -231,6 +253,16 @@ public class JointNlpRunner {
     public static int numFeatsToSelect = 32;
     @Opt(hasArg = true, description = "The max number of sentences to use for feature selection")
     public static int numSentsForFeatSelect = 1000;    
+    @Opt(hasArg = true, description = "Whether to approximate information gain for feature selection with bounded-memory sketches.")
+    public static boolean featSelectSketch = false;
+    @Opt(hasArg = true, description = "The number of rows (hash functions) of each information gain sketch.")
+    public static int featSelectSketchDepth = 2;
+    @Opt(hasArg = true, description = "The number of feature buckets in each row of an information gain sketch.")
+    public static int featSelectSketchWidth = 512;
+    @Opt(hasArg = true, description = "The number of sentences on which to report the accuracy of the sketches against exact information gain.")
+    public static int featSelectSketchReportSents = 0;
+    @Opt(hasArg = true, description = "The number of feature templates to count in each pass over the corpus during feature selection (<= 0 for all). Only set this if the counts for all templates do not fit in memory.")
+    public static int featSelectTplsPerPass = 0;
     
     // Options for feature extraction.
     @Opt(hasArg = true, description = "For testing only: whether to use only the bias feature.")
@@ -275,6 +307,10 @@ public class JointNlpRunner {
     public static boolean headBigramFactors = false;
     @Opt(hasArg = true, description = "Whether to exclude non-projective grandparent factors.")
     public static boolean excludeNonprojectiveGrandparents = true;
+    @Opt(hasArg = true, description = "Whether to decode projective (Eisner) or non-projective (Chu-Liu/Edmonds) trees.")
+    public static boolean projectiveDecoding = true;
+    @Opt(hasArg = true, description = "Whether to disallow edges pruned by the pruning mask when decoding trees.")
+    public static boolean decodeWithDepEdgeMask = false;
     
     // Options for dependency parsing pruning.
     @Opt(hasArg = true, description = "File from which to read a first-order pruning model.")
@@ -306,6 +342,8 @@ public class JointNlpRunner {
     public static int maxEntriesInMemory = 100;
     @Opt(hasArg = true, description = "Whether to gzip an object before caching it.")
     public static boolean gzipCache = false;    
+    @Opt(hasArg = true, description = "Directory of the persistent store of dependency parse features, reused across epochs and runs (fast features only).")
+    public static File dpFeatureStoreDir = null;
     
     // Options for training.
     @Opt(hasArg=true, description="The type of trainer to use (e.g. conditional log-likelihood, ERMA).")
@@ -422,6 +460,13 @@ public class JointNlpRunner {
             if ((pruneByDist || pruneByModel ) && trainer == Trainer.CLL) {
                 anno.add(new GoldDepParseUnpruner());
             }
+            if (pruneSrlArgs) {
+                // Prune the SRL arguments using the dependency tree.
+                anno.add(new SrlArgPruner(getSrlArgPrunerPrm()));
+                if (trainer == Trainer.CLL) {
+                    anno.add(new GoldSrlArgUnpruner());
+                }
+            }
             if (modelIn == null && prm.buPrm.fgPrm.srlPrm.predictPredPos) {
                 // Predict SRL predicate positions as a separate step.
                 // (Use the same features as the main jointAnno. These might be edited by feature selection.)
@@ -462,6 +507,9 @@ public class JointNlpRunner {
                 eval.add(new OraclePruningAccuracy(dpSkipPunctuation));
                 eval.add(new OraclePruningExactMatch(dpSkipPunctuation));
             }
+            if (pruneSrlArgs && CorpusHandler.getGoldOnlyAts().contains(AT.SRL)) {
+                eval.add(new OracleSrlArgPruningRecall());
+            }
             if (CorpusHandler.getGoldOnlyAts().contains(AT.POS)) {
                 eval.add(new PosTagAccuracy());
             }
@@ -515,7 +563,7 @@ public class JointNlpRunner {
                 }
                 if (pipeOut != null) {
                     log.info("Serializing pipeline to file: " + pipeOut);
-                    QFiles.serialize(anno, pipeOut);
+                    BinaryModelFile.save(anno, pipeOut);
                 }
             } else if (corpus.hasDev()) { // but not train
                 anno.annotate(devInput);
@@ -535,7 +583,24 @@ public class JointNlpRunner {
             }
         }
         
-        if (corpus.hasTest()) {
+        if (corpus.hasTest() && CorpusHandler.testStream) {
+            // Decode test data in batches, without loading it all into memory.
+            CloseableIterable<AnnoSentence> testInput = corpus.streamTestInput();
+            AnnoSentenceStreamWriter testPreds = corpus.getTestPredsStreamWriter();
+            try {
+                if (pipelined) {
+                    int[] threadsPerStage = getPipelineStageThreads(anno);
+                    anno.annotatePipelined(testInput, CorpusHandler.testStreamBatchSize, testPreds, pipelineQueueSize, threadsPerStage);
+                } else {
+                    anno.annotate(testInput, CorpusHandler.testStreamBatchSize, testPreds);
+                }
+            } finally {
+                testInput.close();
+                if (testPreds != null) {
+                    testPreds.close();
+                }
+            }
+        } else if (corpus.hasTest()) {
             // Decode test data.
             String name = "test";
             AnnoSentenceCollection testInput = corpus.getTestInput();
@@ -552,6 +617,8 @@ public class JointNlpRunner {
             }
             corpus.clearTestCache();
         }
+        // Release any resources held by the annotators (e.g. feature stores).
+        anno.close();
         t.stop();
         rep.report("elapsedSec", t.totSec());
     }
@@ -581,6 +648,28 @@ public class JointNlpRunner {
     
     /* --------- Factory Methods ---------- */
 
+    private static int[] getPipelineStageThreads(AnnoPipeline anno) {
+        int numStages = anno.getNumStages();
+        String[] splits = pipelineStageThreads.split(",");
+        int[] threadsPerStage = new int[numStages];
+        if (splits.length == 1) {
+            // Stages which are not concurrent always get a single thread.
+            Arrays.fill(threadsPerStage, 1);
+            for (int i=0; i<numStages; i++) {
+                if (anno.isConcurrent(i)) {
+                    threadsPerStage[i] = Integer.parseInt(splits[0].trim());
+                }
+            }
+        } else if (splits.length == numStages) {
+            for (int i=0; i<numStages; i++) {
+                threadsPerStage[i] = Integer.parseInt(splits[i].trim());
+            }
+        } else {
+            throw new IllegalArgumentException("Expected 1 or " + numStages + " values for pipelineStageThreads: " + pipelineStageThreads);
+        }
+        return threadsPerStage;
+    }
+
     public static IGFeatureTemplateSelectorPrm getInformationGainFeatureSelectorPrm() {
         IGFeatureTemplateSelectorPrm prm = new IGFeatureTemplateSelectorPrm();
         prm.featureHashMod = featureHashMod;
@@ -588,6 +677,11 @@ public class JointNlpRunner {
         prm.numToSelect = numFeatsToSelect;
         prm.maxNumSentences = numSentsForFeatSelect;
         prm.selectSense = predictSense;
+        prm.useSketch = featSelectSketch;
+        prm.sketchDepth = featSelectSketchDepth;
+        prm.sketchWidth = featSelectSketchWidth;
+        prm.sketchReportNumSents = featSelectSketchReportSents;
+        prm.numTplsPerPass = featSelectTplsPerPass;
         return prm;
     }
 
@@ -625,6 +719,7 @@ public class JointNlpRunner {
         prm.exPrm.cacheType = cacheType;
         prm.exPrm.gzipped = gzipCache;
         prm.exPrm.maxEntriesInMemory = maxEntriesInMemory;
+        prm.dpFeatureStoreDir = dpFeatureStoreDir;
         
         return prm;
     }
@@ -696,6 +791,13 @@ public class JointNlpRunner {
         return srlPrm;
     }
 
+    private static SrlArgPrunerPrm getSrlArgPrunerPrm() {
+        SrlArgPrunerPrm prm = new SrlArgPrunerPrm();
+        prm.maxDepth = srlArgPruneMaxDepth;
+        prm.maxAncestors = srlArgPruneMaxAncestors;
+        return prm;
+    }
+
     private static ObsFeatureConjoinerPrm getObsFeatureConjoinerPrm() {
         ObsFeatureConjoinerPrm prm = new ObsFeatureConjoinerPrm();
         prm.featCountCutoff = featCountCutoff;
@@ -793,18 +895,7 @@ public class JointNlpRunner {
             BruteForceInferencerPrm prm = new BruteForceInferencerPrm(algebra.getAlgebra());
             return prm;
         } else if (inference == Inference.BP) {
-            BeliefPropagationPrm bpPrm = new BeliefPropagationPrm();
-            bpPrm.s = algebra.getAlgebra();
-            bpPrm.schedule = bpSchedule;
-            bpPrm.updateOrder = bpUpdateOrder;
-            bpPrm.normalizeMessages = normalizeMessages;
-            bpPrm.maxIterations = bpMaxIterations;
-            bpPrm.convergenceThreshold = bpConvergenceThreshold;
-            bpPrm.keepTape = (trainer == Trainer.ERMA);
-            if (bpDumpDir != null) {
-                bpPrm.dumpDir = Paths.get(bpDumpDir.getAbsolutePath());
-            }
-            return bpPrm;
+            return getBpPrm();
         } else if (inference == Inference.DP) {
             if (CorpusHandler.getPredAts().equals(QSets.getSet(AT.DEP_TREE))
                     && grandparentFactors && !arbitrarySiblingFactors && !headBigramFactors) { 
@@ -812,17 +903,41 @@ public class JointNlpRunner {
             } else {
                 throw new ParseException("DP inference only supported for dependency parsing with all grandparent factors.");
             }
+        } else if (inference == Inference.CHAIN) {
+            if (trainer == Trainer.ERMA) {
+                // The chain inferencer does not backpropagate through its beliefs.
+                throw new ParseException("CHAIN inference is not supported with the ERMA trainer.");
+            }
+            // Exact inference for chain-structured models (e.g. POS tagging), and BP otherwise.
+            return new ChainFgInferencerFactory(algebra.getAlgebra(), getBpPrm());
         } else {
             throw new ParseException("Unsupported inference method: " + inference);
         }
     }
 
+    private static BeliefPropagationPrm getBpPrm() {
+        BeliefPropagationPrm bpPrm = new BeliefPropagationPrm();
+        bpPrm.s = algebra.getAlgebra();
+        bpPrm.schedule = bpSchedule;
+        bpPrm.updateOrder = bpUpdateOrder;
+        bpPrm.normalizeMessages = normalizeMessages;
+        bpPrm.maxIterations = bpMaxIterations;
+        bpPrm.convergenceThreshold = bpConvergenceThreshold;
+        bpPrm.keepTape = (trainer == Trainer.ERMA);
+        if (bpDumpDir != null) {
+            bpPrm.dumpDir = Paths.get(bpDumpDir.getAbsolutePath());
+        }
+        return bpPrm;
+    }
+
     private static JointNlpDecoderPrm getDecoderPrm() throws ParseException {
         MbrDecoderPrm mbrPrm = new MbrDecoderPrm();
         mbrPrm.infFactory = getInfFactory();
         mbrPrm.loss = Loss.L1;
         JointNlpDecoderPrm prm = new JointNlpDecoderPrm();
         prm.mbrPrm = mbrPrm;
+        prm.dpPrm.projective = projectiveDecoding;
+        prm.dpPrm.useDepEdgeMask = decodeWithDepEdgeMask;
         return prm;
     }
 
@@ -21,6 +21,7 @@ import edu.jhu.nlp.eval.NerEvaluator;
 import edu.jhu.nlp.features.TemplateLanguage.AT;
 import edu.jhu.nlp.ner.NerFactorGraphBuilder.NerFactorGraph;
 import edu.jhu.nlp.ner.NerFactorGraphBuilder.NerFactorGraphBuilderPrm;
+import edu.jhu.nlp.tag.ChainFgInferencer;
 import edu.jhu.pacaya.gm.data.FgExampleList;
 import edu.jhu.pacaya.gm.data.LFgExample;
 import edu.jhu.pacaya.gm.data.LabeledFgExample;
@@ -28,6 +29,7 @@ import edu.jhu.pacaya.gm.data.UFgExample;
 import edu.jhu.pacaya.gm.data.UnlabeledFgExample;
 import edu.jhu.pacaya.gm.decode.MbrDecoder;
 import edu.jhu.pacaya.gm.decode.MbrDecoder.MbrDecoderPrm;
+import edu.jhu.pacaya.gm.inf.FgInferencer;
 import edu.jhu.pacaya.gm.model.FgModel;
 import edu.jhu.pacaya.gm.model.VarConfig;
 import edu.jhu.pacaya.gm.train.CrfTrainer;
@@ -51,6 +53,11 @@ public class NerAnnotator implements Trainable, Annotator {
         public MbrDecoderPrm mbrPrm = null;
         /** NER factor graph settings. */
         public NerFactorGraphBuilderPrm nerPrm = null;
+        /**
+         * Whether to decode the MAP configuration with Viterbi instead of MBR decoding. Only applies
+         * when the decoder's inference method is a {@link ChainFgInferencer}.
+         */
+        public boolean viterbi = false;
     }
     
     private static final Logger log = LoggerFactory.getLogger(NerAnnotator.class);
@@ -108,7 +115,7 @@ public class NerAnnotator implements Trainable, Annotator {
                     UFgExample ex = data.get(i);
                     AnnoSentence inputSent = sents.get(i);
                     AnnoSentence predSent = decode(model, ex, inputSent);
-                    sents.set(i, predSent);
+                    sents.put(i, predSent);
                 } catch (Throwable t) {
                     AbstractParallelAnnotator.logThrowable(log, t);
                 }
@@ -154,8 +161,14 @@ public class NerAnnotator implements Trainable, Annotator {
     private AnnoSentence decode(FgModel model, UFgExample ex, AnnoSentence inputSent) {
         NerFactorGraphBuilder builder = ((NerFactorGraph) ex.getFactorGraph()).getBuilder();
         MbrDecoder mbrDecoder = new MbrDecoder(prm.mbrPrm);
-        mbrDecoder.decode(model, ex);
-        List<String> neTags = builder.getTagsFromMbrVarConfig(mbrDecoder.getMbrVarConfig());
+        FgInferencer inf = mbrDecoder.decode(model, ex);
+        VarConfig vc;
+        if (prm.viterbi && inf instanceof ChainFgInferencer) {
+            vc = ((ChainFgInferencer) inf).getViterbiConfig();
+        } else {
+            vc = mbrDecoder.getMbrVarConfig();
+        }
+        List<String> neTags = builder.getTagsFromMbrVarConfig(vc);
         AnnoSentence predSent = inputSent.getShallowCopy();
         predSent.setNeTags(neTags);
         return predSent;
@@ -17,6 +17,7 @@ import edu.jhu.nlp.eval.NerEvaluator;
 import edu.jhu.nlp.joint.OptimizerFactory;
 import edu.jhu.nlp.ner.NerAnnotator.NerAnnotatorPrm;
 import edu.jhu.nlp.ner.NerFactorGraphBuilder.NerFactorGraphBuilderPrm;
+import edu.jhu.nlp.tag.ChainFgInferencer.ChainFgInferencerFactory;
 import edu.jhu.pacaya.gm.decode.MbrDecoder.MbrDecoderPrm;
 import edu.jhu.pacaya.gm.inf.BeliefPropagation.BeliefPropagationPrm;
 import edu.jhu.pacaya.gm.inf.BeliefPropagation.BpScheduleType;
@@ -42,6 +43,10 @@ public class NerRunner {
     public static int threads = 1;
     @Opt(hasArg = true, description = "The value of the mod for use in the feature hashing trick. If <= 0, feature-hashing will be disabled.")
     public static int featureHashMod = 1048576; // 2^20
+    @Opt(hasArg = true, description = "Whether to use exact forward-backward on the NER chains instead of belief propagation.")
+    public static boolean chainInference = false;
+    @Opt(hasArg = true, description = "Whether to decode with Viterbi instead of MBR (requires chainInference).")
+    public static boolean viterbiDecode = false;
 
     public static void run() throws IOException {
         // Construct the annotation pipeline.
@@ -111,6 +116,7 @@ public class NerRunner {
         prm.crfPrm = getCrfTrainerPrm();
         prm.nerPrm = getNerFactorGraphBuilderPrm();
         prm.mbrPrm = getMbrDecoderPrm();
+        prm.viterbi = viterbiDecode;
         return prm;
     }
     
@@ -142,6 +148,9 @@ public class NerRunner {
         prm.updateOrder = BpUpdateOrder.SEQUENTIAL;
         prm.maxIterations = 1;
         prm.s = LogSemiring.getInstance();
+        if (chainInference) {
+            return new ChainFgInferencerFactory(prm.s, prm);
+        }
         return prm;
     }
 
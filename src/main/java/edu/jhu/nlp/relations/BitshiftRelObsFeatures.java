@@ -0,0 +1,417 @@
+package edu.jhu.nlp.relations;
+
+import static edu.jhu.nlp.features.BitPacking.encodeFeatureB___;
+import static edu.jhu.nlp.features.BitPacking.encodeFeatureS___;
+
+import java.util.List;
+import java.util.Objects;
+
+import edu.jhu.nlp.data.LabeledSpan;
+import edu.jhu.nlp.data.NerMention;
+import edu.jhu.nlp.data.Span;
+import edu.jhu.nlp.data.simple.AlphabetStore;
+import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.IntAnnoSentence;
+import edu.jhu.nlp.features.LocalObservations;
+import edu.jhu.pacaya.parse.cky.data.NaryTree;
+import edu.jhu.pacaya.parse.dep.ParentsArray;
+import edu.jhu.pacaya.util.hash.MurmurHash;
+import edu.jhu.prim.list.IntArrayList;
+import edu.jhu.prim.tuple.Pair;
+import edu.jhu.prim.util.SafeCast;
+
+/**
+ * Fast extraction of the Zhou et al. (2005) and Sun et al. (2011) relation features.
+ *
+ * This extracts the same features as {@link RelObsFeatures} (in the same order), but each feature
+ * is built from the integer ids of an {@link IntAnnoSentence} and packed into a long as in
+ * {@link edu.jhu.nlp.depparse.BitshiftDepParseFeatures}, instead of being built as a String. The
+ * features are identical up to hash collisions, except that words outside of the
+ * {@link AlphabetStore} share the unknown word id. Strings which are not in the store (entity types,
+ * mention levels, chunk labels, and constituent labels) are represented by their hash codes.
+ *
+ * The chunks and parse tree paths are computed once per sentence (in the constructor) and shared
+ * by all the mention pairs.
+ *
+ * @author mgormley
+ */
+public class BitshiftRelObsFeatures {
+
+    private static final int TOK_START_INT = AlphabetStore.TOK_START_INT;
+    private static final int TOK_END_INT = AlphabetStore.TOK_END_INT;
+
+    /** Flags for features whose arguments are folded into a hash, rather than packed. */
+    private static final byte FOLDED = 1;
+    /** Values for the directions in paths, which are disjoint from the (non-negative) ids. */
+    private static final int DIR_UP = -1;
+    private static final int DIR_DOWN = -2;
+
+    /** Template IDs for the relation features. */
+    static class RelTs {
+
+        private static int templ = 0;
+
+        protected static byte next() {
+            return SafeCast.safeIntToUnsignedByte(templ++);
+        }
+
+        // Words.
+        public static final byte M1_HAS_WORD = next();
+        public static final byte M1_WORD_SET = next();
+        public static final byte M1_HEAD_WORD = next();
+        public static final byte M2_HAS_WORD = next();
+        public static final byte M2_WORD_SET = next();
+        public static final byte M2_HEAD_WORD = next();
+        public static final byte WB_NULL = next();
+        public static final byte WBFL = next();
+        public static final byte WBF = next();
+        public static final byte WBL = next();
+        public static final byte WBO = next();
+        public static final byte BM1F = next();
+        public static final byte BM1L = next();
+        public static final byte AM2F = next();
+        public static final byte AM2L = next();
+        // Entity type and mention level.
+        public static final byte ET12 = next();
+        public static final byte ML12 = next();
+        // Overlap.
+        public static final byte NUM_MB = next();
+        public static final byte NUM_WB = next();
+        public static final byte M1_CON_M2 = next();
+        public static final byte M2_CON_M1 = next();
+        // Base phrase chunking.
+        public static final byte CPHBNULL = next();
+        public static final byte CPHBFL = next();
+        public static final byte CPHBF = next();
+        public static final byte CPHBL = next();
+        public static final byte CPHBO = next();
+        public static final byte CPHBM1F = next();
+        public static final byte CPHBM1L = next();
+        public static final byte CPHAM2F = next();
+        public static final byte CPHAM2L = next();
+        public static final byte CPP = next();
+        public static final byte CPPH = next();
+        // Dependency tree.
+        public static final byte ET1 = next();
+        public static final byte DW1 = next();
+        public static final byte ET2 = next();
+        public static final byte DW2 = next();
+        public static final byte SAME_NP = next();
+        public static final byte SAME_PP = next();
+        public static final byte SAME_VP = next();
+        // Parse tree.
+        public static final byte PTP = next();
+        public static final byte LCA_HEAD = next();
+        // Sun et al. (2011).
+        public static final byte BIGRWB = next();
+        public static final byte SEQWB = next();
+        public static final byte CHNKHB = next();
+        public static final byte POS_DP_PATH = next();
+        public static final byte REL_DP_PATH = next();
+        public static final byte WORD_DP_PATH = next();
+        // Conjunction of two features.
+        public static final byte COMBO = next();
+
+    }
+
+    private final IntAnnoSentence isent;
+    private final AnnoSentence sent;
+    private final int[] parents;
+
+    // Per-sentence caches.
+    private final IntArrayList tokIdxToChunkIdx;
+    private final int[] chunkHeads;
+    private final int[] chunkLabels;
+    private final List<NaryTree>[] leafToRoot;
+
+    @SuppressWarnings("unchecked")
+    public BitshiftRelObsFeatures(IntAnnoSentence isent) {
+        this.isent = isent;
+        this.sent = isent.getAnnoSentence();
+        this.parents = sent.getParents();
+
+        Pair<List<LabeledSpan>, IntArrayList> chunkPair = RelObsFeatures.getSpansFromBIO(sent.getChunks(), true);
+        List<LabeledSpan> chunks = chunkPair.get1();
+        tokIdxToChunkIdx = chunkPair.get2();
+        chunkHeads = RelObsFeatures.getHeadsOfSpans(chunks, parents);
+        chunkLabels = new int[chunks.size()];
+        for (int b=0; b<chunks.size(); b++) {
+            chunkLabels[b] = Objects.hashCode(chunks.get(b).getLabel());
+        }
+
+        NaryTree tree = sent.getNaryTree();
+        leafToRoot = new List[sent.size()];
+        for (int i=0; i<sent.size(); i++) {
+            leafToRoot[i] = RelObsFeatures.getPathToRoot(tree.getLeafAt(i));
+        }
+    }
+
+    /**
+     * Adds the hashed features from Sun et al. (2011) and Zhou et al. (2005) for the mention pair of
+     * the given local observations. The entity types of the mentions must already be set.
+     */
+    public void addZhou05Features(LocalObservations local, IntArrayList feats) {
+        NerMention m1 = local.getNe1();
+        NerMention m2 = local.getNe2();
+        Span m1span = m1.getSpan();
+        Span m2span = m2.getSpan();
+
+        // 4.1 Words
+        long wm1 = fold(RelTs.M1_WORD_SET);
+        for (int i=m1span.start(); i<m1span.end(); i++) {
+            short word = isent.getWord(i);
+            addFeat(feats, encodeFeatureS___(RelTs.M1_HAS_WORD, (byte)0, word));
+            wm1 = fold(wm1, word);
+        }
+        addFeat(feats, wm1);
+        long hm1 = encodeFeatureS___(RelTs.M1_HEAD_WORD, (byte)0, isent.getWord(m1.getHead()));
+        addFeat(feats, hm1);
+
+        long wm2 = fold(RelTs.M2_WORD_SET);
+        for (int i=m2span.start(); i<m2span.end(); i++) {
+            short word = isent.getWord(i);
+            addFeat(feats, encodeFeatureS___(RelTs.M2_HAS_WORD, (byte)0, word));
+            wm2 = fold(wm2, word);
+        }
+        addFeat(feats, wm2);
+        long hm2 = encodeFeatureS___(RelTs.M2_HEAD_WORD, (byte)0, isent.getWord(m2.getHead()));
+        addFeat(feats, hm2);
+
+        long hm12 = combo(hm1, hm2);
+        addFeat(feats, hm12);
+
+        Span btwn = new Span(m1.getHead()+1, m2.getHead());
+        if (btwn.size() == 0) {
+            addFeat(feats, encodeFeatureB___(RelTs.WB_NULL, (byte)0, (byte)0));
+        } else if (btwn.size() == 1) {
+            addFeat(feats, encodeFeatureS___(RelTs.WBFL, (byte)0, word(btwn.start())));
+        } else if (btwn.size() >= 2) {
+            addFeat(feats, encodeFeatureS___(RelTs.WBF, (byte)0, word(btwn.start())));
+            addFeat(feats, encodeFeatureS___(RelTs.WBL, (byte)0, word(btwn.end()-1)));
+            for (int i=btwn.start()+1; i<btwn.end(); i++) {
+                addFeat(feats, encodeFeatureS___(RelTs.WBO, (byte)0, word(i)));
+            }
+        }
+
+        addFeat(feats, encodeFeatureS___(RelTs.BM1F, (byte)0, word(m1span.start() - 1)));
+        addFeat(feats, encodeFeatureS___(RelTs.BM1L, (byte)0, word(m1span.start() - 2)));
+        addFeat(feats, encodeFeatureS___(RelTs.AM2F, (byte)0, word(m1span.end() + 0)));
+        addFeat(feats, encodeFeatureS___(RelTs.AM2L, (byte)0, word(m1span.end() + 1)));
+
+        // 4.2 Entity Type
+        int et1 = Objects.hashCode(m1.getEntityType());
+        int et2 = Objects.hashCode(m2.getEntityType());
+        long et12 = fold(fold(fold(RelTs.ET12), et1), et2);
+        addFeat(feats, et12);
+
+        // 4.3 Mention Level
+        addFeat(feats, fold(fold(fold(RelTs.ML12), Objects.hashCode(m1.getPhraseType())), Objects.hashCode(m2.getPhraseType())));
+
+        // 4.4 Overlap
+        int numMentsBtwn = RelObsFeatures.getNumBtwn(sent, m1, m2);
+        addFeat(feats, encodeFeatureS___(RelTs.NUM_MB, (byte)0, SafeCast.safeIntToShort(numMentsBtwn)));
+        addFeat(feats, encodeFeatureS___(RelTs.NUM_WB, (byte)0, SafeCast.safeIntToShort(btwn.size())));
+        long m1ConM2 = encodeFeatureB___(RelTs.M1_CON_M2, (byte)0, toByte(m1span.contains(m2span)));
+        long m2ConM1 = encodeFeatureB___(RelTs.M2_CON_M1, (byte)0, toByte(m2span.contains(m1span)));
+        addFeat(feats, m1ConM2);
+        addFeat(feats, m2ConM1);
+
+        addFeat(feats, combo(et12, m1ConM2));
+        addFeat(feats, combo(et12, m2ConM1));
+        addFeat(feats, combo(hm12, m1ConM2));
+        addFeat(feats, combo(hm12, m2ConM1));
+
+        // 4.5 Base Phrase Chunking
+        int c1 = tokIdxToChunkIdx.get(m1.getHead());
+        int c2 = tokIdxToChunkIdx.get(m2.getHead());
+        assert c2 >= c1;
+        int numChunksBtwn = Math.max(c2 - c1 - 1, 0);
+        if (numChunksBtwn == 0) {
+            addFeat(feats, encodeFeatureB___(RelTs.CPHBNULL, (byte)0, (byte)0));
+        } else if (numChunksBtwn == 1) {
+            addFeat(feats, encodeFeatureS___(RelTs.CPHBFL, (byte)0, word(chunkHeads[c1+1])));
+        } else {
+            addFeat(feats, encodeFeatureS___(RelTs.CPHBF, (byte)0, word(chunkHeads[c1+1])));
+            addFeat(feats, encodeFeatureS___(RelTs.CPHBL, (byte)0, word(chunkHeads[c2-1])));
+            for (int b=c1+2; b<=c2-2; b++) {
+                addFeat(feats, encodeFeatureS___(RelTs.CPHBO, (byte)0, word(chunkHeads[b])));
+            }
+        }
+
+        addFeat(feats, encodeFeatureS___(RelTs.CPHBM1F, (byte)0, chunkHeadWord(c1-1)));
+        addFeat(feats, encodeFeatureS___(RelTs.CPHBM1L, (byte)0, chunkHeadWord(c1-2)));
+        addFeat(feats, encodeFeatureS___(RelTs.CPHAM2F, (byte)0, chunkHeadWord(c2+1)));
+        addFeat(feats, encodeFeatureS___(RelTs.CPHAM2L, (byte)0, chunkHeadWord(c2+2)));
+
+        long chunkPath = fold(RelTs.CPP);
+        for (int b=c1+1; b<=c2-1; b++) {
+            chunkPath = fold(chunkPath, chunkLabels[b]);
+        }
+        addFeat(feats, chunkPath);
+
+        if (numChunksBtwn <= 2) {
+            long chunkHeadPath = fold(RelTs.CPPH);
+            for (int b=c1+1; b<=c2-1; b++) {
+                chunkHeadPath = fold(fold(chunkHeadPath, chunkLabels[b]), word(chunkHeads[b]));
+            }
+            addFeat(feats, chunkHeadPath);
+        }
+
+        // 4.6 Dependency Tree
+        long dw1 = encodeFeatureS___(RelTs.DW1, (byte)0, word(parents[m1.getHead()]));
+        addFeat(feats, combo(fold(fold(RelTs.ET1), et1), dw1));
+        addFeat(feats, combo(hm1, dw1));
+
+        long dw2 = encodeFeatureS___(RelTs.DW2, (byte)0, word(parents[m2.getHead()]));
+        addFeat(feats, combo(fold(fold(RelTs.ET2), et2), dw2));
+        addFeat(feats, combo(hm2, dw2));
+
+        List<NaryTree> m1ToRoot = leafToRoot[m1.getHead()];
+        List<NaryTree> m2ToRoot = leafToRoot[m2.getHead()];
+        List<NaryTree> lcaToRoot = RelObsFeatures.getLcaToRoot(m1ToRoot, m2ToRoot);
+        addFeat(feats, combo(et12, encodeFeatureB___(RelTs.SAME_NP, (byte)0, toByte(RelObsFeatures.inSamePhrase("NP", lcaToRoot)))));
+        addFeat(feats, combo(et12, encodeFeatureB___(RelTs.SAME_PP, (byte)0, toByte(RelObsFeatures.inSamePhrase("PP", lcaToRoot)))));
+        addFeat(feats, combo(et12, encodeFeatureB___(RelTs.SAME_VP, (byte)0, toByte(RelObsFeatures.inSamePhrase("VP", lcaToRoot)))));
+
+        // 4.7 Parse Tree
+        long ptp = getPathSymbols(m1ToRoot, m2ToRoot);
+        addFeat(feats, ptp);
+        int lca = RelObsFeatures.getLca(parents, m1.getHead(), m2.getHead());
+        addFeat(feats, combo(ptp, encodeFeatureS___(RelTs.LCA_HEAD, (byte)0, word(lca))));
+
+        // Extra features from Sun et al. (2011).
+        for (int i=btwn.start(); i<=btwn.end(); i++) {
+            addFeat(feats, fold(fold(fold(RelTs.BIGRWB), word(i-1)), word(i)));
+        }
+
+        long seqwb = fold(RelTs.SEQWB);
+        for (int i=btwn.start(); i<btwn.end(); i++) {
+            seqwb = fold(seqwb, word(i));
+        }
+        addFeat(feats, seqwb);
+        addFeat(feats, combo(et12, seqwb));
+
+        long chnkhb = fold(RelTs.CHNKHB);
+        for (int b=c1+1; b<=c2-1; b++) {
+            chnkhb = fold(chnkhb, word(chunkHeads[b]));
+        }
+        addFeat(feats, chnkhb);
+        addFeat(feats, combo(et12, chnkhb));
+
+        List<Pair<Integer, ParentsArray.Dir>> path = ParentsArray.getDependencyPath(m1.getHead(), m2.getHead(), parents);
+        if (path != null) {
+            // These lists mirror those of TemplateFeatureExtractor.getTokPropsForPath().
+            IntArrayList posPath = new IntArrayList();
+            IntArrayList wordPath = new IntArrayList();
+            IntArrayList relPath = new IntArrayList();
+            IntArrayList dirPath = new IntArrayList();
+            for (int i=0; i<path.size(); i++) {
+                int idx = path.get(i).get1();
+                posPath.add(pos(idx));
+                wordPath.add(word(idx));
+                if (i < path.size() - 1) {
+                    ParentsArray.Dir d = path.get(i).get2();
+                    int dir = (d == ParentsArray.Dir.UP) ? DIR_UP : DIR_DOWN;
+                    posPath.add(dir);
+                    wordPath.add(dir);
+                    dirPath.add(dir);
+                    int child = (d == ParentsArray.Dir.UP) ? idx : path.get(i+1).get1();
+                    relPath.add(deprel(child));
+                }
+            }
+            for (int k=0; k<dirPath.size(); k++) {
+                relPath.add(dirPath.get(k));
+            }
+
+            addFeat(feats, foldAll(RelTs.POS_DP_PATH, posPath, 0, posPath.size()));
+            addFeat(feats, foldAll(RelTs.REL_DP_PATH, relPath, 0, relPath.size()));
+            addFeat(feats, foldAll(RelTs.WORD_DP_PATH, wordPath, 0, wordPath.size()));
+            if (path.size() >= 3) {
+                addFeat(feats, combo(et12, foldAll(RelTs.POS_DP_PATH, posPath, 1, posPath.size()-1)));
+                addFeat(feats, combo(et12, foldAll(RelTs.REL_DP_PATH, relPath, 1, relPath.size()-1)));
+                addFeat(feats, combo(et12, foldAll(RelTs.WORD_DP_PATH, wordPath, 1, wordPath.size()-1)));
+            }
+        }
+    }
+
+    /** Folds the hash codes of the labels on the path between the two leaves in the parse tree. */
+    private static long getPathSymbols(List<NaryTree> m1ToRoot, List<NaryTree> m2ToRoot) {
+        NaryTree lca = RelObsFeatures.getLca(m1ToRoot, m2ToRoot);
+        long h = fold(RelTs.PTP);
+        for (NaryTree node : m1ToRoot) {
+            h = fold(h, Objects.hashCode(node.getSymbol()));
+            if (node == lca) {
+                break;
+            }
+        }
+        int lcaIdx = m2ToRoot.indexOf(lca);
+        for (int i=lcaIdx-1; i>=0; i--) {
+            h = fold(h, Objects.hashCode(m2ToRoot.get(i).getSymbol()));
+        }
+        return h;
+    }
+
+    /** Gets the word at the given position, or the start / end token if it is outside the sentence. */
+    private short word(int i) {
+        if (i < 0) {
+            return TOK_START_INT;
+        } else if (i >= isent.size()) {
+            return TOK_END_INT;
+        }
+        return isent.getWord(i);
+    }
+
+    private int pos(int i) {
+        if (i < 0) {
+            return TOK_START_INT;
+        } else if (i >= isent.size()) {
+            return TOK_END_INT;
+        }
+        return isent.getPosTag(i) & 0xff;
+    }
+
+    private int deprel(int i) {
+        return isent.getDeprel(i) & 0xff;
+    }
+
+    private short chunkHeadWord(int c) {
+        if (c < 0) {
+            return TOK_START_INT;
+        } else if (c >= chunkHeads.length) {
+            return TOK_END_INT;
+        }
+        return word(chunkHeads[c]);
+    }
+
+    private static byte toByte(boolean b) {
+        return b ? (byte)1 : (byte)0;
+    }
+
+    private static long combo(long feat1, long feat2) {
+        return fold(fold(fold(RelTs.COMBO), feat1), feat2);
+    }
+
+    /** Starts a feature whose arguments will be folded in one at a time. */
+    private static long fold(byte template) {
+        return encodeFeatureB___(template, FOLDED, (byte)0);
+    }
+
+    /** Folds one argument into a feature. The result depends on the order of the arguments. */
+    private static long fold(long feat, long val) {
+        long h = (feat ^ val) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static long foldAll(byte template, IntArrayList vals, int start, int end) {
+        long h = fold(template);
+        for (int k=start; k<end; k++) {
+            h = fold(h, vals.get(k));
+        }
+        return h;
+    }
+
+    private static void addFeat(IntArrayList feats, long feat) {
+        feats.add(MurmurHash.hash32(feat));
+    }
+
+}
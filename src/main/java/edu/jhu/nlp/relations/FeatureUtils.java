@@ -3,8 +3,8 @@ package edu.jhu.nlp.relations;
 import java.util.Collection;
 import java.util.List;
 
+import edu.jhu.nlp.features.ConcurrentFeatureNames;
 import edu.jhu.pacaya.gm.feat.FeatureVector;
-import edu.jhu.pacaya.util.FeatureNames;
 import edu.jhu.pacaya.util.hash.MurmurHash3;
 import edu.jhu.prim.list.IntArrayList;
 import edu.jhu.prim.util.math.FastMath;
@@ -19,13 +19,14 @@ public class FeatureUtils {
      * option will additionally compute the hash of the reversed string and add either +1 or -1
      * following (Weinberger et al., 2009).</li>
      * </ul>
+     * The alphabet is shared by all the threads extracting features, so it is accessed through its
+     * concurrent front.
      */
-    public static void addFeatures(Collection<String> obsFeats, FeatureNames alphabet, FeatureVector fv, boolean isBiasFeat, int featureHashMod) {
+    public static void addFeatures(Collection<String> obsFeats, ConcurrentFeatureNames alphabet, FeatureVector fv, boolean isBiasFeat, int featureHashMod) {
         if (featureHashMod <= 0) {
             // Just use the features as-is.
             for (String fname : obsFeats) {
-                int fidx = alphabet.lookupIndex(fname);
-                if (isBiasFeat) { alphabet.setIsBias(fidx); }
+                int fidx = alphabet.lookupIndex(fname, isBiasFeat);
                 if (fidx != -1) {
                     fv.add(fidx, 1.0);
                 }
@@ -35,8 +36,7 @@ public class FeatureUtils {
             for (String fname : obsFeats) {
                 int hash = MurmurHash3.murmurhash3_x86_32(fname);
                 hash = FastMath.mod(hash, featureHashMod);
-                int fidx = alphabet.lookupIndex(hash);
-                if (isBiasFeat) { alphabet.setIsBias(fidx); }
+                int fidx = alphabet.lookupIndex(hash, isBiasFeat);
                 if (fidx != -1) {
                     int revHash = FeatureUtils.reverseHashCode(fname);
                     if (revHash < 0) {
@@ -74,7 +74,7 @@ public class FeatureUtils {
     }
     
     /** Mods, re-maps, then adds int features to a feature vector. */
-    public static void addFeatures(IntArrayList feats, FeatureVector fv, int featureHashMod, FeatureNames alphabet) {
+    public static void addFeatures(IntArrayList feats, FeatureVector fv, int featureHashMod, ConcurrentFeatureNames alphabet) {
         // Apply the feature-hashing trick and use the alphabet.
         assert featureHashMod > 0;
         for (int k=0; k<feats.size(); k++) {
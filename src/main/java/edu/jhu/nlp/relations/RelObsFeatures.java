@@ -15,7 +15,9 @@ import edu.jhu.nlp.data.LabeledSpan;
 import edu.jhu.nlp.data.NerMention;
 import edu.jhu.nlp.data.Span;
 import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.IntAnnoSentence;
 import edu.jhu.nlp.fcm.FcmModule;
+import edu.jhu.nlp.features.ConcurrentFeatureNames;
 import edu.jhu.nlp.features.FeaturizedSentence;
 import edu.jhu.nlp.features.FeaturizedTokenPair;
 import edu.jhu.nlp.features.LocalObservations;
@@ -53,6 +55,8 @@ public class RelObsFeatures implements ObsFeatureExtractor {
         public boolean useZhou05Features = true;        
         @Opt(hasArg=true, description="What to replace removed entity types with.")
         public EntityTypeRepl entityTypeRepl = EntityTypeRepl.NONE;
+        @Opt(hasArg=true, description="Whether to extract the standard binary features from integer ids instead of strings.")
+        public boolean useFastZhou05Features = false;
     }
     
     private static final Logger log = LoggerFactory.getLogger(RelObsFeatures.class);
@@ -60,12 +64,23 @@ public class RelObsFeatures implements ObsFeatureExtractor {
     private RelObsFePrm prm;
     private AnnoSentence sent;
     private FactorTemplateList fts;
+    private BitshiftRelObsFeatures fastFe;
+    // The concurrent front for the alphabet last used by calcObsFeatureVector().
+    private volatile ConcurrentFeatureNames concAlphabet;
 
     public RelObsFeatures(RelObsFePrm prm, AnnoSentence sent, FactorTemplateList fts) {
         this.prm = prm;
         this.sent = sent;
         this.fts = fts;
     }
+
+    /** Constructs a feature extractor which can use the fast features, if they are turned on. */
+    public RelObsFeatures(RelObsFePrm prm, IntAnnoSentence isent, FactorTemplateList fts) {
+        this(prm, isent.getAnnoSentence(), fts);
+        if (prm.useZhou05Features && prm.useFastZhou05Features) {
+            this.fastFe = new BitshiftRelObsFeatures(isent);
+        }
+    }
     
     @Override
     public FeatureVector calcObsFeatureVector(ObsFeExpFamFactor factor) {
@@ -74,7 +89,13 @@ public class RelObsFeatures implements ObsFeatureExtractor {
         return calcObsFeatureVector(alphabet, rv);
     }
 
-    public FeatureVector calcObsFeatureVector(final FeatureNames alphabet, RelVar rv) {
+    public FeatureVector calcObsFeatureVector(FeatureNames featNames, RelVar rv) {
+        // The alphabet is shared by all the threads extracting features.
+        final ConcurrentFeatureNames alphabet = ConcurrentFeatureNames.get(featNames, concAlphabet);
+        concAlphabet = alphabet;
+        if (fastFe != null) {
+            return calcFastObsFeatureVector(alphabet, rv);
+        }
         ObjFeatVec<String> obsFeats = calcObsFeatureVectorStrs(rv);
         final FeatureVector fv = new FeatureVector();
         obsFeats.iterate(new FnObjDoubleToVoid<String>() {            
@@ -89,6 +110,30 @@ public class RelObsFeatures implements ObsFeatureExtractor {
         return fv;
     }
     
+    /** Gets the feature vector using the hashed integer features in place of the string features. */
+    private FeatureVector calcFastObsFeatureVector(ConcurrentFeatureNames alphabet, RelVar rv) {
+        LocalObservations local = LocalObservations.newNe1Ne2(rv.ment1, rv.ment2);
+        FeatureVector fv = new FeatureVector();
+        
+        // The bias features are used to ensure that at least one feature fires for each variable configuration.
+        int fidx = alphabet.lookupIndex("BIAS_FEATURE");
+        if (fidx != -1) {
+            fv.add(fidx, 1.0);
+        }
+        
+        maybeSetEntityTypesAndSubTypes(sent, local, prm.entityTypeRepl);
+        
+        IntArrayList feats = new IntArrayList();
+        fastFe.addZhou05Features(local, feats);
+        for (int k=0; k<feats.size(); k++) {
+            fidx = alphabet.lookupIndex(feats.get(k));
+            if (fidx != -1) {
+                fv.add(fidx, 1.0);
+            }
+        }
+        return fv;
+    }
+    
     public ObjFeatVec<String> calcObsFeatureVectorStrs(RelVar rv) {
         LocalObservations local = LocalObservations.newNe1Ne2(rv.ment1, rv.ment2);
         ObjFeatVec<String> fv = new ObjFeatVec<String>();
@@ -510,7 +555,7 @@ public class RelObsFeatures implements ObsFeatureExtractor {
         return numMentsBtwn;
     }
 
-    private int getLca(int[] parents, int a, int b) {
+    static int getLca(int[] parents, int a, int b) {
         IntArrayList a2r = getPathToRoot(parents, a);
         IntArrayList b2r = getPathToRoot(parents, b);
         IntHashSet a2rSet = new IntHashSet(a2r);
@@ -523,7 +568,7 @@ public class RelObsFeatures implements ObsFeatureExtractor {
         return lca;
     }
 
-    private IntArrayList getPathToRoot(int[] parents, int a) {
+    private static IntArrayList getPathToRoot(int[] parents, int a) {
         IntArrayList a2r = new IntArrayList();
         int i=a;
         while (parents[i] >= 0) {
@@ -579,7 +624,7 @@ public class RelObsFeatures implements ObsFeatureExtractor {
         return inSamePhrase(phrase, lcaToRoot);
     }
 
-    private static boolean inSamePhrase(String phrase, List<NaryTree> lcaToRoot) {
+    static boolean inSamePhrase(String phrase, List<NaryTree> lcaToRoot) {
         for (NaryTree node : lcaToRoot) {
             if (node.getSymbol().startsWith(phrase)) {
                 return true;
@@ -588,14 +633,14 @@ public class RelObsFeatures implements ObsFeatureExtractor {
         return false;
     }
 
-    private static List<NaryTree> getLcaToRoot(List<NaryTree> m1ToRoot, List<NaryTree> m2ToRoot) {
+    static List<NaryTree> getLcaToRoot(List<NaryTree> m1ToRoot, List<NaryTree> m2ToRoot) {
         NaryTree lca = getLca(m1ToRoot, m2ToRoot);
         assert lca != null;
         List<NaryTree> lcaToRoot = getPathToRoot(lca);
         return lcaToRoot;
     }
 
-    private static NaryTree getLca(List<NaryTree> m1ToRoot, List<NaryTree> m2ToRoot) {
+    static NaryTree getLca(List<NaryTree> m1ToRoot, List<NaryTree> m2ToRoot) {
         NaryTree lca = null;
         Set<NaryTree> m1ToRootSet = new HashSet<>(m1ToRoot);
         for (NaryTree node : m2ToRoot) {
@@ -606,7 +651,7 @@ public class RelObsFeatures implements ObsFeatureExtractor {
         return lca;
     }
     
-    private static List<NaryTree> getPathToRoot(NaryTree node) {
+    static List<NaryTree> getPathToRoot(NaryTree node) {
         List<NaryTree> path = new ArrayList<>();
         while (node != null) {
             path.add(node);
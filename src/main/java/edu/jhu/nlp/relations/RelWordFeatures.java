@@ -12,6 +12,7 @@ import edu.jhu.nlp.data.Span;
 import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.fcm.FcmModule;
 import edu.jhu.nlp.fcm.WordFeatures;
+import edu.jhu.nlp.features.ConcurrentFeatureNames;
 import edu.jhu.nlp.features.FeaturizedSentence;
 import edu.jhu.nlp.features.FeaturizedTokenPair;
 import edu.jhu.nlp.features.LocalObservations;
@@ -48,12 +49,14 @@ public class RelWordFeatures implements WordFeatures {
     private RelWordFeaturesPrm prm;
     private AnnoSentence sent;
     private FeatureNames alphabet;
+    private ConcurrentFeatureNames concAlphabet;
     private FeaturizedSentence fsent;
     
     public RelWordFeatures(RelWordFeaturesPrm prm, AnnoSentence sent, FeatureNames alphabet) {
         this.prm = prm;
         this.sent = sent;
         this.alphabet = alphabet;
+        this.concAlphabet = ConcurrentFeatureNames.get(alphabet);
         fsent = new FeaturizedSentence(sent, null);
     }
     
@@ -215,7 +218,7 @@ public class RelWordFeatures implements WordFeatures {
             return;
         }
         FeatureVector fv = fvs.get(i);
-        int fidx = alphabet.lookupIndex(fname);
+        int fidx = concAlphabet.lookupIndex(fname);
         if (fidx != -1) {
             fv.add(fidx, 1.0);
         }
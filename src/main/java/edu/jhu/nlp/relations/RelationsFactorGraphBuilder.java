@@ -11,6 +11,7 @@ import edu.jhu.nlp.ObsFeTypedFactor;
 import edu.jhu.nlp.data.NerMention;
 import edu.jhu.nlp.data.Span;
 import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.IntAnnoSentence;
 import edu.jhu.nlp.embed.Embeddings;
 import edu.jhu.nlp.fcm.FcmFactor;
 import edu.jhu.nlp.relations.RelObsFeatures.EntityTypeRepl;
@@ -44,6 +45,8 @@ public class RelationsFactorGraphBuilder {
         public EmbFeatType embFeatType = EmbFeatType.FULL;   
         @Opt(hasArg=true, description="What to replace removed entity types with.")
         public EntityTypeRepl entityTypeRepl = EntityTypeRepl.NONE;        
+        @Opt(hasArg=true, description="Whether to extract the standard binary features from integer ids instead of strings.")
+        public boolean useFastZhou05Features = false;
     }
     
     public enum RelationFactorType {
@@ -83,6 +86,14 @@ public class RelationsFactorGraphBuilder {
      * Adds factors and variables to the given factor graph.
      */
     public void build(AnnoSentence sent, ObsFeatureConjoiner ofc, FactorGraph fg, CorpusStatistics cs) {
+        build(new IntAnnoSentence(sent, cs.store), ofc, fg, cs);
+    }
+    
+    /**
+     * Adds factors and variables to the given factor graph.
+     */
+    public void build(IntAnnoSentence isent, ObsFeatureConjoiner ofc, FactorGraph fg, CorpusStatistics cs) {
+        AnnoSentence sent = isent.getAnnoSentence();
         relVars = new ArrayList<>();
         
         // Create relation variables.
@@ -107,7 +118,8 @@ public class RelationsFactorGraphBuilder {
         RelObsFePrm relPrm = new RelObsFePrm();
         relPrm.entityTypeRepl = prm.entityTypeRepl;
         relPrm.useZhou05Features = prm.useZhou05Features;
-        RelObsFeatures relFe = new RelObsFeatures(relPrm, sent, ofc.getTemplates());
+        relPrm.useFastZhou05Features = prm.useFastZhou05Features;
+        RelObsFeatures relFe = new RelObsFeatures(relPrm, isent, ofc.getTemplates());
     	
     	// FCM's feature extractor.
     	RelWordFeatures wordFe = null;
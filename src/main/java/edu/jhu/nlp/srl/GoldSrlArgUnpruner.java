@@ -0,0 +1,68 @@
+package edu.jhu.nlp.srl;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.nlp.Annotator;
+import edu.jhu.nlp.Trainable;
+import edu.jhu.nlp.data.SrlArgMask;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlEdge;
+import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.features.TemplateLanguage.AT;
+
+/**
+ * Ensures that the gold SRL arguments in the training data are not pruned by the SrlArgMask, so
+ * that each one has a Role variable when training with conditional log-likelihood. This is the SRL
+ * counterpart of {@link edu.jhu.nlp.depparse.GoldDepParseUnpruner}.
+ *
+ * @author mgormley
+ */
+public class GoldSrlArgUnpruner implements Trainable, Annotator {
+
+    private static final Logger log = LoggerFactory.getLogger(GoldSrlArgUnpruner.class);
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void annotate(AnnoSentenceCollection sents) {
+        // Do nothing. This annotator is only used to manipulate training masks.
+    }
+
+    @Override
+    public void train(AnnoSentenceCollection trainInput, AnnoSentenceCollection trainGold,
+            AnnoSentenceCollection devInput, AnnoSentenceCollection devGold) {
+        log.info("Ensuring that the gold SRL arguments in the training data are not pruned.");
+        int numUnpruned = unprune(trainInput, trainGold);
+        log.info("Number of pruned gold SRL arguments restored: " + numUnpruned);
+    }
+
+    /** Keeps the gold arguments in each input SrlArgMask, and returns the number that were pruned. */
+    protected int unprune(AnnoSentenceCollection trainInput, AnnoSentenceCollection trainGold) {
+        int numUnpruned = 0;
+        for (int i=0; i<trainGold.size(); i++) {
+            AnnoSentence gSent = trainGold.get(i);
+            AnnoSentence iSent = trainInput.get(i);
+            if (gSent.getSrlGraph() != null && iSent.getSrlArgMask() != null) {
+                SrlArgMask iMask = iSent.getSrlArgMask();
+                for (SrlEdge edge : gSent.getSrlGraph().getEdges()) {
+                    int p = edge.getPred().getPosition();
+                    int a = edge.getArg().getPosition();
+                    if (iMask.isPruned(p, a)) {
+                        iMask.setIsKept(p, a, true);
+                        numUnpruned++;
+                    }
+                }
+            }
+        }
+        return numUnpruned;
+    }
+
+    @Override
+    public Set<AT> getAnnoTypes() {
+        return Collections.emptySet();
+    }
+
+}
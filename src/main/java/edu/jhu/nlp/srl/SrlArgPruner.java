@@ -0,0 +1,165 @@
+package edu.jhu.nlp.srl;
+
+import java.io.Serializable;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.nlp.AbstractParallelAnnotator;
+import edu.jhu.nlp.ConcurrentAnnotator;
+import edu.jhu.nlp.data.SrlArgMask;
+import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.features.TemplateLanguage.AT;
+import edu.jhu.pacaya.util.Threads;
+import edu.jhu.pacaya.util.collections.QSets;
+import edu.jhu.prim.list.IntArrayList;
+import edu.jhu.prim.util.Lambda.FnIntToVoid;
+
+/**
+ * Syntax-based pruning of the candidate arguments of each predicate, following the heuristic of
+ * Xue & Palmer (2004) as adapted to dependency trees by Zhao et al. (2009).
+ *
+ * Starting at the predicate, we walk up the dependency tree towards the root. Each node on this
+ * path (including the predicate itself) and its descendants, up to a maximum depth below the node,
+ * are kept as candidate arguments of the predicate. All other arguments are pruned. Sentences
+ * without a dependency tree are not pruned.
+ *
+ * @author mgormley
+ */
+public class SrlArgPruner implements ConcurrentAnnotator, Serializable {
+
+    public static class SrlArgPrunerPrm implements Serializable {
+        private static final long serialVersionUID = 1L;
+        /**
+         * The maximum depth below each node on the path to the root at which descendants are kept
+         * (e.g. 1 keeps only the children).
+         */
+        public int maxDepth = 1;
+        /** The maximum number of ancestors of the predicate to visit, or -1 to visit all of them. */
+        public int maxAncestors = -1;
+    }
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger log = LoggerFactory.getLogger(SrlArgPruner.class);
+
+    private SrlArgPrunerPrm prm;
+
+    public SrlArgPruner(SrlArgPrunerPrm prm) {
+        this.prm = prm;
+    }
+
+    @Override
+    public void annotate(final AnnoSentenceCollection sents) {
+        final AtomicLong numPairsTot = new AtomicLong(0);
+        final AtomicLong numPairsKept = new AtomicLong(0);
+        final AtomicInteger numUnparsed = new AtomicInteger(0);
+        // For each sentence...
+        Threads.forEach(0, sents.size(), new FnIntToVoid() {
+            @Override
+            public void call(int i) {
+                try {
+                    AnnoSentence sent = sents.get(i);
+                    if (sent.getParents() == null) {
+                        numUnparsed.incrementAndGet();
+                        return;
+                    }
+                    SrlArgMask cands = getCandidates(sent.getParents(), prm.maxDepth, prm.maxAncestors);
+                    // Intersect with the existing SrlArgMask, if any.
+                    SrlArgMask mask = sent.getSrlArgMask();
+                    if (mask == null) {
+                        mask = cands;
+                        sent.setSrlArgMask(mask);
+                    } else {
+                        mask.and(cands);
+                    }
+                    numPairsTot.addAndGet(sent.size() * sent.size());
+                    numPairsKept.addAndGet(mask.getCount());
+                } catch (Throwable t) {
+                    AbstractParallelAnnotator.logThrowable(log, t);
+                }
+            }
+        });
+
+        if (numUnparsed.get() > 0) {
+            log.warn("Skipped pruning of SRL arguments for {} sentences without a dependency tree.", numUnparsed.get());
+        }
+        long numPairsPruned = numPairsTot.get() - numPairsKept.get();
+        log.info(String.format("Pruned %d / %d = %f predicate-argument pairs", numPairsPruned, numPairsTot.get(),
+                    (double) numPairsPruned / numPairsTot.get()));
+    }
+
+    /**
+     * Gets the candidate arguments for every predicate position in a sentence.
+     *
+     * @param parents The dependency tree.
+     * @param maxDepth The maximum depth of the descendants kept below each node on the path.
+     * @param maxAncestors The maximum number of ancestors to visit, or -1 to visit all of them.
+     * @return The mask of candidate pairs.
+     */
+    public static SrlArgMask getCandidates(int[] parents, int maxDepth, int maxAncestors) {
+        int n = parents.length;
+        IntArrayList[] children = getChildren(parents);
+        SrlArgMask mask = new SrlArgMask(n, false);
+        int[] queue = new int[n+1];
+        int[] depth = new int[n];
+        for (int pred=0; pred<n; pred++) {
+            int node = pred;
+            // Guard against cycles in malformed trees by taking at most n steps.
+            for (int step=0; step<n; step++) {
+                // Keep the node and its descendants up to the maximum depth, by a breadth-first
+                // search. The nodes kept at earlier steps are at least as deep below this node as
+                // they were below the previous one, so they need not be searched again.
+                int head = 0;
+                int tail = 0;
+                queue[tail++] = node;
+                depth[node] = 0;
+                mask.setIsKept(pred, node, true);
+                while (head < tail) {
+                    int p = queue[head++];
+                    if (depth[p] >= maxDepth) {
+                        continue;
+                    }
+                    IntArrayList cs = children[p];
+                    for (int m=0; m<cs.size(); m++) {
+                        int c = cs.get(m);
+                        if (mask.isKept(pred, c)) {
+                            continue;
+                        }
+                        mask.setIsKept(pred, c, true);
+                        depth[c] = depth[p] + 1;
+                        queue[tail++] = c;
+                    }
+                }
+                // Move up to the parent, stopping at the root (-1) or at unattached tokens (-2).
+                if (parents[node] < 0 || (maxAncestors >= 0 && step >= maxAncestors)) {
+                    break;
+                }
+                node = parents[node];
+            }
+        }
+        return mask;
+    }
+
+    private static IntArrayList[] getChildren(int[] parents) {
+        IntArrayList[] children = new IntArrayList[parents.length];
+        for (int i=0; i<parents.length; i++) {
+            children[i] = new IntArrayList();
+        }
+        for (int c=0; c<parents.length; c++) {
+            if (parents[c] >= 0) {
+                children[parents[c]].add(c);
+            }
+        }
+        return children;
+    }
+
+    @Override
+    public Set<AT> getAnnoTypes() {
+        return QSets.getSet(AT.SRL_ARG_MASK);
+    }
+
+}
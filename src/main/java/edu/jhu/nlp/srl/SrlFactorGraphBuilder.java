@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import edu.jhu.nlp.CorpusStatistics;
 import edu.jhu.nlp.ObsFeTypedFactor;
+import edu.jhu.nlp.data.SrlArgMask;
 import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.data.simple.IntAnnoSentence;
 import edu.jhu.nlp.embed.Embeddings;
@@ -164,6 +165,7 @@ public class SrlFactorGraphBuilder implements Serializable {
         List<String> words = sent.getWords();
         List<String> lemmas = sent.getLemmas();
         IntSet knownPreds = sent.getKnownPreds();
+        SrlArgMask argMask = sent.getSrlArgMask();
         List<String> roleStateNames = cs.roleStateNames;
         Map<String, List<String>> psMap = cs.predSenseListMap;
 
@@ -186,7 +188,7 @@ public class SrlFactorGraphBuilder implements Serializable {
         
         this.n = words.size();
         
-        // Create the Role variables.
+        // Create the Role variables, skipping any pairs pruned by the SrlArgMask.
         roleVars = new RoleVar[n][n];
         if (prm.roleStructure == RoleStructure.PREDS_GIVEN) {
             // CoNLL-friendly model; preds given
@@ -197,6 +199,9 @@ public class SrlFactorGraphBuilder implements Serializable {
                     if (i==j && !prm.allowPredArgSelfLoops) {
                         continue;
                     }
+                    if (argMask != null && argMask.isPruned(i, j)) {
+                        continue;
+                    }
                     roleVars[i][j] = createRoleVar(i, j, knownPreds, roleStateNames);
                 }
             }
@@ -207,6 +212,9 @@ public class SrlFactorGraphBuilder implements Serializable {
                     if (i==j && !prm.allowPredArgSelfLoops) {
                         continue;
                     }
+                    if (argMask != null && argMask.isPruned(i, j)) {
+                        continue;
+                    }
                     roleVars[i][j] = createRoleVar(i, j, knownPreds, roleStateNames);
                 }
             }
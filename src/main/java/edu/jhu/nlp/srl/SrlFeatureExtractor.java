@@ -10,6 +10,7 @@ import edu.jhu.nlp.CorpusStatistics;
 import edu.jhu.nlp.ObsFeTypedFactor;
 import edu.jhu.nlp.data.simple.IntAnnoSentence;
 import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.DepParseFactorTemplate;
+import edu.jhu.nlp.features.ConcurrentFeatureNames;
 import edu.jhu.nlp.features.FeaturizedSentence;
 import edu.jhu.nlp.features.IntTemplateFeatureExtractor;
 import edu.jhu.nlp.features.LocalObservations;
@@ -62,6 +63,8 @@ public class SrlFeatureExtractor implements ObsFeatureExtractor {
     private TemplateFeatureExtractor ext;
     private IntTemplateFeatureExtractor intExt;
     private ObsFeatureConjoiner ofc;
+    // The concurrent front for the alphabet last used by getSrlFeats().
+    private volatile ConcurrentFeatureNames concAlphabet;
     
     public SrlFeatureExtractor(SrlFeatureExtractorPrm prm, IntAnnoSentence isent, CorpusStatistics cs, ObsFeatureConjoiner ofc) {
         this.prm = prm;
@@ -120,13 +123,15 @@ public class SrlFeatureExtractor implements ObsFeatureExtractor {
 
     /**
      * Gets SRL features.
-     * @param alphabet (OPTIONAL) The int-to-string mapping used only if extracting string features.
+     * @param featNames (OPTIONAL) The int-to-string mapping used only if extracting string features.
      * @param parent The index of the parent.
      * @param child (OPTIONAL) The index of the child.
      * @param tpls The feature template list.
      * @return The extracted features.
      */
-    public FeatureVector getSrlFeats(FeatureNames alphabet, int parent, int child, List<FeatTemplate> tpls) {
+    public FeatureVector getSrlFeats(FeatureNames featNames, int parent, int child, List<FeatTemplate> tpls) {
+        ConcurrentFeatureNames alphabet = (featNames == null) ? null : ConcurrentFeatureNames.get(featNames, concAlphabet);
+        concAlphabet = alphabet;
         if (prm.biasOnly || ext != null) {
             ArrayList<String> obsFeats = new ArrayList<>();
             // Get features on the observations for a pair of words.
@@ -169,15 +169,20 @@ public class BitshiftTokenFeatures {
     }
 
     public static void addFeat(FeatureVector feats, int mod, long feat) {
-        int hash = MurmurHash.hash32(feat);
-        if (mod > 0) {
-            hash = FastMath.mod(hash, mod);
-        }
-        feats.add(hash, 1.0);
+        feats.add(hashFeat(feat, mod), 1.0);
         // Enable this for debugging of feature creation.
         //        if (feats instanceof LongFeatureVector) {
         //            ((LongFeatureVector)feats).addLong(feat, 1.0);
         //        }
     }
+
+    /** Gets the index of the given packed feature, as added by {@link #addFeat(FeatureVector, int, long)}. */
+    public static int hashFeat(long feat, int mod) {
+        int hash = MurmurHash.hash32(feat);
+        if (mod > 0) {
+            hash = FastMath.mod(hash, mod);
+        }
+        return hash;
+    }
     
 }
@@ -0,0 +1,432 @@
+package edu.jhu.nlp.tag;
+
+import java.util.Arrays;
+
+import edu.jhu.pacaya.autodiff.Module;
+import edu.jhu.pacaya.gm.inf.AbstractFgInferencer;
+import edu.jhu.pacaya.gm.inf.Beliefs;
+import edu.jhu.pacaya.gm.inf.FgInferencer;
+import edu.jhu.pacaya.gm.inf.FgInferencerFactory;
+import edu.jhu.pacaya.gm.model.Factor;
+import edu.jhu.pacaya.gm.model.FactorGraph;
+import edu.jhu.pacaya.gm.model.Factors;
+import edu.jhu.pacaya.gm.model.ForwardOnlyFactorsModule;
+import edu.jhu.pacaya.gm.model.Var;
+import edu.jhu.pacaya.gm.model.VarConfig;
+import edu.jhu.pacaya.gm.model.VarSet;
+import edu.jhu.pacaya.gm.model.VarTensor;
+import edu.jhu.pacaya.gm.model.globalfac.GlobalFactor;
+import edu.jhu.pacaya.util.semiring.Algebra;
+
+/**
+ * Exact inference by the forward-backward algorithm for factor graphs whose pairwise factors form
+ * one or more linear chains, such as those built by {@link PosTagFactorGraphBuilder} and
+ * NerFactorGraphBuilder.
+ *
+ * The factors are first collapsed into dense arrays of unary and transition potentials: factors on
+ * the same variable or the same pair of adjacent variables are multiplied together, and factors with
+ * no variables contribute only to the partition function. Forward-backward over these arrays then
+ * gives the exact variable and factor marginals, and Viterbi gives the exact MAP configuration.
+ *
+ * @author mgormley
+ */
+public class ChainFgInferencer extends AbstractFgInferencer implements FgInferencer {
+
+    /**
+     * Factory which uses a {@link ChainFgInferencer} whenever the factor graph is a set of chains,
+     * and falls back to another inference method otherwise.
+     */
+    public static class ChainFgInferencerFactory implements FgInferencerFactory {
+
+        private Algebra s;
+        private FgInferencerFactory fallback;
+
+        /**
+         * @param s The algebra in which to run chain inference.
+         * @param fallback The factory for factor graphs which are not chains.
+         */
+        public ChainFgInferencerFactory(Algebra s, FgInferencerFactory fallback) {
+            this.s = s;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public FgInferencer getInferencer(FactorGraph fg) {
+            int[][] chains = getChains(fg);
+            if (chains == null) {
+                return fallback.getInferencer(fg);
+            }
+            return new ChainFgInferencer(fg, ForwardOnlyFactorsModule.getFactorsModule(fg, s), chains);
+        }
+
+        public Algebra getAlgebra() {
+            return s;
+        }
+
+    }
+
+    // Input:
+    private Module<Factors> fm;
+    private final Algebra s;
+    private FactorGraph fg;
+    // The variable ids of each chain, in order.
+    private int[][] chains;
+    // Output:
+    private Beliefs b;
+    private double partition;
+    // Cached:
+    // Dense potentials, in the semiring. Indexed by variable id, then by state (unary) or by
+    // previous state * numStates + state (transition into the variable from its predecessor).
+    private double[][] unary;
+    private double[][] trans;
+    // The product of the potentials of factors with no variables.
+    private double constant;
+    private double[][] alpha;
+    private double[][] beta;
+
+    public ChainFgInferencer(FactorGraph fg, Algebra s) {
+        this(fg, ForwardOnlyFactorsModule.getFactorsModule(fg, s));
+    }
+
+    public ChainFgInferencer(FactorGraph fg, Module<Factors> fm) {
+        this(fg, fm, getChains(fg));
+    }
+
+    private ChainFgInferencer(FactorGraph fg, Module<Factors> fm, int[][] chains) {
+        if (chains == null) {
+            throw new IllegalArgumentException("Factor graph is not a set of chains");
+        }
+        this.s = fm.getAlgebra();
+        this.fg = fg;
+        this.fm = fm;
+        this.chains = chains;
+    }
+
+    /**
+     * Gets the chains of the factor graph, or null if the factor graph is not a set of chains.
+     *
+     * A factor graph is a set of chains if every factor has at most two variables and the pairs of
+     * variables which share a factor form vertex-disjoint simple paths.
+     *
+     * @return The variable ids of each chain, in order from one end to the other.
+     */
+    public static int[][] getChains(FactorGraph fg) {
+        int numVars = fg.getNumVars();
+        int[][] nbrs = new int[numVars][2];
+        int[] degree = new int[numVars];
+        for (int a=0; a<fg.getNumFactors(); a++) {
+            Factor f = fg.getFactor(a);
+            if (f instanceof GlobalFactor || f.getVars().size() > 2) {
+                return null;
+            }
+            if (f.getVars().size() < 2) {
+                continue;
+            }
+            int u = f.getVars().get(0).getId();
+            int v = f.getVars().get(1).getId();
+            if ((degree[u] > 0 && nbrs[u][0] == v) || (degree[u] > 1 && nbrs[u][1] == v)) {
+                // Another factor on the same pair.
+                continue;
+            }
+            if (degree[u] == 2 || degree[v] == 2) {
+                return null;
+            }
+            nbrs[u][degree[u]++] = v;
+            nbrs[v][degree[v]++] = u;
+        }
+        // Walk each chain from one of its ends. Any variable not reached lies on a cycle.
+        int[][] chains = new int[numVars][];
+        int numChains = 0;
+        boolean[] visited = new boolean[numVars];
+        int numVisited = 0;
+        int[] chain = new int[numVars];
+        for (int start=0; start<numVars; start++) {
+            if (visited[start] || degree[start] == 2) { continue; }
+            int len = 0;
+            int prev = -1;
+            int cur = start;
+            while (cur != -1) {
+                visited[cur] = true;
+                chain[len++] = cur;
+                int next = -1;
+                for (int d=0; d<degree[cur]; d++) {
+                    if (nbrs[cur][d] != prev) { next = nbrs[cur][d]; }
+                }
+                prev = cur;
+                cur = next;
+            }
+            numVisited += len;
+            chains[numChains++] = Arrays.copyOf(chain, len);
+        }
+        if (numVisited != numVars) {
+            return null;
+        }
+        return Arrays.copyOf(chains, numChains);
+    }
+
+    @Override
+    public void run() {
+        forwardPotentials();
+        forwardBackward();
+        forwardBeliefs();
+    }
+
+    /** Collapses the factors into the dense unary and transition potentials. */
+    private void forwardPotentials() {
+        Factors factors = fm.getOutput();
+        int numVars = fg.getNumVars();
+        int[] prevs = getPrevs();
+        unary = new double[numVars][];
+        trans = new double[numVars][];
+        for (int v=0; v<numVars; v++) {
+            unary[v] = new double[fg.getVar(v).getNumStates()];
+            Arrays.fill(unary[v], s.one());
+            if (prevs[v] != -1) {
+                trans[v] = new double[fg.getVar(prevs[v]).getNumStates() * unary[v].length];
+                Arrays.fill(trans[v], s.one());
+            }
+        }
+        constant = s.one();
+        for (int a=0; a<fg.getNumFactors(); a++) {
+            VarSet vars = fg.getFactor(a).getVars();
+            VarTensor psi = factors.get(a);
+            if (vars.size() == 0) {
+                constant = s.times(constant, psi.getValue(0));
+            } else if (vars.size() == 1) {
+                double[] u = unary[vars.get(0).getId()];
+                for (int k=0; k<u.length; k++) {
+                    u[k] = s.times(u[k], psi.get(k));
+                }
+            } else {
+                // Orient the pair so that v follows w in its chain.
+                boolean forward = (prevs[vars.get(1).getId()] == vars.get(0).getId());
+                int w = forward ? vars.get(0).getId() : vars.get(1).getId();
+                int v = forward ? vars.get(1).getId() : vars.get(0).getId();
+                int numW = unary[w].length;
+                int numV = unary[v].length;
+                double[] e = trans[v];
+                for (int j=0; j<numW; j++) {
+                    for (int k=0; k<numV; k++) {
+                        double val = forward ? psi.get(j, k) : psi.get(k, j);
+                        e[j*numV + k] = s.times(e[j*numV + k], val);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Gets the predecessor of each variable in its chain, or -1 for the first variable. */
+    private int[] getPrevs() {
+        int[] prevs = new int[fg.getNumVars()];
+        Arrays.fill(prevs, -1);
+        for (int[] chain : chains) {
+            for (int t=1; t<chain.length; t++) {
+                prevs[chain[t]] = chain[t-1];
+            }
+        }
+        return prevs;
+    }
+
+    /** Runs forward-backward along each chain, and computes the partition function. */
+    private void forwardBackward() {
+        int numVars = fg.getNumVars();
+        alpha = new double[numVars][];
+        beta = new double[numVars][];
+        partition = constant;
+        for (int[] chain : chains) {
+            // Forward pass: alpha includes the unary potential of its own variable.
+            int first = chain[0];
+            alpha[first] = Arrays.copyOf(unary[first], unary[first].length);
+            for (int t=1; t<chain.length; t++) {
+                int w = chain[t-1];
+                int v = chain[t];
+                double[] a = new double[unary[v].length];
+                for (int k=0; k<a.length; k++) {
+                    double sum = s.zero();
+                    for (int j=0; j<alpha[w].length; j++) {
+                        sum = s.plus(sum, s.times(alpha[w][j], trans[v][j*a.length + k]));
+                    }
+                    a[k] = s.times(sum, unary[v][k]);
+                }
+                alpha[v] = a;
+            }
+            // Backward pass: beta excludes the unary potential of its own variable.
+            int last = chain[chain.length-1];
+            beta[last] = new double[unary[last].length];
+            Arrays.fill(beta[last], s.one());
+            for (int t=chain.length-2; t>=0; t--) {
+                int w = chain[t];
+                int v = chain[t+1];
+                int numV = unary[v].length;
+                double[] bw = new double[unary[w].length];
+                for (int j=0; j<bw.length; j++) {
+                    double sum = s.zero();
+                    for (int k=0; k<numV; k++) {
+                        sum = s.plus(sum, s.times(trans[v][j*numV + k], s.times(unary[v][k], beta[v][k])));
+                    }
+                    bw[j] = sum;
+                }
+                beta[w] = bw;
+            }
+            double z = s.zero();
+            for (int k=0; k<alpha[last].length; k++) {
+                z = s.plus(z, alpha[last][k]);
+            }
+            partition = s.times(partition, z);
+        }
+    }
+
+    /** Computes the (normalized) beliefs from the forward and backward scores. */
+    private void forwardBeliefs() {
+        int[] prevs = getPrevs();
+        b = new Beliefs(new VarTensor[fg.getNumVars()], new VarTensor[fg.getNumFactors()]);
+        for (int v=0; v<b.varBeliefs.length; v++) {
+            VarTensor bv = new VarTensor(s, new VarSet(fg.getVar(v)));
+            for (int k=0; k<alpha[v].length; k++) {
+                bv.setValue(k, s.times(alpha[v][k], beta[v][k]));
+            }
+            bv.normalize();
+            b.varBeliefs[v] = bv;
+        }
+        for (int a=0; a<b.facBeliefs.length; a++) {
+            VarSet vars = fg.getFactor(a).getVars();
+            if (vars.size() == 0) {
+                b.facBeliefs[a] = new VarTensor(s, new VarSet());
+            } else if (vars.size() == 1) {
+                VarTensor bv = b.varBeliefs[vars.get(0).getId()];
+                VarTensor bf = new VarTensor(s, vars);
+                for (int k=0; k<unary[vars.get(0).getId()].length; k++) {
+                    bf.setValue(k, bv.getValue(k));
+                }
+                b.facBeliefs[a] = bf;
+            } else {
+                // The belief of a pair factor combines the forward score of the previous variable,
+                // the transition potential, and the unary potential and backward score of the next.
+                boolean forward = (prevs[vars.get(1).getId()] == vars.get(0).getId());
+                int w = forward ? vars.get(0).getId() : vars.get(1).getId();
+                int v = forward ? vars.get(1).getId() : vars.get(0).getId();
+                int numV = unary[v].length;
+                VarTensor bf = new VarTensor(s, vars);
+                for (int j=0; j<alpha[w].length; j++) {
+                    for (int k=0; k<numV; k++) {
+                        double val = s.times(alpha[w][j], s.times(trans[v][j*numV + k], s.times(unary[v][k], beta[v][k])));
+                        if (forward) {
+                            bf.set(val, j, k);
+                        } else {
+                            bf.set(val, k, j);
+                        }
+                    }
+                }
+                bf.normalize();
+                b.facBeliefs[a] = bf;
+            }
+        }
+    }
+
+    /**
+     * Gets the MAP configuration of the variables, found by running Viterbi along each chain. Must
+     * be called after {@link #run()}.
+     */
+    public VarConfig getViterbiConfig() {
+        VarConfig vc = new VarConfig();
+        for (int[] chain : chains) {
+            int[] states = viterbi(chain, null);
+            for (int t=0; t<chain.length; t++) {
+                vc.put(fg.getVar(chain[t]), states[t]);
+            }
+        }
+        return vc;
+    }
+
+    /**
+     * Gets the log of the unnormalized score of the MAP configuration. Must be called after
+     * {@link #run()}.
+     */
+    public double getViterbiLogScore() {
+        double[] score = new double[]{ s.toLogProb(constant) };
+        for (int[] chain : chains) {
+            viterbi(chain, score);
+        }
+        return score[0];
+    }
+
+    /**
+     * Runs Viterbi on the log potentials of a single chain.
+     *
+     * @param chain The chain.
+     * @param score If non-null, the log score of the best path is added to score[0].
+     * @return The best state of each variable in the chain.
+     */
+    private int[] viterbi(int[] chain, double[] score) {
+        double[][] delta = new double[chain.length][];
+        int[][] bp = new int[chain.length][];
+        delta[0] = toLogProbs(unary[chain[0]]);
+        for (int t=1; t<chain.length; t++) {
+            int v = chain[t];
+            int numV = unary[v].length;
+            delta[t] = new double[numV];
+            bp[t] = new int[numV];
+            for (int k=0; k<numV; k++) {
+                double best = Double.NEGATIVE_INFINITY;
+                int argBest = 0;
+                for (int j=0; j<delta[t-1].length; j++) {
+                    double val = delta[t-1][j] + s.toLogProb(trans[v][j*numV + k]);
+                    if (val > best) {
+                        best = val;
+                        argBest = j;
+                    }
+                }
+                delta[t][k] = best + s.toLogProb(unary[v][k]);
+                bp[t][k] = argBest;
+            }
+        }
+        int[] states = new int[chain.length];
+        int last = chain.length-1;
+        for (int k=1; k<delta[last].length; k++) {
+            if (delta[last][k] > delta[last][states[last]]) {
+                states[last] = k;
+            }
+        }
+        if (score != null) {
+            score[0] += delta[last][states[last]];
+        }
+        for (int t=last; t>0; t--) {
+            states[t-1] = bp[t][states[t]];
+        }
+        return states;
+    }
+
+    private double[] toLogProbs(double[] vals) {
+        double[] logs = new double[vals.length];
+        for (int k=0; k<vals.length; k++) {
+            logs[k] = s.toLogProb(vals[k]);
+        }
+        return logs;
+    }
+
+    @Override
+    protected VarTensor getVarBeliefs(Var var) {
+        return b.varBeliefs[var.getId()];
+    }
+
+    @Override
+    protected VarTensor getFactorBeliefs(Factor factor) {
+        return b.facBeliefs[factor.getId()];
+    }
+
+    @Override
+    public double getPartitionBelief() {
+        return partition;
+    }
+
+    @Override
+    public FactorGraph getFactorGraph() {
+        return fg;
+    }
+
+    @Override
+    public Algebra getAlgebra() {
+        return s;
+    }
+
+}
@@ -3,8 +3,12 @@ package edu.jhu.nlp.tag;
 import edu.jhu.nlp.features.BitPacking;
 import edu.jhu.pacaya.gm.feat.FeatureVector;
 import edu.jhu.pacaya.gm.model.ExpFamFactor;
+import edu.jhu.pacaya.gm.model.FgModel;
+import edu.jhu.pacaya.gm.model.IFgModel;
 import edu.jhu.pacaya.gm.model.VarSet;
+import edu.jhu.pacaya.gm.model.VarTensor;
 import edu.jhu.prim.util.SafeCast;
+import edu.jhu.prim.vector.IntDoubleVector;
 
 /**
  * Highly efficient factor for using observed features. This factor hashes the observation property
@@ -13,6 +17,9 @@ import edu.jhu.prim.util.SafeCast;
  * factor type (i.e. template). Of course, since the features are created by hashing, collisions are
  * possible.
  * 
+ * The scores and expected feature counts for all configurations are computed directly from the
+ * observation features, without creating a feature vector for each configuration.
+ * 
  * @author mgormley
  */
 public class HashObsFeatsFactor extends ExpFamFactor {
@@ -21,6 +28,10 @@ public class HashObsFeatsFactor extends ExpFamFactor {
     private FeatureVector obsFeats;
     private int featureHashMod;
     private short factorType;
+    // The packed observation features with the configuration bits left empty.
+    private transient long[] obsBase;
+    // The scores of all configurations, only set during a call to updateFromModel().
+    private transient double[] scores;
 
     /**
      * 
@@ -41,15 +52,93 @@ public class HashObsFeatsFactor extends ExpFamFactor {
     
     @Override
     public FeatureVector getFeatures(int config) {
-        short shortConfig = SafeCast.safeIntToShort(config);
-        int[] idxs = obsFeats.getInternalIndices();
-        int used = obsFeats.getUsed();
-        FeatureVector feats = new FeatureVector(obsFeats.getUsed());
-        for (int k=0; k<used; k++) {
-            long feat = BitPacking.encodeFeatureISS_(idxs[k], shortConfig, factorType);
-            BitshiftTokenFeatures.addFeat(feats, featureHashMod, feat);
+        long[] base = getObsBase();
+        long packedConfig = packConfig(config);
+        FeatureVector feats = new FeatureVector(base.length);
+        for (int k=0; k<base.length; k++) {
+            BitshiftTokenFeatures.addFeat(feats, featureHashMod, base[k] | packedConfig);
         }
         return feats;
     }
+
+    /**
+     * Gets the dot product of the features for every configuration of this factor with the given
+     * weights, in a single pass over the observation features.
+     */
+    public double[] getScores(IntDoubleVector weights) {
+        long[] base = getObsBase();
+        long[] packedConfigs = getPackedConfigs();
+        double[] scores = new double[packedConfigs.length];
+        for (int k=0; k<base.length; k++) {
+            for (int c=0; c<packedConfigs.length; c++) {
+                scores[c] += weights.get(BitshiftTokenFeatures.hashFeat(base[k] | packedConfigs[c], featureHashMod));
+            }
+        }
+        return scores;
+    }
+
+    @Override
+    public void updateFromModel(FgModel model) {
+        scores = getScores(model.getParams());
+        try {
+            super.updateFromModel(model);
+        } finally {
+            scores = null;
+        }
+    }
+
+    @Override
+    public double getDotProd(int config, FgModel model) {
+        if (scores != null) {
+            return scores[config];
+        }
+        long[] base = getObsBase();
+        long packedConfig = packConfig(config);
+        IntDoubleVector weights = model.getParams();
+        double dot = 0;
+        for (int k=0; k<base.length; k++) {
+            dot += weights.get(BitshiftTokenFeatures.hashFeat(base[k] | packedConfig, featureHashMod));
+        }
+        return dot;
+    }
+
+    @Override
+    public void addExpectedPartials(IFgModel counts, VarTensor factorMarginal, double multiplier) {
+        long[] base = getObsBase();
+        long[] packedConfigs = getPackedConfigs();
+        for (int c=0; c<packedConfigs.length; c++) {
+            // Scale the feature counts by the marginal probability of the c'th configuration.
+            double prob = factorMarginal.getValue(c) * multiplier;
+            if (prob == 0) { continue; }
+            for (int k=0; k<base.length; k++) {
+                counts.add(BitshiftTokenFeatures.hashFeat(base[k] | packedConfigs[c], featureHashMod), prob);
+            }
+        }
+    }
+
+    private long[] getObsBase() {
+        if (obsBase == null) {
+            int[] idxs = obsFeats.getInternalIndices();
+            long[] base = new long[obsFeats.getUsed()];
+            for (int k=0; k<base.length; k++) {
+                base[k] = BitPacking.encodeFeatureISS_(idxs[k], (short) 0, factorType);
+            }
+            obsBase = base;
+        }
+        return obsBase;
+    }
+
+    private long[] getPackedConfigs() {
+        long[] packedConfigs = new long[getVars().calcNumConfigs()];
+        for (int c=0; c<packedConfigs.length; c++) {
+            packedConfigs[c] = packConfig(c);
+        }
+        return packedConfigs;
+    }
+
+    /** Gets the configuration bits of a packed feature, which are disjoint from the other bits. */
+    private static long packConfig(int config) {
+        return BitPacking.encodeFeatureISS_(0, SafeCast.safeIntToShort(config), (short) 0);
+    }
     
 }
\ No newline at end of file
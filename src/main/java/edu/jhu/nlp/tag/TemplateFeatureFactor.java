@@ -3,6 +3,7 @@ package edu.jhu.nlp.tag;
 import java.util.ArrayList;
 import java.util.List;
 
+import edu.jhu.nlp.features.ConcurrentFeatureNames;
 import edu.jhu.nlp.features.LocalObservations;
 import edu.jhu.nlp.features.TemplateFeatureExtractor;
 import edu.jhu.nlp.features.TemplateLanguage.FeatTemplate;
@@ -12,7 +13,6 @@ import edu.jhu.pacaya.gm.feat.FeatureVector;
 import edu.jhu.pacaya.gm.feat.ObsCjExpFamFactor;
 import edu.jhu.pacaya.gm.feat.ObsFeatureConjoiner;
 import edu.jhu.pacaya.gm.model.VarSet;
-import edu.jhu.pacaya.util.FeatureNames;
 
 public class TemplateFeatureFactor extends ObsCjExpFamFactor {
 
@@ -21,6 +21,8 @@ public class TemplateFeatureFactor extends ObsCjExpFamFactor {
     private TemplateFeatureExtractor fe;
     public List<FeatTemplate> templates;
     public int featureHashMod;
+    // The concurrent front for the alphabet of this factor's template.
+    private transient volatile ConcurrentFeatureNames concAlphabet;
     
     public TemplateFeatureFactor(VarSet vars, Object templateKey, ObsFeatureConjoiner ofc, 
             LocalObservations local, TemplateFeatureExtractor fe, 
@@ -35,7 +37,8 @@ public class TemplateFeatureFactor extends ObsCjExpFamFactor {
     @Override
     public FeatureVector getObsFeatures() {
         FactorTemplateList fts = ofc.getTemplates();
-        final FeatureNames alphabet = fts.getTemplate(this).getAlphabet();
+        final ConcurrentFeatureNames alphabet = ConcurrentFeatureNames.get(fts.getTemplate(this).getAlphabet(), concAlphabet);
+        concAlphabet = alphabet;
         ArrayList<String> obsFeats = new ArrayList<String>();
         fe.addFeatures(templates, local, obsFeats);
         
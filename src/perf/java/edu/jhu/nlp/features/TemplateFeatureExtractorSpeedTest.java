@@ -90,6 +90,7 @@ public class TemplateFeatureExtractorSpeedTest {
         maxSents = Math.min(maxSents, sents.size());
         
         FeatureNames alphabet = new FeatureNames();
+        ConcurrentFeatureNames concAlphabet = ConcurrentFeatureNames.get(alphabet);
         
         double msPerSent = 0;
         double toksPerSec = 0;
@@ -110,13 +111,13 @@ public class TemplateFeatureExtractorSpeedTest {
                     for (int i = -1; i < sent.size(); i++) {
                         for (int j = 0; j < sent.size(); j++) {
                             LocalObservations local = LocalObservations.newPidxCidx(i, j);
-                            FeatureVector fv = getFeatures(tpls, alphabet, extStr, extInt, local);
+                            FeatureVector fv = getFeatures(tpls, concAlphabet, extStr, extInt, local);
                         }
                     }
                 } else if (form == FeatureForm.POS) {
                     for (int i = -1; i < sent.size(); i++) {
                         LocalObservations local = LocalObservations.newPidx(i);
-                        FeatureVector fv = getFeatures(tpls, alphabet, extStr, extInt, local);
+                        FeatureVector fv = getFeatures(tpls, concAlphabet, extStr, extInt, local);
                     }
                 } else if (form == FeatureForm.SRL) {
                     IntHashSet known = sent.getKnownPreds();
@@ -125,7 +126,7 @@ public class TemplateFeatureExtractorSpeedTest {
                         int i = iter.next();
                         for (int j = 0; j < sent.size(); j++) {
                             LocalObservations local = LocalObservations.newPidxCidx(i, j);
-                            FeatureVector fv = getFeatures(tpls, alphabet, extStr, extInt, local);
+                            FeatureVector fv = getFeatures(tpls, concAlphabet, extStr, extInt, local);
                         }
                     }
                 } else {
@@ -149,7 +150,7 @@ public class TemplateFeatureExtractorSpeedTest {
         return msPerSent;
     }
 
-    protected static FeatureVector getFeatures(List<FeatTemplate> tpls, FeatureNames alphabet, TemplateFeatureExtractor extStr,
+    protected static FeatureVector getFeatures(List<FeatTemplate> tpls, ConcurrentFeatureNames alphabet, TemplateFeatureExtractor extStr,
             IntTemplateFeatureExtractor extInt, LocalObservations local) {
         if (useStrs) {
             ArrayList<String> feats = new ArrayList<String>();
@@ -0,0 +1,176 @@
+package edu.jhu.nlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.data.simple.AnnoSentenceReader;
+import edu.jhu.nlp.data.simple.AnnoSentenceReader.AnnoSentenceReaderPrm;
+import edu.jhu.nlp.data.simple.AnnoSentenceReader.DatasetType;
+import edu.jhu.nlp.data.simple.AnnoSentenceStreamWriter;
+import edu.jhu.nlp.features.TemplateLanguage.AT;
+import edu.jhu.pacaya.util.collections.QLists;
+
+public class AnnoPipelineTest {
+
+    /** Records the size of each batch it annotates and appends a suffix to each word. */
+    private static class RecordingAnnotator implements ConcurrentAnnotator {
+
+        private static final long serialVersionUID = 1L;
+        private List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        private String suffix;
+
+        public RecordingAnnotator(String suffix) {
+            this.suffix = suffix;
+        }
+
+        @Override
+        public void annotate(AnnoSentenceCollection sents) {
+            batchSizes.add(sents.size());
+            for (AnnoSentence sent : sents) {
+                sent.setWords(QLists.getList(sent.getWord(0) + suffix));
+            }
+        }
+
+        @Override
+        public Set<AT> getAnnoTypes() {
+            return Collections.emptySet();
+        }
+
+    }
+
+    @Test
+    public void testStreamingAnnotateInBatches() throws IOException {
+        List<AnnoSentence> sents = new ArrayList<>();
+        for (int i=0; i<5; i++) {
+            AnnoSentence sent = new AnnoSentence();
+            sent.setWords(QLists.getList("w" + i));
+            sents.add(sent);
+        }
+        RecordingAnnotator a1 = new RecordingAnnotator("a");
+        RecordingAnnotator a2 = new RecordingAnnotator("b");
+        AnnoPipeline pipe = new AnnoPipeline();
+        pipe.add(a1);
+        pipe.add(a2);
+        pipe.annotate(sents, 2, null);
+
+        assertEquals(QLists.getList(2, 2, 1), a1.batchSizes);
+        assertEquals(QLists.getList(2, 2, 1), a2.batchSizes);
+        for (int i=0; i<5; i++) {
+            assertEquals("w" + i + "ab", sents.get(i).getWord(0));
+        }
+    }
+
+    @Test
+    public void testPipelinedAnnotateKeepsOrder() throws IOException {
+        List<AnnoSentence> sents = new ArrayList<>();
+        for (int i=0; i<50; i++) {
+            AnnoSentence sent = new AnnoSentence();
+            sent.setWords(QLists.getList("w" + i));
+            sents.add(sent);
+        }
+        AnnoPipeline pipe = new AnnoPipeline();
+        pipe.add(new RecordingAnnotator("a"));
+        pipe.add(new RecordingAnnotator("b"));
+        File out = File.createTempFile("pipelined", ".json");
+        out.deleteOnExit();
+        AnnoSentenceStreamWriter writer = new AnnoSentenceStreamWriter(out, DatasetType.JSON);
+        pipe.annotatePipelined(sents, 3, writer, 1, new int[]{ 1, 3 });
+        writer.close();
+
+        AnnoSentenceReaderPrm prm = new AnnoSentenceReaderPrm();
+        AnnoSentenceReader reader = new AnnoSentenceReader(prm);
+        reader.loadSents(out, DatasetType.JSON);
+        AnnoSentenceCollection outSents = reader.getData();
+        assertEquals(50, outSents.size());
+        for (int i=0; i<50; i++) {
+            assertEquals("w" + i + "ab", outSents.get(i).getWord(0));
+        }
+    }
+
+    @Test
+    public void testPipelinedAnnotateBoundsBatchesInFlight() throws IOException {
+        final List<AnnoSentence> sents = new ArrayList<>();
+        for (int i=0; i<20; i++) {
+            AnnoSentence sent = new AnnoSentence();
+            sent.setWords(QLists.getList("w" + i));
+            sents.add(sent);
+        }
+        final AtomicInteger numRead = new AtomicInteger(0);
+        final AtomicInteger numReadWhileStalled = new AtomicInteger(-1);
+        AnnoPipeline pipe = new AnnoPipeline();
+        pipe.add(new RecordingAnnotator("a") {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public void annotate(AnnoSentenceCollection batch) {
+                if (batch.get(0).getWord(0).equals("w0")) {
+                    // Hold up the first batch while the other threads annotate the later ones.
+                    try {
+                        Thread.sleep(300);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    numReadWhileStalled.set(numRead.get());
+                }
+                super.annotate(batch);
+            }
+        });
+        Iterable<AnnoSentence> counting = () -> sents.stream().peek(s -> numRead.incrementAndGet()).iterator();
+        pipe.annotatePipelined(counting, 2, null, 1, new int[]{ 3 });
+
+        // With one stage and a queue size of 1, at most 2 batches are read but not written out (plus
+        // the next sentence, which the reader holds while waiting).
+        assertTrue(numReadWhileStalled.get() >= 2);
+        assertTrue(numReadWhileStalled.get() <= 2*2 + 1);
+        assertEquals(20, numRead.get());
+        for (int i=0; i<20; i++) {
+            assertEquals("w" + i + "a", sents.get(i).getWord(0));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPipelinedAnnotateRejectsThreadsForNonConcurrentAnnotator() throws IOException {
+        AnnoPipeline pipe = new AnnoPipeline();
+        pipe.add(new Annotator() {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public void annotate(AnnoSentenceCollection sents) { }
+            @Override
+            public Set<AT> getAnnoTypes() {
+                return Collections.emptySet();
+            }
+        });
+        pipe.annotatePipelined(new ArrayList<AnnoSentence>(), 2, null, 1, new int[]{ 2 });
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testPipelinedAnnotateFailure() throws IOException {
+        List<AnnoSentence> sents = new ArrayList<>();
+        for (int i=0; i<10; i++) {
+            AnnoSentence sent = new AnnoSentence();
+            sent.setWords(QLists.getList("w" + i));
+            sents.add(sent);
+        }
+        AnnoPipeline pipe = new AnnoPipeline();
+        pipe.add(new RecordingAnnotator("a") {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public void annotate(AnnoSentenceCollection sents) {
+                throw new IllegalStateException("Failed");
+            }
+        });
+        pipe.annotatePipelined(sents, 2, null, 1, null);
+    }
+
+}
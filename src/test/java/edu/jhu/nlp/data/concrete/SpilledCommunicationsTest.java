@@ -0,0 +1,50 @@
+package edu.jhu.nlp.data.concrete;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
+
+public class SpilledCommunicationsTest {
+
+    String concreteFilename = "/edu/jhu/nlp/data/concrete/agiga_dog-bites-man.concrete";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testSpillAndRead() throws Exception {
+        File f = new File(getClass().getResource(concreteFilename).getFile());
+        Communication comm = new CompactCommunicationSerializer().fromPathString(f.getAbsolutePath());
+        Communication other = comm.deepCopy();
+        other.setId(comm.getId() + "-other");
+        List<Communication> comms = new ArrayList<>();
+        comms.add(comm);
+        comms.add(other);
+
+        SpilledCommunications spilled = new SpilledCommunications(comms, tempFolder.newFile("comms.spill"));
+        assertEquals(2, spilled.size());
+        assertEquals(comm, spilled.get(0));
+        assertEquals(other, spilled.get(1));
+        // Each access reads a new copy from disk.
+        assertNotSame(spilled.get(1), spilled.get(1));
+        assertEquals(other, spilled.get(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfBounds() throws Exception {
+        SpilledCommunications spilled = new SpilledCommunications(new ArrayList<Communication>(), tempFolder.newFile("comms.spill"));
+        assertEquals(0, spilled.size());
+        spilled.get(0);
+    }
+
+}
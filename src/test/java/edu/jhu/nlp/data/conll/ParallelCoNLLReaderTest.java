@@ -0,0 +1,81 @@
+package edu.jhu.nlp.data.conll;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.data.simple.AnnoSentenceReader;
+import edu.jhu.nlp.data.simple.AnnoSentenceReader.AnnoSentenceReaderPrm;
+import edu.jhu.nlp.data.simple.AnnoSentenceReader.DatasetType;
+
+public class ParallelCoNLLReaderTest {
+
+    @Test
+    public void testCoNLL09SameAsSerialReader() throws IOException {
+        File f = new File(getClass().getResource(CoNLL09ReadWriteTest.conll2009Example).getFile());
+        for (boolean useGoldSyntax : new boolean[]{ true, false }) {
+            for (boolean normalizeRoleNames : new boolean[]{ true, false }) {
+                AnnoSentenceReaderPrm prm = new AnnoSentenceReaderPrm();
+                prm.useGoldSyntax = useGoldSyntax;
+                prm.normalizeRoleNames = normalizeRoleNames;
+                checkSameAsSerialReader(f, DatasetType.CONLL_2009, prm);
+            }
+        }
+    }
+
+    @Test
+    public void testCoNLLXSameAsSerialReader() throws IOException {
+        File f = new File(getClass().getResource(CoNLLXReadWriteTest.conllXExample).getFile());
+        for (boolean useCoNLLXPhead : new boolean[]{ true, false }) {
+            AnnoSentenceReaderPrm prm = new AnnoSentenceReaderPrm();
+            prm.useCoNLLXPhead = useCoNLLXPhead;
+            checkSameAsSerialReader(f, DatasetType.CONLL_X, prm);
+        }
+    }
+
+    @Test
+    public void testChunkBoundsAreAtBlankLines() throws IOException {
+        File f = new File(getClass().getResource(CoNLL09ReadWriteTest.conll2009Example).getFile());
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            long[] bounds = ParallelCoNLLReader.getChunkBounds(raf.getChannel(), 1000);
+            assertTrue(bounds.length > 2);
+            assertEquals(0, bounds[0]);
+            assertEquals(f.length(), bounds[bounds.length-1]);
+            for (int i=1; i<bounds.length-1; i++) {
+                assertTrue(bounds[i] - bounds[i-1] >= 1000);
+                raf.seek(bounds[i] - 2);
+                assertEquals('\n', raf.read());
+                assertEquals('\n', raf.read());
+            }
+        }
+    }
+
+    private static void checkSameAsSerialReader(File f, DatasetType type, AnnoSentenceReaderPrm prm) throws IOException {
+        AnnoSentenceReader serial = new AnnoSentenceReader(prm);
+        serial.loadSents(f, type);
+        AnnoSentenceCollection expected = serial.getData();
+
+        // Use small chunks so that the file is split into many of them.
+        prm.parallelConll = true;
+        prm.conllChunkBytes = 1000;
+        AnnoSentenceReader parallel = new AnnoSentenceReader(prm);
+        parallel.loadSents(f, type);
+        AnnoSentenceCollection actual = parallel.getData();
+
+        assertTrue(expected.size() > 1);
+        assertEquals(expected.size(), actual.size());
+        for (int i=0; i<expected.size(); i++) {
+            AnnoSentence exp = expected.get(i);
+            exp.setSourceSent(null);
+            assertEquals(exp.toString(), actual.get(i).toString());
+        }
+    }
+
+}
@@ -3,15 +3,22 @@ package edu.jhu.nlp.data.simple;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
 
+import edu.jhu.nlp.data.simple.AlphabetStore.AlphabetCounts;
+import edu.jhu.nlp.data.simple.AlphabetStore.StrGetter;
 import edu.jhu.nlp.features.TemplateLanguage.AT;
 import edu.jhu.nlp.tag.StrictPosTagAnnotator.StrictPosTag;
 import edu.jhu.pacaya.util.collections.QLists;
+import edu.jhu.prim.bimap.CountingIntObjectBimap;
+import edu.jhu.prim.bimap.IntObjectBimap;
 
 public class AlphabetStoreTest {
 
@@ -190,6 +197,41 @@ public class AlphabetStoreTest {
         }
     }
 
+    @Test
+    public void testMergedCountsSameAsSerialCounts() {
+        AnnoSentenceCollection sents = getSents(true);
+        AlphabetCounts serial = new AlphabetCounts();
+        for (AnnoSentence sent : sents) {
+            serial.add(sent);
+        }
+        // Count uneven chunks separately and merge them in order.
+        int[] bounds = new int[] { 0, 7, 150, sents.size() };
+        AlphabetCounts merged = new AlphabetCounts();
+        for (int c=0; c<bounds.length-1; c++) {
+            AlphabetCounts counts = new AlphabetCounts();
+            for (AnnoSentence sent : sents.subList(bounds[c], bounds[c+1])) {
+                counts.add(sent);
+            }
+            merged.merge(counts);
+        }
+        
+        AlphabetStore expected = new AlphabetStore(serial, null);
+        AlphabetStore actual = new AlphabetStore(merged, null);
+        assertSameAlphabet(expected.words, actual.words);
+        assertSameAlphabet(expected.suffixes, actual.suffixes);
+        assertSameAlphabet(expected.feats, actual.feats);
+        assertEquals(expected.getWordTopNCutoff(), actual.getWordTopNCutoff());
+    }
+
+    private static void assertSameAlphabet(IntObjectBimap<String> expected, IntObjectBimap<String> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i=0; i<expected.size(); i++) {
+            assertEquals(expected.lookupObject(i), actual.lookupObject(i));
+            assertEquals(((CountingIntObjectBimap<String>) expected).lookupObjectCount(i), 
+                    ((CountingIntObjectBimap<String>) actual).lookupObjectCount(i));
+        }
+    }
+
     protected AnnoSentenceCollection getWordOnlySents(int numSents) {
         AnnoSentenceCollection sents = new AnnoSentenceCollection();
         // Add three tokens for word<i> for i in [0,..,99].
@@ -291,6 +333,36 @@ public class AlphabetStoreTest {
         assertEquals(false, store.deprels.isGrowing());        
     }
     
+    /**
+     * Models serialized before the alphabets were built in parallel refer to the string getters by
+     * their class names, AlphabetStore$1 through AlphabetStore$8. The resource was written by that
+     * version of AlphabetStore, with its alphabets left empty (null) so that it depends only on the
+     * layout of AlphabetStore and its getters.
+     */
+    @Test
+    public void testDeserializeOldAlphabetStore() throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(
+                AlphabetStoreTest.class.getResourceAsStream("alphabet-store-baseline.ser"))) {
+            AlphabetStore store = (AlphabetStore) in.readObject();
+            assertEquals(5, store.maxPrefixLen);
+            assertEquals(5, store.maxClusterPrefixLen);
+        }
+    }
+
+    @Test
+    public void testStrGetterClassNames() throws Exception {
+        AnnoSentence sent = getAnnoSentenceForRange(0, 1);
+        List<List<String>> expected = QLists.getList(getList("Word0"), getList("word0"), getList("lemma0"), 
+                getList("pos0"), getList("cpos0"), getList("cluster0"), getList("feat0"), getList("deprel0"));
+        for (int i=0; i<expected.size(); i++) {
+            Class<?> clazz = Class.forName(AlphabetStore.class.getName() + "$" + (i+1));
+            assertTrue(StrGetter.class.isAssignableFrom(clazz));
+            assertEquals(1L, ObjectStreamClass.lookup(clazz).getSerialVersionUID());
+            Constructor<?> cons = clazz.getDeclaredConstructor();
+            cons.setAccessible(true);
+            assertEquals(expected.get(i), ((StrGetter) cons.newInstance()).getStrs(sent));
+        }
+    }
 
     @SafeVarargs
     public static <T> List<T> getList(T... args) {
@@ -0,0 +1,243 @@
+package edu.jhu.nlp.data.simple;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.jhu.nlp.data.DepEdgeMask;
+import edu.jhu.nlp.data.SrlArgMask;
+import edu.jhu.nlp.data.conll.SrlGraph;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlArg;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlEdge;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlPred;
+import edu.jhu.nlp.data.simple.AnnoSentenceReader.AnnoSentenceReaderPrm;
+import edu.jhu.nlp.data.simple.AnnoSentenceReader.DatasetType;
+import edu.jhu.pacaya.parse.cky.data.NaryTree;
+import edu.jhu.pacaya.util.collections.QLists;
+import edu.jhu.prim.list.IntArrayList;
+import edu.jhu.prim.set.IntHashSet;
+
+public class AnnoSentenceBinaryReaderTest {
+
+    @Test
+    public void testWriteAndReadSentences() throws Exception {
+        AnnoSentence sent1 = getFullyAnnotatedSentence();
+        AnnoSentence sent2 = new AnnoSentence();
+        sent2.setWords(QLists.getList("only", "words"));
+
+        File f = File.createTempFile("sents", ".bin");
+        f.deleteOnExit();
+        AnnoSentenceBinaryWriter w = new AnnoSentenceBinaryWriter(f);
+        w.write(sent1);
+        w.write(sent2);
+        w.write(sent1);
+        w.close();
+
+        AnnoSentenceBinaryReader r = new AnnoSentenceBinaryReader(f);
+        assertEquals(3, r.size());
+        // Random access in any order.
+        assertSentEquals(sent2, r.get(1));
+        assertSentEquals(sent1, r.get(2));
+        assertSentEquals(sent1, r.get(0));
+        AnnoSentence copy = r.get(1);
+        assertNull(copy.getLemmas());
+        assertNull(copy.getSrlGraph());
+        assertNull(copy.getRelations());
+        r.close();
+    }
+
+    @Test
+    public void testLoadSentsFromBinaryFile() throws Exception {
+        File f = File.createTempFile("sents", ".bin");
+        f.deleteOnExit();
+        AnnoSentenceStreamWriter w = new AnnoSentenceStreamWriter(f, DatasetType.BINARY);
+        for (int i=0; i<5; i++) {
+            AnnoSentence sent = new AnnoSentence();
+            sent.setWords(QLists.getList("w" + i));
+            w.write(sent);
+        }
+        w.close();
+
+        AnnoSentenceReaderPrm prm = new AnnoSentenceReaderPrm();
+        prm.maxNumSentences = 4;
+        AnnoSentenceReader reader = new AnnoSentenceReader(prm);
+        reader.loadSents(f, DatasetType.BINARY);
+        AnnoSentenceCollection sents = reader.getData();
+        assertEquals(4, sents.size());
+        for (int i=0; i<4; i++) {
+            assertEquals("w" + i, sents.get(i).getWord(0));
+        }
+    }
+
+    @Test
+    public void testLoadedSentsAreDecodedLazily() throws Exception {
+        File f = File.createTempFile("sents", ".bin");
+        f.deleteOnExit();
+        AnnoSentenceBinaryWriter w = new AnnoSentenceBinaryWriter(f);
+        for (int i=0; i<5; i++) {
+            AnnoSentence sent = new AnnoSentence();
+            sent.setWords(QLists.getList("w" + i, "x", "y").subList(0, i % 3 + 1));
+            w.write(sent);
+        }
+        w.close();
+
+        AnnoSentenceReaderPrm prm = new AnnoSentenceReaderPrm();
+        prm.maxSentenceLength = 2;
+        AnnoSentenceReader reader = new AnnoSentenceReader(prm);
+        reader.loadSents(f, DatasetType.BINARY);
+        AnnoSentenceCollection sents = reader.getData();
+        assertTrue(sents instanceof BinaryAnnoSentenceCollection);
+        // Sentences 0, 1, 3 and 4 have at most 2 words.
+        assertEquals(4, sents.size());
+        assertEquals(1 + 2 + 1 + 2, sents.getNumTokens());
+        assertEquals(2, sents.getMaxLength());
+        assertEquals("w3", sents.get(2).getWord(0));
+        // The strings are interned in the corpus symbol table.
+        assertSame(sents.getSymbolTable().intern("x"), sents.get(1).getWord(1));
+        // Decoded sentences are kept, so that in-place modifications are visible.
+        sents.get(0).setLemmas(QLists.getList("l0"));
+        assertEquals("l0", sents.get(0).getLemma(0));
+        AnnoSentenceCollection sub = sents.subList(0, 2);
+        assertSame(sents.get(0), sub.get(0));
+        AnnoSentence replacement = new AnnoSentence();
+        sents.set(1, replacement);
+        assertSame(replacement, sub.get(1));
+        // Structural modifications decode the remaining sentences.
+        sents.remove(0);
+        assertEquals(3, sents.size());
+        assertSame(replacement, sents.get(0));
+        assertEquals("w4", sents.get(2).getWord(0));
+    }
+
+    @Test
+    public void testFilteredSentsAreDecodedOnce() throws Exception {
+        File f = File.createTempFile("sents", ".bin");
+        f.deleteOnExit();
+        AnnoSentenceBinaryWriter w = new AnnoSentenceBinaryWriter(f);
+        for (int i=0; i<5; i++) {
+            AnnoSentence sent = new AnnoSentence();
+            sent.setWords(QLists.getList("w" + i));
+            w.write(sent);
+        }
+        w.close();
+
+        final List<AnnoSentence> accepted = new ArrayList<>();
+        AnnoSentenceReaderPrm prm = new AnnoSentenceReaderPrm();
+        prm.filter = new SentFilter() {
+            @Override
+            public boolean accept(AnnoSentence sent) {
+                if (sent.getWord(0).equals("w2")) {
+                    return false;
+                }
+                accepted.add(sent);
+                return true;
+            }
+        };
+        AnnoSentenceReader reader = new AnnoSentenceReader(prm);
+        reader.loadSents(f, DatasetType.BINARY);
+        AnnoSentenceCollection sents = reader.getData();
+        assertEquals(4, sents.size());
+        // The sentences decoded to test the filter are the ones in the collection.
+        for (int i=0; i<4; i++) {
+            assertSame(accepted.get(i), sents.get(i));
+        }
+        // Replacing a sentence does not change the others.
+        AnnoSentence replacement = new AnnoSentence();
+        sents.put(0, replacement);
+        assertSame(replacement, sents.get(0));
+        assertEquals("w3", sents.get(2).getWord(0));
+    }
+
+    private static AnnoSentence getFullyAnnotatedSentence() {
+        AnnoSentence sent = JsonConcatWriterTest.get6WordAnnoSentence();
+        sent.setParents(new int[]{ -1, 0, 1, 2, 3, 3 });
+        IntArrayList embedIds = new IntArrayList();
+        for (int i=0; i<sent.size(); i++) {
+            embedIds.add(i * 10);
+        }
+        sent.setEmbedIds(embedIds);
+        List<List<String>> feats = QLists.getList(QLists.getList("f1", "f2"), QLists.<String>getList(),
+                QLists.getList("f3"), QLists.getList("f1"), QLists.getList("f4"), QLists.getList("f5"));
+        sent.setFeats(feats);
+        SrlGraph srl = new SrlGraph(sent.size());
+        SrlPred pred = new SrlPred(1, "spy.01");
+        SrlArg arg = new SrlArg(0);
+        srl.addEdge(new SrlEdge(pred, arg, "A0"));
+        srl.addEdge(new SrlEdge(pred, new SrlArg(3), "A1"));
+        srl.addPred(new SrlPred(4, "from.01"));
+        srl.addEdge(new SrlEdge(srl.getPredAt(4), arg, "A2"));
+        sent.setSrlGraph(srl);
+        IntHashSet knownPreds = new IntHashSet();
+        knownPreds.add(4);
+        knownPreds.add(1);
+        sent.setKnownPreds(knownPreds);
+        DepEdgeMask depEdgeMask = new DepEdgeMask(sent.size(), false);
+        depEdgeMask.keepEdgesFromTree(sent.getParents());
+        depEdgeMask.setIsKept(-1, 5, true);
+        depEdgeMask.setIsKept(5, 0, true);
+        sent.setDepEdgeMask(depEdgeMask);
+        SrlArgMask srlArgMask = new SrlArgMask(sent.size(), false);
+        srlArgMask.setIsKept(1, 0, true);
+        srlArgMask.setIsKept(1, 3, true);
+        srlArgMask.setIsKept(4, 4, true);
+        srlArgMask.setIsKept(5, 5, true);
+        sent.setSrlArgMask(srlArgMask);
+        sent.setNaryTree(NaryTree.fromTreeInPtbFormat("(ROOT (S (NP (NN dog)) (VP (VBD spied) (NP (NP (DT the) (NN cat)) (PP (IN from) (NP (NNP MD)))))))"));
+        return sent;
+    }
+
+    private static void assertSentEquals(AnnoSentence expected, AnnoSentence actual) {
+        if (expected.getKnownPreds() != null) {
+            int[] expPreds = expected.getKnownPreds().toNativeArray();
+            int[] actPreds = actual.getKnownPreds().toNativeArray();
+            Arrays.sort(expPreds);
+            Arrays.sort(actPreds);
+            assertArrayEquals(expPreds, actPreds);
+        }
+        assertMasksEqual(expected, actual);
+        if (expected.getNaryTree() != null) {
+            assertEquals(expected.getNaryTree().getAsOneLineString(), actual.getNaryTree().getAsOneLineString());
+        }
+        // Compare everything else by the string representation.
+        expected = expected.getShallowCopy();
+        actual = actual.getShallowCopy();
+        expected.setKnownPreds(null);
+        actual.setKnownPreds(null);
+        for (AnnoSentence sent : QLists.getList(expected, actual)) {
+            sent.setDepEdgeMask(null);
+            sent.setSrlArgMask(null);
+            sent.setNaryTree(null);
+        }
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    private static void assertMasksEqual(AnnoSentence expected, AnnoSentence actual) {
+        int n = expected.size();
+        if (expected.getDepEdgeMask() == null) {
+            assertNull(actual.getDepEdgeMask());
+        } else {
+            for (int p=-1; p<n; p++) {
+                for (int c=0; c<n; c++) {
+                    if (p != c) {
+                        assertEquals(expected.getDepEdgeMask().isKept(p, c), actual.getDepEdgeMask().isKept(p, c));
+                    }
+                }
+            }
+        }
+        if (expected.getSrlArgMask() == null) {
+            assertNull(actual.getSrlArgMask());
+        } else {
+            assertEquals(expected.getSrlArgMask().toString(), actual.getSrlArgMask().toString());
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package edu.jhu.nlp.data.simple;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.jhu.pacaya.parse.cky.data.NaryTree;
+import edu.jhu.pacaya.util.collections.QLists;
+
+public class SymbolTableTest {
+
+    @Test
+    public void testIntern() {
+        SymbolTable symbols = new SymbolTable();
+        String a1 = new String("a");
+        String a2 = new String("a");
+        assertNotSame(a1, a2);
+        assertSame(a1, symbols.intern(a1));
+        assertSame(a1, symbols.intern(a2));
+        assertNull(symbols.intern((String) null));
+        assertEquals(1, symbols.size());
+    }
+
+    @Test
+    public void testIds() {
+        SymbolTable symbols = new SymbolTable();
+        assertEquals(0, symbols.getId("a"));
+        assertEquals(1, symbols.getId("b"));
+        assertEquals(0, symbols.getId(new String("a")));
+        assertEquals(-1, symbols.getIdIfExists("c"));
+        assertEquals("b", symbols.getString(1));
+        assertEquals(2, symbols.size());
+    }
+
+    @Test
+    public void testInternList() {
+        SymbolTable symbols = new SymbolTable();
+        String the = symbols.intern("the");
+        List<String> words = new ArrayList<>(QLists.getList(new String("the"), "cat", null, new String("the")));
+        symbols.intern(words);
+        assertSame(the, words.get(0));
+        assertSame(the, words.get(3));
+        assertNull(words.get(2));
+        assertEquals(2, symbols.size());
+    }
+
+    @Test
+    public void testInternNaryTree() {
+        SymbolTable symbols = new SymbolTable();
+        String np = symbols.intern("NP");
+        String dog = symbols.intern("dog");
+        NaryTree tree = NaryTree.fromTreeInPtbFormat("(ROOT (S (NP (NN dog)) (VP (VBD spied) (NP (NN dog)))))");
+        assertSame(tree, symbols.intern(tree));
+        NaryTree subj = tree.getChildren().get(0).getChildren().get(0);
+        assertSame(np, subj.getSymbol());
+        assertSame(dog, subj.getChildren().get(0).getChildren().get(0).getSymbol());
+        assertNull(symbols.intern((NaryTree) null));
+    }
+
+    @Test
+    public void testConcurrentIntern() throws InterruptedException {
+        final SymbolTable symbols = new SymbolTable();
+        final int numStrs = 1000;
+        final String[][] interned = new String[4][numStrs];
+        Thread[] threads = new Thread[interned.length];
+        for (int t=0; t<threads.length; t++) {
+            final int tt = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i=0; i<numStrs; i++) {
+                        interned[tt][i] = symbols.intern(Integer.toString(i));
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(numStrs, symbols.size());
+        for (int i=0; i<numStrs; i++) {
+            for (int t=1; t<threads.length; t++) {
+                assertSame(interned[0][i], interned[t][i]);
+            }
+            assertSame(interned[0][i], symbols.getString(symbols.getId(interned[0][i])));
+        }
+    }
+
+}
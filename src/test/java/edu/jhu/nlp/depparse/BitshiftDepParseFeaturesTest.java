@@ -10,10 +10,13 @@ import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.data.simple.IntAnnoSentence;
 import edu.jhu.nlp.depparse.BitshiftDepParseFeatureExtractor.BitshiftDepParseFeatureExtractorPrm;
 import edu.jhu.nlp.depparse.BitshiftDepParseFeatures.ArcTs;
+import edu.jhu.nlp.depparse.BitshiftDepParseFeatures.WordPairFeatureCache;
+import edu.jhu.nlp.features.DotProductFeatureVector;
 import edu.jhu.pacaya.gm.feat.FeatureVector;
 import edu.jhu.pacaya.util.collections.QLists;
 import edu.jhu.prim.set.LongHashSet;
 import edu.jhu.prim.util.SafeCast;
+import edu.jhu.prim.vector.IntDoubleDenseVector;
 import edu.jhu.prim.vector.LongDoubleUnsortedVector;
 
 
@@ -156,6 +159,33 @@ public class BitshiftDepParseFeaturesTest {
         }
     }
 
+    @Test
+    public void testWordPairFeatureCache() throws Exception {
+        IntAnnoSentence isent = getIntAnnoSentence();
+        BitshiftDepParseFeatureExtractorPrm prm = getDefaultBitshiftDepParseFeatureExtractorPrm();
+        WordPairFeatureCache pairCache = new WordPairFeatureCache(isent, prm);
+        for (int g=-1; g<isent.size(); g++) {
+            for (int p=0; p<isent.size(); p++) {
+                for (int c=0; c<isent.size(); c++) {
+                    if (g == p || p == c || g == c) { continue; }
+                    // Grandparent features.
+                    FeatureVector expected = getFv();
+                    BitshiftDepParseFeatures.addGrandparentFeats(isent, g, p, c, expected, prm);
+                    FeatureVector actual = getFv();
+                    BitshiftDepParseFeatures.addGrandparentFeats(isent, g, p, c, actual, prm, pairCache);
+                    assertEquals(expected.toString(), actual.toString());
+                    // Sibling features.
+                    if (g < 0) { continue; }
+                    expected = getFv();
+                    BitshiftDepParseFeatures.addArbitrarySiblingFeats(isent, g, p, c, expected, prm);
+                    actual = getFv();
+                    BitshiftDepParseFeatures.addArbitrarySiblingFeats(isent, g, p, c, actual, prm, pairCache);
+                    assertEquals(expected.toString(), actual.toString());
+                }
+            }
+        }
+    }
+
     @Test
     public void testAddTurboHeadBigramFeats() throws Exception {
         IntAnnoSentence isent = getIntAnnoSentence();
@@ -167,6 +197,34 @@ public class BitshiftDepParseFeaturesTest {
         }
     }
 
+    @Test
+    public void testDotProductFeatureVector() throws Exception {
+        IntAnnoSentence isent = getIntAnnoSentence();
+        BitshiftDepParseFeatureExtractorPrm prm = getDefaultBitshiftDepParseFeatureExtractorPrm();
+        prm.featureHashMod = 1000;
+        IntDoubleDenseVector weights = new IntDoubleDenseVector(prm.featureHashMod);
+        for (int i=0; i<prm.featureHashMod; i++) {
+            weights.set(i, Math.log(i+2));
+        }
+        DotProductFeatureVector dpFeats = new DotProductFeatureVector();
+        for (int p=-1; p<isent.size(); p++) {
+            for (int c=0; c<isent.size(); c++) {
+                if (p == c) { continue; }
+                FeatureVector feats = getFv();
+                BitshiftDepParseFeatures.addArcFeats(isent, p, c, prm, feats);
+                dpFeats.reset(weights);
+                BitshiftDepParseFeatures.addArcFeats(isent, p, c, prm, dpFeats);
+                
+                double expected = 0;
+                int[] idxs = feats.getInternalIndices();
+                for (int k=0; k<feats.getUsed(); k++) {
+                    expected += weights.get(idxs[k]);
+                }
+                assertEquals(expected, dpFeats.getDotProduct(), 1e-10);
+            }
+        }
+    }
+
     protected FeatureVector getFv() {
         return new FeatureVector();
     }
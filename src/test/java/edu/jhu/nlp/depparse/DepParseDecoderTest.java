@@ -11,7 +11,9 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import edu.jhu.nlp.data.DepEdgeMask;
 import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.depparse.DepParseDecoder.DepParseDecoderPrm;
 import edu.jhu.pacaya.gm.data.UnlabeledFgExample;
 import edu.jhu.pacaya.gm.inf.FgInferencer;
 import edu.jhu.pacaya.gm.model.Factor;
@@ -21,6 +23,7 @@ import edu.jhu.pacaya.gm.model.Var.VarType;
 import edu.jhu.pacaya.gm.model.VarSet;
 import edu.jhu.pacaya.gm.model.VarTensor;
 import edu.jhu.pacaya.gm.model.globalfac.LinkVar;
+import edu.jhu.pacaya.hypergraph.depparse.InsideOutsideDepParse;
 import edu.jhu.pacaya.parse.dep.EdgeScores;
 import edu.jhu.pacaya.util.collections.QLists;
 import edu.jhu.pacaya.util.collections.QMaps;
@@ -96,6 +99,28 @@ public class DepParseDecoderTest {
         Assert.assertArrayEquals(new int[]{1, -1, 1}, parents);
     }
     
+    @Test
+    public void testNonprojectiveDecoderWithDepEdgeMask() {
+        boolean oldSingleRoot = InsideOutsideDepParse.singleRoot;
+        try {
+            InsideOutsideDepParse.singleRoot = true;
+            DepParseDecoderPrm prm = new DepParseDecoderPrm();
+            prm.projective = false;
+            prm.useDepEdgeMask = true;
+            DepParseDecoder dp = new DepParseDecoder(prm);
+            AnnoSentence sent = new AnnoSentence();
+            sent.setWords(QLists.getList("a", "b", "c"));
+            DepEdgeMask mask = new DepEdgeMask(3, true);
+            mask.setIsPruned(1, 0, true);
+            sent.setDepEdgeMask(mask);
+            int[] parents = dp.decode(inf, new UnlabeledFgExample(fg), sent);
+            System.out.println(Arrays.toString(parents));
+            Assert.assertArrayEquals(new int[]{2, -1, 1}, parents);
+        } finally {
+            InsideOutsideDepParse.singleRoot = oldSingleRoot;
+        }
+    }
+    
     public static class MockFgInf implements FgInferencer {
 
         Map<Var,VarTensor> var2marg;
@@ -0,0 +1,138 @@
+package edu.jhu.nlp.depparse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import edu.jhu.nlp.CorpusStatistics;
+import edu.jhu.nlp.CorpusStatistics.CorpusStatisticsPrm;
+import edu.jhu.nlp.ScoringFeatureExtractor;
+import edu.jhu.nlp.data.simple.AlphabetStore;
+import edu.jhu.nlp.data.simple.AlphabetStoreTest;
+import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.IntAnnoSentence;
+import edu.jhu.nlp.depparse.DepParseFactorGraphBuilder.DepParseFactorGraphBuilderPrm;
+import edu.jhu.pacaya.gm.feat.FactorTemplateList;
+import edu.jhu.pacaya.gm.feat.ObsFeatureConjoiner;
+import edu.jhu.pacaya.gm.feat.ObsFeatureConjoiner.ObsFeatureConjoinerPrm;
+import edu.jhu.pacaya.gm.model.Factor;
+import edu.jhu.pacaya.gm.model.FeExpFamFactor;
+import edu.jhu.pacaya.gm.model.FactorGraph;
+import edu.jhu.pacaya.util.collections.QLists;
+import edu.jhu.prim.vector.IntDoubleDenseVector;
+
+public class DepParseFeatureStoreTest {
+
+    @Test
+    public void testStoredFeaturesMatchExtractedFeatures() throws IOException {
+        DepParseFactorGraphBuilderPrm prm = new DepParseFactorGraphBuilderPrm();
+        prm.grandparentFactors = true;
+        prm.arbitrarySiblingFactors = true;
+        prm.headBigramFactors = true;
+        prm.dpFePrm.onlyFast = true;
+        prm.bsDpFePrm.featureHashMod = 1000;
+        AnnoSentence sent = AlphabetStoreTest.getAnnoSentenceForRange(0, 4);
+        IntAnnoSentence isent = new IntAnnoSentence(sent, new AlphabetStore(QLists.getList(sent)));
+        CorpusStatistics cs = new CorpusStatistics(new CorpusStatisticsPrm());
+        ObsFeatureConjoiner ofc = new ObsFeatureConjoiner(new ObsFeatureConjoinerPrm(), new FactorTemplateList());
+        BitshiftDepParseFeatureExtractor fe = new BitshiftDepParseFeatureExtractor(prm.bsDpFePrm, isent, cs, ofc);
+
+        FactorGraph fg = new FactorGraph();
+        new DepParseFactorGraphBuilder(prm).build(sent.getWords(), null, fe, fg);
+        DepParseStructure st = new DepParseStructure(prm, sent.size(), null);
+        IntDoubleDenseVector weights = new IntDoubleDenseVector(1000);
+        for (int i=0; i<1000; i++) {
+            weights.set(i, (i % 7) - 3);
+        }
+
+        File dir = File.createTempFile("dpstore", "");
+        dir.delete();
+        DepParseFeatureStore store = DepParseFeatureStore.getInstance(dir, prm);
+        try {
+            assertEquals(0, store.size());
+            // The first lookup extracts and appends the features.
+            checkScores(fg, fe, store.getFeatureExtractor(isent, null, st, fe), weights);
+            assertEquals(1, store.size());
+            // The second lookup reads them from the file without a feature extractor.
+            checkScores(fg, fe, store.getFeatureExtractor(isent, null, st, null), weights);
+        } finally {
+            store.close();
+        }
+
+        // A later run reads the features written by the first.
+        store = DepParseFeatureStore.getInstance(dir, prm);
+        try {
+            assertEquals(1, store.size());
+            checkScores(fg, fe, store.getFeatureExtractor(isent, null, st, null), weights);
+        } finally {
+            store.close();
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testSharedStoreIsClosedByLastUser() throws IOException {
+        DepParseFactorGraphBuilderPrm prm = new DepParseFactorGraphBuilderPrm();
+        File dir = File.createTempFile("dpstore", "");
+        dir.delete();
+        try {
+            DepParseFeatureStore store1 = DepParseFeatureStore.getInstance(dir, prm);
+            DepParseFeatureStore store2 = DepParseFeatureStore.getInstance(dir, prm);
+            assertSame(store1, store2);
+            store1.close();
+            // Still open for the second user.
+            assertSame(store2, DepParseFeatureStore.getInstance(dir, prm));
+            store2.close();
+            store2.close();
+            // Closed by the last user, so a new store is opened.
+            DepParseFeatureStore store3 = DepParseFeatureStore.getInstance(dir, prm);
+            assertNotSame(store1, store3);
+            store3.close();
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testSignatureIgnoresOptionsThatDontChangeFeatures() {
+        DepParseFactorGraphBuilderPrm prm = new DepParseFactorGraphBuilderPrm();
+        long signature = DepParseFeatureStore.getSignature(prm);
+        prm.bsDpFePrm.useStreamingScores = !prm.bsDpFePrm.useStreamingScores;
+        prm.bsDpFePrm.cacheWordPairFeats = !prm.bsDpFePrm.cacheWordPairFeats;
+        prm.pruneEdges = !prm.pruneEdges;
+        assertEquals(signature, DepParseFeatureStore.getSignature(prm));
+        
+        prm.bsDpFePrm.featureHashMod++;
+        assertNotEquals(signature, DepParseFeatureStore.getSignature(prm));
+        prm.bsDpFePrm.featureHashMod--;
+        prm.grandparentFactors = !prm.grandparentFactors;
+        assertNotEquals(signature, DepParseFeatureStore.getSignature(prm));
+    }
+
+    private static void checkScores(FactorGraph fg, BitshiftDepParseFeatureExtractor fe, ScoringFeatureExtractor stored,
+            IntDoubleDenseVector weights) {
+        assertTrue(fg.getNumFactors() > 0);
+        for (Factor f : fg.getFactors()) {
+            FeExpFamFactor factor = (FeExpFamFactor) f;
+            int numConfigs = factor.getVars().calcNumConfigs();
+            for (int config=0; config<numConfigs; config++) {
+                assertEquals(fe.calcScore(factor, config, weights), stored.calcScore(factor, config, weights), 1e-10);
+                assertEquals(fe.calcFeatureVector(factor, config).getUsed(), stored.calcFeatureVector(factor, config).getUsed());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package edu.jhu.nlp.depparse;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MstDependencyParserTest {
+
+    @Test
+    public void testNonprojectiveTree() {
+        // The best tree has crossing arcs: 1 -> 3 and 2 -> 0.
+        double[] root = new double[]{ 0, 5, 0, 0 };
+        double[][] child = new double[][]{
+            { 0, 0, 0, 0 },
+            { 0, 0, 0, 5 },
+            { 5, 0, 0, 0 },
+            { 0, 0, 5, 0 },
+        };
+        int[] parents = new int[4];
+        double score = MstDependencyParser.parseMultiRoot(root, child, parents);
+        assertArrayEquals(new int[]{ 2, -1, 3, 1 }, parents);
+        assertEquals(20, score, 1e-13);
+    }
+
+    @Test
+    public void testCycleIsContracted() {
+        // Tokens 0 and 1 prefer each other as parents.
+        double[] root = new double[]{ 1, 2 };
+        double[][] child = new double[][]{
+            { 0, 10 },
+            { 10, 0 },
+        };
+        int[] parents = new int[2];
+        MstDependencyParser.parseMultiRoot(root, child, parents);
+        assertArrayEquals(new int[]{ 1, -1 }, parents);
+    }
+
+    @Test
+    public void testSingleRoot() {
+        double[] root = new double[]{ 5, 5, 5 };
+        double[][] child = new double[][]{
+            { 0, 3, 1 },
+            { 1, 0, 2 },
+            { 1, 1, 0 },
+        };
+        int[] parents = new int[3];
+        MstDependencyParser.parseMultiRoot(root, child, parents);
+        assertArrayEquals(new int[]{ -1, -1, -1 }, parents);
+        MstDependencyParser.parseSingleRoot(root, child, parents);
+        assertArrayEquals(new int[]{ -1, 0, 1 }, parents);
+    }
+
+    @Test
+    public void testDisallowedEdges() {
+        double ninf = Double.NEGATIVE_INFINITY;
+        double[] root = new double[]{ ninf, 0, ninf };
+        double[][] child = new double[][]{
+            { 0, ninf, 9 },
+            { 9, 0, ninf },
+            { 1, ninf, 0 },
+        };
+        int[] parents = new int[3];
+        double score = MstDependencyParser.parseSingleRoot(root, child, parents);
+        assertArrayEquals(new int[]{ 1, -1, 0 }, parents);
+        assertEquals(18, score, 1e-13);
+    }
+
+    @Test
+    public void testEqualsBruteForce() {
+        Random rand = new Random(1);
+        for (int trial=0; trial<500; trial++) {
+            int n = 1 + rand.nextInt(5);
+            double[] root = new double[n];
+            double[][] child = new double[n][n];
+            for (int c=0; c<n; c++) {
+                root[c] = rand.nextDouble();
+                for (int p=0; p<n; p++) {
+                    child[p][c] = rand.nextDouble();
+                }
+            }
+            for (boolean singleRoot : new boolean[]{ true, false }) {
+                int[] parents = new int[n];
+                double score = singleRoot ? MstDependencyParser.parseSingleRoot(root, child, parents)
+                        : MstDependencyParser.parseMultiRoot(root, child, parents);
+                assertEquals(getBestScoreByBruteForce(root, child, singleRoot), score, 1e-10);
+                assertTrue(isTree(parents, singleRoot));
+            }
+        }
+    }
+
+    private static double getBestScoreByBruteForce(double[] root, double[][] child, boolean singleRoot) {
+        int n = root.length;
+        int[] parents = new int[n];
+        int numConfigs = (int) Math.pow(n+1, n);
+        double best = Double.NEGATIVE_INFINITY;
+        for (int config=0; config<numConfigs; config++) {
+            int x = config;
+            for (int c=0; c<n; c++) {
+                parents[c] = x % (n+1) - 1;
+                x /= (n+1);
+            }
+            if (!isTree(parents, singleRoot)) { continue; }
+            double score = 0;
+            for (int c=0; c<n; c++) {
+                score += (parents[c] == -1) ? root[c] : child[parents[c]][c];
+            }
+            best = Math.max(best, score);
+        }
+        return best;
+    }
+
+    private static boolean isTree(int[] parents, boolean singleRoot) {
+        int n = parents.length;
+        int numRoots = 0;
+        for (int c=0; c<n; c++) {
+            if (parents[c] == -1) { numRoots++; }
+            if (parents[c] == c) { return false; }
+            // Follow the parents up to the wall.
+            int x = c;
+            for (int steps=0; x != -1; steps++) {
+                if (steps > n) { return false; }
+                x = parents[x];
+            }
+        }
+        return !singleRoot || numRoots == 1;
+    }
+
+}
@@ -0,0 +1,60 @@
+package edu.jhu.nlp.depparse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.jhu.pacaya.util.semiring.RealAlgebra;
+
+public class SparseGraScoresTest {
+
+    private RealAlgebra s = RealAlgebra.getInstance();
+
+    @Test
+    public void testRowsAndSharedArcValues() {
+        SparseGraScores scores = new SparseGraScores();
+        scores.reset(s, 3, s.one());
+        scores.addRow(1, 3, 5);
+        assertTrue(scores.hasRow(1, 3));
+        assertFalse(scores.hasRow(3, 1));
+
+        scores.set(1, 3, 0, 7);
+        scores.setArc(3, 1, 2);
+        assertEquals(7, scores.getScore(1, 3, 0), 1e-13);
+        assertEquals(5, scores.getScore(1, 3, 4), 1e-13);
+        assertEquals(2, scores.getScore(3, 1, 0), 1e-13);
+        assertEquals(2, scores.getScore(3, 1, 4), 1e-13);
+        // Excluded grandparents always score one.
+        assertEquals(s.one(), scores.getScore(1, 3, 2), 1e-13);
+        assertEquals(16 + 4, scores.getNumValues());
+    }
+
+    @Test
+    public void testAddAccumulatesIntoArcWithoutRow() {
+        SparseGraScores scores = new SparseGraScores();
+        scores.reset(s, 3, s.zero());
+        scores.addRow(1, 3, s.zero());
+        scores.add(1, 3, 0, 1);
+        scores.add(1, 3, 0, 2);
+        scores.add(3, 1, 0, 1);
+        scores.add(3, 1, 4, 2);
+        assertEquals(3, scores.get(1, 3, 0), 1e-13);
+        assertEquals(0, scores.get(1, 3, 4), 1e-13);
+        assertEquals(3, scores.getArc(3, 1), 1e-13);
+    }
+
+    @Test
+    public void testResetReusesStorage() {
+        SparseGraScores scores = new SparseGraScores();
+        scores.reset(s, 4, s.one());
+        scores.addRow(0, 1, 3);
+        scores.reset(s, 2, s.one());
+        assertFalse(scores.hasRow(0, 1));
+        assertEquals(2, scores.getNumTokens());
+        assertEquals(9, scores.getNumValues());
+        assertEquals(s.one(), scores.getScore(0, 1, 2), 1e-13);
+    }
+
+}
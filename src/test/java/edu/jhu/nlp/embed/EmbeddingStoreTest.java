@@ -0,0 +1,76 @@
+package edu.jhu.nlp.embed;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.junit.Test;
+
+import edu.jhu.nlp.embed.EmbeddingStore.Quantization;
+import edu.jhu.pacaya.util.collections.QSets;
+
+public class EmbeddingStoreTest {
+
+    @Test
+    public void testConvertAndLookupFloat32() throws IOException {
+        EmbeddingStore store = getStore(Quantization.FLOAT32);
+        assertEquals(4, store.getNumWords());
+        assertEquals(2, store.getDim());
+        int i = store.lookupIndex("dog");
+        assertEquals("dog", store.getWord(i));
+        assertEquals(0.5, store.get(i, 0), 1e-7);
+        assertEquals(-0.25, store.get(i, 1), 1e-7);
+        assertEquals(-1, store.lookupIndex("cat"));
+        assertEquals(-1, store.lookupIndex("bird"));
+        store.close();
+    }
+
+    @Test
+    public void testConvertAndLookupInt8() throws IOException {
+        EmbeddingStore store = getStore(Quantization.INT8);
+        int i = store.lookupIndex("dog");
+        assertEquals(0.5, store.get(i, 0), 0.5 / 127);
+        assertEquals(-0.25, store.get(i, 1), 0.5 / 127);
+        store.close();
+    }
+
+    @Test
+    public void testFindEmbeddingFallbacks() throws IOException {
+        EmbeddingStore store = getStore(Quantization.FLOAT32);
+        assertEquals(store.lookupIndex("dog"), store.findEmbedding("Dog"));
+        assertEquals(store.lookupIndex("##"), store.findEmbedding("42"));
+        assertEquals(store.lookupIndex("CAT"), store.findEmbedding("cat"));
+        assertEquals(-1, store.findEmbedding("bird"));
+        store.close();
+    }
+
+    @Test
+    public void testEmbeddingsFromStore() throws IOException {
+        File bin = getBinFile(Quantization.FLOAT32);
+        Embeddings embeds = new Embeddings(bin, QSets.getSet("dog", "cat"));
+        // The <UNK> embedding is always included.
+        assertEquals(2, embeds.getAlphabet().size());
+        assertEquals(0.5, embeds.getEmbeddings().get(embeds.findEmbedding("dog"), 0), 1e-7);
+    }
+
+    private static EmbeddingStore getStore(Quantization quant) throws IOException {
+        return new EmbeddingStore(getBinFile(quant));
+    }
+
+    private static File getBinFile(Quantization quant) throws IOException {
+        File txt = File.createTempFile("embeds", ".txt");
+        txt.deleteOnExit();
+        PrintWriter pw = new PrintWriter(txt, "UTF-8");
+        pw.println("dog\t0.5\t-0.25");
+        pw.println("##\t1.0\t1.0");
+        pw.println("CAT\t-1.0\t0.0");
+        pw.close();
+        File bin = File.createTempFile("embeds", ".bin");
+        bin.deleteOnExit();
+        EmbeddingStore.convert(txt, bin, quant);
+        return bin;
+    }
+
+}
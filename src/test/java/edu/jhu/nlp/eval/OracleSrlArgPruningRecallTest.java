@@ -0,0 +1,62 @@
+package edu.jhu.nlp.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.jhu.nlp.data.SrlArgMask;
+import edu.jhu.nlp.data.conll.SrlGraph;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlArg;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlEdge;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlPred;
+import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.pacaya.util.collections.QLists;
+
+public class OracleSrlArgPruningRecallTest {
+
+    @Test
+    public void testRecallAndEfficiency() {
+        AnnoSentence gold = new AnnoSentence();
+        gold.setWords(QLists.getList("w0", "w1", "w2"));
+        SrlGraph srl = new SrlGraph(3);
+        SrlPred pred0 = new SrlPred(0, "p.01");
+        srl.addEdge(new SrlEdge(pred0, new SrlArg(1), "A0"));
+        srl.addEdge(new SrlEdge(pred0, new SrlArg(2), "A1"));
+        srl.addEdge(new SrlEdge(new SrlPred(2, "q.01"), new SrlArg(0), "A0"));
+        gold.setSrlGraph(srl);
+
+        AnnoSentence pred = new AnnoSentence();
+        pred.setWords(gold.getWords());
+        SrlArgMask mask = new SrlArgMask(3, false);
+        mask.setIsKept(0, 1, true);
+        mask.setIsKept(2, 0, true);
+        mask.setIsKept(1, 1, true);
+        pred.setSrlArgMask(mask);
+
+        OracleSrlArgPruningRecall eval = new OracleSrlArgPruningRecall();
+        // The gold argument (0, 2) is pruned.
+        assertEquals(1, eval.evaluate(AnnoSentenceCollection.getSingleton(pred),
+                AnnoSentenceCollection.getSingleton(gold), "test"), 0.0);
+        assertEquals(2.0 / 3.0, eval.getRecall(), 1e-13);
+        // 5 of the 6 non-gold pairs are pruned.
+        assertEquals(5.0 / 6.0, eval.getEfficiency(), 1e-13);
+    }
+
+    @Test
+    public void testNoGoldArgs() {
+        AnnoSentence gold = new AnnoSentence();
+        gold.setWords(QLists.getList("w0", "w1"));
+        gold.setSrlGraph(new SrlGraph(2));
+        AnnoSentence pred = new AnnoSentence();
+        pred.setWords(gold.getWords());
+
+        OracleSrlArgPruningRecall eval = new OracleSrlArgPruningRecall();
+        assertEquals(0, eval.evaluate(AnnoSentenceCollection.getSingleton(pred),
+                AnnoSentenceCollection.getSingleton(gold), "test"), 0.0);
+        assertTrue(Double.isNaN(eval.getRecall()));
+        assertEquals(0.0, eval.getEfficiency(), 0.0);
+    }
+
+}
@@ -0,0 +1,124 @@
+package edu.jhu.nlp.features;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import edu.jhu.pacaya.util.FeatureNames;
+
+public class ConcurrentFeatureNamesTest {
+
+    @Test
+    public void testGetReturnsSameInstance() {
+        FeatureNames names = new FeatureNames();
+        assertSame(ConcurrentFeatureNames.get(names), ConcurrentFeatureNames.get(names));
+        assertSame(names, ConcurrentFeatureNames.get(names).getFeatureNames());
+    }
+
+    @Test
+    public void testGetReusesPreviousInstanceForSameAlphabet() {
+        FeatureNames names = new FeatureNames();
+        FeatureNames other = new FeatureNames();
+        ConcurrentFeatureNames cfn = ConcurrentFeatureNames.get(names, null);
+        assertSame(ConcurrentFeatureNames.get(names), cfn);
+        assertSame(cfn, ConcurrentFeatureNames.get(names, cfn));
+        ConcurrentFeatureNames otherCfn = ConcurrentFeatureNames.get(other, cfn);
+        assertSame(ConcurrentFeatureNames.get(other), otherCfn);
+        assertNotSame(cfn, otherCfn);
+    }
+
+    @Test
+    public void testLookupWhileGrowingAndAfterFreeze() {
+        FeatureNames names = new FeatureNames();
+        ConcurrentFeatureNames cfn = ConcurrentFeatureNames.get(names);
+        assertEquals(0, cfn.lookupIndex("a"));
+        assertEquals(1, cfn.lookupIndex(7));
+        assertEquals(0, cfn.lookupIndex("a"));
+        assertEquals(2, cfn.lookupIndex("bias", true));
+        assertFalse(cfn.isFrozen());
+
+        // The first lookup after growth stops freezes the alphabet.
+        names.stopGrowth();
+        assertEquals(-1, cfn.lookupIndex("b"));
+        assertTrue(cfn.isFrozen());
+        assertEquals(0, cfn.lookupIndex("a"));
+        assertEquals(1, cfn.lookupIndex(7));
+        assertEquals(2, cfn.lookupIndex("bias"));
+        assertEquals(3, names.size());
+
+        // Growth can be resumed after freezing.
+        names.startGrowth();
+        assertEquals(3, cfn.lookupIndex("b"));
+        assertEquals(3, cfn.lookupIndex("b"));
+        assertEquals("b", names.lookupObject(3));
+        assertFalse(cfn.isFrozen());
+
+        // Features added after the first freeze are found once growth stops again.
+        names.stopGrowth();
+        assertEquals(3, cfn.lookupIndex("b"));
+        assertEquals(-1, cfn.lookupIndex("c"));
+        assertTrue(cfn.isFrozen());
+
+        // Features added directly to the alphabet, as when training resumes from a loaded model.
+        names.startGrowth();
+        assertEquals(4, names.lookupIndex("d"));
+        names.stopGrowth();
+        assertEquals(4, cfn.lookupIndex("d"));
+        assertEquals(3, cfn.lookupIndex("b"));
+        assertEquals(-1, cfn.lookupIndex("e"));
+        assertEquals(5, names.size());
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        final FeatureNames names = new FeatureNames();
+        final ConcurrentFeatureNames cfn = ConcurrentFeatureNames.get(names);
+        final int numFeats = 1000;
+        final int[][] idxs = new int[8][numFeats];
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int t=0; t<idxs.length; t++) {
+            final int[] myIdxs = idxs[t];
+            final int offset = t * 37;
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    for (int i=0; i<numFeats; i++) {
+                        int f = (i + offset) % numFeats;
+                        myIdxs[f] = cfn.lookupIndex("f" + f);
+                    }
+                    return null;
+                }
+            });
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (Future<Object> f : pool.invokeAll(tasks)) {
+            f.get();
+        }
+        pool.shutdown();
+
+        assertEquals(numFeats, names.size());
+        for (int t=0; t<idxs.length; t++) {
+            for (int f=0; f<numFeats; f++) {
+                assertEquals(idxs[0][f], idxs[t][f]);
+                assertEquals("f" + f, names.lookupObject(idxs[t][f]));
+            }
+        }
+        names.stopGrowth();
+        cfn.freeze();
+        for (int f=0; f<numFeats; f++) {
+            assertEquals(idxs[0][f], cfn.lookupIndex("f" + f));
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+package edu.jhu.nlp.joint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.jhu.nlp.CorpusStatistics;
+import edu.jhu.nlp.CorpusStatistics.CorpusStatisticsPrm;
+import edu.jhu.nlp.data.conll.CoNLL09ReadWriteTest;
+import edu.jhu.nlp.data.conll.CoNLL09Reader;
+import edu.jhu.nlp.data.conll.CoNLL09Sentence;
+import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.joint.JointNlpFactorGraph.JointNlpFactorGraphPrm;
+import edu.jhu.pacaya.gm.feat.FactorTemplateList;
+import edu.jhu.pacaya.gm.feat.FeatureVector;
+import edu.jhu.pacaya.gm.feat.ObsFeatureConjoiner;
+import edu.jhu.pacaya.gm.feat.ObsFeatureConjoiner.ObsFeatureConjoinerPrm;
+import edu.jhu.pacaya.gm.feat.ObsFeatureConjoinerTest;
+import edu.jhu.pacaya.util.FeatureNames;
+
+public class BinaryModelFileTest {
+
+    @Test
+    public void testWriteAndReadModel() throws IOException {
+        JointNlpFgModel model = getModel();
+        File f = File.createTempFile("model", BinaryModelFile.EXTENSION);
+        f.deleteOnExit();
+        BinaryModelFile.save(model, f);
+        assertTrue(BinaryModelFile.isBinaryModelFile(f));
+
+        JointNlpFgModel read = (JointNlpFgModel) BinaryModelFile.load(f);
+        assertNotNull(read.getCs());
+        assertNotNull(read.getOfc());
+        assertNotNull(read.getFgPrm());
+        assertEqualParams(model, read);
+    }
+
+    @Test
+    public void testSharedModelIsWrittenOnce() throws IOException {
+        JointNlpFgModel model = getModel();
+        ArrayList<Object> pipeline = new ArrayList<>();
+        pipeline.add(model);
+        pipeline.add("other");
+        pipeline.add(model);
+        File f = File.createTempFile("pipeline", BinaryModelFile.EXTENSION);
+        f.deleteOnExit();
+        BinaryModelFile.write(pipeline, f);
+
+        @SuppressWarnings("unchecked")
+        List<Object> read = (List<Object>) BinaryModelFile.read(f);
+        assertEquals(3, read.size());
+        assertEquals("other", read.get(1));
+        assertSame(read.get(0), read.get(2));
+        JointNlpFgModel readModel = (JointNlpFgModel) read.get(0);
+        assertEqualParams(model, readModel);
+    }
+
+    @Test
+    public void testConvertFromJavaSerialization() throws IOException {
+        JointNlpFgModel model = getModel();
+        File ser = File.createTempFile("model", ".ser");
+        ser.deleteOnExit();
+        BinaryModelFile.save(model, ser);
+        assertFalse(BinaryModelFile.isBinaryModelFile(ser));
+        // Java serialized files can still be loaded.
+        assertEqualParams(model, (JointNlpFgModel) BinaryModelFile.load(ser));
+
+        File bin = File.createTempFile("model", BinaryModelFile.EXTENSION);
+        bin.deleteOnExit();
+        BinaryModelFile.convert(ser, bin);
+        JointNlpFgModel read = (JointNlpFgModel) BinaryModelFile.load(bin);
+        assertEqualParams(model, read);
+    }
+
+    @Test
+    public void testReadModelHasParamsForAllFgModelMethods() throws IOException {
+        JointNlpFgModel model = getModel();
+        File f = File.createTempFile("model", BinaryModelFile.EXTENSION);
+        f.deleteOnExit();
+        BinaryModelFile.save(model, f);
+
+        // The methods inherited from FgModel which read the parameter vector directly see the
+        // parameters of a freshly read model.
+        JointNlpFgModel read = (JointNlpFgModel) BinaryModelFile.load(f);
+        FeatureVector fv = new FeatureVector();
+        for (int i=0; i<model.getNumParams(); i++) {
+            fv.add(i, 1.0);
+        }
+        assertEquals(model.dot(fv), read.dot(fv), 1e-10);
+        
+        read = (JointNlpFgModel) BinaryModelFile.load(f);
+        double[] doubles = new double[read.getNumParams()];
+        read.updateDoublesFromModel(doubles);
+        for (int i=0; i<model.getNumParams(); i++) {
+            assertEquals(model.getParams().get(i), doubles[i], 0.0);
+        }
+        
+        read = (JointNlpFgModel) BinaryModelFile.load(f);
+        JointNlpFgModel read2 = (JointNlpFgModel) BinaryModelFile.load(f);
+        read.add(read2);
+        for (int i=0; i<model.getNumParams(); i++) {
+            assertEquals(2 * model.getParams().get(i), read.getParams().get(i), 0.0);
+        }
+    }
+
+    @Test
+    public void testAlphabetsAreWrittenInBinary() throws IOException {
+        FeatureNames alphabet = new FeatureNames();
+        alphabet.lookupIndex("a");
+        alphabet.lookupIndex(7);
+        alphabet.lookupIndex(8L);
+        alphabet.lookupIndex("bias");
+        alphabet.setIsBias(3);
+        alphabet.stopGrowth();
+        ArrayList<Object> pipeline = new ArrayList<>();
+        pipeline.add(alphabet);
+        pipeline.add(getModel());
+        pipeline.add(alphabet);
+        File f = File.createTempFile("pipeline", BinaryModelFile.EXTENSION);
+        f.deleteOnExit();
+        BinaryModelFile.write(pipeline, f);
+
+        @SuppressWarnings("unchecked")
+        List<Object> read = (List<Object>) BinaryModelFile.read(f);
+        FeatureNames readAlphabet = (FeatureNames) read.get(0);
+        assertSame(readAlphabet, read.get(2));
+        assertEquals(4, readAlphabet.size());
+        assertEquals("a", readAlphabet.lookupObject(0));
+        assertEquals(7, readAlphabet.lookupObject(1));
+        assertEquals(8L, readAlphabet.lookupObject(2));
+        assertEquals("bias", readAlphabet.lookupObject(3));
+        assertFalse(readAlphabet.isBiasFeature(0));
+        assertTrue(readAlphabet.isBiasFeature(3));
+        assertFalse(readAlphabet.isGrowing());
+        assertEquals(-1, readAlphabet.lookupIndex("b"));
+    }
+
+    private static void assertEqualParams(JointNlpFgModel expected, JointNlpFgModel actual) {
+        assertEquals(expected.getNumParams(), actual.getNumParams());
+        for (int i=0; i<expected.getNumParams(); i++) {
+            assertEquals(expected.getParams().get(i), actual.getParams().get(i), 0.0);
+        }
+    }
+
+    private static JointNlpFgModel getModel() {
+        InputStream inputStream = BinaryModelFileTest.class.getResourceAsStream(CoNLL09ReadWriteTest.conll2009Example);
+        CoNLL09Reader cr = new CoNLL09Reader(inputStream);
+        CorpusStatisticsPrm csPrm = new CorpusStatisticsPrm();
+        AnnoSentenceCollection sents = CoNLL09Sentence.toAnno(cr.readSents(1), csPrm.useGoldSyntax);
+        CorpusStatistics cs = new CorpusStatistics(csPrm);
+        cs.init(sents);
+
+        FactorTemplateList fts = ObsFeatureConjoinerTest.getFtl();
+        ObsFeatureConjoinerPrm prm = new ObsFeatureConjoinerPrm();
+        prm.featCountCutoff = -1;
+        prm.includeUnsupportedFeatures = true;
+        ObsFeatureConjoiner ofc = new ObsFeatureConjoiner(prm, fts);
+        ofc.init(null);
+
+        JointNlpFgModel model = new JointNlpFgModel(cs, ofc, new JointNlpFactorGraphPrm());
+        for (int i=0; i<model.getNumParams(); i++) {
+            model.getParams().set(i, i * 0.5 - 3);
+        }
+        return model;
+    }
+
+}
@@ -0,0 +1,63 @@
+package edu.jhu.nlp.joint;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.jhu.nlp.CorpusStatistics.CorpusStatisticsPrm;
+import edu.jhu.nlp.data.conll.CoNLL09ReadWriteTest;
+import edu.jhu.nlp.data.conll.CoNLL09Reader;
+import edu.jhu.nlp.data.conll.CoNLL09Sentence;
+import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.features.TemplateLanguage.FeatTemplate;
+import edu.jhu.nlp.features.TemplateSets;
+import edu.jhu.nlp.joint.IGFeatureTemplateSelector.IGFeatureTemplateSelectorPrm;
+import edu.jhu.nlp.joint.IGFeatureTemplateSelector.SrlArgExtractor;
+import edu.jhu.nlp.joint.IGFeatureTemplateSelector.SrlSenseExtractor;
+import edu.jhu.nlp.joint.IGFeatureTemplateSelector.ValExtractor;
+import edu.jhu.pacaya.util.Threads;
+import edu.jhu.pacaya.util.collections.QLists;
+
+public class IGFeatureTemplateSelectorTest {
+
+    @Test
+    public void testParallelSelectionMatchesSerial() throws Exception {
+        InputStream inputStream = this.getClass().getResourceAsStream(CoNLL09ReadWriteTest.conll2009Example);
+        CoNLL09Reader cr = new CoNLL09Reader(inputStream);
+        CorpusStatisticsPrm csPrm = new CorpusStatisticsPrm();
+        AnnoSentenceCollection sents = CoNLL09Sentence.toAnno(cr.readSents(10), csPrm.useGoldSyntax);
+        List<FeatTemplate> tpls = TemplateSets.getBjorkelundArgUnigramFeatureTemplates();
+
+        // Serial: one thread, all templates in one pass.
+        IGFeatureTemplateSelectorPrm prm = new IGFeatureTemplateSelectorPrm();
+        prm.outFile = null;
+        prm.numThreads = 1;
+        prm.numTplsPerPass = 0;
+        List<List<FeatTemplate>> serial = select(prm, tpls, sents, csPrm);
+
+        // Parallel: several threads, with the templates split across passes.
+        Threads.initDefaultPool(3);
+        try {
+            prm.numThreads = 3;
+            prm.numTplsPerPass = 5;
+            List<List<FeatTemplate>> parallel = select(prm, tpls, sents, csPrm);
+            assertEquals(serial, parallel);
+        } finally {
+            Threads.shutdownDefaultPool();
+        }
+    }
+
+    private static List<List<FeatTemplate>> select(IGFeatureTemplateSelectorPrm prm, List<FeatTemplate> tpls,
+            AnnoSentenceCollection sents, CorpusStatisticsPrm csPrm) {
+        IGFeatureTemplateSelector sel = new IGFeatureTemplateSelector(prm);
+        List<ValExtractor> valExts = QLists.<ValExtractor>getList(new SrlArgExtractor(), new SrlSenseExtractor());
+        List<List<FeatTemplate>> selected = sel.selectFeatureTemplates(tpls, valExts, sents, sents, csPrm, 8);
+        assertEquals(2, selected.size());
+        assertEquals(8, selected.get(0).size());
+        return selected;
+    }
+
+}
@@ -0,0 +1,57 @@
+package edu.jhu.nlp.joint;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class IGSketchTest {
+
+    @Test
+    public void testInformationGainOfPerfectPredictor() {
+        IGSketch sketch = new IGSketch(2, 1024, 2);
+        for (int i=0; i<10; i++) {
+            sketch.add(111, 0);
+            sketch.add(222, 1);
+        }
+        // One bit of information, unless both features collide in every row.
+        assertEquals(1.0, sketch.getInformationGain(), 1e-10);
+        assertEquals(2, sketch.getNumFeaturesEstimate());
+    }
+
+    @Test
+    public void testInformationGainOfIndependentFeature() {
+        IGSketch sketch = new IGSketch(2, 1024, 2);
+        for (int i=0; i<10; i++) {
+            sketch.add(111, 0);
+            sketch.add(111, 1);
+            sketch.add(222, 0);
+            sketch.add(222, 1);
+        }
+        assertEquals(0.0, sketch.getInformationGain(), 1e-10);
+    }
+
+    @Test
+    public void testSingleBucketIsLowerBound() {
+        IGSketch sketch = new IGSketch(1, 1, 2);
+        sketch.add(111, 0);
+        sketch.add(222, 1);
+        assertEquals(0.0, sketch.getInformationGain(), 1e-10);
+    }
+
+    @Test
+    public void testMerge() {
+        IGSketch s1 = new IGSketch(2, 1024, 2);
+        IGSketch s2 = new IGSketch(2, 1024, 2);
+        s1.add(111, 0);
+        s2.add(222, 1);
+        assertEquals(0.0, s1.getInformationGain(), 1e-10);
+        s1.add(s2);
+        assertEquals(1.0, s1.getInformationGain(), 1e-10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeMismatchedDimensions() {
+        new IGSketch(2, 1024, 2).add(new IGSketch(2, 512, 2));
+    }
+
+}
@@ -16,6 +16,7 @@ import edu.jhu.nlp.CorpusStatistics;
 import edu.jhu.nlp.CorpusStatistics.CorpusStatisticsPrm;
 import edu.jhu.nlp.ObsFeTypedFactor;
 import edu.jhu.nlp.data.DepEdgeMask;
+import edu.jhu.nlp.data.SrlArgMask;
 import edu.jhu.nlp.data.simple.AnnoSentence;
 import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
 import edu.jhu.nlp.joint.JointNlpFactorGraph.JointNlpFactorGraphPrm;
@@ -318,6 +319,11 @@ public class JointNlpFactorGraphTest {
     }
     
     public static JointNlpFactorGraph getJointNlpFg(JointNlpFactorGraphPrm prm) {
+        return getJointNlpFg(prm, null);
+    }
+
+    /** Gets a factor graph for a 3 word sentence, whose SRL arguments are pruned by the given mask (if not null). */
+    public static JointNlpFactorGraph getJointNlpFg(JointNlpFactorGraphPrm prm, SrlArgMask srlArgMask) {
         // --- These won't even be used in these tests ---
         FactorTemplateList fts = new FactorTemplateList();
         ObsFeatureConjoiner ofc = new ObsFeatureConjoiner(new ObsFeatureConjoinerPrm(), fts);
@@ -343,6 +349,7 @@ public class JointNlpFactorGraphTest {
         sent.setLemmas(words);
         sent.setKnownPreds(knownPreds);
         sent.setDepEdgeMask(depEdgeMask);
+        sent.setSrlArgMask(srlArgMask);
         AnnoSentenceCollection sents = new AnnoSentenceCollection(QLists.getList(sent));
         
         CorpusStatistics cs = new CorpusStatistics(new CorpusStatisticsPrm());
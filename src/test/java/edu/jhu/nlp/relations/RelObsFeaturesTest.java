@@ -3,14 +3,27 @@ package edu.jhu.nlp.relations;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 
 import edu.jhu.nlp.data.LabeledSpan;
+import edu.jhu.nlp.data.NerMention;
+import edu.jhu.nlp.data.simple.AlphabetStore;
+import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.IntAnnoSentence;
+import edu.jhu.nlp.features.LocalObservations;
+import edu.jhu.nlp.relations.RelObsFeatures.RelObsFePrm;
+import edu.jhu.nlp.relations.RelationsFactorGraphBuilder.RelVar;
+import edu.jhu.pacaya.gm.model.Var.VarType;
+import edu.jhu.pacaya.parse.cky.data.NaryTree;
 import edu.jhu.pacaya.util.collections.QLists;
 import edu.jhu.prim.list.IntArrayList;
 import edu.jhu.prim.tuple.Pair;
+import edu.jhu.prim.util.Lambda.FnObjDoubleToVoid;
 
 public class RelObsFeaturesTest {
 
@@ -48,4 +61,52 @@ public class RelObsFeaturesTest {
         assertArrayEquals(new int[]{0, 0, 0, 1, 2, 3, 3, 4, 5, 6}, tokIdxToSpanIdx.toNativeArray());
     }
 
+    @Test
+    public void testFastZhou05FeaturesMatchStringFeatures() {
+        AnnoSentence sent = RelationMungerTest.getSentWithRelationsAndNer();
+        sent.setPosTags(QLists.getList("NN", "VBD", "DT", "NN", "IN", "NNP"));
+        sent.setParents(new int[]{1, -1, 3, 1, 3, 4});
+        sent.setDeprels(QLists.getList("SBJ", "ROOT", "NMOD", "OBJ", "NMOD", "PMOD"));
+        sent.setChunks(QLists.getList("B-NP", "B-VP", "B-NP", "I-NP", "B-PP", "B-NP"));
+        sent.setNaryTree(NaryTree.fromTreeInPtbFormat("(ROOT (S (NP (NN dog)) (VP (VBD spied) (NP (NP (DT the) (NN cat)) (PP (IN from) (NP (NNP MD)))))))"));
+        IntAnnoSentence isent = new IntAnnoSentence(sent, new AlphabetStore(QLists.getList(sent)));
+        
+        RelObsFeatures strFe = new RelObsFeatures(new RelObsFePrm(), sent, null);
+        BitshiftRelObsFeatures intFe = new BitshiftRelObsFeatures(isent);
+        Map<String,Integer> str2int = new HashMap<>();
+        Map<Integer,String> int2str = new HashMap<>();
+        for (Pair<NerMention, NerMention> pair : sent.getNePairs()) {
+            RelVar rv = new RelVar(VarType.PREDICTED, "rv", pair.get1(), pair.get2(), QLists.getList("NO_REL"));
+            final List<String> strFeats = new ArrayList<>();
+            strFe.calcObsFeatureVectorStrs(rv).iterate(new FnObjDoubleToVoid<String>() {
+                @Override
+                public void call(String fname, double val) {
+                    strFeats.add(fname);
+                }
+            });
+            IntArrayList intFeats = new IntArrayList();
+            intFe.addZhou05Features(LocalObservations.newNe1Ne2(rv.ment1, rv.ment2), intFeats);
+            
+            // The string features begin with the bias feature.
+            assertEquals("BIAS_FEATURE", strFeats.get(0));
+            assertEquals(strFeats.size() - 1, intFeats.size());
+            for (int k=0; k<intFeats.size(); k++) {
+                String s = strFeats.get(k+1);
+                int i = intFeats.get(k);
+                // Each string feature must correspond to exactly one integer feature.
+                if (str2int.containsKey(s)) {
+                    assertEquals(s, (int) str2int.get(s), i);
+                } else {
+                    str2int.put(s, i);
+                }
+                if (int2str.containsKey(i)) {
+                    assertEquals(int2str.get(i), s);
+                } else {
+                    int2str.put(i, s);
+                }
+            }
+        }
+        assertEquals(str2int.size(), int2str.size());
+    }
+
 }
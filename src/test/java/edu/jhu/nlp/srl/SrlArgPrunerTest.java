@@ -0,0 +1,102 @@
+package edu.jhu.nlp.srl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import edu.jhu.nlp.data.SrlArgMask;
+import edu.jhu.nlp.data.conll.SrlGraph;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlArg;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlEdge;
+import edu.jhu.nlp.data.conll.SrlGraph.SrlPred;
+import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.AnnoSentenceCollection;
+import edu.jhu.nlp.srl.SrlArgPruner.SrlArgPrunerPrm;
+import edu.jhu.pacaya.util.collections.QLists;
+
+public class SrlArgPrunerTest {
+
+    private static final int[] parents = { 1, 2, -1, 4, 2, 2, 5 };
+
+    @Test
+    public void testChildrenOfPathToRoot() {
+        SrlArgMask mask = SrlArgPruner.getCandidates(parents, 1, -1);
+        assertKept(mask, 0, "1110110");
+        assertKept(mask, 2, "0110110");
+        assertKept(mask, 3, "0111110");
+        assertKept(mask, 6, "0110111");
+    }
+
+    @Test
+    public void testMaxDepth() {
+        SrlArgMask mask = SrlArgPruner.getCandidates(parents, 2, -1);
+        assertKept(mask, 2, "1111111");
+        assertKept(mask, 4, "1111111");
+        mask = SrlArgPruner.getCandidates(parents, 0, -1);
+        assertKept(mask, 0, "1110000");
+        assertKept(mask, 6, "0010011");
+    }
+
+    @Test
+    public void testMaxAncestors() {
+        SrlArgMask mask = SrlArgPruner.getCandidates(parents, 1, 0);
+        assertKept(mask, 0, "1000000");
+        assertKept(mask, 5, "0000011");
+        mask = SrlArgPruner.getCandidates(parents, 1, 1);
+        assertKept(mask, 0, "1100000");
+        assertKept(mask, 6, "0000011");
+        assertKept(mask, 5, "0110111");
+    }
+
+    @Test
+    public void testAnnotate() {
+        AnnoSentenceCollection sents = new AnnoSentenceCollection();
+        AnnoSentence sent1 = new AnnoSentence();
+        sent1.setWords(QLists.getList("0", "1", "2", "3", "4", "5", "6"));
+        sent1.setParents(parents);
+        sents.add(sent1);
+        AnnoSentence sent2 = new AnnoSentence();
+        sent2.setWords(QLists.getList("0", "1"));
+        sents.add(sent2);
+
+        SrlArgPruner pruner = new SrlArgPruner(new SrlArgPrunerPrm());
+        pruner.annotate(sents);
+
+        assertKept(sent1.getSrlArgMask(), 6, "0110111");
+        assertEquals(34, sent1.getSrlArgMask().getCount());
+        // Sentences without a tree are not pruned.
+        assertNull(sent2.getSrlArgMask());
+    }
+
+    @Test
+    public void testGoldArgsAreUnprunedForTraining() {
+        AnnoSentence gold = new AnnoSentence();
+        gold.setWords(QLists.getList("0", "1", "2", "3", "4", "5", "6"));
+        SrlGraph srl = new SrlGraph(gold.size());
+        SrlPred pred = new SrlPred(6, "p.01");
+        srl.addEdge(new SrlEdge(pred, new SrlArg(0), "A0"));
+        srl.addEdge(new SrlEdge(pred, new SrlArg(1), "A1"));
+        gold.setSrlGraph(srl);
+        AnnoSentence input = new AnnoSentence();
+        input.setWords(gold.getWords());
+        input.setParents(parents);
+        AnnoSentenceCollection inputSents = AnnoSentenceCollection.getSingleton(input);
+        AnnoSentenceCollection goldSents = AnnoSentenceCollection.getSingleton(gold);
+
+        new SrlArgPruner(new SrlArgPrunerPrm()).annotate(inputSents);
+        assertKept(input.getSrlArgMask(), 6, "0110111");
+        // Only the gold argument 0 of predicate 6 was pruned.
+        assertEquals(1, new GoldSrlArgUnpruner().unprune(inputSents, goldSents));
+        assertKept(input.getSrlArgMask(), 6, "1110111");
+    }
+
+    private static void assertKept(SrlArgMask mask, int pred, String expected) {
+        StringBuilder sb = new StringBuilder();
+        for (int a=0; a<mask.size(); a++) {
+            sb.append(mask.isKept(pred, a) ? '1' : '0');
+        }
+        assertEquals(expected, sb.toString());
+    }
+
+}
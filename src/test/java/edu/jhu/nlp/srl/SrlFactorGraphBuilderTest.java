@@ -8,6 +8,7 @@ import java.util.List;
 
 import org.junit.Test;
 
+import edu.jhu.nlp.data.SrlArgMask;
 import edu.jhu.nlp.joint.JointNlpFactorGraph;
 import edu.jhu.nlp.joint.JointNlpFactorGraph.JointNlpFactorGraphPrm;
 import edu.jhu.nlp.joint.JointNlpFactorGraphTest;
@@ -85,5 +86,40 @@ public class SrlFactorGraphBuilderTest {
         // 6 unary Role, 6 binary Role Sense, 3 sense unary.
         assertEquals(6 + 6 + 3, sfg.getNumFactors());
     }
-    
+
+    @Test
+    public void testPrunedArgsHaveNoRoleVars() {
+        SrlArgMask mask = new SrlArgMask(3, true);
+        mask.setIsPruned(0, 1, true);
+        mask.setIsPruned(2, 0, true);
+        for (RoleStructure rs : new RoleStructure[]{ RoleStructure.ALL_PAIRS, RoleStructure.PREDS_GIVEN }) {
+            JointNlpFactorGraphPrm prm = new JointNlpFactorGraphPrm();
+            prm.includeDp = false;
+            prm.srlPrm.roleStructure = rs;
+            prm.srlPrm.makeUnknownPredRolesLatent = false;
+            prm.srlPrm.allowPredArgSelfLoops = false;
+            JointNlpFactorGraph sfg = JointNlpFactorGraphTest.getJointNlpFg(prm, mask);
+            JointNlpFactorGraph unpruned = JointNlpFactorGraphTest.getJointNlpFg(prm);
+
+            assertNull(sfg.getRoleVar(0, 1));
+            assertNull(sfg.getRoleVar(2, 0));
+            assertNotNull(sfg.getRoleVar(0, 2));
+            assertNotNull(sfg.getRoleVar(2, 1));
+            // Exactly the pruned pairs are missing.
+            assertEquals(countRoleVars(unpruned) - 2, countRoleVars(sfg));
+        }
+    }
+
+    private static int countRoleVars(JointNlpFactorGraph sfg) {
+        int count = 0;
+        for (int i=0; i<3; i++) {
+            for (int j=0; j<3; j++) {
+                if (sfg.getRoleVar(i, j) != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
 }
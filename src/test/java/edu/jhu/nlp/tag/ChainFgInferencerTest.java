@@ -0,0 +1,132 @@
+package edu.jhu.nlp.tag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.jhu.nlp.data.simple.AlphabetStore;
+import edu.jhu.nlp.data.simple.AlphabetStoreTest;
+import edu.jhu.nlp.data.simple.AnnoSentence;
+import edu.jhu.nlp.data.simple.IntAnnoSentence;
+import edu.jhu.nlp.ner.NerFactorGraphBuilder;
+import edu.jhu.nlp.ner.NerFactorGraphBuilder.NerFactorGraph;
+import edu.jhu.nlp.ner.NerFactorGraphBuilder.NerFactorGraphBuilderPrm;
+import edu.jhu.nlp.tag.ChainFgInferencer.ChainFgInferencerFactory;
+import edu.jhu.pacaya.gm.inf.BeliefPropagation.BeliefPropagationPrm;
+import edu.jhu.pacaya.gm.inf.BeliefPropagationTest;
+import edu.jhu.pacaya.gm.inf.BruteForceInferencer;
+import edu.jhu.pacaya.gm.inf.FgInferencer;
+import edu.jhu.pacaya.gm.model.Factor;
+import edu.jhu.pacaya.gm.model.FactorGraph;
+import edu.jhu.pacaya.gm.model.FgModel;
+import edu.jhu.pacaya.gm.model.Var;
+import edu.jhu.pacaya.gm.model.VarConfig;
+import edu.jhu.pacaya.util.collections.QLists;
+import edu.jhu.pacaya.util.semiring.Algebra;
+import edu.jhu.pacaya.util.semiring.LogSemiring;
+import edu.jhu.pacaya.util.semiring.RealAlgebra;
+
+public class ChainFgInferencerTest {
+
+    private static final List<String> tags = QLists.getList("O", "B", "I");
+
+    @Test
+    public void testZeroModel() {
+        for (int n=1; n<=4; n++) {
+            checkBruteForceEqualsChain(true, n, RealAlgebra.getInstance());
+            checkBruteForceEqualsChain(true, n, LogSemiring.getInstance());
+        }
+    }
+
+    @Test
+    public void testNonzeroModel() {
+        for (int n=1; n<=4; n++) {
+            checkBruteForceEqualsChain(false, n, RealAlgebra.getInstance());
+            checkBruteForceEqualsChain(false, n, LogSemiring.getInstance());
+        }
+    }
+
+    @Test
+    public void testViterbi() {
+        FactorGraph fg = getNerFg(false, 3);
+        ChainFgInferencer chain = new ChainFgInferencer(fg, LogSemiring.getInstance());
+        chain.run();
+        VarConfig viterbi = chain.getViterbiConfig();
+
+        // Find the best configuration by enumeration.
+        List<Var> vars = fg.getVars();
+        double best = Double.NEGATIVE_INFINITY;
+        int numConfigs = (int) Math.pow(tags.size(), vars.size());
+        for (int c=0; c<numConfigs; c++) {
+            VarConfig vc = new VarConfig();
+            int rest = c;
+            for (Var v : vars) {
+                vc.put(v, rest % tags.size());
+                rest /= tags.size();
+            }
+            best = Math.max(best, getLogScore(fg, vc));
+        }
+        assertEquals(best, chain.getViterbiLogScore(), 1e-8);
+        assertEquals(best, getLogScore(fg, viterbi), 1e-8);
+    }
+
+    @Test
+    public void testFactoryUsesChainInference() {
+        FactorGraph fg = getNerFg(false, 3);
+        int[][] chains = ChainFgInferencer.getChains(fg);
+        assertNotNull(chains);
+        assertEquals(1, chains.length);
+        assertEquals(3, chains[0].length);
+
+        BeliefPropagationPrm bpPrm = new BeliefPropagationPrm();
+        bpPrm.s = LogSemiring.getInstance();
+        ChainFgInferencerFactory factory = new ChainFgInferencerFactory(bpPrm.s, bpPrm);
+        FgInferencer inf = factory.getInferencer(fg);
+        assertTrue(inf instanceof ChainFgInferencer);
+    }
+
+    private static void checkBruteForceEqualsChain(boolean zeroModel, int n, Algebra s) {
+        FactorGraph fg = getNerFg(zeroModel, n);
+
+        BruteForceInferencer bf = new BruteForceInferencer(fg, s);
+        bf.run();
+        ChainFgInferencer chain = new ChainFgInferencer(fg, s);
+        chain.run();
+
+        double tolerance = 1e-8;
+        assertEquals(bf.getLogPartition(), chain.getLogPartition(), tolerance);
+        BeliefPropagationTest.assertEqualMarginals(fg, bf, chain, tolerance, false);
+    }
+
+    private static double getLogScore(FactorGraph fg, VarConfig vc) {
+        double score = 0;
+        for (Factor f : fg.getFactors()) {
+            score += f.getLogUnormalizedScore(vc.getConfigIndexOfSubset(f.getVars()));
+        }
+        return score;
+    }
+
+    private static FactorGraph getNerFg(boolean zeroModel, int n) {
+        AnnoSentence sent = AlphabetStoreTest.getAnnoSentenceForRange(0, n);
+        IntAnnoSentence isent = new IntAnnoSentence(sent, new AlphabetStore(QLists.getList(sent)));
+        NerFactorGraphBuilderPrm prm = new NerFactorGraphBuilderPrm();
+        prm.featureHashMod = 1000;
+        NerFactorGraphBuilder builder = new NerFactorGraphBuilder(prm);
+        FactorGraph fg = new NerFactorGraph(builder);
+        builder.build(isent, fg, tags);
+
+        FgModel model = new FgModel(prm.featureHashMod);
+        if (!zeroModel) {
+            for (int i=0; i<model.getNumParams(); i++) {
+                model.getParams().set(i, (i*31 % 1009) / 100.);
+            }
+        }
+        fg.updateFromModel(model);
+        return fg;
+    }
+
+}
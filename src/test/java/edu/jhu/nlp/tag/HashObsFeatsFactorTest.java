@@ -0,0 +1,78 @@
+package edu.jhu.nlp.tag;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import edu.jhu.pacaya.gm.feat.FeatureVector;
+import edu.jhu.pacaya.gm.model.FgModel;
+import edu.jhu.pacaya.gm.model.Var;
+import edu.jhu.pacaya.gm.model.Var.VarType;
+import edu.jhu.pacaya.gm.model.VarSet;
+import edu.jhu.pacaya.gm.model.VarTensor;
+import edu.jhu.pacaya.util.collections.QLists;
+import edu.jhu.pacaya.util.semiring.RealAlgebra;
+
+public class HashObsFeatsFactorTest {
+
+    private static final int featureHashMod = 101;
+
+    @Test
+    public void testScoresMatchFeatureVectors() {
+        HashObsFeatsFactor f = getFactor();
+        FgModel model = getModel();
+        double[] scores = f.getScores(model.getParams());
+        int numConfigs = f.getVars().calcNumConfigs();
+        assertEquals(numConfigs, scores.length);
+        for (int c=0; c<numConfigs; c++) {
+            double expected = f.getFeatures(c).dot(model.getParams());
+            assertEquals(expected, scores[c], 1e-13);
+            assertEquals(expected, f.getDotProd(c, model), 1e-13);
+        }
+        f.updateFromModel(model);
+        for (int c=0; c<numConfigs; c++) {
+            assertEquals(scores[c], f.getLogUnormalizedScore(c), 1e-13);
+        }
+    }
+
+    @Test
+    public void testExpectedPartialsMatchFeatureVectors() {
+        HashObsFeatsFactor f = getFactor();
+        int numConfigs = f.getVars().calcNumConfigs();
+        VarTensor marg = new VarTensor(RealAlgebra.getInstance(), f.getVars());
+        for (int c=0; c<numConfigs; c++) {
+            marg.setValue(c, (c % 3 == 0) ? 0 : 1.0 / (c + 1));
+        }
+        double multiplier = -2.5;
+
+        FgModel counts = new FgModel(featureHashMod);
+        f.addExpectedPartials(counts, marg, multiplier);
+
+        FgModel expected = new FgModel(featureHashMod);
+        for (int c=0; c<numConfigs; c++) {
+            expected.addAfterScaling(f.getFeatures(c), multiplier * marg.getValue(c));
+        }
+        for (int i=0; i<featureHashMod; i++) {
+            assertEquals(expected.getParams().get(i), counts.getParams().get(i), 1e-13);
+        }
+    }
+
+    private static HashObsFeatsFactor getFactor() {
+        Var v1 = new Var(VarType.PREDICTED, 3, "tag0", QLists.getList("O", "B", "I"));
+        Var v2 = new Var(VarType.PREDICTED, 3, "tag1", QLists.getList("O", "B", "I"));
+        FeatureVector obsFeats = new FeatureVector();
+        obsFeats.add(7, 1.0);
+        obsFeats.add(123456, 1.0);
+        obsFeats.add(5, 1.0);
+        return new HashObsFeatsFactor(new VarSet(v1, v2), obsFeats, (short) 2, featureHashMod);
+    }
+
+    private static FgModel getModel() {
+        FgModel model = new FgModel(featureHashMod);
+        for (int i=0; i<model.getNumParams(); i++) {
+            model.getParams().set(i, (i*31 % 1009) / 100.);
+        }
+        return model;
+    }
+
+}